@@ -35,6 +35,8 @@ public class Main {
     Shared.loadVaultClient();
     Shared.loadEBirdClient();
     Shared.loadRedditClient();
+    Shared.loadHintCache();
+    Shared.loadExtractCache();
   }
 
   private static PlaneContext startSwimServer() {
@@ -20,7 +20,7 @@ import java.time.Duration;
 
 class EBirdApi {
 
-  private static final String DOMAIN = "https://api.ebird.org";
+  static final String DEFAULT_DOMAIN = "https://api.ebird.org";
   private static final String ENDPOINT = "/v2/ref/taxon/find";
 
   private static final String LOCALE_FMT = "?locale=%s";
@@ -42,11 +42,12 @@ class EBirdApi {
   private static final String CAT_SLASH = String.format(CAT_FMT, "slash");
   private static final String CAT_SPUH = String.format(CAT_FMT, "spuh");
 
-  private static final String COMMON_PREFIX = DOMAIN + ENDPOINT + LOCALE_US
+  // Relative to the domain, which is configurable for the sake of stand-ins
+  private static final String COMMON_PREFIX = ENDPOINT + LOCALE_US
       + TAXON_FIND_KEY;
-  private static final String UK_PREFIX = DOMAIN + ENDPOINT + LOCALE_UK
+  private static final String UK_PREFIX = ENDPOINT + LOCALE_UK
       + TAXON_FIND_KEY;
-  private static final String PH_PREFIX = DOMAIN + ENDPOINT + LOCALE_PH
+  private static final String PH_PREFIX = ENDPOINT + LOCALE_PH
       + TAXON_FIND_KEY;
 
   private static final String Q_FMT = "&q=%s";
@@ -62,117 +63,117 @@ class EBirdApi {
         .build();
   }
 
-  private static URI findEndpoint(String prefix, String query) {
-    return URI.create(prefix + String.format(Q_FMT, query));
+  private static URI findEndpoint(String domain, String prefix, String query) {
+    return URI.create(domain + prefix + String.format(Q_FMT, query));
   }
 
-  public static HttpRequest findIssf(String query, String userAgent) {
-    return get(findEndpoint(COMMON_PREFIX + CAT_ISSF, query), userAgent);
+  public static HttpRequest findIssf(String domain, String query, String userAgent) {
+    return get(findEndpoint(domain, COMMON_PREFIX + CAT_ISSF, query), userAgent);
   }
 
-  public static HttpRequest findIssfUK(String query, String userAgent) {
-    return get(findEndpoint(UK_PREFIX + CAT_ISSF, query), userAgent);
+  public static HttpRequest findIssfUK(String domain, String query, String userAgent) {
+    return get(findEndpoint(domain, UK_PREFIX + CAT_ISSF, query), userAgent);
   }
 
-  public static HttpRequest findIssfPH(String query, String userAgent) {
-    return get(findEndpoint(PH_PREFIX + CAT_ISSF, query), userAgent);
+  public static HttpRequest findIssfPH(String domain, String query, String userAgent) {
+    return get(findEndpoint(domain, PH_PREFIX + CAT_ISSF, query), userAgent);
   }
 
-  public static HttpRequest findForm(String query, String userAgent) {
-    return get(findEndpoint(COMMON_PREFIX + CAT_FORM, query), userAgent);
+  public static HttpRequest findForm(String domain, String query, String userAgent) {
+    return get(findEndpoint(domain, COMMON_PREFIX + CAT_FORM, query), userAgent);
   }
 
-  public static HttpRequest findFormUK(String query, String userAgent) {
-    return get(findEndpoint(UK_PREFIX + CAT_FORM, query), userAgent);
+  public static HttpRequest findFormUK(String domain, String query, String userAgent) {
+    return get(findEndpoint(domain, UK_PREFIX + CAT_FORM, query), userAgent);
   }
 
-  public static HttpRequest findFormPH(String query, String userAgent) {
-    return get(findEndpoint(PH_PREFIX + CAT_FORM, query), userAgent);
+  public static HttpRequest findFormPH(String domain, String query, String userAgent) {
+    return get(findEndpoint(domain, PH_PREFIX + CAT_FORM, query), userAgent);
   }
 
-  public static HttpRequest findIntergrade(String query, String userAgent) {
-    return get(findEndpoint(COMMON_PREFIX + CAT_INTERGRADE, query), userAgent);
+  public static HttpRequest findIntergrade(String domain, String query, String userAgent) {
+    return get(findEndpoint(domain, COMMON_PREFIX + CAT_INTERGRADE, query), userAgent);
   }
 
-  public static HttpRequest findIntergradeUK(String query, String userAgent) {
-    return get(findEndpoint(UK_PREFIX + CAT_INTERGRADE, query), userAgent);
+  public static HttpRequest findIntergradeUK(String domain, String query, String userAgent) {
+    return get(findEndpoint(domain, UK_PREFIX + CAT_INTERGRADE, query), userAgent);
   }
 
-  public static HttpRequest findIntergradePH(String query, String userAgent) {
-    return get(findEndpoint(PH_PREFIX + CAT_INTERGRADE, query), userAgent);
+  public static HttpRequest findIntergradePH(String domain, String query, String userAgent) {
+    return get(findEndpoint(domain, PH_PREFIX + CAT_INTERGRADE, query), userAgent);
   }
 
-  public static HttpRequest findSpecies(String query, String userAgent) {
-    return get(findEndpoint(COMMON_PREFIX + CAT_SPECIES, query), userAgent);
+  public static HttpRequest findSpecies(String domain, String query, String userAgent) {
+    return get(findEndpoint(domain, COMMON_PREFIX + CAT_SPECIES, query), userAgent);
   }
 
-  public static HttpRequest findSpeciesUK(String query, String userAgent) {
-    return get(findEndpoint(UK_PREFIX + CAT_SPECIES, query), userAgent);
+  public static HttpRequest findSpeciesUK(String domain, String query, String userAgent) {
+    return get(findEndpoint(domain, UK_PREFIX + CAT_SPECIES, query), userAgent);
   }
 
-  public static HttpRequest findSpeciesPH(String query, String userAgent) {
-    return get(findEndpoint(PH_PREFIX + CAT_SPECIES, query), userAgent);
+  public static HttpRequest findSpeciesPH(String domain, String query, String userAgent) {
+    return get(findEndpoint(domain, PH_PREFIX + CAT_SPECIES, query), userAgent);
   }
 
-  public static HttpRequest findDomestic(String query, String userAgent) {
-    return get(findEndpoint(COMMON_PREFIX + CAT_DOMESTIC, query), userAgent);
+  public static HttpRequest findDomestic(String domain, String query, String userAgent) {
+    return get(findEndpoint(domain, COMMON_PREFIX + CAT_DOMESTIC, query), userAgent);
   }
 
-  public static HttpRequest findDomesticUK(String query, String userAgent) {
-    return get(findEndpoint(UK_PREFIX + CAT_DOMESTIC, query), userAgent);
+  public static HttpRequest findDomesticUK(String domain, String query, String userAgent) {
+    return get(findEndpoint(domain, UK_PREFIX + CAT_DOMESTIC, query), userAgent);
   }
 
-  public static HttpRequest findDomesticPH(String query, String userAgent) {
-    return get(findEndpoint(PH_PREFIX + CAT_DOMESTIC, query), userAgent);
+  public static HttpRequest findDomesticPH(String domain, String query, String userAgent) {
+    return get(findEndpoint(domain, PH_PREFIX + CAT_DOMESTIC, query), userAgent);
   }
 
-  public static HttpRequest findHybrid(String query, String userAgent) {
-    return get(findEndpoint(COMMON_PREFIX + CAT_HYBRID, query), userAgent);
+  public static HttpRequest findHybrid(String domain, String query, String userAgent) {
+    return get(findEndpoint(domain, COMMON_PREFIX + CAT_HYBRID, query), userAgent);
   }
 
-  public static HttpRequest findHybridUK(String query, String userAgent) {
-    return get(findEndpoint(UK_PREFIX + CAT_HYBRID, query), userAgent);
+  public static HttpRequest findHybridUK(String domain, String query, String userAgent) {
+    return get(findEndpoint(domain, UK_PREFIX + CAT_HYBRID, query), userAgent);
   }
 
-  public static HttpRequest findHybridPH(String query, String userAgent) {
-    return get(findEndpoint(PH_PREFIX + CAT_HYBRID, query), userAgent);
+  public static HttpRequest findHybridPH(String domain, String query, String userAgent) {
+    return get(findEndpoint(domain, PH_PREFIX + CAT_HYBRID, query), userAgent);
   }
 
-  public static HttpRequest findSlash(String query, String userAgent) {
-    return get(findEndpoint(COMMON_PREFIX + CAT_SLASH, query), userAgent);
+  public static HttpRequest findSlash(String domain, String query, String userAgent) {
+    return get(findEndpoint(domain, COMMON_PREFIX + CAT_SLASH, query), userAgent);
   }
 
-  public static HttpRequest findSlashUK(String query, String userAgent) {
-    return get(findEndpoint(UK_PREFIX + CAT_SLASH, query), userAgent);
+  public static HttpRequest findSlashUK(String domain, String query, String userAgent) {
+    return get(findEndpoint(domain, UK_PREFIX + CAT_SLASH, query), userAgent);
   }
 
-  public static HttpRequest findSlashPH(String query, String userAgent) {
-    return get(findEndpoint(PH_PREFIX + CAT_SLASH, query), userAgent);
+  public static HttpRequest findSlashPH(String domain, String query, String userAgent) {
+    return get(findEndpoint(domain, PH_PREFIX + CAT_SLASH, query), userAgent);
   }
 
-  public static HttpRequest findSpuh(String query, String userAgent) {
-    return get(findEndpoint(COMMON_PREFIX + CAT_SPUH, query), userAgent);
+  public static HttpRequest findSpuh(String domain, String query, String userAgent) {
+    return get(findEndpoint(domain, COMMON_PREFIX + CAT_SPUH, query), userAgent);
   }
 
-  public static HttpRequest findSpuhUK(String query, String userAgent) {
-    return get(findEndpoint(UK_PREFIX + CAT_SPUH, query), userAgent);
+  public static HttpRequest findSpuhUK(String domain, String query, String userAgent) {
+    return get(findEndpoint(domain, UK_PREFIX + CAT_SPUH, query), userAgent);
   }
 
-  public static HttpRequest findSpuhPH(String query, String userAgent) {
-    return get(findEndpoint(PH_PREFIX + CAT_SPUH, query), userAgent);
+  public static HttpRequest findSpuhPH(String domain, String query, String userAgent) {
+    return get(findEndpoint(domain, PH_PREFIX + CAT_SPUH, query), userAgent);
   }
 
 
-  public static HttpRequest findTaxon(String query, String userAgent) {
-    return get(findEndpoint(COMMON_PREFIX, query), userAgent);
+  public static HttpRequest findTaxon(String domain, String query, String userAgent) {
+    return get(findEndpoint(domain, COMMON_PREFIX, query), userAgent);
   }
 
-  public static HttpRequest findTaxonUK(String query, String userAgent) {
-    return get(findEndpoint(UK_PREFIX, query), userAgent);
+  public static HttpRequest findTaxonUK(String domain, String query, String userAgent) {
+    return get(findEndpoint(domain, UK_PREFIX, query), userAgent);
   }
 
-  public static HttpRequest findTaxonPH(String query, String userAgent) {
-    return get(findEndpoint(PH_PREFIX, query), userAgent);
+  public static HttpRequest findTaxonPH(String domain, String query, String userAgent) {
+    return get(findEndpoint(domain, PH_PREFIX, query), userAgent);
   }
 
 }
@@ -16,12 +16,29 @@ package filethesebirds.munin.connect.ebird;
 
 public class EBirdApiException extends Exception {
 
+  private final int statusCode;
+
   public EBirdApiException(String msg) {
     super(msg);
+    this.statusCode = 0;
   }
 
   public EBirdApiException(String msg, Throwable e) {
     super(msg, e);
+    this.statusCode = 0;
+  }
+
+  public EBirdApiException(String msg, int statusCode) {
+    super(msg);
+    this.statusCode = statusCode;
+  }
+
+  /**
+   * Returns the HTTP status code of the response that prompted this
+   * exception, or {@code 0} if there was no response.
+   */
+  public int statusCode() {
+    return this.statusCode;
   }
 
 }
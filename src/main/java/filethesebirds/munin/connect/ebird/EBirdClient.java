@@ -15,46 +15,334 @@
 package filethesebirds.munin.connect.ebird;
 
 import filethesebirds.munin.connect.http.HttpUtils;
+import filethesebirds.munin.connect.http.LatencyHistogram;
+import filethesebirds.munin.connect.http.SingleFlight;
 import java.io.InputStream;
+import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Supplier;
+import swim.structure.Record;
+import swim.structure.Value;
 import static java.net.http.HttpResponse.BodyHandlers;
 
+/**
+ * A client for eBird's taxon find API.
+ *
+ * <p>Every {@code findX} method has a blocking form and a {@code findXAsync}
+ * form that never blocks the calling thread. The latter tallies the API calls
+ * it actually makes into a caller-supplied counter. Either way, a query tries
+ * the US locale, then the UK one, then the PH one, stopping at the first
+ * nonempty result. Given an {@link EBirdHedging} policy, asynchronous finds
+ * may overlap these attempts but still answer with the first nonempty result
+ * in that order.
+ */
 public class EBirdClient {
 
   private final HttpClient executor;
   private final String userAgent;
+  private final String domain;
+  // Request URIs identify (category, locale, query), and thus a response.
+  // Calls only join others of their own priority, so that a reviewer's call
+  // never waits behind a DEFAULT one in the gateway's queue
+  private final Map<EBirdGateway.Priority, SingleFlight<URI, String, EBirdApiException>> inFlights;
+  private final SingleFlight<URI, String, EBirdApiException> inFlight;
+  private final EBirdHedging hedging;
+  private final LatencyHistogram findLatency;
+  private final EBirdGateway gateway;
+  private final EBirdGateway.Priority priority;
 
-  public EBirdClient(HttpClient executor, String userAgent) {
+  /**
+   * Creates a client whose requests go to {@code domain} (e.g. {@code
+   * https://api.ebird.org}, or a local stand-in) rather than to eBird.
+   */
+  public EBirdClient(HttpClient executor, String userAgent, String domain, EBirdHedging hedging,
+                     EBirdGateway gateway) {
     this.executor = executor;
     this.userAgent = userAgent;
+    this.domain = domain;
+    this.inFlights = new EnumMap<>(EBirdGateway.Priority.class);
+    for (EBirdGateway.Priority priority : EBirdGateway.Priority.values()) {
+      this.inFlights.put(priority, new SingleFlight<>(EBirdApiException.class));
+    }
+    this.inFlight = this.inFlights.get(EBirdGateway.Priority.DEFAULT);
+    this.hedging = hedging;
+    this.findLatency = new LatencyHistogram();
+    this.gateway = gateway;
+    this.priority = EBirdGateway.Priority.DEFAULT;
+  }
+
+  /**
+   * Creates a client whose requests go to eBird, or to {@code -Debird.baseUrl}
+   * if that is set.
+   */
+  public EBirdClient(HttpClient executor, String userAgent, EBirdHedging hedging, EBirdGateway gateway) {
+    this(executor, userAgent, configuredDomain(), hedging, gateway);
+  }
+
+  public EBirdClient(HttpClient executor, String userAgent, EBirdHedging hedging) {
+    this(executor, userAgent, hedging, EBirdGateway.fromSystemProperties());
+  }
+
+  public EBirdClient(HttpClient executor, String userAgent) {
+    this(executor, userAgent, null);
+  }
+
+  private EBirdClient(EBirdClient client, EBirdGateway.Priority priority) {
+    this.executor = client.executor;
+    this.userAgent = client.userAgent;
+    this.domain = client.domain;
+    this.inFlights = client.inFlights;
+    this.inFlight = client.inFlights.get(priority);
+    this.hedging = client.hedging;
+    this.findLatency = client.findLatency;
+    this.gateway = client.gateway;
+    this.priority = priority;
+  }
+
+  /**
+   * Returns the scheme and authority that requests go to, which is eBird's
+   * unless overridden by {@code -Debird.baseUrl}.
+   */
+  private static String configuredDomain() {
+    final String baseUrl = System.getProperty("ebird.baseUrl");
+    return baseUrl == null || baseUrl.isEmpty() ? EBirdApi.DEFAULT_DOMAIN
+        : baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+  }
+
+  public static EBirdClient fromStream(HttpClient executor, InputStream stream, EBirdHedging hedging,
+                                       EBirdGateway gateway) {
+    return new EBirdClient(executor, EBirdCredentials.fromStream(stream).userAgent(), hedging, gateway);
   }
 
   public static EBirdClient fromStream(HttpClient executor, InputStream stream) {
-    return new EBirdClient(executor, EBirdCredentials.fromStream(stream).userAgent());
+    return fromStream(executor, stream, null, EBirdGateway.fromSystemProperties());
+  }
+
+  /**
+   * Returns a view of this client, sharing its gateway and statistics, whose
+   * calls queue in its {@link EBirdGateway} at {@code priority}. Identical
+   * in-flight calls are shared only among views of the same priority.
+   */
+  public EBirdClient withPriority(EBirdGateway.Priority priority) {
+    return priority == this.priority ? this : new EBirdClient(this, priority);
   }
 
   private static <V> boolean responseIsSuccessful(HttpResponse<V> response) {
     return response.statusCode() == 200;
   }
 
+  /**
+   * Returns the number of eBird API calls that were spared because an
+   * identical one was already in flight.
+   */
+  public long sharedCalls() {
+    long shares = 0L;
+    for (SingleFlight<URI, String, EBirdApiException> inFlight : this.inFlights.values()) {
+      shares += inFlight.shares();
+    }
+    return shares;
+  }
+
+  /**
+   * Returns find latency percentiles accumulated since the previous call,
+   * alongside cumulative deduplication and (if enabled) hedging counts.
+   */
+  public Value drainStats() {
+    final LatencyHistogram.Snapshot latency = this.findLatency.drain();
+    return Record.create(8).attr("eBirdStats")
+        .slot("finds", latency.count())
+        .slot("p50Ms", latency.percentileMicros(50.0) / 1000L)
+        .slot("p90Ms", latency.percentileMicros(90.0) / 1000L)
+        .slot("p99Ms", latency.percentileMicros(99.0) / 1000L)
+        .slot("sharedCalls", sharedCalls())
+        .slot("hedging", this.hedging == null ? Value.absent() : this.hedging.stats())
+        .slot("gateway", this.gateway.drainStats());
+  }
+
   private String makeApiCall(Supplier<HttpRequest> requestSupplier)
       throws EBirdApiException {
-    final HttpResponse<String> resp;
+    final HttpRequest request = requestSupplier.get();
+    return this.inFlight.execute(request.uri(), () -> fireApiCall(request));
+  }
+
+  private String fireApiCall(HttpRequest request) throws EBirdApiException {
+    return await(fireApiCallAsync(request, new LongAdder()));
+  }
+
+  private CompletableFuture<String> makeApiCallAsync(Supplier<HttpRequest> requestSupplier, LongAdder calls) {
+    final HttpRequest request = requestSupplier.get();
+    return this.inFlight.executeAsync(request.uri(), () -> fireApiCallAsync(request, calls));
+  }
+
+  private CompletableFuture<String> fireApiCallAsync(HttpRequest request, LongAdder calls) {
+    calls.increment();
+    return this.gateway.submit(this.priority, () -> sendApiCallAsync(request));
+  }
+
+  private CompletableFuture<String> sendApiCallAsync(HttpRequest request) {
+    return HttpUtils.fireRequestAsync(this.executor, request, BodyHandlers.ofString(), 3)
+        .handle((resp, e) -> {
+          if (e != null) {
+            throw new CompletionException(new EBirdApiException("Failed to make EBird API call",
+                HttpUtils.unwrap(e)));
+          } else if (responseIsSuccessful(resp)) {
+            return resp.body();
+          }
+          throw new CompletionException(new EBirdApiException("Problematic API response with code "
+              + resp.statusCode() + ". Headers: " + resp.headers(), resp.statusCode()));
+        });
+  }
+
+  /**
+   * Blocks until {@code future} completes, rethrowing its failure as it was
+   * before {@code CompletableFuture} wrapped it.
+   */
+  public static <V> V await(CompletableFuture<V> future) throws EBirdApiException {
     try {
-      resp = HttpUtils.fireRequest(this.executor, requestSupplier.get(),
-          BodyHandlers.ofString(), 3);
-    } catch (Exception e) {
-      throw new EBirdApiException("Failed to make EBird API call", e);
+      return future.join();
+    } catch (CompletionException e) {
+      final Throwable cause = HttpUtils.unwrap(e);
+      if (cause instanceof EBirdApiException) {
+        throw (EBirdApiException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new EBirdApiException("EBird API call failed", cause);
     }
-    if (responseIsSuccessful(resp)) {
-      return resp.body();
+  }
+
+  private CompletableFuture<String> findAsync(String query,
+                                              Supplier<HttpRequest> usSupplier,
+                                              Supplier<HttpRequest> ukSupplier,
+                                              Supplier<HttpRequest> phSupplier,
+                                              LongAdder calls) {
+    final long start = System.nanoTime();
+    final CompletableFuture<String> result = this.hedging == null
+        ? makeApiCallAsync(usSupplier, calls).thenCompose(us -> us.length() >= 5
+            ? CompletableFuture.completedFuture(us)
+            : makeApiCallAsync(ukSupplier, calls).thenCompose(uk -> uk.length() >= 5
+                ? CompletableFuture.completedFuture(uk)
+                : makeApiCallAsync(phSupplier, calls)))
+        : findHedged(query, usSupplier, ukSupplier, phSupplier, calls);
+    return result.whenComplete((res, e) -> this.findLatency.record(System.nanoTime() - start));
+  }
+
+  private CompletableFuture<String> findHedged(String query,
+                                               Supplier<HttpRequest> usSupplier,
+                                               Supplier<HttpRequest> ukSupplier,
+                                               Supplier<HttpRequest> phSupplier,
+                                               LongAdder calls) {
+    this.hedging.didStartFind();
+    final Hedge uk = new Hedge(ukSupplier, calls);
+    final Hedge ph = new Hedge(phSupplier, calls);
+    final CompletableFuture<String> us = makeApiCallAsync(usSupplier, calls);
+    if (EBirdHedging.likelyNonUs(query)) {
+      uk.speculate();
+      ph.speculate();
     } else {
-      throw new EBirdApiException("Problematic API response with code " + resp.statusCode()
-          + ". Headers: " + resp.headers());
+      final long delay = this.hedging.delayMillis();
+      CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS).execute(() -> {
+        if (!us.isDone()) {
+          uk.speculate();
+        }
+      });
+      CompletableFuture.delayedExecutor(2 * delay, TimeUnit.MILLISECONDS).execute(() -> {
+        if (!us.isDone() && !uk.isDone()) {
+          ph.speculate();
+        }
+      });
+    }
+    return us.thenCompose(usRes -> usRes.length() >= 5
+        ? CompletableFuture.completedFuture(usRes)
+        : uk.start().thenCompose(ukRes -> ukRes.length() >= 5
+            ? CompletableFuture.completedFuture(ukRes)
+            : ph.start()))
+        .whenComplete((res, e) -> {
+          uk.abandon();
+          ph.abandon();
+        });
+  }
+
+  /**
+   * One lower-priority locale attempt within a hedged find, which starts
+   * either speculatively or once every higher-priority attempt came back
+   * empty, and at most once. An abandoned attempt can no longer start;
+   * abandoning one already in flight only discards its answer, as {@code
+   * HttpClient} offers no reliable way to cancel a sent request.
+   */
+  private final class Hedge {
+
+    private static final int IDLE = 0;
+    private static final int SPECULATIVE = 1;
+    private static final int NEEDED = 2;
+    private static final int USED = 3;
+    private static final int ABANDONED = 4;
+
+    private final Supplier<HttpRequest> requestSupplier;
+    private final LongAdder calls;
+    private final CompletableFuture<String> result;
+    private final AtomicInteger state;
+
+    Hedge(Supplier<HttpRequest> requestSupplier, LongAdder calls) {
+      this.requestSupplier = requestSupplier;
+      this.calls = calls;
+      this.result = new CompletableFuture<>();
+      this.state = new AtomicInteger(IDLE);
+    }
+
+    boolean isDone() {
+      return this.result.isDone();
+    }
+
+    void speculate() {
+      if (this.state.get() != IDLE || !EBirdClient.this.hedging.tryAcquire()) {
+        return;
+      }
+      if (!this.state.compareAndSet(IDLE, SPECULATIVE)) {
+        EBirdClient.this.hedging.release();
+        return;
+      }
+      fire().whenComplete((res, e) -> EBirdClient.this.hedging.release());
+    }
+
+    CompletableFuture<String> start() {
+      if (this.state.compareAndSet(IDLE, NEEDED)) {
+        fire();
+      } else if (this.state.compareAndSet(SPECULATIVE, USED)) {
+        EBirdClient.this.hedging.didUseSpeculation();
+      }
+      return this.result;
     }
+
+    void abandon() {
+      if (this.state.compareAndSet(SPECULATIVE, ABANDONED)) {
+        EBirdClient.this.hedging.didWasteSpeculation();
+      } else {
+        this.state.compareAndSet(IDLE, ABANDONED);
+      }
+    }
+
+    private CompletableFuture<String> fire() {
+      final CompletableFuture<String> call = makeApiCallAsync(this.requestSupplier, this.calls);
+      call.whenComplete((res, e) -> {
+        if (e == null) {
+          this.result.complete(res);
+        } else {
+          this.result.completeExceptionally(HttpUtils.unwrap(e));
+        }
+      });
+      return call;
+    }
+
   }
 
   private String find(Supplier<HttpRequest> usSupplier,
@@ -73,63 +361,138 @@ public class EBirdClient {
   }
 
   public String findIssf(String query) throws EBirdApiException {
-    return find(() -> EBirdApi.findIssf(query, this.userAgent),
-        () -> EBirdApi.findIssfUK(query, this.userAgent),
-        () -> EBirdApi.findIssfPH(query, this.userAgent));
+    return find(() -> EBirdApi.findIssf(this.domain, query, this.userAgent),
+        () -> EBirdApi.findIssfUK(this.domain, query, this.userAgent),
+        () -> EBirdApi.findIssfPH(this.domain, query, this.userAgent));
+  }
+
+  public CompletableFuture<String> findIssfAsync(String query, LongAdder calls) {
+    return findAsync(query, () -> EBirdApi.findIssf(this.domain, query, this.userAgent),
+        () -> EBirdApi.findIssfUK(this.domain, query, this.userAgent),
+        () -> EBirdApi.findIssfPH(this.domain, query, this.userAgent),
+        calls);
   }
 
   public String findForm(String query) throws EBirdApiException {
-    return find(() -> EBirdApi.findForm(query, this.userAgent),
-        () -> EBirdApi.findFormUK(query, this.userAgent),
-        () -> EBirdApi.findFormPH(query, this.userAgent));
+    return find(() -> EBirdApi.findForm(this.domain, query, this.userAgent),
+        () -> EBirdApi.findFormUK(this.domain, query, this.userAgent),
+        () -> EBirdApi.findFormPH(this.domain, query, this.userAgent));
+  }
+
+  public CompletableFuture<String> findFormAsync(String query, LongAdder calls) {
+    return findAsync(query, () -> EBirdApi.findForm(this.domain, query, this.userAgent),
+        () -> EBirdApi.findFormUK(this.domain, query, this.userAgent),
+        () -> EBirdApi.findFormPH(this.domain, query, this.userAgent),
+        calls);
   }
 
   public String findIntergrade(String query) throws EBirdApiException {
-    return find(() -> EBirdApi.findIntergrade(query, this.userAgent),
-        () -> EBirdApi.findIntergradeUK(query, this.userAgent),
-        () -> EBirdApi.findIntergradePH(query, this.userAgent));
+    return find(() -> EBirdApi.findIntergrade(this.domain, query, this.userAgent),
+        () -> EBirdApi.findIntergradeUK(this.domain, query, this.userAgent),
+        () -> EBirdApi.findIntergradePH(this.domain, query, this.userAgent));
   }
 
-  public String findSpecies(String query) throws EBirdApiException {
+  public CompletableFuture<String> findIntergradeAsync(String query, LongAdder calls) {
+    return findAsync(query, () -> EBirdApi.findIntergrade(this.domain, query, this.userAgent),
+        () -> EBirdApi.findIntergradeUK(this.domain, query, this.userAgent),
+        () -> EBirdApi.findIntergradePH(this.domain, query, this.userAgent),
+        calls);
+  }
+
+  private static String speciesOverride(String query) {
     if (query.contains("chicken") && !query.contains("prairie")) {
       return "[{\"code\":\"redjun1\",\"name\":\"Red Junglefowl (Domestic type) - Gallus gallus (Domestic type)\"}]";
     }
     if (query.contains("pied") && query.contains("wagtail") && !query.contains("african")) {
       return "[{\"code\":\"whiwag3\",\"name\":\"Pied Wagtail - Motacilla alba yarrellii\"}]";
     }
-    return find(() -> EBirdApi.findSpecies(query, this.userAgent),
-        () -> EBirdApi.findSpeciesUK(query, this.userAgent),
-        () -> EBirdApi.findSpeciesPH(query, this.userAgent));
+    return null;
+  }
+
+  public String findSpecies(String query) throws EBirdApiException {
+    final String override = speciesOverride(query);
+    if (override != null) {
+      return override;
+    }
+    return find(() -> EBirdApi.findSpecies(this.domain, query, this.userAgent),
+        () -> EBirdApi.findSpeciesUK(this.domain, query, this.userAgent),
+        () -> EBirdApi.findSpeciesPH(this.domain, query, this.userAgent));
+  }
+
+  public CompletableFuture<String> findSpeciesAsync(String query, LongAdder calls) {
+    final String override = speciesOverride(query);
+    if (override != null) {
+      return CompletableFuture.completedFuture(override);
+    }
+    return findAsync(query, () -> EBirdApi.findSpecies(this.domain, query, this.userAgent),
+        () -> EBirdApi.findSpeciesUK(this.domain, query, this.userAgent),
+        () -> EBirdApi.findSpeciesPH(this.domain, query, this.userAgent),
+        calls);
   }
 
   public String findDomestic(String query) throws EBirdApiException {
-    return find(() -> EBirdApi.findDomestic(query, this.userAgent),
-        () -> EBirdApi.findDomesticUK(query, this.userAgent),
-        () -> EBirdApi.findDomesticPH(query, this.userAgent));
+    return find(() -> EBirdApi.findDomestic(this.domain, query, this.userAgent),
+        () -> EBirdApi.findDomesticUK(this.domain, query, this.userAgent),
+        () -> EBirdApi.findDomesticPH(this.domain, query, this.userAgent));
+  }
+
+  public CompletableFuture<String> findDomesticAsync(String query, LongAdder calls) {
+    return findAsync(query, () -> EBirdApi.findDomestic(this.domain, query, this.userAgent),
+        () -> EBirdApi.findDomesticUK(this.domain, query, this.userAgent),
+        () -> EBirdApi.findDomesticPH(this.domain, query, this.userAgent),
+        calls);
   }
 
   public String findHybrid(String query) throws EBirdApiException {
-    return find(() -> EBirdApi.findHybrid(query, this.userAgent),
-        () -> EBirdApi.findHybridUK(query, this.userAgent),
-        () -> EBirdApi.findHybridPH(query, this.userAgent));
+    return find(() -> EBirdApi.findHybrid(this.domain, query, this.userAgent),
+        () -> EBirdApi.findHybridUK(this.domain, query, this.userAgent),
+        () -> EBirdApi.findHybridPH(this.domain, query, this.userAgent));
+  }
+
+  public CompletableFuture<String> findHybridAsync(String query, LongAdder calls) {
+    return findAsync(query, () -> EBirdApi.findHybrid(this.domain, query, this.userAgent),
+        () -> EBirdApi.findHybridUK(this.domain, query, this.userAgent),
+        () -> EBirdApi.findHybridPH(this.domain, query, this.userAgent),
+        calls);
   }
 
   public String findSlash(String query) throws EBirdApiException {
-    return find(() -> EBirdApi.findSlash(query, this.userAgent),
-        () -> EBirdApi.findSlashUK(query, this.userAgent),
-        () -> EBirdApi.findSlashPH(query, this.userAgent));
+    return find(() -> EBirdApi.findSlash(this.domain, query, this.userAgent),
+        () -> EBirdApi.findSlashUK(this.domain, query, this.userAgent),
+        () -> EBirdApi.findSlashPH(this.domain, query, this.userAgent));
+  }
+
+  public CompletableFuture<String> findSlashAsync(String query, LongAdder calls) {
+    return findAsync(query, () -> EBirdApi.findSlash(this.domain, query, this.userAgent),
+        () -> EBirdApi.findSlashUK(this.domain, query, this.userAgent),
+        () -> EBirdApi.findSlashPH(this.domain, query, this.userAgent),
+        calls);
   }
 
   public String findSpuh(String query) throws EBirdApiException {
-    return find(() -> EBirdApi.findSpuh(query, this.userAgent),
-        () -> EBirdApi.findSpuhUK(query, this.userAgent),
-        () -> EBirdApi.findSpuhPH(query, this.userAgent));
+    return find(() -> EBirdApi.findSpuh(this.domain, query, this.userAgent),
+        () -> EBirdApi.findSpuhUK(this.domain, query, this.userAgent),
+        () -> EBirdApi.findSpuhPH(this.domain, query, this.userAgent));
+  }
+
+  public CompletableFuture<String> findSpuhAsync(String query, LongAdder calls) {
+    return findAsync(query, () -> EBirdApi.findSpuh(this.domain, query, this.userAgent),
+        () -> EBirdApi.findSpuhUK(this.domain, query, this.userAgent),
+        () -> EBirdApi.findSpuhPH(this.domain, query, this.userAgent),
+        calls);
   }
 
   public String findTaxon(String query) throws EBirdApiException {
-    return find(() -> EBirdApi.findTaxon(query, this.userAgent),
-        () -> EBirdApi.findTaxonUK(query, this.userAgent),
-        () -> EBirdApi.findTaxonPH(query, this.userAgent));
+    return find(() -> EBirdApi.findTaxon(this.domain, query, this.userAgent),
+        () -> EBirdApi.findTaxonUK(this.domain, query, this.userAgent),
+        () -> EBirdApi.findTaxonPH(this.domain, query, this.userAgent));
+  }
+
+  public CompletableFuture<String> findTaxonAsync(String query, LongAdder calls) {
+    return findAsync(query, () -> EBirdApi.findTaxon(this.domain, query, this.userAgent),
+        () -> EBirdApi.findTaxonUK(this.domain, query, this.userAgent),
+        () -> EBirdApi.findTaxonPH(this.domain, query, this.userAgent),
+        calls);
   }
 
 }
@@ -0,0 +1,325 @@
+// Copyright 2015-2023 Swim.inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package filethesebirds.munin.connect.ebird;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import swim.structure.Record;
+import swim.structure.Value;
+
+/**
+ * The single admission point for eBird traffic from every {@link EBirdClient}
+ * view over one client.
+ *
+ * <p>Calls wait in a bounded queue, highest {@link Priority} first and then in
+ * arrival order, and leave it only while both of the following allow: <ul>
+ * <li>a token bucket, which caps the sustained request rate;
+ * <li>an adaptive concurrency limit, which grows by roughly one per limit's
+ * worth of fast successes, shrinks by 10% on a response slower than the target
+ * latency, and halves on a sign of congestion: HTTP 429, a 5xx, or no response
+ * at all.
+ * </ul>
+ * Consecutive congestion signals additionally pause all dispatch with
+ * exponential backoff, so that an eBird outage is waited out here rather than
+ * by every caller on its own. Any other failure, e.g. a 400 or 404, says
+ * nothing about eBird's load and counts as a response like any other. A full
+ * queue rejects new calls with an {@link EBirdBackpressureException}.
+ */
+public final class EBirdGateway {
+
+  public enum Priority {
+    REVIEWER,
+    DEFAULT
+  }
+
+  private static final double MIN_CONCURRENCY = 1.0;
+  private static final long BASE_PAUSE_NANOS = TimeUnit.SECONDS.toNanos(1L);
+  private static final long MAX_PAUSE_NANOS = TimeUnit.SECONDS.toNanos(60L);
+
+  private final double permitsPerNano;
+  private final double burst;
+  private final double maxConcurrency;
+  private final long targetLatencyNanos;
+  private final int queueCapacity;
+
+  private final ReentrantLock lock;
+  // Everything below, through wakeupScheduled, is guarded by lock
+  private final PriorityQueue<Pending<?>> queue;
+  private long sequence;
+  private double tokens;
+  private long refilledAt;
+  private double limit;
+  private int inFlight;
+  private int consecutiveErrors;
+  private long pausedUntil;
+  private boolean wakeupScheduled;
+
+  private final LongAdder dispatched;
+  private final LongAdder rejected;
+  private final LongAdder errors;
+  private final AtomicLong waitNanos;
+  private final AtomicLong maxWaitNanos;
+
+  public EBirdGateway(double permitsPerSecond, int burst, int initialConcurrency, int maxConcurrency,
+                      long targetLatencyMillis, int queueCapacity) {
+    if (permitsPerSecond <= 0.0 || burst < 1 || initialConcurrency < 1 || maxConcurrency < initialConcurrency
+        || targetLatencyMillis <= 0L || queueCapacity < 1) {
+      throw new IllegalArgumentException("Invalid gateway parameters");
+    }
+    this.permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1L);
+    this.burst = burst;
+    this.maxConcurrency = maxConcurrency;
+    this.targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(targetLatencyMillis);
+    this.queueCapacity = queueCapacity;
+    this.lock = new ReentrantLock();
+    this.queue = new PriorityQueue<>(Comparator.<Pending<?>, Priority>comparing(p -> p.priority)
+        .thenComparingLong(p -> p.sequence));
+    this.sequence = 0L;
+    this.tokens = burst;
+    this.refilledAt = System.nanoTime();
+    this.limit = initialConcurrency;
+    this.inFlight = 0;
+    this.consecutiveErrors = 0;
+    this.pausedUntil = this.refilledAt;
+    this.wakeupScheduled = false;
+    this.dispatched = new LongAdder();
+    this.rejected = new LongAdder();
+    this.errors = new LongAdder();
+    this.waitNanos = new AtomicLong(0L);
+    this.maxWaitNanos = new AtomicLong(0L);
+  }
+
+  /**
+   * Returns the gateway configured by the {@code ebird.gateway.*} system
+   * properties.
+   */
+  public static EBirdGateway fromSystemProperties() {
+    return new EBirdGateway(Integer.getInteger("ebird.gateway.permitsPerSecond", 5),
+        Integer.getInteger("ebird.gateway.burst", 10),
+        Integer.getInteger("ebird.gateway.initialConcurrency", 4),
+        Integer.getInteger("ebird.gateway.maxConcurrency", 16),
+        Long.getLong("ebird.gateway.targetLatencyMs", 2000L),
+        Integer.getInteger("ebird.gateway.queueCapacity", 1000));
+  }
+
+  private static final class Pending<T> {
+
+    final Priority priority;
+    final long sequence;
+    final long enqueuedAt;
+    final Supplier<? extends CompletableFuture<T>> call;
+    final CompletableFuture<T> result;
+
+    Pending(Priority priority, long sequence, Supplier<? extends CompletableFuture<T>> call) {
+      this.priority = priority;
+      this.sequence = sequence;
+      this.enqueuedAt = System.nanoTime();
+      this.call = call;
+      this.result = new CompletableFuture<>();
+    }
+
+  }
+
+  /**
+   * Queues {@code call} to be invoked once the gateway admits it, and returns
+   * a future of its outcome. Any failure of the call's future counts as an
+   * eBird error.
+   */
+  public <T> CompletableFuture<T> submit(Priority priority, Supplier<? extends CompletableFuture<T>> call) {
+    final Pending<T> pending;
+    this.lock.lock();
+    try {
+      if (this.queue.size() >= this.queueCapacity) {
+        this.rejected.increment();
+        return CompletableFuture.failedFuture(new EBirdBackpressureException(
+            "eBird request queue is full (" + this.queueCapacity + " calls)"));
+      }
+      pending = new Pending<>(priority, this.sequence++, call);
+      this.queue.add(pending);
+    } finally {
+      this.lock.unlock();
+    }
+    dispatch();
+    return pending.result;
+  }
+
+  private void refill(long now) {
+    this.tokens = Math.min(this.burst, this.tokens + (now - this.refilledAt) * this.permitsPerNano);
+    this.refilledAt = now;
+  }
+
+  private void dispatch() {
+    final List<Pending<?>> admitted = new ArrayList<>();
+    long wakeIn = 0L;
+    this.lock.lock();
+    try {
+      final long now = System.nanoTime();
+      refill(now);
+      while (!this.queue.isEmpty() && this.inFlight < (int) this.limit) {
+        if (now - this.pausedUntil < 0L) {
+          wakeIn = this.pausedUntil - now;
+          break;
+        } else if (this.tokens < 1.0) {
+          wakeIn = (long) Math.ceil((1.0 - this.tokens) / this.permitsPerNano);
+          break;
+        }
+        this.tokens -= 1.0;
+        this.inFlight++;
+        admitted.add(this.queue.poll());
+      }
+      if (wakeIn > 0L && !this.wakeupScheduled) {
+        this.wakeupScheduled = true;
+      } else {
+        wakeIn = 0L;
+      }
+    } finally {
+      this.lock.unlock();
+    }
+    for (Pending<?> pending : admitted) {
+      start(pending);
+    }
+    if (wakeIn > 0L) {
+      CompletableFuture.delayedExecutor(wakeIn, TimeUnit.NANOSECONDS).execute(() -> {
+        this.lock.lock();
+        try {
+          this.wakeupScheduled = false;
+        } finally {
+          this.lock.unlock();
+        }
+        dispatch();
+      });
+    }
+  }
+
+  private <T> void start(Pending<T> pending) {
+    final long started = System.nanoTime();
+    final long waited = started - pending.enqueuedAt;
+    this.waitNanos.addAndGet(waited);
+    this.maxWaitNanos.accumulateAndGet(waited, Math::max);
+    this.dispatched.increment();
+    CompletableFuture<T> future;
+    try {
+      future = pending.call.get();
+    } catch (RuntimeException e) {
+      future = CompletableFuture.failedFuture(e);
+    }
+    future.whenComplete((result, e) -> {
+      didComplete(System.nanoTime() - started, e == null, e != null && isCongestion(e));
+      if (e == null) {
+        pending.result.complete(result);
+      } else {
+        pending.result.completeExceptionally(e);
+      }
+      dispatch();
+    });
+  }
+
+  /**
+   * Returns whether {@code e} is a failure that the gateway backs off on: a
+   * transport failure, a 429, or a 5xx response.
+   */
+  public static boolean isCongestion(Throwable e) {
+    final Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    if (!(cause instanceof EBirdApiException)) {
+      return false;
+    }
+    final int statusCode = ((EBirdApiException) cause).statusCode();
+    return statusCode == 0 || statusCode == 429 || statusCode >= 500;
+  }
+
+  private void didComplete(long latencyNanos, boolean succeeded, boolean congested) {
+    this.lock.lock();
+    try {
+      this.inFlight--;
+      if (!succeeded) {
+        this.errors.increment();
+      }
+      if (congested) {
+        this.limit = Math.max(MIN_CONCURRENCY, this.limit / 2.0);
+        final int shift = Math.min(this.consecutiveErrors++, 6);
+        this.pausedUntil = System.nanoTime() + Math.min(MAX_PAUSE_NANOS, BASE_PAUSE_NANOS << shift);
+      } else {
+        this.consecutiveErrors = 0;
+        if (latencyNanos > this.targetLatencyNanos) {
+          this.limit = Math.max(MIN_CONCURRENCY, this.limit * 0.9);
+        } else {
+          this.limit = Math.min(this.maxConcurrency, this.limit + 1.0 / this.limit);
+        }
+      }
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  public int queueDepth() {
+    this.lock.lock();
+    try {
+      return this.queue.size();
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  public int concurrencyLimit() {
+    this.lock.lock();
+    try {
+      return (int) this.limit;
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+   * Returns current queue depth, concurrency, and pause, alongside dispatch
+   * counts and queue wait times accumulated since the previous call, then
+   * resets the latter.
+   */
+  public Value drainStats() {
+    final int queueDepth;
+    final int inFlight;
+    final int limit;
+    final long pausedMs;
+    this.lock.lock();
+    try {
+      queueDepth = this.queue.size();
+      inFlight = this.inFlight;
+      limit = (int) this.limit;
+      pausedMs = Math.max(0L, TimeUnit.NANOSECONDS.toMillis(this.pausedUntil - System.nanoTime()));
+    } finally {
+      this.lock.unlock();
+    }
+    final long dispatched = this.dispatched.sumThenReset();
+    return Record.create(10).attr("gateway")
+        .slot("queueDepth", queueDepth)
+        .slot("inFlight", inFlight)
+        .slot("concurrencyLimit", limit)
+        .slot("pausedMs", pausedMs)
+        .slot("dispatched", dispatched)
+        .slot("rejected", this.rejected.sumThenReset())
+        .slot("errors", this.errors.sumThenReset())
+        .slot("meanWaitMs", this.waitNanos.getAndSet(0L) / Math.max(1L, dispatched) / 1000000L)
+        .slot("maxWaitMs", this.maxWaitNanos.getAndSet(0L) / 1000000L);
+  }
+
+}
@@ -0,0 +1,134 @@
+// Copyright 2015-2023 Swim.inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package filethesebirds.munin.connect.ebird;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import swim.structure.Record;
+import swim.structure.Value;
+
+/**
+ * Policy and bookkeeping for {@link EBirdClient}'s hedged finds.
+ *
+ * <p>An unhedged find asks the US locale, then the UK one, then the PH one,
+ * each only after the previous answer came back empty. A hedged find still
+ * prefers answers in that order, but speculatively fires the UK query after
+ * {@code delayMillis} without a US answer and the PH query after twice that,
+ * or both immediately for queries that {@link #likelyNonUs look British}.
+ * At most {@code maxSpeculative} speculative calls may be in flight at once;
+ * beyond that, finds fall back to asking sequentially.
+ */
+public final class EBirdHedging {
+
+  // Names that eBird's en_US locale spells or calls differently
+  private static final String[] NON_US_MARKERS = {"grey", "diver", "skua", "guillemot", "little%20auk"};
+
+  private final long delayMillis;
+  private final int maxSpeculative;
+  private final AtomicInteger speculating;
+  private final LongAdder hedgedFinds;
+  private final LongAdder speculativeCalls;
+  private final LongAdder usefulCalls;
+  private final LongAdder wastedCalls;
+  private final LongAdder cappedCalls;
+
+  public EBirdHedging(long delayMillis, int maxSpeculative) {
+    if (delayMillis < 0L || maxSpeculative < 1) {
+      throw new IllegalArgumentException("Invalid hedging parameters: delayMillis=" + delayMillis
+          + ", maxSpeculative=" + maxSpeculative);
+    }
+    this.delayMillis = delayMillis;
+    this.maxSpeculative = maxSpeculative;
+    this.speculating = new AtomicInteger(0);
+    this.hedgedFinds = new LongAdder();
+    this.speculativeCalls = new LongAdder();
+    this.usefulCalls = new LongAdder();
+    this.wastedCalls = new LongAdder();
+    this.cappedCalls = new LongAdder();
+  }
+
+  /**
+   * Returns the hedging policy configured by the {@code ebird.hedge.*} system
+   * properties, or {@code null} if {@code ebird.hedge} is not {@code true}.
+   */
+  public static EBirdHedging fromSystemProperties() {
+    if (!Boolean.getBoolean("ebird.hedge")) {
+      return null;
+    }
+    return new EBirdHedging(Long.getLong("ebird.hedge.delayMs", 400L),
+        Integer.getInteger("ebird.hedge.maxSpeculative", 8));
+  }
+
+  long delayMillis() {
+    return this.delayMillis;
+  }
+
+  /**
+   * Returns whether {@code query} is worth asking every locale about at once.
+   */
+  static boolean likelyNonUs(String query) {
+    for (String marker : NON_US_MARKERS) {
+      if (query.contains(marker)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  void didStartFind() {
+    this.hedgedFinds.increment();
+  }
+
+  boolean tryAcquire() {
+    while (true) {
+      final int current = this.speculating.get();
+      if (current >= this.maxSpeculative) {
+        this.cappedCalls.increment();
+        return false;
+      } else if (this.speculating.compareAndSet(current, current + 1)) {
+        this.speculativeCalls.increment();
+        return true;
+      }
+    }
+  }
+
+  void release() {
+    this.speculating.decrementAndGet();
+  }
+
+  void didUseSpeculation() {
+    this.usefulCalls.increment();
+  }
+
+  void didWasteSpeculation() {
+    this.wastedCalls.increment();
+  }
+
+  /**
+   * Returns cumulative hedging counts: finds that were hedged, speculative
+   * calls fired, how many of those supplied the answer sooner or went unused,
+   * and how many were skipped because of the concurrency cap.
+   */
+  public Value stats() {
+    return Record.create(7).attr("hedging")
+        .slot("delayMs", this.delayMillis)
+        .slot("hedgedFinds", this.hedgedFinds.sum())
+        .slot("speculativeCalls", this.speculativeCalls.sum())
+        .slot("usefulCalls", this.usefulCalls.sum())
+        .slot("wastedCalls", this.wastedCalls.sum())
+        .slot("cappedCalls", this.cappedCalls.sum());
+  }
+
+}
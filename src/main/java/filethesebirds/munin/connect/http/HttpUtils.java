@@ -17,6 +17,9 @@ package filethesebirds.munin.connect.http;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
 import static java.net.http.HttpResponse.BodyHandler;
 
 public class HttpUtils {
@@ -48,4 +51,41 @@ public class HttpUtils {
         + request.timeout().orElse(null) + " within " + attempts + " attempts", lastNetworkError);
   }
 
+  /**
+   * Asynchronously sends an HTTP request, immediately retrying a bounded
+   * number of times in the event of failure. The returned future completes
+   * exceptionally with an {@link HttpConnectException} once every attempt has
+   * failed; no thread blocks in the meantime.
+   */
+  public static <T> CompletableFuture<HttpResponse<T>> fireRequestAsync(HttpClient executor,
+        HttpRequest request, BodyHandler<T> handler, int attempts) {
+    if (attempts <= 0) {
+      throw new IllegalArgumentException("attempts must be positive");
+    }
+    return fireRequestAsync(executor, request, handler, attempts, attempts);
+  }
+
+  private static <T> CompletableFuture<HttpResponse<T>> fireRequestAsync(HttpClient executor,
+        HttpRequest request, BodyHandler<T> handler, int attempts, int remaining) {
+    return executor.sendAsync(request, handler)
+        .handle((response, e) -> {
+          if (e == null) {
+            return CompletableFuture.completedFuture(response);
+          } else if (remaining > 1) {
+            return fireRequestAsync(executor, request, handler, attempts, remaining - 1);
+          }
+          return CompletableFuture.<HttpResponse<T>>failedFuture(new HttpConnectException("Failed to complete "
+              + request + " with timeout=" + request.timeout().orElse(null) + " within " + attempts + " attempts",
+              unwrap(e)));
+        })
+        .thenCompose(Function.identity());
+  }
+
+  /**
+   * Returns the underlying cause of a {@code CompletableFuture} failure.
+   */
+  public static Throwable unwrap(Throwable e) {
+    return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+  }
+
 }
@@ -0,0 +1,101 @@
+// Copyright 2015-2023 Swim.inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package filethesebirds.munin.connect.http;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free latency histogram with logarithmic buckets, four per power of
+ * two microseconds, so that any reported percentile overstates the true value
+ * by at most ~19%.
+ *
+ * <p>{@link #drain()} empties the histogram into a {@link Snapshot}, making
+ * each snapshot cover the interval since the previous one.
+ */
+public final class LatencyHistogram {
+
+  private static final int SUB_BUCKETS = 4;
+  private static final int BUCKETS = SUB_BUCKETS * 40;
+
+  private final AtomicLongArray counts;
+
+  public LatencyHistogram() {
+    this.counts = new AtomicLongArray(BUCKETS);
+  }
+
+  private static int bucketOf(long micros) {
+    if (micros <= 0L) {
+      return 0;
+    }
+    final int i = (int) Math.ceil(SUB_BUCKETS * Math.log(micros) / Math.log(2.0));
+    return Math.min(Math.max(i, 0), BUCKETS - 1);
+  }
+
+  private static long upperBoundMicros(int bucket) {
+    return (long) Math.ceil(Math.pow(2.0, (double) bucket / SUB_BUCKETS));
+  }
+
+  public void record(long nanos) {
+    this.counts.incrementAndGet(bucketOf(nanos / 1000L));
+  }
+
+  public Snapshot drain() {
+    final long[] drained = new long[BUCKETS];
+    for (int i = 0; i < BUCKETS; i++) {
+      drained[i] = this.counts.getAndSet(i, 0L);
+    }
+    return new Snapshot(drained);
+  }
+
+  public static final class Snapshot {
+
+    private final long[] counts;
+    private final long total;
+
+    private Snapshot(long[] counts) {
+      this.counts = counts;
+      long total = 0L;
+      for (long count : counts) {
+        total += count;
+      }
+      this.total = total;
+    }
+
+    public long count() {
+      return this.total;
+    }
+
+    /**
+     * Returns the upper bound, in microseconds, of the bucket holding the
+     * {@code p}-th percentile sample, or 0 if there are no samples.
+     */
+    public long percentileMicros(double p) {
+      if (this.total == 0L) {
+        return 0L;
+      }
+      final long rank = Math.max(1L, (long) Math.ceil(p / 100.0 * this.total));
+      long seen = 0L;
+      for (int i = 0; i < this.counts.length; i++) {
+        seen += this.counts[i];
+        if (seen >= rank) {
+          return upperBoundMicros(i);
+        }
+      }
+      return upperBoundMicros(this.counts.length - 1);
+    }
+
+  }
+
+}
@@ -0,0 +1,153 @@
+// Copyright 2015-2023 Swim.inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package filethesebirds.munin.connect.http;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Deduplicates concurrent invocations of identical calls.
+ *
+ * <p>The first caller to {@link #execute} a key becomes its <i>leader</i> and
+ * actually performs the call; every caller that arrives with the same key
+ * before the leader finishes blocks until then, and receives the leader's
+ * result or rethrows the leader's exception. Nothing outlives the call, so
+ * this complements rather than replaces a cache.
+ *
+ * <p>{@link #executeAsync} does the same for calls that return futures,
+ * handing followers a future of the leader's outcome instead of blocking
+ * them. Synchronous and asynchronous callers of one key share with each
+ * other.
+ *
+ * @param <K>  the key type, which must identify a call and its outcome
+ * @param <V>  the call result type
+ * @param <E>  the checked exception type that calls may throw
+ */
+public final class SingleFlight<K, V, E extends Exception> {
+
+  @FunctionalInterface
+  public interface Call<V, E extends Exception> {
+
+    V call() throws E;
+
+  }
+
+  private final Class<E> exceptionType;
+  private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight;
+  private final LongAdder leads;
+  private final LongAdder shares;
+
+  public SingleFlight(Class<E> exceptionType) {
+    this.exceptionType = exceptionType;
+    this.inFlight = new ConcurrentHashMap<>();
+    this.leads = new LongAdder();
+    this.shares = new LongAdder();
+  }
+
+  public V execute(K key, Call<? extends V, ? extends E> call) throws E {
+    final CompletableFuture<V> mine = new CompletableFuture<>();
+    final CompletableFuture<V> leader = this.inFlight.putIfAbsent(key, mine);
+    if (leader != null) {
+      this.shares.increment();
+      return await(leader);
+    }
+    this.leads.increment();
+    try {
+      final V result = call.call();
+      mine.complete(result);
+      return result;
+    } catch (Exception | Error e) {
+      mine.completeExceptionally(e);
+      throw e;
+    } finally {
+      this.inFlight.remove(key, mine);
+    }
+  }
+
+  /**
+   * Returns a future of the outcome of the in-flight call for {@code key},
+   * starting {@code call} if there is none. Each caller gets its own copy of
+   * that future, so none can complete it on behalf of the others.
+   */
+  public CompletableFuture<V> executeAsync(K key, Supplier<? extends CompletableFuture<? extends V>> call) {
+    final CompletableFuture<V> mine = new CompletableFuture<>();
+    final CompletableFuture<V> leader = this.inFlight.putIfAbsent(key, mine);
+    if (leader != null) {
+      this.shares.increment();
+      return leader.copy();
+    }
+    this.leads.increment();
+    final CompletableFuture<? extends V> future;
+    try {
+      future = call.get();
+    } catch (RuntimeException | Error e) {
+      this.inFlight.remove(key, mine);
+      mine.completeExceptionally(e);
+      return mine.copy();
+    }
+    future.whenComplete((result, e) -> {
+      // Forget the call first, so that nobody can join it once it has ended
+      this.inFlight.remove(key, mine);
+      if (e == null) {
+        mine.complete(result);
+      } else {
+        mine.completeExceptionally(HttpUtils.unwrap(e));
+      }
+    });
+    return mine.copy();
+  }
+
+  private V await(CompletableFuture<V> leader) throws E {
+    try {
+      return leader.join();
+    } catch (CompletionException e) {
+      final Throwable cause = e.getCause();
+      if (this.exceptionType.isInstance(cause)) {
+        throw this.exceptionType.cast(cause);
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Returns the number of calls that were actually performed.
+   */
+  public long leads() {
+    return this.leads.sum();
+  }
+
+  /**
+   * Returns the number of calls that were spared by sharing another's
+   * outcome.
+   */
+  public long shares() {
+    return this.shares.sum();
+  }
+
+  /**
+   * Returns the number of calls currently being performed.
+   */
+  public int inFlight() {
+    return this.inFlight.size();
+  }
+
+}
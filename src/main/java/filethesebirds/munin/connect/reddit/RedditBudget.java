@@ -0,0 +1,212 @@
+// Copyright 2015-2023 Swim.inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package filethesebirds.munin.connect.reddit;
+
+import java.net.http.HttpHeaders;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+import swim.structure.Record;
+import swim.structure.Value;
+
+/**
+ * Tracks Reddit's rate-limit window from the {@code x-ratelimit-*} headers of
+ * every response {@link RedditClient} receives, and paces each recurring
+ * Reddit {@link Use} so that together they spend the window without
+ * exhausting it.
+ *
+ * <p>What remains of the window, less a reserve, is spread evenly over the
+ * time until it resets and handed out in {@code Use} priority order: each use
+ * may run as often as its {@link Use#minPeriodMillis() floor} allows, given
+ * its typical number of requests per run, before the next use gets any. A
+ * use left with nothing waits for the window to reset. Until a window has
+ * been observed, every use runs at its {@link Use#basePeriodMillis() base
+ * period}.
+ */
+public final class RedditBudget {
+
+  /**
+   * A recurring consumer of Reddit requests, in descending priority.
+   */
+  public enum Use {
+
+    // Reddit throttles comment creation independently, so never faster than the old fixed period
+    PUBLISH(10_000L, 10_000L),
+    COMMENTS(60_000L, 15_000L),
+    // Every run also upserts each live submission into the vault, so speed up only modestly
+    SUBMISSIONS(180_000L, 90_000L),
+    SHELVE(180_000L, 180_000L);
+
+    private final long basePeriodMillis;
+    private final long minPeriodMillis;
+
+    Use(long basePeriodMillis, long minPeriodMillis) {
+      this.basePeriodMillis = basePeriodMillis;
+      this.minPeriodMillis = minPeriodMillis;
+    }
+
+    public long basePeriodMillis() {
+      return this.basePeriodMillis;
+    }
+
+    public long minPeriodMillis() {
+      return this.minPeriodMillis;
+    }
+
+  }
+
+  private static final int MIN_RESERVE = 10;
+  private static final double RESERVE_FRACTION = 0.1;
+  private static final long RESET_SLACK_MILLIS = 2000L;
+  private static final long THROTTLED_WAIT_MILLIS = 60_000L;
+  private static final double COST_WEIGHT = 0.25;
+
+  private int remaining;
+  private int used;
+  private long resetAtMillis;
+  private final double[] costs;
+  private final long[] lastRunMillis;
+  private final LongAdder requests;
+  private final LongAdder throttled;
+
+  public RedditBudget() {
+    this.remaining = -1;
+    this.used = 0;
+    this.resetAtMillis = -1L;
+    final Use[] uses = Use.values();
+    this.costs = new double[uses.length];
+    this.lastRunMillis = new long[uses.length];
+    for (int i = 0; i < uses.length; i++) {
+      this.costs[i] = 1.0;
+      this.lastRunMillis[i] = Long.MIN_VALUE;
+    }
+    this.requests = new LongAdder();
+    this.throttled = new LongAdder();
+  }
+
+  private static double header(HttpHeaders headers, String name) {
+    try {
+      return headers.firstValue(name).map(Double::parseDouble).orElse(-1.0);
+    } catch (NumberFormatException e) {
+      return -1.0;
+    }
+  }
+
+  /**
+   * Accounts for one response to an authorized Reddit request.
+   */
+  public void observe(int statusCode, HttpHeaders headers) {
+    observe(statusCode, headers, System.currentTimeMillis());
+  }
+
+  synchronized void observe(int statusCode, HttpHeaders headers, long nowMillis) {
+    this.requests.increment();
+    final double remaining = header(headers, "x-ratelimit-remaining");
+    final double used = header(headers, "x-ratelimit-used");
+    final double resetSeconds = header(headers, "x-ratelimit-reset");
+    if (statusCode == 429) {
+      this.throttled.increment();
+      this.remaining = 0;
+      this.resetAtMillis = nowMillis + (resetSeconds >= 0.0 ? (long) (resetSeconds * 1000.0) : THROTTLED_WAIT_MILLIS);
+      return;
+    } else if (remaining < 0.0 || resetSeconds < 0.0) {
+      return;
+    }
+    final long resetAtMillis = nowMillis + (long) (resetSeconds * 1000.0);
+    // Responses may arrive out of order; within one window, the lowest count is the latest
+    if (this.remaining < 0 || nowMillis >= this.resetAtMillis
+        || Math.abs(resetAtMillis - this.resetAtMillis) > RESET_SLACK_MILLIS) {
+      this.remaining = (int) remaining;
+      this.used = Math.max(0, (int) used);
+    } else {
+      this.remaining = Math.min(this.remaining, (int) remaining);
+      this.used = Math.max(this.used, (int) used);
+    }
+    this.resetAtMillis = resetAtMillis;
+  }
+
+  /**
+   * Reports that one run of {@code use} took {@code requests} Reddit requests,
+   * refining the per-run cost that pacing assumes.
+   */
+  public synchronized void recordRun(Use use, int requests) {
+    final int i = use.ordinal();
+    this.costs[i] += COST_WEIGHT * (Math.max(1, requests) - this.costs[i]);
+  }
+
+  /**
+   * Returns how long {@code use} should wait before its next run.
+   */
+  public long periodMillis(Use use) {
+    return periodMillis(use, System.currentTimeMillis());
+  }
+
+  synchronized long periodMillis(Use use, long nowMillis) {
+    if (this.remaining < 0 || nowMillis >= this.resetAtMillis) {
+      return use.basePeriodMillis;
+    }
+    final long windowMillis = this.resetAtMillis - nowMillis;
+    final int reserve = Math.max(MIN_RESERVE, (int) (RESERVE_FRACTION * (this.used + this.remaining)));
+    double rate = Math.max(0, this.remaining - reserve) / (double) windowMillis;
+    for (Use u : Use.values()) {
+      final double cost = this.costs[u.ordinal()];
+      final double allotted = Math.min(rate, cost / u.minPeriodMillis);
+      if (u == use) {
+        return allotted <= 0.0 ? windowMillis + RESET_SLACK_MILLIS
+            : Math.max(u.minPeriodMillis, Math.min((long) (cost / allotted), windowMillis + RESET_SLACK_MILLIS));
+      }
+      rate -= allotted;
+    }
+    throw new AssertionError(use);
+  }
+
+  /**
+   * Returns whether {@code use}, which piggybacks on another use's timer, has
+   * waited out its period; if so, also marks it as running now.
+   */
+  public boolean tryRun(Use use) {
+    return tryRun(use, System.currentTimeMillis());
+  }
+
+  synchronized boolean tryRun(Use use, long nowMillis) {
+    final int i = use.ordinal();
+    if (this.lastRunMillis[i] != Long.MIN_VALUE && nowMillis - this.lastRunMillis[i] < periodMillis(use, nowMillis)) {
+      return false;
+    }
+    this.lastRunMillis[i] = nowMillis;
+    return true;
+  }
+
+  /**
+   * Returns the latest observed window, cumulative request and 429 counts,
+   * and each use's current period and per-run cost.
+   */
+  public synchronized Value stats() {
+    final long nowMillis = System.currentTimeMillis();
+    final Record uses = Record.create(Use.values().length);
+    for (Use use : Use.values()) {
+      uses.slot(use.name().toLowerCase(Locale.ROOT), Record.create(2)
+          .slot("periodMs", periodMillis(use, nowMillis))
+          .slot("cost", this.costs[use.ordinal()]));
+    }
+    return Record.create(7).attr("redditBudget")
+        .slot("remaining", this.remaining)
+        .slot("used", this.used)
+        .slot("resetInMs", Math.max(0L, this.resetAtMillis - nowMillis))
+        .slot("requests", this.requests.sum())
+        .slot("throttled", this.throttled.sum())
+        .slot("uses", uses);
+  }
+
+}
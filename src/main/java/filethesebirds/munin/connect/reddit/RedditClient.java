@@ -19,26 +19,51 @@ import filethesebirds.munin.connect.http.StatusCodeException;
 import filethesebirds.munin.connect.reddit.response.EmptyRedditResponse;
 import filethesebirds.munin.digest.Comment;
 import filethesebirds.munin.digest.Submission;
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 import java.util.function.Supplier;
 import swim.http.HttpStatus;
 import swim.json.Json;
 import swim.structure.Value;
 import static java.net.http.HttpResponse.BodyHandler;
 import static java.net.http.HttpResponse.BodyHandlers;
+import static java.net.http.HttpResponse.BodySubscribers;
 
+/**
+ * A Reddit API client authorized by a password grant.
+ *
+ * <p>Every call has a blocking form and a {@code xAsync} form built on {@link
+ * HttpClient#sendAsync}; the latter occupies no thread while a request (or
+ * the token refresh it may trigger) is in flight, and completes exceptionally
+ * with the {@link StatusCodeException} or {@link
+ * filethesebirds.munin.connect.http.HttpConnectException} that its blocking
+ * counterpart would throw.
+ */
 public class RedditClient {
 
+  // Buffers the whole body before completing, so that decoding an async
+  // response never blocks on the network
+  private static final BodyHandler<InputStream> BUFFERED_BODY = info ->
+      BodySubscribers.mapping(BodySubscribers.ofByteArray(), ByteArrayInputStream::new);
+
   private final HttpClient executor;
   private final RedditPasswordGrantProvider grant;
+  private final AtomicReference<CompletableFuture<Void>> refreshing;
+  private final RedditBudget budget;
 
-  private RedditClient(HttpClient executor, RedditPasswordGrantProvider grant)
+  RedditClient(HttpClient executor, RedditPasswordGrantProvider grant)
       throws StatusCodeException {
     this.executor = executor;
     this.grant = grant;
+    this.refreshing = new AtomicReference<>();
+    this.budget = new RedditBudget();
     refreshToken(this.grant.currentExpiry());
   }
 
@@ -48,23 +73,77 @@ public class RedditClient {
     return new RedditClient(executor, new RedditPasswordGrantProvider(credentials));
   }
 
+  /**
+   * Returns the rate-limit budget that every authorized response from this
+   * client feeds.
+   */
+  public RedditBudget budget() {
+    return this.budget;
+  }
+
   // Issue a refresh token, or block-wait until issued.
   // Concurrent calls to this method will also block.
   // Plays well with "scheduleWithFixedDelay"-type recurring tasks
   private void refreshToken(long expectedExpiry) throws StatusCodeException {
-    if (expectedExpiry == this.grant.currentExpiry()) {
-      synchronized (this.grant) {
-        System.out.println("[INFO] RedditClient entered token refresh synchronize block");
-        if (expectedExpiry == this.grant.currentExpiry()) { // may have already been swapped
-          this.grant.fetchNewToken(this.executor);
+    await(refreshTokenAsync(expectedExpiry));
+  }
+
+  // Issue a refresh token unless one was issued since expectedExpiry was read.
+  // Concurrent callers, blocking or not, share a single in-flight token request
+  private CompletableFuture<Void> refreshTokenAsync(long expectedExpiry) {
+    while (true) {
+      final CompletableFuture<Void> inFlight = this.refreshing.get();
+      if (inFlight != null) {
+        return inFlight;
+      } else if (expectedExpiry != this.grant.currentExpiry()) {
+        return CompletableFuture.completedFuture(null);
+      }
+      final CompletableFuture<Void> refresh = new CompletableFuture<>();
+      if (this.refreshing.compareAndSet(null, refresh)) {
+        if (expectedExpiry != this.grant.currentExpiry()) { // may have already been swapped
+          this.refreshing.set(null);
+          refresh.complete(null);
+          return refresh;
         }
+        System.out.println("[INFO] RedditClient began token refresh");
+        this.grant.fetchNewTokenAsync(this.executor).whenComplete((v, e) -> {
+          // Clear before completing, so that a waiter that retries sees the new expiry
+          this.refreshing.set(null);
+          if (e != null) {
+            refresh.completeExceptionally(HttpUtils.unwrap(e));
+          } else {
+            refresh.complete(null);
+          }
+        });
+        return refresh;
+      }
+    }
+  }
+
+  private static <V> V await(CompletableFuture<V> future) throws StatusCodeException {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      final Throwable cause = HttpUtils.unwrap(e);
+      if (cause instanceof StatusCodeException) {
+        throw (StatusCodeException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
       }
+      throw e;
     }
   }
 
+  private static boolean isAuthorizationFailure(Throwable e) {
+    return e instanceof StatusCodeException
+        && (((StatusCodeException) e).status().code() == HttpStatus.UNAUTHORIZED.code()
+          || ((StatusCodeException) e).status().code() == HttpStatus.FORBIDDEN.code());
+  }
+
   private <T> HttpResponse<T> makeAuthorizedRequest(HttpRequest request, BodyHandler<T> handler)
       throws StatusCodeException {
     final HttpResponse<T> response = HttpUtils.fireRequest(this.executor, request, handler, 3);
+    this.budget.observe(response.statusCode(), response.headers());
     if (response.statusCode() / 100 == 2) {
       return response;
     } else {
@@ -90,23 +169,82 @@ public class RedditClient {
     return makeAuthorizedRequest(requestSupplier.get(), handler);
   }
 
+  private <T> CompletableFuture<HttpResponse<T>> makeAuthorizedRequestAsync(HttpRequest request,
+                                                                          BodyHandler<T> handler) {
+    return HttpUtils.fireRequestAsync(this.executor, request, handler, 3)
+        .thenApply(response -> {
+          this.budget.observe(response.statusCode(), response.headers());
+          if (response.statusCode() / 100 == 2) {
+            return response;
+          }
+          throw new CompletionException(new StatusCodeException(response.statusCode(),
+              response.headers().toString()));
+        });
+  }
+
+  private <T> CompletableFuture<HttpResponse<T>> makeApiCallAsync(Supplier<HttpRequest> requestSupplier,
+                                                                  BodyHandler<T> handler) {
+    final long expectedExpiry = this.grant.currentExpiry();
+    if (this.grant.currentToken() == null || System.currentTimeMillis() < this.grant.currentExpiry()) {
+      return makeAuthorizedRequestAsync(requestSupplier.get(), handler)
+          .handle((response, e) -> {
+            if (e == null) {
+              return CompletableFuture.completedFuture(response);
+            }
+            final Throwable cause = HttpUtils.unwrap(e);
+            return isAuthorizationFailure(cause)
+                ? refreshThenCallAsync(expectedExpiry, requestSupplier, handler)
+                : CompletableFuture.<HttpResponse<T>>failedFuture(cause);
+          })
+          .thenCompose(Function.identity());
+    }
+    return refreshThenCallAsync(expectedExpiry, requestSupplier, handler);
+  }
+
+  private <T> CompletableFuture<HttpResponse<T>> refreshThenCallAsync(long expectedExpiry,
+                                                                      Supplier<HttpRequest> requestSupplier,
+                                                                      BodyHandler<T> handler) {
+    return refreshTokenAsync(expectedExpiry)
+        .thenCompose(v -> makeAuthorizedRequestAsync(requestSupplier.get(), handler));
+  }
+
   public Value fetchIdentityMe() throws StatusCodeException {
     return Json.parse(makeApiCall(() -> RedditApi.getIdentityMe(this.grant.currentToken(),
         this.grant.userAgent()), BodyHandlers.ofString()).body());
   }
 
+  public CompletableFuture<Value> fetchIdentityMeAsync() {
+    return makeApiCallAsync(() -> RedditApi.getIdentityMe(this.grant.currentToken(), this.grant.userAgent()),
+        BodyHandlers.ofString())
+        .thenApply(response -> Json.parse(response.body()));
+  }
+
   public RedditResponse<Submission[]> fetchOneUndocumentedPost() throws StatusCodeException {
     return Submission.submissionsFetchCrux(makeApiCall(() ->
             RedditApi.getOneUndocumentedPost(this.grant.currentToken(), this.grant.userAgent()),
         BodyHandlers.ofInputStream()));
   }
 
+  public CompletableFuture<RedditResponse<Submission[]>> fetchOneUndocumentedPostAsync() {
+    return makeApiCallAsync(() ->
+            RedditApi.getOneUndocumentedPost(this.grant.currentToken(), this.grant.userAgent()),
+        BUFFERED_BODY)
+        .thenApply(Submission::submissionsFetchCrux);
+  }
+
   public RedditResponse<Submission[]> fetchMaxUndocumentedPosts() throws StatusCodeException {
     return Submission.submissionsFetchCrux(makeApiCall(() ->
             RedditApi.getMaxUndocumentedPosts(this.grant.currentToken(), this.grant.userAgent()),
         BodyHandlers.ofInputStream()));
   }
 
+  public CompletableFuture<RedditResponse<Submission[]>> fetchMaxUndocumentedPostsAsync() {
+    return makeApiCallAsync(() ->
+            RedditApi.getMaxUndocumentedPosts(this.grant.currentToken(), this.grant.userAgent()),
+        BUFFERED_BODY)
+        .thenApply(Submission::submissionsFetchCrux);
+  }
+
   public RedditResponse<Submission[]> fetchUndocumentedPostsBefore(String fullname) throws StatusCodeException {
     return Submission.submissionsFetchCrux(makeApiCall(() ->
             RedditApi.getUndocumentedPostsBefore(fullname, this.grant.currentToken(),
@@ -114,6 +252,14 @@ public class RedditClient {
         BodyHandlers.ofInputStream()));
   }
 
+  public CompletableFuture<RedditResponse<Submission[]>> fetchUndocumentedPostsBeforeAsync(String fullname) {
+    return makeApiCallAsync(() ->
+            RedditApi.getUndocumentedPostsBefore(fullname, this.grant.currentToken(),
+                this.grant.userAgent()),
+        BUFFERED_BODY)
+        .thenApply(Submission::submissionsFetchCrux);
+  }
+
   public RedditResponse<Submission[]> fetchUndocumentedPostsAfter(String fullname) throws StatusCodeException {
     return Submission.submissionsFetchCrux(makeApiCall(() ->
             RedditApi.getUndocumentedPostsAfter(fullname, this.grant.currentToken(),
@@ -121,42 +267,92 @@ public class RedditClient {
         BodyHandlers.ofInputStream()));
   }
 
+  public CompletableFuture<RedditResponse<Submission[]>> fetchUndocumentedPostsAfterAsync(String fullname) {
+    return makeApiCallAsync(() ->
+            RedditApi.getUndocumentedPostsAfter(fullname, this.grant.currentToken(),
+                this.grant.userAgent()),
+        BUFFERED_BODY)
+        .thenApply(Submission::submissionsFetchCrux);
+  }
+
   public RedditResponse<Comment[]> fetchOneUndocumentedComment() throws StatusCodeException {
     return Comment.commentsFetchCrux(makeApiCall(() ->
             RedditApi.getOneUndocumentedComment(this.grant.currentToken(), this.grant.userAgent()),
         BodyHandlers.ofInputStream()));
   }
 
+  public CompletableFuture<RedditResponse<Comment[]>> fetchOneUndocumentedCommentAsync() {
+    return makeApiCallAsync(() ->
+            RedditApi.getOneUndocumentedComment(this.grant.currentToken(), this.grant.userAgent()),
+        BUFFERED_BODY)
+        .thenApply(Comment::commentsFetchCrux);
+  }
+
   public RedditResponse<Comment[]> fetchMaxUndocumentedComments() throws StatusCodeException {
     return Comment.commentsFetchCrux(makeApiCall(() ->
             RedditApi.getMaxUndocumentedComments(this.grant.currentToken(), this.grant.userAgent()),
         BodyHandlers.ofInputStream()));
   }
 
+  public CompletableFuture<RedditResponse<Comment[]>> fetchMaxUndocumentedCommentsAsync() {
+    return makeApiCallAsync(() ->
+            RedditApi.getMaxUndocumentedComments(this.grant.currentToken(), this.grant.userAgent()),
+        BUFFERED_BODY)
+        .thenApply(Comment::commentsFetchCrux);
+  }
+
   public RedditResponse<Comment[]> fetchUndocumentedCommentsBefore(String before) throws StatusCodeException {
     return Comment.commentsFetchCrux(makeApiCall(() ->
             RedditApi.getUndocumentedCommentsBefore(before, this.grant.currentToken(), this.grant.userAgent()),
         BodyHandlers.ofInputStream()));
   }
 
+  public CompletableFuture<RedditResponse<Comment[]>> fetchUndocumentedCommentsBeforeAsync(String before) {
+    return makeApiCallAsync(() ->
+            RedditApi.getUndocumentedCommentsBefore(before, this.grant.currentToken(), this.grant.userAgent()),
+        BUFFERED_BODY)
+        .thenApply(Comment::commentsFetchCrux);
+  }
+
   public RedditResponse<Comment[]> fetchUndocumentedCommentsAfter(String after) throws StatusCodeException {
     return Comment.commentsFetchCrux(makeApiCall(() ->
             RedditApi.getUndocumentedCommentsAfter(after, this.grant.currentToken(), this.grant.userAgent()),
         BodyHandlers.ofInputStream()));
   }
 
+  public CompletableFuture<RedditResponse<Comment[]>> fetchUndocumentedCommentsAfterAsync(String after) {
+    return makeApiCallAsync(() ->
+            RedditApi.getUndocumentedCommentsAfter(after, this.grant.currentToken(), this.grant.userAgent()),
+        BUFFERED_BODY)
+        .thenApply(Comment::commentsFetchCrux);
+  }
+
   public RedditResponse<Comment[]> fetchReadCommentsArticle(String article) throws StatusCodeException {
     return Comment.commentsFetchCrux(makeApiCall(() ->
             RedditApi.getReadCommentsArticle(article, this.grant.currentToken(), this.grant.userAgent()),
         BodyHandlers.ofInputStream()));
   }
 
+  public CompletableFuture<RedditResponse<Comment[]>> fetchReadCommentsArticleAsync(String article) {
+    return makeApiCallAsync(() ->
+            RedditApi.getReadCommentsArticle(article, this.grant.currentToken(), this.grant.userAgent()),
+        BUFFERED_BODY)
+        .thenApply(Comment::commentsFetchCrux);
+  }
+
   public RedditResponse<Submission[]> fetchReadById(String joinedIds) throws StatusCodeException {
     return Submission.submissionsFetchCrux(makeApiCall(() ->
             RedditApi.getReadById(joinedIds, this.grant.currentToken(), this.grant.userAgent()),
         BodyHandlers.ofInputStream()));
   }
 
+  public CompletableFuture<RedditResponse<Submission[]>> fetchReadByIdAsync(String joinedIds) {
+    return makeApiCallAsync(() ->
+            RedditApi.getReadById(joinedIds, this.grant.currentToken(), this.grant.userAgent()),
+        BUFFERED_BODY)
+        .thenApply(Submission::submissionsFetchCrux);
+  }
+
   public RedditResponse<Comment> publishAnyComment(String parent, String body) throws StatusCodeException {
     return Comment.commentPublishCrux(makeApiCall(() ->
             RedditApi.postAnyComment(parent, body, this.grant.currentToken(),
@@ -164,6 +360,14 @@ public class RedditClient {
         BodyHandlers.ofInputStream()));
   }
 
+  public CompletableFuture<RedditResponse<Comment>> publishAnyCommentAsync(String parent, String body) {
+    return makeApiCallAsync(() ->
+            RedditApi.postAnyComment(parent, body, this.grant.currentToken(),
+                this.grant.userAgent()),
+        BUFFERED_BODY)
+        .thenApply(Comment::commentPublishCrux);
+  }
+
   public RedditResponse<Comment> publishEditEditusertext(String id, String body) throws StatusCodeException {
     return Comment.commentPublishCrux(makeApiCall(() ->
             RedditApi.postEditEditusertext(id, body, this.grant.currentToken(),
@@ -171,11 +375,25 @@ public class RedditClient {
         BodyHandlers.ofInputStream()));
   }
 
+  public CompletableFuture<RedditResponse<Comment>> publishEditEditusertextAsync(String id, String body) {
+    return makeApiCallAsync(() ->
+            RedditApi.postEditEditusertext(id, body, this.grant.currentToken(),
+                this.grant.userAgent()),
+        BUFFERED_BODY)
+        .thenApply(Comment::commentPublishCrux);
+  }
+
   public RedditResponse<Void> removeEditDel(String fullname) throws StatusCodeException {
     return new EmptyRedditResponse(makeApiCall(() -> RedditApi.postEditDel(fullname, this.grant.currentToken(), this.grant.userAgent()),
         BodyHandlers.ofInputStream()));
   }
 
+  public CompletableFuture<RedditResponse<Void>> removeEditDelAsync(String fullname) {
+    return makeApiCallAsync(() -> RedditApi.postEditDel(fullname, this.grant.currentToken(), this.grant.userAgent()),
+        BUFFERED_BODY)
+        .<RedditResponse<Void>>thenApply(EmptyRedditResponse::new);
+  }
+
   @FunctionalInterface
   public interface Callable<V> {
 
@@ -183,4 +401,11 @@ public class RedditClient {
 
   }
 
+  @FunctionalInterface
+  public interface AsyncCallable<V> {
+
+    CompletableFuture<RedditResponse<V>> call(RedditClient client);
+
+  }
+
 }
@@ -23,6 +23,8 @@ import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import swim.json.Json;
 import swim.structure.Value;
 import static java.net.http.HttpResponse.BodyHandlers;
@@ -57,23 +59,20 @@ public class RedditPasswordGrantProvider {
         .build();
   }
 
-  protected void fetchNewToken(HttpClient executor) throws StatusCodeException {
+  protected CompletableFuture<Void> fetchNewTokenAsync(HttpClient executor) {
     final long beforeFire = System.currentTimeMillis();
-    final HttpResponse<String> resp = fireTokenRequest(executor);
-    try {
-      updateToken(resp, beforeFire);
-    } catch (RuntimeException e) {
-      System.out.println("[ERROR] could not ");
-      throw e;
-    }
-  }
-
-  private HttpResponse<String> fireTokenRequest(HttpClient executor) throws StatusCodeException {
-    final HttpResponse<String> result = HttpUtils.fireRequest(executor, this.tokenFetchRequest, BodyHandlers.ofString(), 1);
-    if (result.statusCode() / 100 != 2) {
-      throw new StatusCodeException(result.statusCode(), result.headers().toString());
-    }
-    return result;
+    return HttpUtils.fireRequestAsync(executor, this.tokenFetchRequest, BodyHandlers.ofString(), 1)
+        .thenAccept(resp -> {
+          if (resp.statusCode() / 100 != 2) {
+            throw new CompletionException(new StatusCodeException(resp.statusCode(), resp.headers().toString()));
+          }
+          try {
+            updateToken(resp, beforeFire);
+          } catch (RuntimeException e) {
+            System.out.println("[ERROR] could not update token from response");
+            throw e;
+          }
+        });
   }
 
   private void updateToken(HttpResponse<String> tokenFetchResponse, long beforeFire) {
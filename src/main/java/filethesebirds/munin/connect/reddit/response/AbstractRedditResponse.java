@@ -61,7 +61,8 @@ public abstract class AbstractRedditResponse<V> implements RedditResponse<V> {
   public long millisToReset() {
     return this.millisToReset >= 0L ? this.millisToReset
         : this.hr.headers().firstValue("x-ratelimit-reset")
-            .map(s -> (this.millisToReset = (long) Double.parseDouble(s)))
+            // Reddit reports seconds
+            .map(s -> (this.millisToReset = (long) (Double.parseDouble(s) * 1000.0)))
             .orElse(-1L);
   }
 
@@ -27,6 +27,7 @@ import java.time.Instant;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.stream.Collectors;
@@ -195,20 +196,23 @@ final class VaultApi {
 //      st.addBatch();
 //    }
 //    return st;
-    final String questions = "(?, ?)";
-    final String template = INSERT_OBSERVATIONS_PREFIX + " "
-        + answer.taxa().stream().map(s -> questions).collect(Collectors.joining(", "))
-        + INSERT_OBSERVATIONS_SUFFIX;
-    final PreparedStatement st = conn.prepareStatement(template);
+    // Resolve every ordinal up front so that unknown taxa never cost a round of statement preparation
+    final int[] ordinals = new int[answer.taxa().size()];
     final Iterator<String> itr = answer.taxa().iterator();
     for (int i = 0; itr.hasNext(); i++) {
-      final int ordinal = Taxonomy.ordinal(itr.next());
-      if (ordinal < 0) {
-        st.close();
+      ordinals[i] = Taxonomy.ordinal(itr.next());
+      if (ordinals[i] < 0) {
         return null;
       }
+    }
+    final String questions = "(?, ?)";
+    final String template = INSERT_OBSERVATIONS_PREFIX + " "
+        + Arrays.stream(ordinals).mapToObj(o -> questions).collect(Collectors.joining(", "))
+        + INSERT_OBSERVATIONS_SUFFIX;
+    final PreparedStatement st = conn.prepareStatement(template);
+    for (int i = 0; i < ordinals.length; i++) {
       final int base = 2 * i;
-      st.setInt(base + 1, ordinal);
+      st.setInt(base + 1, ordinals[i]);
       st.setLong(base + 2, submissionId);
     }
     return st;
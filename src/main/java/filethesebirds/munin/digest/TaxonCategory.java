@@ -0,0 +1,86 @@
+// Copyright 2015-2023 Swim.inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package filethesebirds.munin.digest;
+
+/**
+ * eBird's taxon categories, each of which its taxon find API searches
+ * separately.
+ */
+public enum TaxonCategory {
+
+  SPECIES("species"),
+  ISSF("issf"),
+  FORM("form"),
+  SLASH("slash"),
+  SPUH("spuh"),
+  HYBRID("hybrid"),
+  INTERGRADE("intergrade"),
+  DOMESTIC("domestic");
+
+  private static final TaxonCategory[] VALUES = values();
+
+  private final String eBirdName;
+
+  TaxonCategory(String eBirdName) {
+    this.eBirdName = eBirdName;
+  }
+
+  /**
+   * Returns this category's name in eBird's taxonomy and APIs.
+   */
+  public String eBirdName() {
+    return this.eBirdName;
+  }
+
+  static TaxonCategory of(int ordinal) {
+    return VALUES[ordinal];
+  }
+
+  /**
+   * Returns the category named {@code eBirdName} in eBird's taxonomy, or
+   * {@code null} if there is none.
+   */
+  public static TaxonCategory parse(String eBirdName) {
+    for (TaxonCategory category : VALUES) {
+      if (category.eBirdName.equalsIgnoreCase(eBirdName)) {
+        return category;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Infers a taxon's category from the shape of its eBird common name, for
+   * taxonomies that lack a category column. Such names cannot tell an issf
+   * from a form, so every parenthesized group infers to {@link #ISSF}.
+   */
+  public static TaxonCategory fromCommonName(String name) {
+    if (name.contains(" x ") || name.endsWith("(hybrid)")) {
+      return HYBRID;
+    } else if (name.contains("intergrade)")) {
+      return INTERGRADE;
+    } else if (name.contains("(Domestic type)")) {
+      return DOMESTIC;
+    } else if (name.indexOf('/') >= 0) {
+      return SLASH;
+    } else if (name.endsWith(" sp.") || name.contains(" sp. ")) {
+      return SPUH;
+    } else if (name.indexOf('(') >= 0) {
+      return ISSF;
+    }
+    return SPECIES;
+  }
+
+}
@@ -0,0 +1,294 @@
+// Copyright 2015-2023 Swim.inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package filethesebirds.munin.digest;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable set of taxon codes, keyed by their dense {@link Taxonomy}
+ * index.
+ *
+ * <p>Members live in a sorted {@code int[]}, so unions, subset checks and
+ * equality against another {@code TaxonSet} are linear merges that allocate
+ * nothing unless the result is a new set. Codes absent from the loaded
+ * taxonomy (e.g. persisted before a taxonomy update) are kept verbatim in a
+ * separate sorted array, so nothing is lost in a round trip. Iteration visits
+ * known codes in taxonomic order, then any unknown codes.
+ *
+ * <p>As a {@code Set<String>} a {@code TaxonSet} is indistinguishable from any
+ * other set of the same codes, including under {@code equals} and {@code
+ * hashCode}.
+ */
+public final class TaxonSet extends AbstractSet<String> {
+
+  private static final int[] NO_INDICES = new int[0];
+  private static final String[] NO_CODES = new String[0];
+  private static final TaxonSet EMPTY = new TaxonSet(NO_INDICES, NO_CODES);
+
+  private final int[] indices; // sorted, distinct
+  private final String[] unknown; // sorted, distinct
+  private int hash; // lazily computed, 0 if not yet
+
+  private TaxonSet(int[] indices, String[] unknown) {
+    this.indices = indices;
+    this.unknown = unknown;
+  }
+
+  public static TaxonSet empty() {
+    return EMPTY;
+  }
+
+  /**
+   * Returns a {@code TaxonSet} of {@code codes}, which is {@code codes} itself
+   * if it already is one. {@code null} codes are ignored.
+   */
+  public static TaxonSet copyOf(Collection<String> codes) {
+    if (codes instanceof TaxonSet) {
+      return (TaxonSet) codes;
+    } else if (codes == null || codes.isEmpty()) {
+      return EMPTY;
+    }
+    int[] indices = new int[codes.size()];
+    String[] unknown = NO_CODES;
+    int indexCount = 0,
+        unknownCount = 0;
+    for (String code : codes) {
+      if (code == null) {
+        continue;
+      }
+      final int index = Taxonomy.index(code);
+      if (index >= 0) {
+        indices[indexCount++] = index;
+      } else {
+        if (unknownCount == unknown.length) {
+          unknown = Arrays.copyOf(unknown, Math.max(2, unknownCount << 1));
+        }
+        unknown[unknownCount++] = code;
+      }
+    }
+    if (indexCount + unknownCount == 0) {
+      return EMPTY;
+    }
+    return new TaxonSet(sortedDistinct(indices, indexCount),
+        sortedDistinct(unknown, unknownCount));
+  }
+
+  public static TaxonSet of(String... codes) {
+    return copyOf(Arrays.asList(codes));
+  }
+
+  private static int[] sortedDistinct(int[] a, int n) {
+    if (n == 0) {
+      return NO_INDICES;
+    }
+    Arrays.sort(a, 0, n);
+    int distinct = 1;
+    for (int i = 1; i < n; i++) {
+      if (a[i] != a[distinct - 1]) {
+        a[distinct++] = a[i];
+      }
+    }
+    return distinct == a.length ? a : Arrays.copyOf(a, distinct);
+  }
+
+  private static String[] sortedDistinct(String[] a, int n) {
+    if (n == 0) {
+      return NO_CODES;
+    }
+    Arrays.sort(a, 0, n);
+    int distinct = 1;
+    for (int i = 1; i < n; i++) {
+      if (!a[i].equals(a[distinct - 1])) {
+        a[distinct++] = a[i];
+      }
+    }
+    return distinct == a.length ? a : Arrays.copyOf(a, distinct);
+  }
+
+  @Override
+  public int size() {
+    return this.indices.length + this.unknown.length;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return this == EMPTY || size() == 0;
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    if (!(o instanceof String)) {
+      return false;
+    }
+    final int index = Taxonomy.index((String) o);
+    return index >= 0 ? Arrays.binarySearch(this.indices, index) >= 0
+        : Arrays.binarySearch(this.unknown, o) >= 0;
+  }
+
+  @Override
+  public boolean containsAll(Collection<?> c) {
+    if (c instanceof TaxonSet) {
+      return containsAll((TaxonSet) c);
+    }
+    return super.containsAll(c);
+  }
+
+  public boolean containsAll(TaxonSet other) {
+    return this == other
+        || (isSubset(other.indices, this.indices) && isSubset(other.unknown, this.unknown));
+  }
+
+  private static boolean isSubset(int[] sub, int[] sup) {
+    if (sub.length > sup.length) {
+      return false;
+    }
+    int j = 0;
+    for (int x : sub) {
+      while (j < sup.length && sup[j] < x) {
+        j++;
+      }
+      if (j == sup.length || sup[j] != x) {
+        return false;
+      }
+      j++;
+    }
+    return true;
+  }
+
+  private static boolean isSubset(String[] sub, String[] sup) {
+    if (sub.length > sup.length) {
+      return false;
+    }
+    for (String x : sub) {
+      if (Arrays.binarySearch(sup, x) < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the union of this set and {@code other}, which is one of the two
+   * operands whenever it contains the other.
+   */
+  public TaxonSet union(TaxonSet other) {
+    if (other.isEmpty() || containsAll(other)) {
+      return this;
+    } else if (isEmpty() || other.containsAll(this)) {
+      return other;
+    }
+    return new TaxonSet(union(this.indices, other.indices), union(this.unknown, other.unknown));
+  }
+
+  public TaxonSet union(Collection<String> codes) {
+    return union(copyOf(codes));
+  }
+
+  private static int[] union(int[] a, int[] b) {
+    // Size the result exactly up front rather than trimming a scratch array
+    int size = a.length + b.length;
+    for (int i = 0, j = 0; i < a.length && j < b.length; ) {
+      if (a[i] < b[j]) {
+        i++;
+      } else if (a[i] > b[j]) {
+        j++;
+      } else {
+        size--;
+        i++;
+        j++;
+      }
+    }
+    final int[] result = new int[size];
+    int i = 0, j = 0, n = 0;
+    while (i < a.length && j < b.length) {
+      if (a[i] < b[j]) {
+        result[n++] = a[i++];
+      } else if (a[i] > b[j]) {
+        result[n++] = b[j++];
+      } else {
+        result[n++] = a[i++];
+        j++;
+      }
+    }
+    while (i < a.length) {
+      result[n++] = a[i++];
+    }
+    while (j < b.length) {
+      result[n++] = b[j++];
+    }
+    return result;
+  }
+
+  private static String[] union(String[] a, String[] b) {
+    if (b.length == 0) {
+      return a;
+    } else if (a.length == 0) {
+      return b;
+    }
+    final String[] result = Arrays.copyOf(a, a.length + b.length);
+    System.arraycopy(b, 0, result, a.length, b.length);
+    return sortedDistinct(result, result.length);
+  }
+
+  @Override
+  public Iterator<String> iterator() {
+    return new Iterator<>() {
+
+      private int i = 0;
+
+      @Override
+      public boolean hasNext() {
+        return this.i < size();
+      }
+
+      @Override
+      public String next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        final int at = this.i++;
+        return at < indices.length ? Taxonomy.codeAt(indices[at])
+            : unknown[at - indices.length];
+      }
+
+    };
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    } else if (o instanceof TaxonSet) {
+      final TaxonSet that = (TaxonSet) o;
+      return Arrays.equals(this.indices, that.indices) && Arrays.equals(this.unknown, that.unknown);
+    }
+    return super.equals(o);
+  }
+
+  @Override
+  public int hashCode() {
+    int h = this.hash;
+    if (h == 0 && !isEmpty()) {
+      h = super.hashCode();
+      this.hash = h;
+    }
+    return h;
+  }
+
+}
@@ -18,61 +18,146 @@ import filethesebirds.munin.Utils;
 import java.io.BufferedReader;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.util.HashMap;
-import java.util.Map;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
+/**
+ * Read-only view of the eBird taxonomy, keyed by species code.
+ *
+ * <p>Every valid code is 2-8 characters of {@code [a-z0-9]}, so it packs
+ * losslessly into a single {@code long} as a bijective base-36 numeral. Lookups
+ * probe an open-addressing table of these packed keys, which lets callers query
+ * arbitrary character ranges without first allocating a {@code String}. Common
+ * names live in a single packed character blob, and ordinals and {@link
+ * TaxonCategory categories} alongside them.
+ *
+ * <p>The build precompiles {@code ebird-taxa.csv} into {@code ebird-taxa.bin}
+ * (see {@link TaxonomyCompiler}), and these tables are views straight over that
+ * image: memory-mapped when it is a file on disk (or {@code -Dtaxonomy.bin}),
+ * otherwise read whole from the jar. Setting {@code -Dtaxonomy.conf}, or a
+ * missing or unreadable image, falls back to parsing the CSV.
+ */
 public final class Taxonomy {
 
-  private static final Map<String, String[]> TAXONOMY = new HashMap<>(32000);
-  static {
-    try (InputStream is = Utils.openConfigFile(System.getProperty("taxonomy.conf"),
-            "/ebird-taxa.csv");
-        InputStreamReader isr = new InputStreamReader(is);
-        BufferedReader br = new BufferedReader(isr)) {
-      String line;
-      while ((line = br.readLine()) != null) {
-        final String[] split = line.split(",");
-        if (split.length == 3) {
-          final String code = split[0];
-          if (codeIsValid(code)) {
-            TAXONOMY.put(code, new String[]{split[1], split[2]});
-          }
+  private static final TaxonomyFormat TABLE = load();
+  private static final long FINGERPRINT = TABLE.fingerprint();
+
+  private static TaxonomyFormat load() {
+    final String csvPath = System.getProperty("taxonomy.conf");
+    if (csvPath == null || csvPath.isEmpty()) {
+      try {
+        final TaxonomyFormat binary = loadBinary(System.getProperty("taxonomy.bin"));
+        if (binary != null) {
+          return binary;
         }
+      } catch (Exception e) {
+        System.out.println("[WARN] Failed to load binary taxonomy, falling back to CSV: " + e.getMessage());
       }
+    }
+    try (InputStream is = Utils.openConfigFile(csvPath, "/ebird-taxa.csv");
+        InputStreamReader isr = new InputStreamReader(is, StandardCharsets.UTF_8);
+        BufferedReader br = new BufferedReader(isr)) {
+      return TaxonomyFormat.fromCsv(br);
     } catch (Exception e) {
       throw new RuntimeException("Failed to load taxonomy", e);
     }
   }
 
-  private static boolean codeIsValid(String code) {
-    if (2 > code.length() || code.length() > 8) { // (ou, banowl13)
-      return false;
+  private static TaxonomyFormat loadBinary(String diskPath) throws Exception {
+    if (diskPath != null && !diskPath.isEmpty()) {
+      System.out.println("[INFO] Will map file at " + diskPath);
+      return TaxonomyFormat.fromBinary(map(Path.of(diskPath)));
     }
-    for (int i = 0; i < code.length(); i++) {
-      final char c = code.charAt(i);
-      if (!(('a' <= c && c <= 'z') || ('0' <= c && c <= '9'))) {
-        return false;
-      }
+    final URL url = Taxonomy.class.getResource("/ebird-taxa.bin");
+    if (url == null) {
+      return null;
+    }
+    System.out.println("[INFO] Will load resource at /ebird-taxa.bin");
+    if ("file".equals(url.getProtocol())) {
+      return TaxonomyFormat.fromBinary(map(Path.of(url.toURI())));
+    }
+    // Entries inside a jar cannot be mapped; one bulk read still skips parsing
+    try (InputStream is = url.openStream()) {
+      return TaxonomyFormat.fromBinary(ByteBuffer.wrap(is.readAllBytes()));
     }
-    return true;
   }
 
-  public static boolean containsCode(String code) {
-    return code != null && TAXONOMY.containsKey(code);
+  private static ByteBuffer map(Path path) throws Exception {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
   }
 
-  public static String commonName(String code) {
-    if (containsCode(code)) {
-      return TAXONOMY.get(code)[0];
-    }
-    return null;
+  public static int size() {
+    return TABLE.size();
   }
 
-  public static int ordinal(String code) {
-    if (containsCode(code)) {
-      return Integer.parseInt(TAXONOMY.get(code)[1]);
-    }
-    return -1;
+  /**
+   * Returns a stamp identifying the loaded taxonomy's contents, suitable for
+   * invalidating anything derived from a different taxonomy.
+   */
+  public static long fingerprint() {
+    return FINGERPRINT;
+  }
+
+  /**
+   * Returns the dense index, in {@code [0, size())}, of the code within
+   * {@code [start, end)}, or {@code -1} if no such code exists.
+   */
+  public static int index(CharSequence code, int start, int end) {
+    return TABLE.index(TaxonomyFormat.pack(code, start, end));
+  }
+
+  public static int index(CharSequence code) {
+    return code == null ? -1 : index(code, 0, code.length());
+  }
+
+  public static String codeAt(int index) {
+    return TaxonomyFormat.unpack(TABLE.codes.get(index));
+  }
+
+  public static String commonNameAt(int index) {
+    return TABLE.nameAt(index);
+  }
+
+  public static int ordinalAt(int index) {
+    return TABLE.ordinals.get(index);
+  }
+
+  public static TaxonCategory categoryAt(int index) {
+    return TABLE.categoryAt(index);
+  }
+
+  public static TaxonCategory category(CharSequence code) {
+    final int index = index(code);
+    return index >= 0 ? categoryAt(index) : null;
+  }
+
+  public static boolean containsCode(CharSequence code) {
+    return index(code) >= 0;
+  }
+
+  public static boolean containsCode(CharSequence code, int start, int end) {
+    return index(code, start, end) >= 0;
+  }
+
+  public static String commonName(CharSequence code) {
+    final int index = index(code);
+    return index >= 0 ? commonNameAt(index) : null;
+  }
+
+  public static int ordinal(CharSequence code) {
+    final int index = index(code);
+    return index >= 0 ? TABLE.ordinals.get(index) : -1;
+  }
+
+  public static int ordinal(CharSequence code, int start, int end) {
+    final int index = index(code, start, end);
+    return index >= 0 ? TABLE.ordinals.get(index) : -1;
   }
 
   private Taxonomy() {
@@ -0,0 +1,52 @@
+// Copyright 2015-2023 Swim.inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package filethesebirds.munin.digest;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Build-time tool that compiles a taxonomy CSV into the binary image loaded by
+ * {@link Taxonomy}. Invoked by the {@code compileTaxonomy} Gradle task as
+ * {@code TaxonomyCompiler <csv> <bin>}.
+ */
+public final class TaxonomyCompiler {
+
+  private TaxonomyCompiler() {
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length != 2) {
+      throw new IllegalArgumentException("Usage: TaxonomyCompiler <csv> <bin>");
+    }
+    final TaxonomyFormat table;
+    try (BufferedReader br = Files.newBufferedReader(Path.of(args[0]), StandardCharsets.UTF_8)) {
+      table = TaxonomyFormat.fromCsv(br);
+    }
+    final Path out = Path.of(args[1]);
+    if (out.getParent() != null) {
+      Files.createDirectories(out.getParent());
+    }
+    try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(out))) {
+      table.writeBinary(os);
+    }
+    System.out.println("[INFO] Compiled " + table.size() + " taxa into " + out);
+  }
+
+}
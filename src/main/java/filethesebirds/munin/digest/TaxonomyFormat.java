@@ -0,0 +1,335 @@
+// Copyright 2015-2023 Swim.inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package filethesebirds.munin.digest;
+
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+/**
+ * The in-memory tables behind {@link Taxonomy}, together with the two ways of
+ * producing them: parsing the {@code code,name,ordinal[,category]} CSV, or
+ * wrapping the binary image of these same tables that {@link TaxonomyCompiler}
+ * writes at build time. Rows without a category column infer one from their
+ * common name (see {@link TaxonCategory#fromCommonName}).
+ *
+ * <p>The binary image is, in big-endian order:
+ * <pre>
+ * int magic, int version, int size, int capacity, int nameChars,
+ * long[capacity] keys, int[capacity] slots, long[size] codes,
+ * int[size] ordinals, int[size + 1] nameOffsets, char[nameChars] names,
+ * byte[size] categories
+ * </pre>
+ * so loading it is a matter of slicing views over a (possibly memory-mapped)
+ * buffer.
+ */
+final class TaxonomyFormat {
+
+  static final int MAGIC = 0x4d554e54; // "MUNT"
+  static final int VERSION = 2;
+
+  static final int MIN_CODE_LENGTH = 2; // ou
+  static final int MAX_CODE_LENGTH = 8; // banowl13
+
+  final LongBuffer keys; // packed codes, 0 where empty
+  final IntBuffer slots; // entry index for each occupied key
+  final int mask;
+  final LongBuffer codes;
+  final IntBuffer ordinals;
+  final IntBuffer nameOffsets; // entry i spans [nameOffsets[i], nameOffsets[i + 1])
+  final CharBuffer names;
+  final ByteBuffer categories; // TaxonCategory ordinals
+
+  private TaxonomyFormat(LongBuffer keys, IntBuffer slots, LongBuffer codes, IntBuffer ordinals,
+                         IntBuffer nameOffsets, CharBuffer names, ByteBuffer categories) {
+    this.keys = keys;
+    this.slots = slots;
+    this.mask = keys.capacity() - 1;
+    this.codes = codes;
+    this.ordinals = ordinals;
+    this.nameOffsets = nameOffsets;
+    this.names = names;
+    this.categories = categories;
+  }
+
+  int size() {
+    return this.codes.capacity();
+  }
+
+  /**
+   * Returns the bijective base-36 packing of the code within {@code [start,
+   * end)}, or {@code 0} if that range is not a syntactically valid code.
+   */
+  static long pack(CharSequence s, int start, int end) {
+    final int length = end - start;
+    if (MIN_CODE_LENGTH > length || length > MAX_CODE_LENGTH) {
+      return 0L;
+    }
+    long packed = 0L;
+    for (int i = start; i < end; i++) {
+      final char c = s.charAt(i);
+      final int digit;
+      if ('a' <= c && c <= 'z') {
+        digit = c - 'a' + 11;
+      } else if ('0' <= c && c <= '9') {
+        digit = c - '0' + 1;
+      } else {
+        return 0L;
+      }
+      packed = packed * 36 + digit;
+    }
+    return packed;
+  }
+
+  static String unpack(long packed) {
+    final char[] chars = new char[MAX_CODE_LENGTH];
+    int i = chars.length;
+    while (packed != 0L) {
+      final int digit = (int) ((packed - 1) % 36);
+      chars[--i] = (char) (digit < 10 ? '0' + digit : 'a' + digit - 10);
+      packed = (packed - 1) / 36;
+    }
+    return new String(chars, i, chars.length - i);
+  }
+
+  private static int hash(long packed) {
+    final long h = packed * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32));
+  }
+
+  /**
+   * Returns the slot that either holds {@code packed} or is the empty slot
+   * where it would be inserted.
+   */
+  int probe(long packed) {
+    int slot = hash(packed) & this.mask;
+    long key;
+    while ((key = this.keys.get(slot)) != 0L && key != packed) {
+      slot = (slot + 1) & this.mask;
+    }
+    return slot;
+  }
+
+  int index(long packed) {
+    if (packed == 0L) {
+      return -1;
+    }
+    final int slot = probe(packed);
+    return this.keys.get(slot) == 0L ? -1 : this.slots.get(slot);
+  }
+
+  /**
+   * Returns a hash of every code, ordinal, and common name, in entry order,
+   * that changes whenever the underlying taxonomy does.
+   */
+  long fingerprint() {
+    long h = 0xcbf29ce484222325L;
+    for (int i = 0; i < size(); i++) {
+      h = Long.rotateLeft(h ^ this.codes.get(i), 31) * 0x9E3779B97F4A7C15L;
+      h = Long.rotateLeft(h ^ this.ordinals.get(i), 31) * 0x9E3779B97F4A7C15L;
+    }
+    for (int i = 0; i < this.names.capacity(); i++) {
+      h = (h ^ this.names.get(i)) * 0x100000001b3L;
+    }
+    for (int i = 0; i <= size(); i++) {
+      h = (h ^ this.nameOffsets.get(i)) * 0x100000001b3L;
+    }
+    for (int i = 0; i < size(); i++) {
+      h = (h ^ this.categories.get(i)) * 0x100000001b3L;
+    }
+    return h;
+  }
+
+  String nameAt(int index) {
+    final int start = this.nameOffsets.get(index);
+    final char[] chars = new char[this.nameOffsets.get(index + 1) - start];
+    for (int i = 0; i < chars.length; i++) {
+      chars[i] = this.names.get(start + i);
+    }
+    return new String(chars);
+  }
+
+  TaxonCategory categoryAt(int index) {
+    return TaxonCategory.of(this.categories.get(index));
+  }
+
+  // ===========================================================================
+  // CSV
+  // ===========================================================================
+
+  static TaxonomyFormat fromCsv(BufferedReader br) throws IOException {
+    int rows = 0;
+    long[] codes = new long[1 << 14];
+    int[] ordinals = new int[1 << 14];
+    String[] names = new String[1 << 14];
+    byte[] categories = new byte[1 << 14];
+    String line;
+    while ((line = br.readLine()) != null) {
+      final String[] split = line.split(",");
+      if (split.length == 3 || split.length == 4) {
+        final long code = pack(split[0], 0, split[0].length());
+        final int ordinal = parseOrdinal(split[2]);
+        final TaxonCategory category = split.length == 4 ? TaxonCategory.parse(split[3])
+            : TaxonCategory.fromCommonName(split[1]);
+        if (code != 0L && ordinal >= 0 && category != null) {
+          if (rows == codes.length) {
+            codes = Arrays.copyOf(codes, rows << 1);
+            ordinals = Arrays.copyOf(ordinals, rows << 1);
+            names = Arrays.copyOf(names, rows << 1);
+            categories = Arrays.copyOf(categories, rows << 1);
+          }
+          codes[rows] = code;
+          ordinals[rows] = ordinal;
+          names[rows] = split[1];
+          categories[rows] = (byte) category.ordinal();
+          rows++;
+        }
+      }
+    }
+    // Power-of-two capacity at no more than half load keeps probe sequences short
+    final int capacity = Integer.highestOneBit(Math.max(rows, 1) * 2 - 1) << 1;
+    final long[] keys = new long[capacity];
+    final int[] slots = new int[capacity];
+    final TaxonomyFormat table = new TaxonomyFormat(LongBuffer.wrap(keys), IntBuffer.wrap(slots),
+        null, null, null, null, null);
+    // Later rows win on duplicate codes, matching the previous Map#put semantics
+    final boolean[] shadowed = new boolean[rows];
+    for (int i = 0; i < rows; i++) {
+      final int slot = table.probe(codes[i]);
+      if (keys[slot] != 0L) {
+        shadowed[slots[slot]] = true;
+      }
+      keys[slot] = codes[i];
+      slots[slot] = i;
+    }
+    // Compact surviving rows into dense entries, in file order
+    int size = 0;
+    final StringBuilder nameBuffer = new StringBuilder(rows * 24);
+    final int[] nameOffsets = new int[rows + 1];
+    for (int i = 0; i < rows; i++) {
+      if (!shadowed[i]) {
+        codes[size] = codes[i];
+        ordinals[size] = ordinals[i];
+        categories[size] = categories[i];
+        nameOffsets[size] = nameBuffer.length();
+        nameBuffer.append(names[i]);
+        slots[table.probe(codes[i])] = size;
+        size++;
+      }
+    }
+    nameOffsets[size] = nameBuffer.length();
+    final char[] nameChars = new char[nameBuffer.length()];
+    nameBuffer.getChars(0, nameBuffer.length(), nameChars, 0);
+    return new TaxonomyFormat(table.keys, table.slots,
+        LongBuffer.wrap(Arrays.copyOf(codes, size)),
+        IntBuffer.wrap(Arrays.copyOf(ordinals, size)),
+        IntBuffer.wrap(Arrays.copyOf(nameOffsets, size + 1)),
+        CharBuffer.wrap(nameChars),
+        ByteBuffer.wrap(Arrays.copyOf(categories, size)));
+  }
+
+  private static int parseOrdinal(String raw) {
+    try {
+      return Integer.parseInt(raw);
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  // ===========================================================================
+  // Binary
+  // ===========================================================================
+
+  static TaxonomyFormat fromBinary(ByteBuffer buf) {
+    buf = buf.duplicate();
+    if (buf.getInt() != MAGIC) {
+      throw new IllegalArgumentException("Not a binary taxonomy");
+    }
+    final int version = buf.getInt();
+    if (version != VERSION) {
+      throw new IllegalArgumentException("Unsupported binary taxonomy version " + version);
+    }
+    final int size = buf.getInt(),
+        capacity = buf.getInt(),
+        nameChars = buf.getInt();
+    if (Integer.bitCount(capacity) != 1 || capacity < size) {
+      throw new IllegalArgumentException("Corrupt binary taxonomy header");
+    }
+    final LongBuffer keys = slice(buf, (long) capacity * Long.BYTES).asLongBuffer();
+    final IntBuffer slots = slice(buf, (long) capacity * Integer.BYTES).asIntBuffer();
+    final LongBuffer codes = slice(buf, (long) size * Long.BYTES).asLongBuffer();
+    final IntBuffer ordinals = slice(buf, (long) size * Integer.BYTES).asIntBuffer();
+    final IntBuffer nameOffsets = slice(buf, (long) (size + 1) * Integer.BYTES).asIntBuffer();
+    final CharBuffer names = slice(buf, (long) nameChars * Character.BYTES).asCharBuffer();
+    final ByteBuffer categories = slice(buf, size);
+    for (int i = 0; i < size; i++) {
+      if ((categories.get(i) & 0xff) >= TaxonCategory.values().length) {
+        throw new IllegalArgumentException("Corrupt binary taxonomy category at " + i);
+      }
+    }
+    return new TaxonomyFormat(keys, slots, codes, ordinals, nameOffsets, names, categories);
+  }
+
+  private static ByteBuffer slice(ByteBuffer buf, long length) {
+    if (length > buf.remaining()) {
+      throw new IllegalArgumentException("Truncated binary taxonomy");
+    }
+    final ByteBuffer slice = buf.slice();
+    slice.limit((int) length);
+    buf.position(buf.position() + (int) length);
+    return slice;
+  }
+
+  void writeBinary(OutputStream os) throws IOException {
+    final DataOutputStream out = new DataOutputStream(os);
+    final int size = size(),
+        capacity = this.keys.capacity(),
+        nameChars = this.names.capacity();
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeInt(size);
+    out.writeInt(capacity);
+    out.writeInt(nameChars);
+    for (int i = 0; i < capacity; i++) {
+      out.writeLong(this.keys.get(i));
+    }
+    for (int i = 0; i < capacity; i++) {
+      out.writeInt(this.slots.get(i));
+    }
+    for (int i = 0; i < size; i++) {
+      out.writeLong(this.codes.get(i));
+    }
+    for (int i = 0; i < size; i++) {
+      out.writeInt(this.ordinals.get(i));
+    }
+    for (int i = 0; i <= size; i++) {
+      out.writeInt(this.nameOffsets.get(i));
+    }
+    for (int i = 0; i < nameChars; i++) {
+      out.writeChar(this.names.get(i));
+    }
+    for (int i = 0; i < size; i++) {
+      out.writeByte(this.categories.get(i));
+    }
+    out.flush();
+  }
+
+}
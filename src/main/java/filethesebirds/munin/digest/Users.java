@@ -20,6 +20,7 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.TreeSet;
 
 public final class Users {
 
@@ -35,6 +36,19 @@ public final class Users {
     loadSet(NONPARTICIPANTS, "nonparticipants");
   }
 
+  private static final long FINGERPRINT = fingerprint(fingerprint(0xcbf29ce484222325L, REVIEWERS), NONPARTICIPANTS);
+
+  private static long fingerprint(long h, Set<String> set) {
+    for (String user : new TreeSet<>(set)) {
+      for (int i = 0; i < user.length(); i++) {
+        h = (h ^ user.charAt(i)) * 0x100000001b3L;
+      }
+      h = (h ^ '\n') * 0x100000001b3L;
+    }
+    // Separates the sets, so a user moving between them changes the result
+    return Long.rotateLeft(h, 31) * 0x9E3779B97F4A7C15L;
+  }
+
   private static void loadSet(Set<String> set, String name) {
     try (InputStream is = Utils.openConfigFile(System.getProperty(name + ".conf"),
             "/" + name + ".txt");
@@ -51,6 +65,14 @@ public final class Users {
     }
   }
 
+  /**
+   * Returns a stamp identifying the loaded reviewer and nonparticipant lists,
+   * suitable for invalidating anything derived from different lists.
+   */
+  public static long fingerprint() {
+    return FINGERPRINT;
+  }
+
   public static boolean userIsReviewer(String user) {
     return user != null && REVIEWERS.contains(user);
   }
@@ -0,0 +1,174 @@
+// Copyright 2015-2023 Swim.inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package filethesebirds.munin.digest.answer;
+
+import filethesebirds.munin.digest.Answer;
+import filethesebirds.munin.digest.Motion;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * An incrementally maintained equivalent of {@code
+ * Answers.mutable().apply(motions)} over a changing sorted map of motions.
+ *
+ * <p>Because {@link Answer#apply(SortedMap)} is a left fold, a motion inserted
+ * past every existing key only needs to be applied to the current result. Any
+ * other change (an insert before the tail, an overwrite, or a removal) replays
+ * from the latest checkpoint that precedes it; a checkpoint snapshot is taken
+ * every {@code checkpointInterval} folded motions. If the map's size ever
+ * disagrees with what has been observed (e.g. the map was restored from
+ * storage before this fold existed), the whole map is refolded once.
+ *
+ * <p>Results are persistent {@link Answers#immutable() immutable answers}, so
+ * checkpoints and returned answers share structure instead of being copied,
+ * and may be safely handed to a lane.
+ *
+ * @param <K>  the motion key type
+ */
+public final class AnswerFold<K> {
+
+  private static final int DEFAULT_CHECKPOINT_INTERVAL = 64;
+
+  private final Comparator<? super K> comparator;
+  private final int checkpointInterval;
+  private final List<Checkpoint<K>> checkpoints; // ascending by key
+  private Answer answer;
+  private K lastKey;
+  private int count;
+  private long refolds;
+
+  public AnswerFold(Comparator<? super K> comparator) {
+    this(comparator, DEFAULT_CHECKPOINT_INTERVAL);
+  }
+
+  AnswerFold(Comparator<? super K> comparator, int checkpointInterval) {
+    if (checkpointInterval <= 0) {
+      throw new IllegalArgumentException("Nonpositive checkpoint interval: " + checkpointInterval);
+    }
+    this.comparator = comparator;
+    this.checkpointInterval = checkpointInterval;
+    this.checkpoints = new ArrayList<>();
+    this.answer = Answers.immutable();
+    this.lastKey = null;
+    this.count = 0;
+    this.refolds = 0L;
+  }
+
+  /**
+   * Incorporates the already-applied update of {@code key} within {@code
+   * motions}.
+   *
+   * <p>Whether the update was an insert is judged by the map's size rather
+   * than by the replaced value, because a lane's value form reports an absent
+   * old value as a placeholder motion instead of {@code null}.
+   */
+  public synchronized Answer didUpdate(SortedMap<K, Motion> motions, K key) {
+    final int size = motions.size();
+    if (size == this.count + 1 && (this.lastKey == null || this.comparator.compare(key, this.lastKey) > 0)) {
+      append(key, motions.get(key));
+    } else if (size == this.count + 1 || size == this.count) {
+      refold(motions, key);
+    } else {
+      refold(motions, null);
+    }
+    return this.answer;
+  }
+
+  /**
+   * Incorporates the already-applied removal of {@code key} from {@code
+   * motions}.
+   */
+  public synchronized Answer didRemove(SortedMap<K, Motion> motions, K key) {
+    refold(motions, motions.size() == this.count - 1 ? key : null);
+    return this.answer;
+  }
+
+  public synchronized void clear() {
+    this.checkpoints.clear();
+    this.answer = Answers.immutable();
+    this.lastKey = null;
+    this.count = 0;
+  }
+
+  public synchronized Answer answer() {
+    return this.answer;
+  }
+
+  /**
+   * Returns how many updates could not be folded as a tail append.
+   */
+  synchronized long refolds() {
+    return this.refolds;
+  }
+
+  private void append(K key, Motion motion) {
+    if (this.answer.motionIsSignificant(motion)) {
+      this.answer = this.answer.apply(motion);
+    }
+    this.lastKey = key;
+    this.count++;
+    if (this.count % this.checkpointInterval == 0) {
+      this.checkpoints.add(new Checkpoint<>(key, this.count, this.answer));
+    }
+  }
+
+  /**
+   * Refolds every motion at or after {@code from}, or all motions if {@code
+   * from} is {@code null}.
+   */
+  private void refold(SortedMap<K, Motion> motions, K from) {
+    this.refolds++;
+    int i = this.checkpoints.size();
+    while (i > 0 && (from == null || this.comparator.compare(this.checkpoints.get(i - 1).key, from) >= 0)) {
+      this.checkpoints.remove(--i);
+    }
+    final Map<K, Motion> replay;
+    if (i == 0) {
+      this.answer = Answers.immutable();
+      this.lastKey = null;
+      this.count = 0;
+      replay = motions;
+    } else {
+      final Checkpoint<K> checkpoint = this.checkpoints.get(i - 1);
+      this.answer = checkpoint.answer;
+      this.lastKey = checkpoint.key;
+      this.count = checkpoint.count;
+      replay = motions.tailMap(checkpoint.key);
+    }
+    for (Map.Entry<K, Motion> entry : replay.entrySet()) {
+      if (this.lastKey == null || this.comparator.compare(entry.getKey(), this.lastKey) > 0) {
+        append(entry.getKey(), entry.getValue());
+      }
+    }
+  }
+
+  private static final class Checkpoint<K> {
+
+    private final K key;
+    private final int count;
+    private final Answer answer;
+
+    private Checkpoint(K key, int count, Answer answer) {
+      this.key = key;
+      this.count = count;
+      this.answer = answer;
+    }
+
+  }
+
+}
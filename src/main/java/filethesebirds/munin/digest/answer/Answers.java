@@ -25,4 +25,12 @@ public final class Answers {
     return new MutableAnswer();
   }
 
+  /**
+   * Returns the empty persistent {@code Answer}, whose {@code suggest} and
+   * {@code review} yield new instances rather than mutating this one.
+   */
+  public static Answer immutable() {
+    return ImmutableAnswer.empty();
+  }
+
 }
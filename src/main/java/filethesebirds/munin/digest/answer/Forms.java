@@ -15,6 +15,8 @@
 package filethesebirds.munin.digest.answer;
 
 import filethesebirds.munin.digest.Answer;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 import swim.structure.Attr;
 import swim.structure.Form;
@@ -65,16 +67,13 @@ public final class Forms {
         final Attr head = (Attr) item.head();
         final String tag = head.getKey().stringValue();
         if (tag().equals(tag)) {
-          final MutableAnswer result = new MutableAnswer(); // FIXME: create immutable variant
           // taxa
           final Item taxaItem = item.get("taxa");
           final Set<String> taxaSet = forSetString().cast(taxaItem);
-          result.addAllTaxa(taxaSet);
           // reviewers
           final Item reviewersItem = item.get("reviewers");
           final Set<String> reviewersSet = forSetString().cast(reviewersItem);
-          result.addAllReviewers(reviewersSet);
-          return result;
+          return ImmutableAnswer.create(taxaSet, reviewersSet);
         }
       } catch (Exception e) {
         throw new IllegalArgumentException("Uncastable item: " + item, e);
@@ -88,4 +87,37 @@ public final class Forms {
     return ANSWER_FORM;
   }
 
+  private static final int DECODED_CAPACITY = 1024;
+
+  // Cast answers are immutable, so equal Values may share one decoding
+  private static final Map<Value, Answer> DECODED = new LinkedHashMap<>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Value, Answer> eldest) {
+      return size() > DECODED_CAPACITY;
+    }
+  };
+
+  /**
+   * Equivalent to {@code forAnswer().cast(value)}, but reuses the result of a
+   * recent cast of an equal {@code Value}.
+   */
+  public static Answer castAnswer(Value value) {
+    if (value == null || !value.isDistinct()) {
+      return null;
+    }
+    synchronized (DECODED) {
+      final Answer cached = DECODED.get(value);
+      if (cached != null) {
+        return cached;
+      }
+    }
+    final Answer answer = ANSWER_FORM.cast(value);
+    if (answer != null) {
+      synchronized (DECODED) {
+        DECODED.put(value, answer);
+      }
+    }
+    return answer;
+  }
+
 }
@@ -0,0 +1,164 @@
+// Copyright 2015-2023 Swim.inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package filethesebirds.munin.digest.answer;
+
+import filethesebirds.munin.digest.Answer;
+import filethesebirds.munin.digest.TaxonSet;
+import filethesebirds.munin.digest.motion.Review;
+import filethesebirds.munin.digest.motion.Suggestion;
+import java.util.HashSet;
+import java.util.Set;
+import swim.recon.Recon;
+
+/**
+ * A persistent {@link Answer}: {@link #suggest} and {@link #review} return new
+ * instances (or this one, if nothing changed) that share every unchanged
+ * component, so instances may be freely cached and shared across threads.
+ *
+ * <p>The update rules are exactly those of {@link MutableAnswer}.
+ */
+final class ImmutableAnswer implements Answer {
+
+  private static final ImmutableAnswer EMPTY = new ImmutableAnswer(TaxonSet.empty(), Set.of());
+
+  private final TaxonSet taxa;
+  private final Set<String> reviewers; // immutable
+  private int hash; // lazily computed, 0 if not yet
+
+  private ImmutableAnswer(TaxonSet taxa, Set<String> reviewers) {
+    this.taxa = taxa;
+    this.reviewers = reviewers;
+  }
+
+  static ImmutableAnswer empty() {
+    return EMPTY;
+  }
+
+  static ImmutableAnswer create(Set<String> taxa, Set<String> reviewers) {
+    final TaxonSet taxonSet = TaxonSet.copyOf(taxa);
+    final Set<String> reviewerSet = reviewers == null || reviewers.isEmpty() ? Set.of()
+        : Set.copyOf(reviewers);
+    if (taxonSet.isEmpty() && reviewerSet.isEmpty()) {
+      return EMPTY;
+    }
+    return new ImmutableAnswer(taxonSet, reviewerSet);
+  }
+
+  private ImmutableAnswer with(TaxonSet taxa, Set<String> reviewers) {
+    if (taxa == this.taxa && reviewers == this.reviewers) {
+      return this;
+    } else if (taxa.isEmpty() && reviewers.isEmpty()) {
+      return EMPTY;
+    }
+    return new ImmutableAnswer(taxa, reviewers);
+  }
+
+  private Set<String> withReviewer(String reviewer) {
+    if (reviewer == null || this.reviewers.contains(reviewer)) {
+      return this.reviewers;
+    }
+    final Set<String> result = new HashSet<>(this.reviewers);
+    result.add(reviewer);
+    return Set.copyOf(result);
+  }
+
+  @Override
+  public TaxonSet taxa() {
+    return this.taxa;
+  }
+
+  @Override
+  public Set<String> reviewers() {
+    return this.reviewers;
+  }
+
+  @Override
+  public boolean suggestionIsSignificant(Suggestion suggestion) {
+    if (suggestion == null || isReviewed()) {
+      return false;
+    }
+    return !suggestion.overrideTaxa().isEmpty() || !this.taxa.containsAll(suggestion.plusTaxa());
+  }
+
+  @Override
+  public ImmutableAnswer suggest(Suggestion suggestion) {
+    if (suggestion == null || isReviewed()) {
+      return this;
+    }
+    if (suggestion.overrideTaxa().isEmpty()) {
+      return with(this.taxa.union(suggestion.plusTaxa()), this.reviewers);
+    } else {
+      return with(TaxonSet.copyOf(suggestion.overrideTaxa()), this.reviewers);
+    }
+  }
+
+  @Override
+  public boolean reviewIsSignificant(Review review) {
+    if (review == null) {
+      return false;
+    }
+    if (!review.overrideTaxa().isEmpty() || !this.taxa.containsAll(review.plusTaxa())) {
+      return true;
+    }
+    // effectively-empty review
+    return !isReviewed() && !this.taxa.isEmpty();
+  }
+
+  @Override
+  public ImmutableAnswer review(Review review) {
+    if (review == null) {
+      return this;
+    }
+    if (review.overrideTaxa().isEmpty()) {
+      final TaxonSet taxa = this.taxa.union(review.plusTaxa());
+      // Don't count reviewers who submit effectively empty reviews, unless
+      // they're the first reviewer and there's at least one taxon available
+      if (taxa != this.taxa || (!isReviewed() && !taxa.isEmpty())) {
+        return with(taxa, withReviewer(review.reviewer()));
+      }
+      return this;
+    } else {
+      return with(TaxonSet.copyOf(review.overrideTaxa()), withReviewer(review.reviewer()));
+    }
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    } else if (!(o instanceof ImmutableAnswer)) {
+      return false;
+    }
+    final ImmutableAnswer that = (ImmutableAnswer) o;
+    return hashCode() == that.hashCode()
+        && this.taxa.equals(that.taxa) && this.reviewers.equals(that.reviewers);
+  }
+
+  @Override
+  public int hashCode() {
+    int h = this.hash;
+    if (h == 0) {
+      h = 31 * this.taxa.hashCode() + this.reviewers.hashCode();
+      this.hash = h;
+    }
+    return h;
+  }
+
+  @Override
+  public String toString() {
+    return Recon.toString(Forms.forAnswer().mold(this));
+  }
+
+}
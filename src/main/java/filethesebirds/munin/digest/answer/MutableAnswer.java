@@ -15,6 +15,7 @@
 package filethesebirds.munin.digest.answer;
 
 import filethesebirds.munin.digest.Answer;
+import filethesebirds.munin.digest.TaxonSet;
 import filethesebirds.munin.digest.motion.Review;
 import filethesebirds.munin.digest.motion.Suggestion;
 import java.util.Collections;
@@ -24,21 +25,19 @@ import swim.recon.Recon;
 
 class MutableAnswer implements Answer {
 
-  private final Set<String> taxa;
+  private TaxonSet taxa;
   private final Set<String> reviewers;
-  private final Set<String> readOnlyTaxa;
   private final Set<String> readOnlyReviewers;
 
   MutableAnswer() {
-    this.taxa = new HashSet<>();
+    this.taxa = TaxonSet.empty();
     this.reviewers = new HashSet<>();
-    this.readOnlyTaxa = Collections.unmodifiableSet(this.taxa);
     this.readOnlyReviewers = Collections.unmodifiableSet(this.reviewers);
   }
 
   @Override
-  public Set<String> taxa() {
-    return this.readOnlyTaxa;
+  public TaxonSet taxa() {
+    return this.taxa;
   }
 
   @Override
@@ -47,14 +46,19 @@ class MutableAnswer implements Answer {
   }
 
   private void clearTaxa() {
-    this.taxa.clear();
+    this.taxa = TaxonSet.empty();
   }
 
   boolean addAllTaxa(Set<String> taxa) {
     if (taxa == null) {
       return false;
     }
-    return this.taxa.addAll(taxa);
+    final TaxonSet union = this.taxa.union(taxa);
+    if (union == this.taxa) {
+      return false;
+    }
+    this.taxa = union;
+    return true;
   }
 
   private boolean addReviewer(String reviewer) {
@@ -0,0 +1,178 @@
+// Copyright 2015-2023 Swim.inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package filethesebirds.munin.digest.motion;
+
+import filethesebirds.munin.digest.TaxonCategory;
+import filethesebirds.munin.digest.Taxonomy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Local pre-classifier that decides which eBird taxon categories a hint is
+ * worth exploring, and in what order.
+ *
+ * <p>A category is a <i>match</i> for a hint if some common name of that
+ * category in {@link Taxonomy} has, for every word of the hint, a word that
+ * begins with it; this approximates what eBird's taxon find would return.
+ * Matching categories are explored first, then the rest, each group in
+ * default order. The rest are never skipped: the local approximation misses
+ * names that eBird knows, and a hint that exhausted a pruned route would be
+ * cached as a miss. If no category matches (e.g. for scientific names or
+ * banding codes, which the taxonomy lacks), the default order stands.
+ */
+final class CategoryRouter {
+
+  private CategoryRouter() {
+  }
+
+  private static final String[] TOKENS; // sorted, distinct
+  private static final int[][] POSTINGS; // Taxonomy indices of the names containing each token
+  private static final BitSet[] BY_CATEGORY;
+
+  static {
+    final int size = Taxonomy.size();
+    BY_CATEGORY = new BitSet[TaxonCategory.values().length];
+    for (int c = 0; c < BY_CATEGORY.length; c++) {
+      BY_CATEGORY[c] = new BitSet(size);
+    }
+    // Gather (token, index) pairs, then group them by token
+    String[] pairTokens = new String[size * 4];
+    int[] pairIndices = new int[size * 4];
+    int pairs = 0;
+    for (int i = 0; i < size; i++) {
+      BY_CATEGORY[Taxonomy.categoryAt(i).ordinal()].set(i);
+      for (String token : tokens(ExtractingVisitor.normalizedHint(Taxonomy.commonNameAt(i)))) {
+        if (pairs == pairTokens.length) {
+          pairTokens = Arrays.copyOf(pairTokens, pairs << 1);
+          pairIndices = Arrays.copyOf(pairIndices, pairs << 1);
+        }
+        pairTokens[pairs] = token;
+        pairIndices[pairs] = i;
+        pairs++;
+      }
+    }
+    final Integer[] order = new Integer[pairs];
+    for (int p = 0; p < pairs; p++) {
+      order[p] = p;
+    }
+    final String[] byPair = pairTokens;
+    // Stable, so each token's indices stay ascending
+    Arrays.sort(order, (x, y) -> byPair[x].compareTo(byPair[y]));
+    final List<String> tokens = new ArrayList<>();
+    final List<int[]> postings = new ArrayList<>();
+    for (int start = 0; start < pairs; ) {
+      final String token = pairTokens[order[start]];
+      int end = start;
+      while (end < pairs && pairTokens[order[end]].equals(token)) {
+        end++;
+      }
+      final int[] posting = new int[end - start];
+      int length = 0;
+      for (int p = start; p < end; p++) {
+        final int index = pairIndices[order[p]];
+        if (length == 0 || posting[length - 1] != index) { // a token may repeat within one name
+          posting[length++] = index;
+        }
+      }
+      tokens.add(token);
+      postings.add(Arrays.copyOf(posting, length));
+      start = end;
+    }
+    TOKENS = tokens.toArray(new String[0]);
+    POSTINGS = postings.toArray(new int[0][]);
+  }
+
+  /**
+   * Splits a normalized hint or name into its words, less any parentheses.
+   */
+  static List<String> tokens(String normalized) {
+    final List<String> tokens = new ArrayList<>(4);
+    final StringBuilder token = new StringBuilder(16);
+    for (int i = 0, n = normalized.length(); i <= n; i++) {
+      if (i == n || normalized.startsWith("%20", i)) {
+        if (token.length() > 0) {
+          tokens.add(token.toString());
+          token.setLength(0);
+        }
+        i += 2;
+      } else {
+        final char c = normalized.charAt(i);
+        if (c != '(' && c != ')') {
+          token.append(c);
+        }
+      }
+    }
+    return tokens;
+  }
+
+  /**
+   * Returns the Taxonomy indices of every name that has a word beginning with
+   * each word of {@code hint}, or {@code null} if {@code hint} has no words.
+   */
+  static BitSet matches(String hint) {
+    BitSet result = null;
+    for (String token : tokens(hint)) {
+      final BitSet names = new BitSet(Taxonomy.size());
+      int t = Arrays.binarySearch(TOKENS, token);
+      if (t < 0) {
+        t = -t - 1;
+      }
+      for (; t < TOKENS.length && TOKENS[t].startsWith(token); t++) {
+        for (int index : POSTINGS[t]) {
+          names.set(index);
+        }
+      }
+      if (result == null) {
+        result = names;
+      } else {
+        result.and(names);
+      }
+      if (result.isEmpty()) {
+        break;
+      }
+    }
+    return result;
+  }
+
+  private static boolean matchesIn(BitSet matches, TaxonCategory category) {
+    if (category == TaxonCategory.ISSF || category == TaxonCategory.FORM) {
+      // Categories inferred from names cannot tell these two apart
+      return matches.intersects(BY_CATEGORY[TaxonCategory.ISSF.ordinal()])
+          || matches.intersects(BY_CATEGORY[TaxonCategory.FORM.ordinal()]);
+    }
+    return matches.intersects(BY_CATEGORY[category.ordinal()]);
+  }
+
+  /**
+   * Returns every one of the {@code candidates}, given in default exploration
+   * order, in the order to explore them for {@code hint}.
+   */
+  static List<TaxonCategory> route(String hint, TaxonCategory... candidates) {
+    final BitSet matches = candidates.length > 1 ? matches(hint) : null;
+    if (matches == null || matches.isEmpty()) {
+      return Arrays.asList(candidates);
+    }
+    final List<TaxonCategory> routed = new ArrayList<>(candidates.length);
+    final List<TaxonCategory> rest = new ArrayList<>(candidates.length);
+    for (TaxonCategory candidate : candidates) {
+      (matchesIn(matches, candidate) ? routed : rest).add(candidate);
+    }
+    routed.addAll(rest);
+    return routed;
+  }
+
+}
@@ -23,11 +23,14 @@ import swim.uri.UriQuery;
 
 class CommonUrlExtract {
 
+  // TODO: ed, ing
+  private static final HintRewriter ALL_ABOUT_BIRDS_SANITIZER = HintRewriter.of(
+      "_", "%20",
+      "sss\\b", "ss",
+      "s\\b", "");
+
   private static String sanitizeAllAboutBirdsHint(String raw) {
-    // TODO: ed, ing
-    return raw.replace("_", "%20")
-        .replaceAll("sss\\b", "ss")
-        .replaceAll("s\\b", "");
+    return ALL_ABOUT_BIRDS_SANITIZER.rewrite(raw);
   }
 
   private static boolean forAllAboutBirds(UriPath path, Set<String> hints) {
@@ -53,17 +56,15 @@ class CommonUrlExtract {
     final String prefix = "/species/";
     final String pathStr = path.toString().toLowerCase(Locale.ROOT);
     if (pathStr.startsWith(prefix)) {
-      final String tail = pathStr.substring(prefix.length());
       // trim to alphanum only
-      int tailLength;
-      for (tailLength = 0; tailLength < tail.length(); tailLength++) {
-        if (!Character.isLetterOrDigit(tail.charAt(tailLength))) {
+      int tailEnd;
+      for (tailEnd = prefix.length(); tailEnd < pathStr.length(); tailEnd++) {
+        if (!Character.isLetterOrDigit(pathStr.charAt(tailEnd))) {
           break;
         }
       }
-      final String trimmedTail = tail.substring(0, tailLength);
-      if (Taxonomy.containsCode(trimmedTail)) {
-        taxa.add(trimmedTail);
+      if (Taxonomy.containsCode(pathStr, prefix.length(), tailEnd)) {
+        taxa.add(pathStr.substring(prefix.length(), tailEnd));
         return true;
       }
     }
@@ -16,7 +16,17 @@ package filethesebirds.munin.digest.motion;
 
 import filethesebirds.munin.connect.ebird.EBirdApiException;
 import filethesebirds.munin.connect.ebird.EBirdClient;
+import filethesebirds.munin.connect.http.HttpUtils;
 import filethesebirds.munin.digest.Motion;
+import filethesebirds.munin.digest.TaxonCategory;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
 import org.apache.commons.text.similarity.LevenshteinDistance;
 import swim.json.Json;
 import swim.structure.Item;
@@ -24,6 +34,9 @@ import swim.structure.Value;
 
 public final class EBirdExtractPurify {
 
+  // Vague hints are only ever explored via eBird's uncategorized taxon find
+  private static final String VAGUE_HINT_CATEGORY = "taxon";
+
   private EBirdExtractPurify() {
   }
 
@@ -31,29 +44,213 @@ public final class EBirdExtractPurify {
     return extract == null || (extract.hints().isEmpty() && extract.vagueHints().isEmpty());
   }
 
+  /**
+   * Resolves one hint in {@code extract}, blocking until any eBird calls this
+   * requires complete.
+   *
+   * @see #purifyOneHintAsync
+   */
   public static Extract purifyOneHint(EBirdClient client, Extract extract)
       throws EBirdApiException {
+    return EBirdClient.await(purifyOneHintAsync(client, extract));
+  }
+
+  /**
+   * Resolves one hint in {@code extract}, trying the local taxonomy and {@link
+   * HintCache} before eBird. The returned future completes exceptionally with
+   * an {@link EBirdApiException} if an eBird call fails; continuations on it
+   * run on the HTTP client's executor unless it was already complete.
+   */
+  public static CompletableFuture<Extract> purifyOneHintAsync(EBirdClient client, Extract extract) {
     if (extractIsPurified(extract)) {
-      return extract;
+      return CompletableFuture.completedFuture(extract);
     }
     if (!extract.hints().isEmpty()) {
       final String hint = extract.hints().stream().findAny().get();
-      final String cachedCode = HintCache.get(hint);
-      if (cachedCode != null) {
-        System.out.println("[INFO] cache hit for " + hint);
-        return extract.purifyHint(hint, cachedCode);
-      } else {
-        final String taxon = exploreHint(client, hint, false);
-        if (taxon != null) {
-          HintCache.put(hint, taxon);
-        }
-        return extract.purifyHint(hint, taxon);
-      }
+      return resolveHintAsync(client, hint).thenApply(taxon -> extract.purifyHint(hint, taxon));
     } else {
       final String hint = extract.vagueHints().stream().findAny().get();
-      final String taxon = exploreVagueHint(client, hint, false);
-      return extract.purifyVagueHint(hint, taxon);
+      return resolveVagueHintAsync(client, hint).thenApply(taxon -> extract.purifyVagueHint(hint, taxon));
+    }
+  }
+
+  /**
+   * Resolves up to {@code maxHints} of {@code extract}'s hints (then vague
+   * hints), with at most {@code parallelism} lookups in flight at once, and
+   * merges every result into the extract in one step.
+   *
+   * <p>If any lookup fails, the others still complete, and the returned future
+   * completes exceptionally with an {@link IncompletePurificationException}
+   * whose {@link IncompletePurificationException#partial() partial} extract
+   * retains only the failed hints.
+   */
+  public static CompletableFuture<Extract> purifyAllAsync(EBirdClient client, Extract extract,
+                                                          int maxHints, int parallelism) {
+    if (extractIsPurified(extract) || maxHints <= 0) {
+      return CompletableFuture.completedFuture(extract);
     }
+    return new BatchPurify(client, extract, maxHints).start(parallelism);
+  }
+
+  private static CompletableFuture<String> resolveHintAsync(EBirdClient client, String hint) {
+    final String localCode = resolveLocally(hint);
+    if (localCode != null) {
+      return CompletableFuture.completedFuture(localCode);
+    }
+    final String cachedCode = HintCache.get(hint);
+    if (cachedCode != null) {
+      System.out.println("[INFO] cache hit for " + hint);
+      return CompletableFuture.completedFuture(cachedCode);
+    }
+    // Looser fuzzy matches are only a fallback once eBird, which knows
+    // alternate names and spellings that a small edit distance would
+    // misattribute, has nothing
+    final String category = hintCategory(hint);
+    if (HintCache.isKnownMiss(category, hint)) {
+      return CompletableFuture.completedFuture(FuzzyTaxonNames.resolve(hint));
+    }
+    final LongAdder calls = new LongAdder();
+    return exploreHintAsync(client, hint, calls).thenApply(taxon -> {
+      if (taxon != null) {
+        HintCache.put(hint, taxon);
+        return taxon;
+      }
+      HintCache.putMiss(category, hint, calls.sum());
+      return FuzzyTaxonNames.resolve(hint);
+    });
+  }
+
+  private static CompletableFuture<String> resolveVagueHintAsync(EBirdClient client, String hint) {
+    final String localCode = resolveLocally(hint);
+    if (localCode != null) {
+      return CompletableFuture.completedFuture(localCode);
+    }
+    final String cachedCode = HintCache.getVague(VAGUE_HINT_CATEGORY, hint);
+    if (cachedCode != null) {
+      return CompletableFuture.completedFuture(cachedCode);
+    }
+    if (HintCache.isKnownMiss(VAGUE_HINT_CATEGORY, hint)) {
+      return CompletableFuture.completedFuture(FuzzyTaxonNames.resolve(hint));
+    }
+    final LongAdder calls = new LongAdder();
+    return exploreVagueHintAsync(client, hint, calls).thenApply(taxon -> {
+      if (taxon != null) {
+        HintCache.putVague(VAGUE_HINT_CATEGORY, hint, taxon, calls.sum());
+        return taxon;
+      }
+      HintCache.putMiss(VAGUE_HINT_CATEGORY, hint, calls.sum());
+      return FuzzyTaxonNames.resolve(hint);
+    });
+  }
+
+  /**
+   * One {@link #purifyAllAsync} call. Each finished lookup starts the next
+   * pending one, so no more than the initial number are ever in flight.
+   */
+  private static final class BatchPurify {
+
+    private final EBirdClient client;
+    private final Extract extract;
+    private final String[] hints;
+    private final boolean[] vague;
+    private final String[] taxa;
+    private final boolean[] resolved;
+    private final AtomicInteger next;
+    private final AtomicInteger remaining;
+    private final AtomicReference<Throwable> failure;
+    private final CompletableFuture<Extract> result;
+
+    BatchPurify(EBirdClient client, Extract extract, int maxHints) {
+      this.client = client;
+      this.extract = extract;
+      final int n = Math.min(maxHints, extract.hints().size() + extract.vagueHints().size());
+      this.hints = new String[n];
+      this.vague = new boolean[n];
+      int i = 0;
+      for (String hint : extract.hints()) {
+        if (i == n) {
+          break;
+        }
+        this.hints[i++] = hint;
+      }
+      for (String hint : extract.vagueHints()) {
+        if (i == n) {
+          break;
+        }
+        this.vague[i] = true;
+        this.hints[i++] = hint;
+      }
+      this.taxa = new String[n];
+      this.resolved = new boolean[n];
+      this.next = new AtomicInteger(0);
+      this.remaining = new AtomicInteger(n);
+      this.failure = new AtomicReference<>(null);
+      this.result = new CompletableFuture<>();
+    }
+
+    CompletableFuture<Extract> start(int parallelism) {
+      for (int i = Math.min(Math.max(parallelism, 1), this.hints.length); i > 0; i--) {
+        launchNext();
+      }
+      return this.result;
+    }
+
+    private void launchNext() {
+      final int i = this.next.getAndIncrement();
+      if (i >= this.hints.length) {
+        return;
+      }
+      CompletableFuture<String> lookup;
+      try {
+        lookup = this.vague[i] ? resolveVagueHintAsync(this.client, this.hints[i])
+            : resolveHintAsync(this.client, this.hints[i]);
+      } catch (RuntimeException e) {
+        lookup = CompletableFuture.failedFuture(e);
+      }
+      lookup.whenComplete((taxon, e) -> {
+        if (e == null) {
+          this.taxa[i] = taxon;
+          this.resolved[i] = true;
+        } else {
+          this.failure.compareAndSet(null, HttpUtils.unwrap(e));
+        }
+        if (this.remaining.decrementAndGet() == 0) {
+          finish();
+        } else {
+          launchNext();
+        }
+      });
+    }
+
+    private void finish() {
+      final Map<String, String> hints = new HashMap<>();
+      final Map<String, String> vagueHints = new HashMap<>();
+      for (int i = 0; i < this.hints.length; i++) {
+        if (this.resolved[i]) {
+          (this.vague[i] ? vagueHints : hints).put(this.hints[i], this.taxa[i]);
+        }
+      }
+      final Extract merged = this.extract.purifyHints(hints, vagueHints);
+      final Throwable cause = this.failure.get();
+      if (cause == null) {
+        this.result.complete(merged);
+      } else if (cause instanceof EBirdApiException) {
+        this.result.completeExceptionally(new IncompletePurificationException(merged, cause));
+      } else {
+        this.result.completeExceptionally(cause);
+      }
+    }
+
+  }
+
+  /**
+   * Resolves {@code hint} against the local taxonomy alone, by exact common
+   * name or else by a {@link FuzzyTaxonNames#resolveConfidently confident}
+   * fuzzy match; returns {@code null} if neither succeeds.
+   */
+  private static String resolveLocally(String hint) {
+    final String exact = TaxonNames.resolve(hint);
+    return exact != null ? exact : FuzzyTaxonNames.resolveConfidently(hint);
   }
 
   private static Extract purifyOneHintFailFast(EBirdClient client, Extract extract) {
@@ -62,18 +259,28 @@ public final class EBirdExtractPurify {
     }
     if (!extract.hints().isEmpty()) {
       final String hint = extract.hints().stream().findAny().get();
-      String taxon = null;
+      String taxon = resolveLocally(hint);
       try {
-        taxon = exploreHint(client, hint, false);
+        if (taxon == null) {
+          taxon = EBirdClient.await(exploreHintAsync(client, hint, new LongAdder()));
+        }
+        if (taxon == null) {
+          taxon = FuzzyTaxonNames.resolve(hint);
+        }
       } catch (EBirdApiException e) {
         // swallow
       }
       return extract.purifyHint(hint, taxon);
     } else {
       final String hint = extract.vagueHints().stream().findAny().get();
-      String taxon = null;
+      String taxon = resolveLocally(hint);
       try {
-        taxon = exploreVagueHint(client, hint, false);
+        if (taxon == null) {
+          taxon = EBirdClient.await(exploreVagueHintAsync(client, hint, new LongAdder()));
+        }
+        if (taxon == null) {
+          taxon = FuzzyTaxonNames.resolve(hint);
+        }
       } catch (EBirdApiException e) {
         // swallow
       }
@@ -84,15 +291,13 @@ public final class EBirdExtractPurify {
   public static String[] purifyDryRun(Extract extract) {
     final String[] result = new String[extract.hints().size() + extract.vagueHints().size()];
     int i = 0;
-    try {
-      for (String hint : extract.hints()) {
-        result[i++] = exploreHint(null, hint, true);
-      }
-      for (String hint : extract.vagueHints()) {
-        result[i++] = exploreVagueHint(null, hint, true);
-      }
-    } catch (EBirdApiException e) {
-      // impossible
+    for (String hint : extract.hints()) {
+      final String localCode = resolveLocally(hint);
+      result[i++] = localCode != null ? "local: " + localCode : dryRunLabel(hint);
+    }
+    for (String hint : extract.vagueHints()) {
+      final String localCode = resolveLocally(hint);
+      result[i++] = localCode != null ? "local: " + localCode : "(uncategorized): " + hint;
     }
     return result;
   }
@@ -123,7 +328,7 @@ public final class EBirdExtractPurify {
 
   // FIXME
   private static int disambiguate(String hint, Value payload) {
-    final LevenshteinDistance distance = new LevenshteinDistance();
+    final LevenshteinDistance distance = LevenshteinDistance.getDefaultInstance();
     int min = Integer.MAX_VALUE;
     int bestIdx = 0;
     for (int i = 0; i < payload.length(); i++) {
@@ -145,61 +350,129 @@ public final class EBirdExtractPurify {
   @FunctionalInterface
   private interface ClientFind {
 
-    String find(String hint) throws EBirdApiException;
+    CompletableFuture<String> find(String hint, LongAdder calls);
 
   }
 
-  private static String exploreHint(String hint, ClientFind cf)
-      throws EBirdApiException {
-    return processStringResponse(cf.find(hint), hint);
+  private static CompletableFuture<String> exploreHintAsync(String hint, ClientFind cf, LongAdder calls) {
+    return cf.find(hint, calls).thenApply(response -> processStringResponse(response, hint));
   }
 
-  private static String exploreHint(EBirdClient client, String hint, boolean dry)
-      throws EBirdApiException {
+  /**
+   * Returns {@code first}, or if that yields no taxon, whatever {@code next}
+   * does, without blocking on either.
+   */
+  private static CompletableFuture<String> orElse(CompletableFuture<String> first,
+                                                  Supplier<CompletableFuture<String>> next) {
+    return first.thenCompose(res -> res != null ? CompletableFuture.completedFuture(res) : next.get());
+  }
+
+  /**
+   * Returns the eBird taxon category (or sequence of categories) that {@code
+   * hint} will be explored under.
+   */
+  static String hintCategory(String hint) {
     if (hint.contains("hybrid")) {
-      return dry ? "hybrid: " + hint : exploreHint(hint, client::findHybrid);
+      return "hybrid";
     } else if (hint.contains("domestic") || hint.contains("feral")) {
-      final String newHint = hint.replace("feral", "");
-      return dry ? "domestic: " + newHint : exploreHint(newHint, client::findDomestic);
+      return "domestic";
     } else if (hint.contains("intergrade") || hint.contains("integrade")) {
-      final String newHint = hint.replace("intergrade", "").replace("integrade", "");
-      return dry ? "intergrade: " + newHint : exploreHint(newHint, client::findIntergrade);
+      return "intergrade";
     } else if (hint.contains("/")) { // TODO: consider trying hybrids/intergrades for this case
-      return dry ? "slash: " + hint : exploreHint(hint, client::findSlash);
+      return "slash";
     } else if (hint.startsWith("sp%20") || hint.endsWith("%20sp")  || hint.contains("%20sp.")) {
-      return dry ? "spuh: " + hint : exploreHint(hint, client::findSpuh);
+      return "spuh";
     } else if (hint.contains("%20x%20")) {
-      // First try hybrid, then intergrade
-      if (dry) {
-        return "hybrid-intergrade: " + hint;
-      }
-      final String res = exploreHint(hint, client::findHybrid);
-      return res == null ? exploreHint(hint, client::findIntergrade) : res;
+      return "hybrid-intergrade";
     } else if (hint.contains("(") || hint.contains("subsp") || hint.contains("ssp")) {
-      final String newHint =  hint.replaceAll("\\bsubsp", "") // FIXME: this doesn't look right
-          .replace("ssp", "");
-      if (dry) {
-        return "issf-form: " + newHint;
-      }
-      // First try issf, then form
-      final String res = exploreHint(newHint, client::findIssf);
-      return res == null ? exploreHint(newHint, client::findForm) : res;
+      return "issf-form";
     }
     // If a category can't be deduced, try species, then issf, then form
-    if (dry) {
-      return "species-issf-form: " + hint;
+    return "species-issf-form";
+  }
+
+  private static String exploredHint(String category, String hint) {
+    switch (category) {
+      case "domestic":
+        return hint.replace("feral", "");
+      case "intergrade":
+        return hint.replace("intergrade", "").replace("integrade", "");
+      case "issf-form":
+        return hint.replaceAll("\\bsubsp", "") // FIXME: this doesn't look right
+            .replace("ssp", "");
+      default:
+        return hint;
+    }
+  }
+
+  private static String dryRunLabel(String hint) {
+    final String category = hintCategory(hint);
+    return category + ": " + exploredHint(category, hint);
+  }
+
+  private static CompletableFuture<String> exploreHintAsync(EBirdClient client, String hint, LongAdder calls) {
+    final String category = hintCategory(hint);
+    final String newHint = exploredHint(category, hint);
+    switch (category) {
+      case "hybrid":
+        return exploreHintAsync(newHint, client::findHybridAsync, calls);
+      case "domestic":
+        return exploreHintAsync(newHint, client::findDomesticAsync, calls);
+      case "intergrade":
+        return exploreHintAsync(newHint, client::findIntergradeAsync, calls);
+      case "slash":
+        return exploreHintAsync(newHint, client::findSlashAsync, calls);
+      case "spuh":
+        return exploreHintAsync(newHint, client::findSpuhAsync, calls);
+      case "hybrid-intergrade":
+        // Hybrid, then intergrade, unless the local taxonomy suggests otherwise
+        return exploreInOrder(client, newHint,
+            CategoryRouter.route(newHint, TaxonCategory.HYBRID, TaxonCategory.INTERGRADE), calls);
+      case "issf-form":
+        // Issf, then form, unless the local taxonomy suggests otherwise
+        return exploreInOrder(client, newHint,
+            CategoryRouter.route(newHint, TaxonCategory.ISSF, TaxonCategory.FORM), calls);
+      default:
+        // Species, then issf, then form, unless the local taxonomy suggests otherwise
+        return exploreInOrder(client, newHint,
+            CategoryRouter.route(newHint, TaxonCategory.SPECIES, TaxonCategory.ISSF, TaxonCategory.FORM), calls);
+    }
+  }
+
+  private static ClientFind finder(EBirdClient client, TaxonCategory category) {
+    switch (category) {
+      case SPECIES:
+        return client::findSpeciesAsync;
+      case ISSF:
+        return client::findIssfAsync;
+      case FORM:
+        return client::findFormAsync;
+      case SLASH:
+        return client::findSlashAsync;
+      case SPUH:
+        return client::findSpuhAsync;
+      case HYBRID:
+        return client::findHybridAsync;
+      case INTERGRADE:
+        return client::findIntergradeAsync;
+      case DOMESTIC:
+        return client::findDomesticAsync;
+      default:
+        throw new IllegalArgumentException("Unexpected category " + category);
     }
-    String res = exploreHint(hint, client::findSpecies);
-    if (res == null) {
-      res = exploreHint(hint, client::findIssf);
-      return res == null ? exploreHint(hint, client::findForm) : res;
+  }
+
+  private static CompletableFuture<String> exploreInOrder(EBirdClient client, String hint,
+                                                          List<TaxonCategory> categories, LongAdder calls) {
+    if (categories.isEmpty()) {
+      return CompletableFuture.completedFuture(null);
     }
-    return res;
+    return orElse(exploreHintAsync(hint, finder(client, categories.get(0)), calls),
+        () -> exploreInOrder(client, hint, categories.subList(1, categories.size()), calls));
   }
 
-  private static String exploreVagueHint(EBirdClient client, String hint, boolean dry)
-      throws EBirdApiException {
-    return dry ? "(uncategorized): " + hint : exploreHint(hint, client::findTaxon);
+  private static CompletableFuture<String> exploreVagueHintAsync(EBirdClient client, String hint, LongAdder calls) {
+    return exploreHintAsync(hint, client::findTaxonAsync, calls);
   }
 
 }
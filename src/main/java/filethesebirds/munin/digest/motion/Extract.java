@@ -16,6 +16,7 @@ package filethesebirds.munin.digest.motion;
 
 import filethesebirds.munin.digest.Answer;
 import filethesebirds.munin.digest.Motion;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -58,6 +59,14 @@ public interface Extract {
 
   Extract purifyVagueHint(String hint, String taxonCode);
 
+  /**
+   * Purifies every hint keyed in {@code hints} and every vague hint keyed in
+   * {@code vagueHints}, each into the taxon code that it maps to or into
+   * nothing if that is {@code null}. Equivalent to, but cheaper than, one
+   * {@link #purifyHint} or {@link #purifyVagueHint} call per entry.
+   */
+  Extract purifyHints(Map<String, String> hints, Map<String, String> vagueHints);
+
   boolean isEmpty();
 
 }
@@ -0,0 +1,239 @@
+// Copyright 2015-2023 Swim.inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package filethesebirds.munin.digest.motion;
+
+import filethesebirds.munin.digest.Comment;
+import filethesebirds.munin.digest.Motion;
+import filethesebirds.munin.digest.Taxonomy;
+import filethesebirds.munin.digest.Users;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import swim.recon.Recon;
+import swim.structure.Record;
+import swim.structure.Value;
+
+/**
+ * A bounded, least-recently-used cache from a comment to the final {@link
+ * Motion} it yielded, i.e. after {@link ExtractParse#parseComment} and any
+ * subsequent {@link EBirdExtractPurify purification}.
+ *
+ * <p>Entries are keyed by comment ID and a hash of the comment body, so an
+ * edited comment misses. Replayed or re-delivered comments hit and skip both
+ * parsing and purification.
+ *
+ * <p>A cache may optionally spill to a file from which a later process reloads
+ * it. The file records the {@link #version()} of the logic that produced its
+ * entries, and a file with any other version is ignored.
+ */
+public final class ExtractCache {
+
+  private final int maxEntries;
+  private final Path spillPath;
+  private final LinkedHashMap<String, Motion> entries;
+  private final AtomicLong hits;
+  private final AtomicLong misses;
+  private volatile boolean dirty;
+
+  private ExtractCache(int maxEntries, Path spillPath) {
+    if (maxEntries < 1) {
+      throw new IllegalArgumentException("Cache size must be positive: " + maxEntries);
+    }
+    this.maxEntries = maxEntries;
+    this.spillPath = spillPath;
+    this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Motion> eldest) {
+        return size() > ExtractCache.this.maxEntries;
+      }
+
+    };
+    this.hits = new AtomicLong(0L);
+    this.misses = new AtomicLong(0L);
+    this.dirty = false;
+  }
+
+  /**
+   * Returns a purely in-memory cache.
+   */
+  public static ExtractCache inMemory(int maxEntries) {
+    return new ExtractCache(maxEntries, null);
+  }
+
+  /**
+   * Returns a cache backed by the file at {@code spillPath}, preloaded with
+   * its contents if it exists and was written under the current {@link
+   * #version()}.
+   */
+  public static ExtractCache spilling(int maxEntries, Path spillPath) {
+    final ExtractCache cache = new ExtractCache(maxEntries, spillPath);
+    if (Files.isRegularFile(spillPath)) {
+      try {
+        cache.load();
+      } catch (Exception e) {
+        System.out.println("[WARN] Ignoring unreadable extract cache at " + spillPath + ": " + e.getMessage());
+        cache.entries.clear();
+      }
+    }
+    return cache;
+  }
+
+  /**
+   * Identifies the parsing and normalization logic, the taxonomy, and the
+   * reviewer and nonparticipant lists (which decide how a comment's author
+   * is parsed) that entries depend on.
+   */
+  public static String version() {
+    return "parse." + ExtractParse.VERSION + "/normalize." + ExtractingVisitor.NORMALIZER_VERSION
+        + "/taxonomy." + Long.toHexString(Taxonomy.fingerprint())
+        + "/users." + Long.toHexString(Users.fingerprint());
+  }
+
+  private static String key(Comment comment) {
+    // 64-bit FNV-1a
+    long hash = 0xcbf29ce484222325L;
+    final String body = comment.body();
+    for (int i = 0; i < body.length(); i++) {
+      hash = (hash ^ body.charAt(i)) * 0x100000001b3L;
+    }
+    return comment.id() + '/' + Long.toHexString(hash);
+  }
+
+  /**
+   * Returns an already-purified {@code Extract} whose {@link Extract#base()}
+   * is the motion cached for {@code comment}, or {@code null} if there is
+   * none.
+   */
+  public Extract get(Comment comment) {
+    final Motion motion;
+    synchronized (this.entries) {
+      motion = this.entries.get(key(comment));
+    }
+    if (motion == null) {
+      this.misses.incrementAndGet();
+      return null;
+    }
+    this.hits.incrementAndGet();
+    return ImmutableExtract.createFromMotion(motion, null, null);
+  }
+
+  public void put(Comment comment, Motion motion) {
+    final String key = key(comment);
+    synchronized (this.entries) {
+      if (motion.equals(this.entries.put(key, motion))) {
+        return;
+      }
+    }
+    this.dirty = true;
+  }
+
+  public int size() {
+    synchronized (this.entries) {
+      return this.entries.size();
+    }
+  }
+
+  public long hits() {
+    return this.hits.get();
+  }
+
+  public long misses() {
+    return this.misses.get();
+  }
+
+  public double hitRate() {
+    final long hits = hits();
+    final long lookups = hits + misses();
+    return lookups == 0L ? 0.0 : (double) hits / lookups;
+  }
+
+  /**
+   * Returns lookup counts and the hit rate since this cache was created.
+   */
+  public Value stats() {
+    return Record.create(5).attr("extractCache")
+        .slot("size", size())
+        .slot("hits", hits())
+        .slot("misses", misses())
+        .slot("hitRate", hitRate());
+  }
+
+  private void load() throws IOException {
+    try (BufferedReader br = Files.newBufferedReader(this.spillPath, StandardCharsets.UTF_8)) {
+      final String version = br.readLine();
+      if (!version().equals(version)) {
+        System.out.println("[INFO] Discarding extract cache at " + this.spillPath + " from version " + version);
+        return;
+      }
+      String line;
+      synchronized (this.entries) {
+        while ((line = br.readLine()) != null) {
+          final int tab = line.indexOf('\t');
+          if (tab > 0) {
+            this.entries.put(line.substring(0, tab),
+                Forms.forMotion().cast(Recon.parse(line.substring(tab + 1))));
+          }
+        }
+      }
+      System.out.println("[INFO] Loaded " + this.entries.size() + " extract cache entries from " + this.spillPath);
+    }
+  }
+
+  /**
+   * Writes every entry to this cache's file if anything changed since the last
+   * spill, replacing the file atomically; does nothing for an in-memory cache.
+   */
+  public void spill() throws IOException {
+    if (this.spillPath == null || !this.dirty) {
+      return;
+    }
+    this.dirty = false;
+    final List<Map.Entry<String, Motion>> snapshot;
+    synchronized (this.entries) {
+      snapshot = new ArrayList<>(this.entries.entrySet());
+    }
+    final Path parent = this.spillPath.toAbsolutePath().getParent();
+    Files.createDirectories(parent);
+    final Path tmp = Files.createTempFile(parent, "extract-cache", ".tmp");
+    try {
+      try (BufferedWriter bw = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+        bw.write(version());
+        bw.newLine();
+        for (Map.Entry<String, Motion> entry : snapshot) {
+          bw.write(entry.getKey());
+          bw.write('\t');
+          bw.write(Recon.toString(Forms.forMotion().mold(entry.getValue())));
+          bw.newLine();
+        }
+      }
+      Files.move(tmp, this.spillPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      this.dirty = true;
+      Files.deleteIfExists(tmp);
+      throw e;
+    }
+  }
+
+}
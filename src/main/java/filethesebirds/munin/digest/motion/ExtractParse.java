@@ -28,13 +28,32 @@ import org.commonmark.parser.Parser;
 
 public class ExtractParse {
 
+  /**
+   * Identifies this parser's behavior; bump it whenever a change would parse
+   * some comment into a different {@link Extract}.
+   */
+  static final int VERSION = 1;
+
   private static final Parser PARSER = Parser.builder()
       .extensions(List.of(AutolinkExtension.create(), new HintExtension()))
       .build();
 
-  private static int commandLength(String body, int n) {
-    for (int i = "!addTaxa ".length(); i < n; i++) {
-      final char c = body.charAt(i);
+  // Opts into HintTokenizer; off until it has been checked against the real
+  // CommonMark artifact over a large corpus
+  private static final boolean USE_TOKENIZER = Boolean.getBoolean("extract.tokenizer");
+  // Cross-checks every HintTokenizer result against a full CommonMark parse
+  private static final boolean VERIFY_TOKENIZER = Boolean.getBoolean("extract.verify");
+
+  private static final int COMMAND_PREFIX_LENGTH = "!addTaxa ".length();
+
+  /**
+   * Returns the offset, relative to {@code from}, of the first character past
+   * the command starting at {@code from}, scanning no further than {@code
+   * from + n}.
+   */
+  private static int commandLength(String body, int from, int n) {
+    for (int i = COMMAND_PREFIX_LENGTH; i < n; i++) {
+      final char c = body.charAt(from + i);
       final boolean legal = (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || (c == 'T')
           || (c == ',') || (c != '\n' && Character.isWhitespace(c));
       if (!legal) {
@@ -44,62 +63,172 @@ public class ExtractParse {
     return n;
   }
 
-  private static int fastPathTaxa(String body, int maxCommandLen, Set<String> taxa) {
-    final int commandLength = commandLength(body, Math.min(body.length(), maxCommandLen + 1));
+  private static int fastPathTaxa(String body, int from, int maxCommandLen, Set<String> taxa) {
+    final int commandLength = commandLength(body, from,
+        Math.min(body.length() - from, maxCommandLen + 1));
     // Suspect user error for excessively long commands
     if (commandLength > maxCommandLen) {
       return 0;
     }
-    final String[] split = body.substring(0, commandLength).split("(\\s|,)+");
+    // Equivalent to splitting on (\\s|,)+ and skipping the command token itself
+    final int end = from + commandLength;
+    int i = from;
+    while (i < end && !isCommandDelimiter(body.charAt(i))) {
+      i++;
+    }
     int added = 0;
-    for (int i = 1; i < split.length; i++) {
-      if (Taxonomy.containsCode(split[i])) {
-        taxa.add(split[i]);
+    while (i < end) {
+      while (i < end && isCommandDelimiter(body.charAt(i))) {
+        i++;
+      }
+      final int start = i;
+      while (i < end && !isCommandDelimiter(body.charAt(i))) {
+        i++;
+      }
+      if (Taxonomy.containsCode(body, start, i)) {
+        taxa.add(body.substring(start, i));
         added++;
       }
     }
     return added;
   }
 
-  private static int seekToCommand(String body, int from) {
-    if (body.startsWith("!addTaxa", from) || body.startsWith("!addtaxa", from)) {
-      return from + 1;
-    } else if (body.startsWith("!overrideTaxa", from) || body.startsWith("!overridetaxa", from)) {
-      return -from - 1;
+  private static boolean isCommandDelimiter(char c) {
+    return c == ',' || c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+  }
+
+  // Matches !addTaxa or !addtaxa (but no other casing) at from
+  private static boolean isAddCommand(String body, int from) {
+    return body.startsWith("add", from + 1) && isTaxaSuffix(body, from + 4);
+  }
+
+  // Matches !overrideTaxa or !overridetaxa (but no other casing) at from
+  private static boolean isOverrideCommand(String body, int from) {
+    return body.startsWith("override", from + 1) && isTaxaSuffix(body, from + 9);
+  }
+
+  private static boolean isTaxaSuffix(String body, int from) {
+    if (from >= body.length()) {
+      return false;
+    }
+    final char t = body.charAt(from);
+    return (t == 'T' || t == 't') && body.startsWith("axa", from + 1);
+  }
+
+  /**
+   * Returns {@code i + 1} if the first line-initial command in {@code body} is
+   * an {@code !addTaxa} at offset {@code i}, {@code -i - 1} if it is an {@code
+   * !overrideTaxa}, or {@code 0} if there is no such command.
+   */
+  static int seekToCommand(String body) {
+    final int n = body.length();
+    int lineStart = 0;
+    while (lineStart < n) {
+      if (body.charAt(lineStart) == '!') {
+        if (isAddCommand(body, lineStart)) {
+          return lineStart + 1;
+        } else if (isOverrideCommand(body, lineStart)) {
+          return -lineStart - 1;
+        }
+      }
+      final int newline = body.indexOf('\n', lineStart);
+      if (newline < 0) {
+        break;
+      }
+      lineStart = newline + 1;
     }
-    final int seek = body.indexOf("\n!", from);
-    return seek < 0 ? 0 : seekToCommand(body, seek + 1);
+    return 0;
   }
 
-  private static Extract parse(String body, int maxCommandLen,
+  /**
+   * Returns whether {@code body} has any chance of yielding taxa or hints via
+   * Markdown: it mentions a URL, or it contains at least two {@code +} signs,
+   * optionally counting each line-initial run of backslashes as the {@code +}
+   * that {@link #unescape} would make of it.
+   */
+  static boolean mayContainHints(String body, boolean escaped) {
+    if (body.contains("http")) {
+      return true;
+    }
+    int pluses = 0;
+    for (int i = 0, n = body.length(); i < n; i++) {
+      final char c = body.charAt(i);
+      if (c == '+') {
+        pluses++;
+      } else if (escaped && c == '\\' && (i == 0 || body.charAt(i - 1) == '\n')) {
+        pluses++;
+        while (i + 1 < n && body.charAt(i + 1) == '\\') {
+          i++;
+        }
+      }
+      if (pluses > 1) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static Extract parse(String body, boolean escaped, int maxCommandLen,
                                BiFunction<Set<String>, Integer, Extract> plusGenerator,
                                BiFunction<Set<String>, Integer, Extract> overrideGenerator,
                                Extract empty, Function<ExtractingVisitor, Extract> slowGenerator) {
-    final int seek = seekToCommand(body, 0);
+    // Unescaping only rewrites line-initial backslashes, which neither start
+    // nor lie within a command, so commands are read straight from body
+    final int seek = seekToCommand(body);
     if (seek > 0) {
       final Set<String> delta = new HashSet<>();
-      final int taxa = fastPathTaxa(body.substring(seek - 1), maxCommandLen, delta);
+      final int taxa = fastPathTaxa(body, seek - 1, maxCommandLen, delta);
       return plusGenerator.apply(delta, taxa);
     } else if (seek < 0) {
       final Set<String> delta = new HashSet<>();
-      final int taxa = fastPathTaxa(body.substring(-(seek + 1)), maxCommandLen, delta);
+      final int taxa = fastPathTaxa(body, -(seek + 1), maxCommandLen, delta);
       return overrideGenerator.apply(delta, taxa);
     }
     // fast-path: no URLs present, and not enough + signs to generate hints
-    if (!body.contains("http")) {
-      final int firstPlus = body.indexOf('+');
-      if (firstPlus < 0 || body.lastIndexOf('+') == firstPlus) {
-        return empty;
-      }
+    if (!mayContainHints(body, escaped)) {
+      return empty;
     }
     // slow path
+    return slowGenerator.apply(visitMarkdown(escaped ? unescape(body) : body));
+  }
+
+  /**
+   * Collects links and hints from {@code markdown} via a full CommonMark parse
+   * or, with {@code -Dextract.tokenizer=true}, via {@link HintTokenizer},
+   * falling back to CommonMark for anything it does not support.
+   */
+  static ExtractingVisitor visitMarkdown(String markdown) {
+    return USE_TOKENIZER ? visitTokenized(markdown) : visitCommonMark(markdown);
+  }
+
+  static ExtractingVisitor visitTokenized(String markdown) {
+    final ExtractingVisitor visitor = new ExtractingVisitor();
+    if (!HintTokenizer.tokenize(markdown, visitor)) {
+      PARSER.parse(markdown).accept(visitor);
+    } else if (VERIFY_TOKENIZER) {
+      final ExtractingVisitor expected = visitCommonMark(markdown);
+      if (!visitor.plusTaxa().equals(expected.plusTaxa())
+          || !visitor.plusHints().equals(expected.plusHints())
+          || !visitor.plusVagueHints().equals(expected.plusVagueHints())) {
+        System.out.println("[WARN] HintTokenizer disagreed with CommonMark on " + markdown);
+        return expected;
+      }
+    }
+    return visitor;
+  }
+
+  static ExtractingVisitor visitCommonMark(String markdown) {
     final ExtractingVisitor visitor = new ExtractingVisitor();
-    PARSER.parse(body).accept(visitor);
-    return slowGenerator.apply(visitor);
+    PARSER.parse(markdown).accept(visitor);
+    return visitor;
   }
 
   public static Extract parseSuggestionBased(String body) {
-    return parse(body, 256,
+    return parseSuggestionBased(body, false);
+  }
+
+  private static Extract parseSuggestionBased(String body, boolean escaped) {
+    return parse(body, escaped, 256,
         (d, i) -> ImmutableExtract.create(ImmutableSuggestion.plus(d), null, null),
         (d, i) -> ImmutableExtract.create(ImmutableSuggestion.override(d), null, null),
         ImmutableExtract.create(ImmutableSuggestion.empty(), null, null),
@@ -107,7 +236,11 @@ public class ExtractParse {
   }
 
   public static Extract parseReviewBased(String reviewer, String body) {
-    return parse(body, 512,
+    return parseReviewBased(reviewer, body, false);
+  }
+
+  private static Extract parseReviewBased(String reviewer, String body, boolean escaped) {
+    return parse(body, escaped, 512,
         (d, i) -> i > 0
             ? ImmutableExtract.create(ImmutableReview.plus(reviewer, d), null, null)
             // Reviewer !addTaxa with errors is an empty suggestion, not an empty review
@@ -127,14 +260,31 @@ public class ExtractParse {
     }
     if (Users.userIsReviewer(comment.author())
         && !comment.body().contains("!nr")) {
-      return parseReviewBased(comment.author(), unescapedBody(comment));
+      return parseReviewBased(comment.author(), comment.body(), true);
     }
-    return parseSuggestionBased(unescapedBody(comment));
+    return parseSuggestionBased(comment.body(), true);
   }
 
-  private static String unescapedBody(Comment comment) {
-    return comment.body().replaceAll("\\A\\\\+", "+")
-        .replaceAll("\n\\\\+", "\n+");
+  /**
+   * Replaces every line-initial run of backslashes in {@code body} with a
+   * single {@code +}, returning {@code body} itself if there are none.
+   */
+  static String unescape(String body) {
+    StringBuilder sb = null;
+    int copied = 0;
+    for (int i = 0, n = body.length(); i < n; i++) {
+      if (body.charAt(i) == '\\' && (i == 0 || body.charAt(i - 1) == '\n')) {
+        if (sb == null) {
+          sb = new StringBuilder(n);
+        }
+        sb.append(body, copied, i).append('+');
+        while (i + 1 < n && body.charAt(i + 1) == '\\') {
+          i++;
+        }
+        copied = i + 1;
+      }
+    }
+    return sb == null ? body : sb.append(body, copied, body.length()).toString();
   }
 
 }
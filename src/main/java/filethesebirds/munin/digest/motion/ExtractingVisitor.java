@@ -48,9 +48,27 @@ class ExtractingVisitor extends AbstractVisitor {
     return this.plusVagueHints;
   }
 
-  private static String cleanHint(String s) {
+  // Bump whenever NORMALIZER or cleanHint changes, as normalized hints may be cached
+  static final int NORMALIZER_VERSION = 1;
+
+  // TODO: ed, ing
+  private static final HintRewriter NORMALIZER = HintRewriter.of(
+      "european", "eur",
+      "eurasian", "eur",
+      "conure", "parakeet",
+      "greater", "great",
+      "vermillion", "vermilion",
+      "species", "sp.",
+      "mice\\b", "mouse",
+      "eeses\\b", "oose",
+      "eese\\b", "oose",
+      "sss\\b", "ss",
+      "ies\\b", "",
+      "es\\b", "",
+      "s\\b", "");
+
+  private static HintRewriter.Buffer cleanHint(String s, HintRewriter.Buffer sb) {
     s = s.trim();
-    final StringBuilder sb = new StringBuilder(s.length() + 8);
     for (int i = 0; i < s.length(); i++) {
       final char c = s.charAt(i);
       if (('a' <= c && c <= 'z') || ('0' <= c && c <= '9') || ('/' == c) || ('(' == c) || (')' == c) || ('.' == c)) {
@@ -62,41 +80,48 @@ class ExtractingVisitor extends AbstractVisitor {
         sb.append("%20");
       }
     }
-    return sb.toString();
+    return sb;
   }
 
-  private static String normalize(String s) {
-    // TODO: ed, ing
-    return s.replaceAll("european", "eur")
-        .replaceAll("eurasian", "eur")
-        .replaceAll("conure", "parakeet")
-        .replaceAll("greater", "great")
-        .replaceAll("vermillion", "vermilion")
-        .replaceAll("species", "sp.")
-        .replaceAll("mice\\b", "mouse")
-        .replaceAll("eeses\\b", "oose")
-        .replaceAll("eese\\b", "oose")
-        .replaceAll("sss\\b", "ss")
-        .replaceAll("ies\\b", "")
-        .replaceAll("es\\b", "")
-        .replaceAll("s\\b", "");
+  static String cleanHint(String s) {
+    return cleanHint(s, new HintRewriter.Buffer(s.length() + 8)).toString();
   }
 
-  @Override
-  public void visit(Link link) {
-    if ("".equals(link.getTitle())) {
-      super.visit(link);
-      return;
-    }
-    final String uriStr = link.getDestination();
+  static String normalize(String s) {
+    return NORMALIZER.rewrite(s);
+  }
+
+  /**
+   * Equivalent to {@code normalize(cleanHint(s))}, but without an
+   * intermediate string.
+   */
+  static String normalizedHint(String s) {
+    return NORMALIZER.rewrite(cleanHint(s, new HintRewriter.Buffer(s.length() + 8)));
+  }
+
+  void visitDestination(String uriStr) {
     final Uri uri;
     try {
       uri = Uri.parse(uriStr);
     } catch (Exception e) {
-      super.visit(link);
       return;
     }
     CommonUrlExtract.extractFromUri(uri, plusTaxa(), plusHints());
+  }
+
+  void visitHint(String literal) {
+    plusHints().add(normalizedHint(literal));
+  }
+
+  void visitVagueHint(String literal) {
+    plusVagueHints().add(normalizedHint(literal));
+  }
+
+  @Override
+  public void visit(Link link) {
+    if (!"".equals(link.getTitle())) {
+      visitDestination(link.getDestination());
+    }
     super.visit(link);
   }
 
@@ -104,13 +129,11 @@ class ExtractingVisitor extends AbstractVisitor {
   public void visit(CustomNode customNode) {
     if (customNode instanceof Hint) {
       if (customNode.getFirstChild() instanceof Text) {
-        final String filtered = normalize(cleanHint(((Text) customNode.getFirstChild()).getLiteral()));
-        plusHints().add(filtered);
+        visitHint(((Text) customNode.getFirstChild()).getLiteral());
       }
     } else if (customNode instanceof VagueHint) {
       if (customNode.getFirstChild() instanceof Text) {
-        final String filtered = normalize(cleanHint(((Text) customNode.getFirstChild()).getLiteral()));
-        plusVagueHints().add(filtered);
+        visitVagueHint(((Text) customNode.getFirstChild()).getLiteral());
       }
     }
     super.visit(customNode);
@@ -0,0 +1,308 @@
+// Copyright 2015-2023 Swim.inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package filethesebirds.munin.digest.motion;
+
+import filethesebirds.munin.digest.Taxonomy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Trigram index over the normalized names in {@link TaxonNames}, for finding
+ * taxa whose common names lie within a small edit distance of a hint.
+ *
+ * <p>Names and hints are compared in a readable form where each {@code %20}
+ * counts as one space. A single edit destroys at most three trigrams. So any
+ * name within {@code k} edits of a hint shares at least {@code |grams(hint)| -
+ * 3k} of the hint's distinct trigrams. It therefore must contain at least one
+ * of the hint's {@code 3k + 1} rarest trigrams. Only the short posting lists
+ * of those rare trigrams are scanned. The resulting handful of candidates pays
+ * for a (bounded) Levenshtein computation.
+ */
+final class FuzzyTaxonNames {
+
+  private FuzzyTaxonNames() {
+  }
+
+  // Maximum edit distance for a confident match, by readable hint length. Short
+  // hints are excluded outright because there a single edit is as likely to be
+  // a different bird as a typo.
+  private static final int MIN_FUZZY_LENGTH = 6;
+  private static final int LONG_HINT_LENGTH = 12;
+  private static final int MAX_DISTANCE = Integer.getInteger("taxonNames.maxEditDistance", 2);
+
+  private static final char PAD = '\u0001';
+
+  private static final String[] READABLE; // TaxonNames entry i in readable form
+  private static final int[] GRAM_OFFSETS; // entry i's sorted grams span [GRAM_OFFSETS[i], GRAM_OFFSETS[i + 1])
+  private static final int[] GRAMS;
+  private static final int[] POSTING_OFFSETS; // gram g's postings span [POSTING_OFFSETS[g], POSTING_OFFSETS[g + 1])
+  private static final int[] POSTINGS;
+
+  static {
+    final int size = TaxonNames.size();
+    READABLE = new String[size];
+    final int[][] grams = new int[size][];
+    final int[] counts = new int[1 << 18];
+    GRAM_OFFSETS = new int[size + 1];
+    for (int i = 0; i < size; i++) {
+      READABLE[i] = readable(TaxonNames.nameAt(i));
+      grams[i] = distinctGrams(READABLE[i]);
+      GRAM_OFFSETS[i + 1] = GRAM_OFFSETS[i] + grams[i].length;
+      for (int g : grams[i]) {
+        counts[g]++;
+      }
+    }
+    GRAMS = new int[GRAM_OFFSETS[size]];
+    for (int i = 0; i < size; i++) {
+      System.arraycopy(grams[i], 0, GRAMS, GRAM_OFFSETS[i], grams[i].length);
+    }
+    POSTING_OFFSETS = new int[counts.length + 1];
+    for (int g = 0; g < counts.length; g++) {
+      POSTING_OFFSETS[g + 1] = POSTING_OFFSETS[g] + counts[g];
+    }
+    POSTINGS = new int[POSTING_OFFSETS[counts.length]];
+    final int[] fill = new int[counts.length];
+    for (int i = 0; i < size; i++) {
+      for (int g : grams[i]) {
+        POSTINGS[POSTING_OFFSETS[g] + fill[g]++] = i;
+      }
+    }
+  }
+
+  static String readable(String normalized) {
+    return normalized.replace("%20", " ");
+  }
+
+  private static int gramChar(char c) {
+    return c & 0x3f; // names are ASCII; collisions only cost a little selectivity
+  }
+
+  private static char padded(String s, int i) {
+    return i >= 0 && i < s.length() ? s.charAt(i) : PAD;
+  }
+
+  private static int[] distinctGrams(String s) {
+    // Grams end at each of the s.length() + 2 positions of PAD PAD s PAD PAD
+    final int n = s.length() + 2;
+    final int[] result = new int[n];
+    int count = 0;
+    for (int i = 0; i < n; i++) {
+      final char a = padded(s, i - 2),
+          b = padded(s, i - 1),
+          c = padded(s, i);
+      final int gram = (gramChar(a) << 12) | (gramChar(b) << 6) | gramChar(c);
+      boolean seen = false;
+      for (int j = 0; j < count; j++) {
+        if (result[j] == gram) {
+          seen = true;
+          break;
+        }
+      }
+      if (!seen) {
+        result[count++] = gram;
+      }
+    }
+    final int[] distinct = new int[count];
+    System.arraycopy(result, 0, distinct, 0, count);
+    Arrays.sort(distinct);
+    return distinct;
+  }
+
+  private static int sharedGrams(int[] query, int entry) {
+    int shared = 0;
+    for (int i = 0, j = GRAM_OFFSETS[entry], end = GRAM_OFFSETS[entry + 1]; i < query.length && j < end; ) {
+      if (query[i] < GRAMS[j]) {
+        i++;
+      } else if (query[i] > GRAMS[j]) {
+        j++;
+      } else {
+        shared++;
+        i++;
+        j++;
+      }
+    }
+    return shared;
+  }
+
+  /**
+   * Returns every unambiguous name within {@code maxDistance} edits of the
+   * normalized {@code hint}, closest first.
+   */
+  static List<Match> search(String hint, int maxDistance) {
+    return search(hint, maxDistance, false);
+  }
+
+  /**
+   * Like {@link #search(String, int)}, but if {@code includeAmbiguous}, also
+   * returns ambiguous names, each as a match whose taxonomy index is {@code
+   * -1}.
+   */
+  private static List<Match> search(String hint, int maxDistance, boolean includeAmbiguous) {
+    final List<Match> result = new ArrayList<>();
+    final String query = readable(hint);
+    final int[] grams = distinctGrams(query);
+    final int prefix = 3 * maxDistance + 1;
+    if (grams.length < prefix) {
+      // Too short for the count filter to prune anything; treat as unsupported
+      return result;
+    }
+    // Rarest grams first
+    final long[] byRarity = new long[grams.length];
+    for (int i = 0; i < grams.length; i++) {
+      final int g = grams[i];
+      byRarity[i] = ((long) (POSTING_OFFSETS[g + 1] - POSTING_OFFSETS[g]) << 32) | g;
+    }
+    Arrays.sort(byRarity);
+    int candidateCount = 0;
+    for (int i = 0; i < prefix; i++) {
+      final int g = (int) byRarity[i];
+      candidateCount += POSTING_OFFSETS[g + 1] - POSTING_OFFSETS[g];
+    }
+    final int[] candidates = new int[candidateCount];
+    candidateCount = 0;
+    for (int i = 0; i < prefix; i++) {
+      final int g = (int) byRarity[i];
+      for (int p = POSTING_OFFSETS[g]; p < POSTING_OFFSETS[g + 1]; p++) {
+        candidates[candidateCount++] = POSTINGS[p];
+      }
+    }
+    Arrays.sort(candidates);
+    for (int c = 0; c < candidateCount; c++) {
+      final int i = candidates[c];
+      if ((c > 0 && candidates[c - 1] == i) || (!includeAmbiguous && TaxonNames.taxonomyIndexAt(i) < 0)
+          || Math.abs(READABLE[i].length() - query.length()) > maxDistance
+          || sharedGrams(grams, i) < grams.length - 3 * maxDistance) {
+        continue;
+      }
+      final int d = boundedDistance(query, READABLE[i], maxDistance);
+      if (d <= maxDistance) {
+        result.add(new Match(TaxonNames.taxonomyIndexAt(i), d));
+      }
+    }
+    result.sort((a, b) -> Integer.compare(a.distance, b.distance));
+    return result;
+  }
+
+  static int maxDistanceFor(String hint) {
+    final int length = readable(hint).length();
+    if (length < MIN_FUZZY_LENGTH) {
+      return 0;
+    }
+    return Math.min(MAX_DISTANCE, length < LONG_HINT_LENGTH ? 1 : 2);
+  }
+
+  /**
+   * Returns the code of the single closest taxon to {@code hint} if it lies
+   * within the length-dependent tolerance and no other taxon is equally close,
+   * or {@code null} otherwise.
+   */
+  static String resolve(String hint) {
+    final int maxDistance = maxDistanceFor(hint);
+    if (maxDistance <= 0) {
+      return null;
+    }
+    final List<Match> matches = search(hint, maxDistance);
+    if (matches.isEmpty()) {
+      return null;
+    }
+    final Match best = matches.get(0);
+    for (int i = 1; i < matches.size(); i++) {
+      final Match next = matches.get(i);
+      if (next.distance > best.distance) {
+        break;
+      } else if (next.taxonomyIndex != best.taxonomyIndex) {
+        return null;
+      }
+    }
+    return best.code();
+  }
+
+  /**
+   * Returns the code of the only taxon whose names lie within one edit of
+   * {@code hint}, provided the hint is long enough to tolerate an edit at all
+   * and no ambiguous name lies within that edit either, or {@code null}
+   * otherwise. Such a match is trusted without asking eBird; anything looser
+   * is only a fallback for when eBird has no answer.
+   */
+  static String resolveConfidently(String hint) {
+    if (maxDistanceFor(hint) < 1) {
+      return null;
+    }
+    final List<Match> matches = search(hint, 1, true);
+    if (matches.isEmpty()) {
+      return null;
+    }
+    final int taxonomyIndex = matches.get(0).taxonomyIndex;
+    for (Match match : matches) {
+      if (match.taxonomyIndex < 0 || match.taxonomyIndex != taxonomyIndex) {
+        return null;
+      }
+    }
+    return Taxonomy.codeAt(taxonomyIndex);
+  }
+
+  /**
+   * Returns the Levenshtein distance between {@code a} and {@code b} if it is
+   * at most {@code max}, or {@code max + 1} otherwise.
+   */
+  static int boundedDistance(String a, String b, int max) {
+    final int n = b.length();
+    int[] prev = new int[n + 1],
+        curr = new int[n + 1];
+    for (int j = 0; j <= n; j++) {
+      prev[j] = j;
+    }
+    for (int i = 1; i <= a.length(); i++) {
+      final char ca = a.charAt(i - 1);
+      curr[0] = i;
+      int rowMin = i;
+      for (int j = 1; j <= n; j++) {
+        final int cost = ca == b.charAt(j - 1) ? 0 : 1;
+        curr[j] = Math.min(Math.min(curr[j - 1] + 1, prev[j] + 1), prev[j - 1] + cost);
+        rowMin = Math.min(rowMin, curr[j]);
+      }
+      if (rowMin > max) {
+        return max + 1;
+      }
+      final int[] t = prev;
+      prev = curr;
+      curr = t;
+    }
+    return Math.min(prev[n], max + 1);
+  }
+
+  static final class Match {
+
+    final int taxonomyIndex;
+    final int distance;
+
+    private Match(int taxonomyIndex, int distance) {
+      this.taxonomyIndex = taxonomyIndex;
+      this.distance = distance;
+    }
+
+    String code() {
+      return Taxonomy.codeAt(this.taxonomyIndex);
+    }
+
+    @Override
+    public String toString() {
+      return "Match{code=" + code() + ", distance=" + this.distance + "}";
+    }
+
+  }
+
+}
@@ -14,17 +14,81 @@
 
 package filethesebirds.munin.digest.motion;
 
-import java.util.concurrent.ConcurrentHashMap;
-
+import filethesebirds.munin.digest.Taxonomy;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import swim.structure.Record;
+
+/**
+ * A process-wide cache of hints that eBird resolved into taxon codes, bounded
+ * by a {@link TinyLfuCache}, alongside two smaller caches: one of vague hints
+ * that eBird resolved, and one of (vague or otherwise) hints that eBird
+ * failed to resolve. The latter two are keyed by both the hint and the
+ * category of eBird finds that was tried, and each entry remembers how many
+ * eBird calls it took; every hit adds that many to {@link #savedCalls()}.
+ *
+ * <p>The following system properties configure it:
+ * <ul>
+ * <li>{@code hintCache.maxSize}: the most hints to retain (default 2000)
+ * <li>{@code hintCache.windowPercent}: the share of the cache given to its
+ * admission window, in percent (default 1)
+ * <li>{@code hintCache.expireAfterWriteMinutes}: how long a resolution stays
+ * usable, or 0 to keep it until evicted (default 0)
+ * <li>{@code hintCache.vagueMaxSize}: the most vague hints to retain, which
+ * expire alongside the above (default 1000)
+ * <li>{@code hintCache.missMaxSize}: the most unresolvable hints to retain
+ * (default 2000)
+ * <li>{@code hintCache.missTtlMinutes}: how long an unresolvable hint is
+ * trusted to stay so, e.g. until eBird adds a taxon (default 360)
+ * </ul>
+ *
+ * <p>Once {@link #load} attaches a {@link HintLog}, every resolution is also
+ * appended to disk, so a restarted process can start warm. Loaded entries
+ * begin a fresh expiry period. The log is compacted on a background thread
+ * once superseded records dominate it; a failed compaction is retried after
+ * a growing delay while appends carry on, and only a failed append detaches
+ * the log.
+ */
 public final class HintCache {
 
   private HintCache() {
   }
 
-  private static final int PRUNE_TRIGGER = 1800;
-  private static final int MAX_ENTRIES = 2000;
+  private static final TinyLfuCache<String, String> CACHE = new TinyLfuCache<>(
+      Long.getLong("hintCache.maxSize", 2000L),
+      Integer.getInteger("hintCache.windowPercent", 1),
+      TimeUnit.MINUTES.toNanos(Long.getLong("hintCache.expireAfterWriteMinutes", 0L)));
+
+  private static final TinyLfuCache<String, Resolution> VAGUE = new TinyLfuCache<>(
+      Long.getLong("hintCache.vagueMaxSize", 1000L),
+      Integer.getInteger("hintCache.windowPercent", 1),
+      TimeUnit.MINUTES.toNanos(Long.getLong("hintCache.expireAfterWriteMinutes", 0L)));
+
+  private static final TinyLfuCache<String, Resolution> MISSES = new TinyLfuCache<>(
+      Long.getLong("hintCache.missMaxSize", 2000L),
+      Integer.getInteger("hintCache.windowPercent", 1),
+      TimeUnit.MINUTES.toNanos(Long.getLong("hintCache.missTtlMinutes", 360L)));
+
+  private static final LongAdder SAVED_CALLS = new LongAdder();
+
+  private static volatile HintLog log = null;
 
-  private static final ConcurrentHashMap<String, CacheValue> CACHE = new ConcurrentHashMap<>(MAX_ENTRIES);
+  private static final long MIN_COMPACT_BACKOFF_NANOS = TimeUnit.MINUTES.toNanos(1L);
+  private static final long MAX_COMPACT_BACKOFF_NANOS = TimeUnit.HOURS.toNanos(1L);
+
+  // Compaction rewrites the whole log, so keep it off of callers' threads
+  private static final ExecutorService COMPACTOR = Executors.newSingleThreadExecutor(r -> {
+    final Thread t = new Thread(r, "munin-hint-log-compact");
+    t.setDaemon(true);
+    return t;
+  });
+  private static final AtomicBoolean COMPACTING = new AtomicBoolean(false);
+  private static volatile long compactBackoffNanos = 0L;
+  private static volatile long nextCompactNanos = System.nanoTime();
 
   private static String preprocessHint(String hint) {
     // TODO
@@ -32,47 +96,147 @@ public final class HintCache {
   }
 
   public static String get(String hint) {
-    final CacheValue val = CACHE.get(hint);
-    if (val == null) {
-      return null;
-    }
-    val.hit();
-    return val.code;
+    return CACHE.get(hint);
   }
 
   public static void put(String hint, String code) {
-    CACHE.put(hint, new CacheValue(code));
+    CACHE.put(hint, code);
+    final HintLog log = HintCache.log;
+    if (log != null) {
+      try {
+        log.append(hint, code);
+      } catch (Exception e) {
+        System.out.println("[WARN] Hint log failed, hints will no longer persist (trace below):");
+        e.printStackTrace();
+        HintCache.log = null;
+        return;
+      }
+      if (needsCompaction(log) && System.nanoTime() - nextCompactNanos >= 0L
+          && COMPACTING.compareAndSet(false, true)) {
+        COMPACTOR.execute(() -> {
+          try {
+            compact(log);
+          } finally {
+            COMPACTING.set(false);
+          }
+        });
+      }
+    }
   }
 
-  public static void prune() {
-    if (CACHE.size() >= PRUNE_TRIGGER) {
-      System.out.println("[INFO] pruning cache");
-      synchronized (CACHE) {
-        purge(20);
-        if (CACHE.size() >= PRUNE_TRIGGER) {
-          purge(10);
-        }
-      }
+  // Superseded and evicted records accumulate; rewrite once they dominate
+  private static boolean needsCompaction(HintLog log) {
+    return log.records() > 2 * Math.max(CACHE.size(), 1024L);
+  }
+
+  private static void compact(HintLog log) {
+    try {
+      log.compact(CACHE::forEach);
+      compactBackoffNanos = 0L;
+    } catch (Exception e) {
+      final long backoff = Math.min(MAX_COMPACT_BACKOFF_NANOS,
+          Math.max(MIN_COMPACT_BACKOFF_NANOS, 2 * compactBackoffNanos));
+      compactBackoffNanos = backoff;
+      nextCompactNanos = System.nanoTime() + backoff;
+      System.out.println("[WARN] Hint log compaction failed, will retry in " + TimeUnit.NANOSECONDS.toSeconds(backoff)
+          + " s and keep appending meanwhile (trace below):");
+      e.printStackTrace();
     }
   }
 
-  private static void purge(int lim) {
-    CACHE.entrySet().removeIf(e -> e.getValue().hits < lim
-        && Math.random() >= (double) (e.getValue().hits / lim));
+  private static String key(String category, String hint) {
+    return category + ':' + hint;
   }
 
-  private static class CacheValue {
+  /**
+   * Returns whether eBird recently failed to resolve {@code hint} under
+   * {@code category}.
+   */
+  public static boolean isKnownMiss(String category, String hint) {
+    return hit(MISSES, category, hint) != null;
+  }
 
-    private final String code;
-    private volatile int hits;
+  public static void putMiss(String category, String hint, long eBirdCalls) {
+    MISSES.put(key(category, hint), new Resolution(null, eBirdCalls));
+  }
 
-    private CacheValue(String code) {
-      this.code = code;
-      this.hits = 1;
+  /**
+   * Returns the taxon code that eBird resolved the vague {@code hint} into
+   * under {@code category}, or {@code null} if it has not done so recently.
+   */
+  public static String getVague(String category, String hint) {
+    final Resolution resolution = hit(VAGUE, category, hint);
+    return resolution == null ? null : resolution.code;
+  }
+
+  public static void putVague(String category, String hint, String code, long eBirdCalls) {
+    VAGUE.put(key(category, hint), new Resolution(code, eBirdCalls));
+  }
+
+  private static Resolution hit(TinyLfuCache<String, Resolution> cache, String category, String hint) {
+    final Resolution resolution = cache.get(key(category, hint));
+    if (resolution != null) {
+      SAVED_CALLS.add(resolution.eBirdCalls);
     }
+    return resolution;
+  }
 
-    private void hit() {
-      this.hits++; // no atomicupdater since an approximation should be okay
+  /**
+   * Returns how many eBird calls the vague-hint and unresolvable-hint caches
+   * have spared since startup.
+   */
+  public static long savedCalls() {
+    return SAVED_CALLS.sum();
+  }
+
+  /**
+   * Populates this cache from the hint log at {@code path}, discarding the
+   * log's contents if they came from a different {@link
+   * Taxonomy#fingerprint()}, and persists all subsequent {@link #put}s there.
+   */
+  public static synchronized void load(Path path) throws Exception {
+    if (HintCache.log != null) {
+      throw new IllegalStateException("Multiple hint log loading forbidden");
+    }
+    final long start = System.currentTimeMillis();
+    final HintLog log = HintLog.open(path, Taxonomy.fingerprint(), CACHE::put);
+    System.out.println("[INFO] Loaded " + CACHE.size() + " hints from " + log.records() + " hint log records in "
+        + (System.currentTimeMillis() - start) + " ms");
+    if (needsCompaction(log)) {
+      compact(log);
+    }
+    HintCache.log = log;
+  }
+
+  /**
+   * Returns the size of each cache, as well as hit, miss, eviction, and
+   * expiration counts and spared eBird calls since startup.
+   */
+  public static Record stats() {
+    return stats(CACHE, "hintCache")
+        .slot("vague", stats(VAGUE, "vagueHintCache"))
+        .slot("unresolvable", stats(MISSES, "unresolvableHintCache"))
+        .slot("savedEBirdCalls", savedCalls());
+  }
+
+  private static Record stats(TinyLfuCache<?, ?> cache, String tag) {
+    return Record.create(10).attr(tag)
+        .slot("size", cache.size())
+        .slot("hits", cache.hits())
+        .slot("misses", cache.misses())
+        .slot("hitRate", cache.hitRate())
+        .slot("evictions", cache.evictions())
+        .slot("expirations", cache.expirations());
+  }
+
+  private static final class Resolution {
+
+    private final String code; // null if unresolvable
+    private final long eBirdCalls;
+
+    private Resolution(String code, long eBirdCalls) {
+      this.code = code;
+      this.eBirdCalls = eBirdCalls;
     }
 
   }
@@ -0,0 +1,232 @@
+// Copyright 2015-2023 Swim.inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package filethesebirds.munin.digest.motion;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * An append-only file of hint-to-taxon-code resolutions, from which {@link
+ * HintCache} repopulates itself after a restart.
+ *
+ * <p>The file is, in big-endian order:
+ * <pre>
+ * int magic, int version, long taxonomyStamp,
+ * { short hintBytes, byte[hintBytes] hint, short codeBytes, byte[codeBytes] code }*
+ * </pre>
+ * with UTF-8 strings, and later records superseding earlier ones for the same
+ * hint. Loading maps the file and decodes records in one pass. A file written
+ * under a different taxonomy stamp is discarded, and a record torn by a crash
+ * mid-append is truncated away.
+ */
+final class HintLog implements Closeable {
+
+  static final int MAGIC = 0x4d554e48; // "MUNH"
+  static final int VERSION = 1;
+
+  private static final int HEADER_BYTES = 2 * Integer.BYTES + Long.BYTES;
+  private static final int MAX_STRING_BYTES = 0xffff;
+
+  private final Path path;
+  private final long taxonomyStamp;
+  private FileChannel channel;
+  private long records;
+
+  private HintLog(Path path, long taxonomyStamp, FileChannel channel, long records) {
+    this.path = path;
+    this.taxonomyStamp = taxonomyStamp;
+    this.channel = channel;
+    this.records = records;
+  }
+
+  /**
+   * Opens the log at {@code path} for appending, first feeding every record
+   * it holds to {@code sink} if it was written under {@code taxonomyStamp},
+   * and otherwise starting it afresh.
+   */
+  static HintLog open(Path path, long taxonomyStamp, BiConsumer<String, String> sink) throws IOException {
+    final Path parent = path.toAbsolutePath().getParent();
+    if (parent != null) {
+      Files.createDirectories(parent);
+    }
+    final FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+        StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      long records = 0L;
+      long validBytes = 0L;
+      if (channel.size() >= HEADER_BYTES) {
+        final MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size());
+        if (buf.getInt() == MAGIC && buf.getInt() == VERSION && buf.getLong() == taxonomyStamp) {
+          validBytes = HEADER_BYTES;
+          String hint;
+          String code;
+          while ((hint = readString(buf)) != null && (code = readString(buf)) != null) {
+            sink.accept(hint, code);
+            records++;
+            validBytes = buf.position();
+          }
+        } else {
+          System.out.println("[INFO] Discarding hint log at " + path + " from another taxonomy or format");
+        }
+      }
+      if (validBytes == 0L) {
+        channel.truncate(0L);
+        channel.write(header(taxonomyStamp), 0L);
+      } else if (validBytes < channel.size()) {
+        System.out.println("[WARN] Truncating torn record from hint log at " + path);
+        channel.truncate(validBytes);
+      }
+      channel.position(channel.size());
+      return new HintLog(path, taxonomyStamp, channel, records);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  private static ByteBuffer header(long taxonomyStamp) {
+    return ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putInt(VERSION).putLong(taxonomyStamp).flip();
+  }
+
+  private static String readString(ByteBuffer buf) {
+    if (buf.remaining() < Short.BYTES) {
+      return null;
+    }
+    final int length = Short.toUnsignedInt(buf.getShort());
+    if (buf.remaining() < length) {
+      return null;
+    }
+    final String s;
+    if (buf.hasArray()) {
+      s = new String(buf.array(), buf.arrayOffset() + buf.position(), length, StandardCharsets.UTF_8);
+      buf.position(buf.position() + length);
+    } else {
+      final byte[] bytes = new byte[length];
+      buf.get(bytes);
+      s = new String(bytes, StandardCharsets.UTF_8);
+    }
+    return s;
+  }
+
+  private static boolean putRecord(ByteBuffer buf, byte[] hint, byte[] code) {
+    if (hint.length > MAX_STRING_BYTES || code.length > MAX_STRING_BYTES) {
+      return false;
+    }
+    buf.putShort((short) hint.length).put(hint).putShort((short) code.length).put(code);
+    return true;
+  }
+
+  /**
+   * Returns the number of records in the log, including superseded ones.
+   */
+  synchronized long records() {
+    return this.records;
+  }
+
+  synchronized void append(String hint, String code) throws IOException {
+    final byte[] hintBytes = hint.getBytes(StandardCharsets.UTF_8);
+    final byte[] codeBytes = code.getBytes(StandardCharsets.UTF_8);
+    final ByteBuffer buf = ByteBuffer.allocate(2 * Short.BYTES + hintBytes.length + codeBytes.length);
+    if (putRecord(buf, hintBytes, codeBytes)) {
+      buf.flip();
+      while (buf.hasRemaining()) {
+        this.channel.write(buf);
+      }
+      this.records++;
+    }
+  }
+
+  /**
+   * Atomically replaces the log with one holding exactly the records that
+   * {@code entries} supplies, dropping superseded and evicted ones. If the
+   * replacement can't be written or moved into place, the original log is
+   * left intact and open for appends.
+   */
+  synchronized void compact(Consumer<BiConsumer<String, String>> entries) throws IOException {
+    final Path tmp = Files.createTempFile(this.path.toAbsolutePath().getParent(), "hint-log", ".tmp");
+    long records = 0L;
+    try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+      final ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+      buf.put(header(this.taxonomyStamp));
+      final long[] count = {0L};
+      final IOException[] failure = {null};
+      entries.accept((hint, code) -> {
+        if (failure[0] != null) {
+          return;
+        }
+        final byte[] hintBytes = hint.getBytes(StandardCharsets.UTF_8);
+        final byte[] codeBytes = code.getBytes(StandardCharsets.UTF_8);
+        try {
+          if (buf.remaining() < 2 * Short.BYTES + hintBytes.length + codeBytes.length) {
+            drain(buf, out);
+          }
+          if (buf.remaining() >= 2 * Short.BYTES + hintBytes.length + codeBytes.length
+              && putRecord(buf, hintBytes, codeBytes)) {
+            count[0]++;
+          }
+        } catch (IOException e) {
+          failure[0] = e;
+        }
+      });
+      if (failure[0] != null) {
+        throw failure[0];
+      }
+      drain(buf, out);
+      out.force(true);
+      records = count[0];
+    } catch (IOException | RuntimeException e) {
+      Files.deleteIfExists(tmp);
+      throw e;
+    }
+    this.channel.close();
+    try {
+      Files.move(tmp, this.path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException | RuntimeException e) {
+      // Keep appending to the original rather than leave the log closed
+      try {
+        Files.deleteIfExists(tmp);
+      } finally {
+        this.channel = FileChannel.open(this.path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+      }
+      throw e;
+    }
+    this.channel = FileChannel.open(this.path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    this.records = records;
+  }
+
+  private static void drain(ByteBuffer buf, FileChannel out) throws IOException {
+    buf.flip();
+    while (buf.hasRemaining()) {
+      out.write(buf);
+    }
+    buf.clear();
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    this.channel.close();
+  }
+
+}
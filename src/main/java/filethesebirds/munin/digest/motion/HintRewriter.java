@@ -0,0 +1,183 @@
+// Copyright 2015-2023 Swim.inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package filethesebirds.munin.digest.motion;
+
+import java.util.Arrays;
+
+/**
+ * An ordered table of literal rewrite rules over a pair of scratch buffers,
+ * standing in for a chain of {@link String#replaceAll} calls.
+ *
+ * <p>Each rule is applied to the output of the one before it, replacing
+ * leftmost, non-overlapping occurrences of its target just as {@code
+ * replaceAll} would. A target written with a trailing {@code \b} (e.g. {@code
+ * "ies\\b"}) only matches where a word ends, with {@link
+ * java.util.regex.Pattern}'s notion of a word character. The result is thus
+ * exactly that of the equivalent chain, without compiling a regex or
+ * materializing a string per rule.
+ */
+final class HintRewriter {
+
+  private final char[][] targets;
+  private final char[][] replacements;
+  private final boolean[] atWordEnd;
+
+  private HintRewriter(char[][] targets, char[][] replacements, boolean[] atWordEnd) {
+    this.targets = targets;
+    this.replacements = replacements;
+    this.atWordEnd = atWordEnd;
+  }
+
+  /**
+   * Creates a rewriter from alternating targets and replacements, in the order
+   * they should apply.
+   */
+  static HintRewriter of(String... rules) {
+    if (rules.length % 2 != 0) {
+      throw new IllegalArgumentException("Unpaired rewrite rule: " + rules[rules.length - 1]);
+    }
+    final int n = rules.length / 2;
+    final char[][] targets = new char[n][];
+    final char[][] replacements = new char[n][];
+    final boolean[] atWordEnd = new boolean[n];
+    for (int i = 0; i < n; i++) {
+      String target = rules[2 * i];
+      if (target.endsWith("\\b")) {
+        target = target.substring(0, target.length() - 2);
+        atWordEnd[i] = true;
+      }
+      if (target.isEmpty() || (atWordEnd[i] && !isWordChar(target.codePointBefore(target.length())))) {
+        throw new IllegalArgumentException("Unsupported rewrite target: " + rules[2 * i]);
+      }
+      targets[i] = target.toCharArray();
+      replacements[i] = rules[2 * i + 1].toCharArray();
+    }
+    return new HintRewriter(targets, replacements, atWordEnd);
+  }
+
+  String rewrite(String s) {
+    final Buffer buffer = new Buffer(s.length());
+    buffer.append(s);
+    return rewrite(buffer);
+  }
+
+  /**
+   * Applies every rule to the contents of {@code buffer}, consuming it.
+   */
+  String rewrite(Buffer buffer) {
+    for (int r = 0; r < this.targets.length; r++) {
+      buffer.apply(this.targets[r], this.replacements[r], this.atWordEnd[r]);
+    }
+    return buffer.toString();
+  }
+
+  private static boolean isWordChar(int c) {
+    // As in java.util.regex.Pattern, a nonspacing mark after a word character
+    // extends the word; rules only test characters that follow a word character
+    return c == '_' || Character.isLetterOrDigit(c) || Character.getType(c) == Character.NON_SPACING_MARK;
+  }
+
+  /**
+   * A growable character buffer that rules rewrite in place, swapping with a
+   * spare array only when a rule actually matches.
+   */
+  static final class Buffer {
+
+    private char[] chars;
+    private char[] spare;
+    private int length;
+
+    Buffer(int capacity) {
+      this.chars = new char[Math.max(capacity, 16)];
+      this.spare = null;
+      this.length = 0;
+    }
+
+    Buffer append(char c) {
+      if (this.length == this.chars.length) {
+        this.chars = Arrays.copyOf(this.chars, 2 * this.length);
+      }
+      this.chars[this.length++] = c;
+      return this;
+    }
+
+    Buffer append(String s) {
+      final int n = s.length();
+      if (this.length + n > this.chars.length) {
+        this.chars = Arrays.copyOf(this.chars, Math.max(2 * this.chars.length, this.length + n));
+      }
+      s.getChars(0, n, this.chars, this.length);
+      this.length += n;
+      return this;
+    }
+
+    private boolean matchesAt(char[] target, int i, boolean atWordEnd) {
+      final int end = i + target.length;
+      if (end > this.length) {
+        return false;
+      }
+      for (int j = 0; j < target.length; j++) {
+        if (this.chars[i + j] != target[j]) {
+          return false;
+        }
+      }
+      return !atWordEnd || end == this.length
+          || !isWordChar(Character.codePointAt(this.chars, end, this.length));
+    }
+
+    private void apply(char[] target, char[] replacement, boolean atWordEnd) {
+      char[] out = null;
+      int outLength = 0;
+      int copied = 0;
+      final char first = target[0];
+      for (int i = 0; i <= this.length - target.length; ) {
+        if (this.chars[i] != first || !matchesAt(target, i, atWordEnd)) {
+          i++;
+          continue;
+        }
+        final int needed = outLength + (i - copied) + replacement.length + (this.length - i);
+        if (out == null || needed > out.length) {
+          final char[] grown = this.spare != null && this.spare.length >= needed
+              ? this.spare : new char[Math.max(needed + (needed >> 1), this.chars.length)];
+          if (out != null) {
+            System.arraycopy(out, 0, grown, 0, outLength);
+          }
+          out = grown;
+        }
+        System.arraycopy(this.chars, copied, out, outLength, i - copied);
+        outLength += i - copied;
+        System.arraycopy(replacement, 0, out, outLength, replacement.length);
+        outLength += replacement.length;
+        i += target.length;
+        copied = i;
+      }
+      if (out == null) {
+        return;
+      }
+      final int rest = this.length - copied;
+      System.arraycopy(this.chars, copied, out, outLength, rest);
+      this.spare = this.chars;
+      this.chars = out;
+      this.length = outLength + rest;
+    }
+
+    @Override
+    public String toString() {
+      return new String(this.chars, 0, this.length);
+    }
+
+  }
+
+}
@@ -0,0 +1,462 @@
+// Copyright 2015-2023 Swim.inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package filethesebirds.munin.digest.motion;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A single-pass stand-in for the CommonMark parse that {@link ExtractParse}
+ * otherwise performs just to visit links and hints.
+ *
+ * <p>Only plain paragraphs made up of text, inline links of the form {@code
+ * [text](destination)}, and {@code +}-delimited hints are understood. Hints are
+ * matched by replaying CommonMark's delimiter-stack algorithm with {@code
+ * HintDelimiterProcessor}'s rules, including the rule of three. Anything else
+ * (block structure, code, emphasis, escapes, entities, HTML, images, link
+ * titles or references, text that the autolink extension would rewrite, or a
+ * hint whose first child would not be a lone text node) makes {@link
+ * #tokenize} bail out so the caller can fall back to CommonMark.
+ */
+final class HintTokenizer {
+
+  private HintTokenizer() {
+  }
+
+  private static final int MAX_LINK_PARENS = 32;
+
+  /**
+   * Feeds every link destination, hint, and vague hint in {@code markdown} to
+   * {@code visitor} and returns {@code true}, or returns {@code false} without
+   * touching {@code visitor} if {@code markdown} strays outside the supported
+   * subset.
+   */
+  static boolean tokenize(String markdown, ExtractingVisitor visitor) {
+    final Tokens tokens = new Tokens();
+    if (!tokenize(markdown, tokens)) {
+      return false;
+    }
+    for (String destination : tokens.destinations) {
+      visitor.visitDestination(destination);
+    }
+    for (String hint : tokens.hints) {
+      visitor.visitHint(hint);
+    }
+    for (String vagueHint : tokens.vagueHints) {
+      visitor.visitVagueHint(vagueHint);
+    }
+    return true;
+  }
+
+  private static boolean tokenize(String s, Tokens tokens) {
+    final int n = s.length();
+    for (int i = 0; i < n; i++) {
+      final char c = s.charAt(i);
+      if (c == '`' || c == '\\' || c == '*' || c == '<' || c == '\r' || c == '\0'
+          || (c == ']' && i + 1 < n && s.charAt(i + 1) == ':')) {
+        return false;
+      }
+    }
+    int paragraphStart = -1;
+    int paragraphEnd = -1;
+    int lineStart = 0;
+    while (lineStart <= n) {
+      int lineEnd = s.indexOf('\n', lineStart);
+      if (lineEnd < 0) {
+        lineEnd = n;
+      }
+      int k = lineStart;
+      while (k < lineEnd && s.charAt(k) == ' ') {
+        k++;
+      }
+      if (isBlank(s, k, lineEnd)) {
+        if (paragraphStart >= 0 && !paragraph(s, paragraphStart, paragraphEnd, tokens)) {
+          return false;
+        }
+        paragraphStart = -1;
+      } else if (k - lineStart >= 4 || !startsParagraphLine(s, k, lineEnd)) {
+        return false;
+      } else {
+        if (paragraphStart < 0) {
+          paragraphStart = lineStart;
+        }
+        paragraphEnd = lineEnd;
+      }
+      lineStart = lineEnd + 1;
+    }
+    return paragraphStart < 0 || paragraph(s, paragraphStart, paragraphEnd, tokens);
+  }
+
+  private static boolean isBlank(String s, int from, int to) {
+    for (int i = from; i < to; i++) {
+      final char c = s.charAt(i);
+      if (c != ' ' && c != '\t') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // Rejects anything that could begin a block other than a paragraph
+  private static boolean startsParagraphLine(String s, int k, int lineEnd) {
+    final char c = s.charAt(k);
+    switch (c) {
+      case '\t': case '#': case '>': case '~': case '-': case '_': case '=': case '|':
+        return false;
+      case '+':
+        return k + 1 < lineEnd && s.charAt(k + 1) != ' ' && s.charAt(k + 1) != '\t';
+      default:
+        int j = k;
+        while (j < lineEnd && j - k < 10 && '0' <= s.charAt(j) && s.charAt(j) <= '9') {
+          j++;
+        }
+        return j == k || j == lineEnd || (s.charAt(j) != '.' && s.charAt(j) != ')');
+    }
+  }
+
+  private static boolean paragraph(String s, int from, int to, Tokens tokens) {
+    final Delimiters delimiters = new Delimiters();
+    int i = from;
+    while (i < to) {
+      final char c = s.charAt(i);
+      if (c == '+' || c == '_') {
+        int j = i + 1;
+        while (j < to && s.charAt(j) == c) {
+          j++;
+        }
+        final Delimiter delimiter = Delimiter.scan(s, from, to, c, i, j);
+        if (c == '_' && (delimiter.canOpen || delimiter.canClose)) {
+          return false;
+        }
+        delimiters.add(delimiter);
+        i = j;
+      } else if (c == '[') {
+        i = link(s, i, to, tokens);
+        if (i < 0) {
+          return false;
+        }
+      } else if (c == ']' || (c == '!' && i + 1 < to && s.charAt(i + 1) == '[')
+          || triggersAutolink(s, i, to)) {
+        return false;
+      } else {
+        i++;
+      }
+    }
+    delimiters.process();
+    return hints(s, delimiters.hints, tokens);
+  }
+
+  // Characters at which the autolink extension starts scanning for a URL,
+  // email address, or www. link
+  private static boolean triggersAutolink(String s, int i, int to) {
+    final char c = s.charAt(i);
+    if (c == ':') {
+      return i + 2 < to && s.charAt(i + 1) == '/' && s.charAt(i + 2) == '/';
+    } else if (c == 'w' || c == 'W') {
+      return s.regionMatches(true, i, "www.", 0, 4);
+    }
+    return c == '@';
+  }
+
+  /**
+   * Consumes the inline link starting at {@code start}, returning the index
+   * just past it, or -1 if it is not a link this class understands.
+   */
+  private static int link(String s, int start, int to, Tokens tokens) {
+    int i = start + 1;
+    while (i < to && s.charAt(i) != ']') {
+      final char c = s.charAt(i);
+      if (c == '[' || c == '+' || c == '\n' || triggersAutolink(s, i, to)) {
+        return -1;
+      }
+      i++;
+    }
+    if (i + 1 >= to || s.charAt(i + 1) != '(') {
+      return -1;
+    }
+    final int destinationStart = i + 2;
+    int parens = 0;
+    for (i = destinationStart; i < to; i++) {
+      final char c = s.charAt(i);
+      if (c == '(') {
+        if (++parens > MAX_LINK_PARENS) {
+          return -1;
+        }
+      } else if (c == ')') {
+        if (parens == 0) {
+          break;
+        }
+        parens--;
+      } else if (c == ' ' || Character.isISOControl(c)) {
+        // Whitespace may only introduce a title, which we don't support
+        return -1;
+      } else if (c == '&' && isEntity(s, i, to)) {
+        return -1;
+      }
+    }
+    if (i == to || i == destinationStart) {
+      return -1;
+    }
+    tokens.destinations.add(s.substring(destinationStart, i));
+    return i + 1;
+  }
+
+  private static boolean isEntity(String s, int ampersand, int to) {
+    for (int i = ampersand + 1; i < to && i - ampersand <= 33; i++) {
+      final char c = s.charAt(i);
+      if (c == ';') {
+        return i > ampersand + 1;
+      } else if (!Character.isLetterOrDigit(c) && c != '#') {
+        return false;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Collects the literal of every hint whose first child is a text node,
+   * provided that literal doesn't hinge on how CommonMark merges adjacent text
+   * nodes.
+   */
+  private static boolean hints(String s, List<Hint> hints, Tokens tokens) {
+    for (Hint hint : hints) {
+      if (startsChildHint(hints, hint.contentStart, hint)) {
+        continue;
+      }
+      int end = hint.contentStart;
+      while (end < hint.contentEnd && !isSpecial(s.charAt(end))) {
+        end++;
+      }
+      if (end == hint.contentStart
+          || (end < hint.contentEnd && !startsChildHint(hints, end, hint))) {
+        return false;
+      }
+      (hint.vague ? tokens.vagueHints : tokens.hints).add(s.substring(hint.contentStart, end));
+    }
+    return true;
+  }
+
+  private static boolean startsChildHint(List<Hint> hints, int at, Hint parent) {
+    for (Hint hint : hints) {
+      if (hint != parent && hint.start == at && hint.end <= parent.contentEnd) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // Characters that end a run of inline text
+  private static boolean isSpecial(char c) {
+    switch (c) {
+      case '\n': case '`': case '[': case ']': case '\\': case '!': case '<': case '&':
+      case '*': case '_': case '+':
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  private static final class Tokens {
+
+    private final List<String> destinations = new ArrayList<>();
+    private final List<String> hints = new ArrayList<>();
+    private final List<String> vagueHints = new ArrayList<>();
+
+  }
+
+  private static final class Hint {
+
+    private final int start;
+    private final int contentStart;
+    private final int contentEnd;
+    private final int end;
+    private final boolean vague;
+
+    private Hint(int contentStart, int contentEnd, int used) {
+      this.start = contentStart - used;
+      this.contentStart = contentStart;
+      this.contentEnd = contentEnd;
+      this.end = contentEnd + used;
+      this.vague = used == 2;
+    }
+
+  }
+
+  private static final class Delimiter {
+
+    private final char c;
+    private final int start;
+    private final int originalLength;
+    private final boolean canOpen;
+    private final boolean canClose;
+    private int usedAsOpener; // taken from the right
+    private int usedAsCloser; // taken from the left
+    private Delimiter previous;
+    private Delimiter next;
+
+    private Delimiter(char c, int start, int originalLength, boolean canOpen, boolean canClose) {
+      this.c = c;
+      this.start = start;
+      this.originalLength = originalLength;
+      this.canOpen = canOpen;
+      this.canClose = canClose;
+    }
+
+    static Delimiter scan(String s, int from, int to, char c, int start, int end) {
+      final char before = start == from ? '\n' : s.charAt(start - 1);
+      final char after = end == to ? '\n' : s.charAt(end);
+      final boolean beforeIsPunctuation = isPunctuation(before);
+      final boolean beforeIsWhitespace = isWhitespace(before);
+      final boolean afterIsPunctuation = isPunctuation(after);
+      final boolean afterIsWhitespace = isWhitespace(after);
+      final boolean leftFlanking = !afterIsWhitespace
+          && (!afterIsPunctuation || beforeIsWhitespace || beforeIsPunctuation);
+      final boolean rightFlanking = !beforeIsWhitespace
+          && (!beforeIsPunctuation || afterIsWhitespace || afterIsPunctuation);
+      if (c == '_') {
+        return new Delimiter(c, start, end - start, leftFlanking && (!rightFlanking || beforeIsPunctuation),
+            rightFlanking && (!leftFlanking || afterIsPunctuation));
+      }
+      return new Delimiter(c, start, end - start, leftFlanking, rightFlanking);
+    }
+
+    int length() {
+      return this.originalLength - this.usedAsOpener - this.usedAsCloser;
+    }
+
+    private static boolean isWhitespace(char c) {
+      return c == '\t' || c == '\n' || c == '\r' || c == '\f'
+          || Character.getType(c) == Character.SPACE_SEPARATOR;
+    }
+
+    private static boolean isPunctuation(char c) {
+      if (c < 128) {
+        return ('!' <= c && c <= '/') || (':' <= c && c <= '@') || ('[' <= c && c <= '`')
+            || ('{' <= c && c <= '~');
+      }
+      switch (Character.getType(c)) {
+        case Character.CONNECTOR_PUNCTUATION:
+        case Character.DASH_PUNCTUATION:
+        case Character.END_PUNCTUATION:
+        case Character.FINAL_QUOTE_PUNCTUATION:
+        case Character.INITIAL_QUOTE_PUNCTUATION:
+        case Character.OTHER_PUNCTUATION:
+        case Character.START_PUNCTUATION:
+          return true;
+        default:
+          return false;
+      }
+    }
+
+  }
+
+  /**
+   * The delimiter stack of a single paragraph.
+   */
+  private static final class Delimiters {
+
+    private final List<Hint> hints = new ArrayList<>();
+    private Delimiter first;
+    private Delimiter last;
+
+    void add(Delimiter delimiter) {
+      delimiter.previous = this.last;
+      if (this.last == null) {
+        this.first = delimiter;
+      } else {
+        this.last.next = delimiter;
+      }
+      this.last = delimiter;
+    }
+
+    private void remove(Delimiter delimiter) {
+      if (delimiter.previous == null) {
+        this.first = delimiter.next;
+      } else {
+        delimiter.previous.next = delimiter.next;
+      }
+      if (delimiter.next == null) {
+        this.last = delimiter.previous;
+      } else {
+        delimiter.next.previous = delimiter.previous;
+      }
+    }
+
+    // Mirrors HintDelimiterProcessor.process
+    private static int used(Delimiter opener, Delimiter closer) {
+      if ((opener.canClose || closer.canOpen)
+          && closer.originalLength % 3 != 0
+          && (opener.originalLength + closer.originalLength) % 3 == 0) {
+        return 0;
+      }
+      return opener.length() >= 2 && closer.length() >= 2 ? 2 : 1;
+    }
+
+    /**
+     * Matches openers to closers exactly as CommonMark's inline parser does,
+     * recording a hint per match.
+     */
+    void process() {
+      Delimiter openersBottom = null;
+      Delimiter closer = this.first;
+      while (closer != null) {
+        if (!closer.canClose) {
+          closer = closer.next;
+          continue;
+        }
+        int used = 0;
+        boolean potentialOpenerFound = false;
+        Delimiter opener = closer.previous;
+        while (opener != null && opener != openersBottom) {
+          if (opener.canOpen && opener.c == closer.c) {
+            potentialOpenerFound = true;
+            used = used(opener, closer);
+            if (used > 0) {
+              break;
+            }
+          }
+          opener = opener.previous;
+        }
+        if (used == 0) {
+          if (!potentialOpenerFound) {
+            openersBottom = closer.previous;
+            if (!closer.canOpen) {
+              remove(closer);
+            }
+          }
+          closer = closer.next;
+          continue;
+        }
+        this.hints.add(new Hint(opener.start + opener.originalLength - opener.usedAsOpener,
+            closer.start + closer.usedAsCloser, used));
+        opener.usedAsOpener += used;
+        closer.usedAsCloser += used;
+        for (Delimiter between = opener.next; between != closer; between = between.next) {
+          remove(between);
+        }
+        if (opener.length() == 0) {
+          remove(opener);
+        }
+        if (closer.length() == 0) {
+          final Delimiter next = closer.next;
+          remove(closer);
+          closer = next;
+        }
+      }
+    }
+
+  }
+
+}
@@ -17,6 +17,7 @@ package filethesebirds.munin.digest.motion;
 import filethesebirds.munin.digest.Motion;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 import java.util.function.Function;
 
@@ -76,6 +77,28 @@ class ImmutableExtract implements Extract {
         : ImmutableExtract.createFromMotion(base().additionalTaxa(Set.of(taxonCode)), hints(), n));
   }
 
+  @Override
+  public Extract purifyHints(Map<String, String> hints, Map<String, String> vagueHints) {
+    if (hints.isEmpty() && vagueHints.isEmpty()) {
+      return this;
+    }
+    final Set<String> taxa = new HashSet<>();
+    final Set<String> newHints = unpurified(hints(), hints, taxa);
+    final Set<String> newVagueHints = unpurified(vagueHints(), vagueHints, taxa);
+    return ImmutableExtract.createFromMotion(taxa.isEmpty() ? base() : base().additionalTaxa(taxa),
+        newHints, newVagueHints);
+  }
+
+  private static Set<String> unpurified(Set<String> oldHints, Map<String, String> purified, Set<String> taxa) {
+    final Set<String> newHints = new HashSet<>(oldHints);
+    purified.forEach((hint, taxonCode) -> {
+      if (newHints.remove(hint) && taxonCode != null) {
+        taxa.add(taxonCode);
+      }
+    });
+    return newHints;
+  }
+
   private Extract purify(String hint, Set<String> oldHints,
                          Function<Set<String>, Extract> generator) {
     if (oldHints.contains(hint)) {
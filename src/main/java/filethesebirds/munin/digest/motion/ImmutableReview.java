@@ -14,9 +14,9 @@
 
 package filethesebirds.munin.digest.motion;
 
+import filethesebirds.munin.digest.TaxonSet;
 import filethesebirds.munin.digest.Users;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.Locale;
 import java.util.Set;
 import swim.recon.Recon;
@@ -62,13 +62,9 @@ class ImmutableReview implements Review {
     if (append == null || append.isEmpty()) {
       return this;
     }
-    if (plusTaxa().isEmpty()) {
-      return ImmutableReview.plus(reviewer(), Collections.unmodifiableSet(append));
-    }
-    final Set<String> union = new HashSet<>();
-    union.addAll(plusTaxa());
-    union.addAll(append);
-    return ImmutableReview.plus(reviewer(), Collections.unmodifiableSet(union));
+    final TaxonSet plusTaxa = TaxonSet.copyOf(plusTaxa()),
+        union = plusTaxa.union(append);
+    return union == plusTaxa ? this : ImmutableReview.plus(reviewer(), union);
   }
 
   @Override
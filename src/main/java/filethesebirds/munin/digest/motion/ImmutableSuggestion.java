@@ -14,8 +14,7 @@
 
 package filethesebirds.munin.digest.motion;
 
-import java.util.Collections;
-import java.util.HashSet;
+import filethesebirds.munin.digest.TaxonSet;
 import java.util.Set;
 import swim.recon.Recon;
 import swim.structure.Attr;
@@ -27,48 +26,38 @@ import static filethesebirds.munin.digest.Forms.forSetString;
 
 class ImmutableSuggestion implements Suggestion {
 
-  private static final ImmutableSuggestion EMPTY = new ImmutableSuggestion(Collections.emptySet(), Collections.emptySet());
+  private static final ImmutableSuggestion EMPTY = new ImmutableSuggestion(null, null);
 
-  private final Set<String> plusTaxa;
-  private final Set<String> overrideTaxa;
+  private final TaxonSet plusTaxa;
+  private final TaxonSet overrideTaxa;
 
   private ImmutableSuggestion(Set<String> plusTaxa, Set<String> overrideTaxa) {
     if (overrideTaxa == null || overrideTaxa.isEmpty()) {
-      this.overrideTaxa = Collections.emptySet();
-      if (plusTaxa == null || plusTaxa.isEmpty()) {
-        this.plusTaxa = Collections.emptySet();
-      } else {
-        this.plusTaxa = Set.copyOf(plusTaxa);
-      }
+      this.overrideTaxa = TaxonSet.empty();
+      this.plusTaxa = TaxonSet.copyOf(plusTaxa);
     } else {
-      this.plusTaxa = Collections.emptySet();
-      this.overrideTaxa = Set.copyOf(overrideTaxa);
+      this.plusTaxa = TaxonSet.empty();
+      this.overrideTaxa = TaxonSet.copyOf(overrideTaxa);
     }
   }
 
   @Override
-  public Set<String> plusTaxa() {
+  public TaxonSet plusTaxa() {
     return this.plusTaxa;
   }
 
   @Override
-  public Set<String> overrideTaxa() {
+  public TaxonSet overrideTaxa() {
     return this.overrideTaxa;
   }
 
   @Override
   public Suggestion additionalTaxa(Set<String> append) {
-    if (!overrideTaxa().isEmpty() || append == null || append.isEmpty()
-        || plusTaxa().containsAll(append)) {
+    if (!overrideTaxa().isEmpty() || append == null || append.isEmpty()) {
       return this;
     }
-    if (plusTaxa().isEmpty()) {
-      return ImmutableSuggestion.plus(append);
-    }
-    final Set<String> union = new HashSet<>();
-    union.addAll(plusTaxa());
-    union.addAll(append);
-    return ImmutableSuggestion.plus(union);
+    final TaxonSet union = plusTaxa().union(append);
+    return union == plusTaxa() ? this : ImmutableSuggestion.plus(union);
   }
 
   @Override
@@ -0,0 +1,40 @@
+// Copyright 2015-2023 Swim.inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package filethesebirds.munin.digest.motion;
+
+import filethesebirds.munin.connect.ebird.EBirdApiException;
+
+/**
+ * Signals that some of a batch of hint lookups failed, while preserving what
+ * the rest of the batch resolved.
+ */
+public class IncompletePurificationException extends EBirdApiException {
+
+  private final transient Extract partial;
+
+  public IncompletePurificationException(Extract partial, Throwable cause) {
+    super("Failed to purify every hint", cause);
+    this.partial = partial;
+  }
+
+  /**
+   * Returns the extract with every successful lookup of the batch merged in;
+   * only the failed hints remain unpurified.
+   */
+  public Extract partial() {
+    return this.partial;
+  }
+
+}
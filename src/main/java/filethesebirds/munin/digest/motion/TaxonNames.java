@@ -0,0 +1,136 @@
+// Copyright 2015-2023 Swim.inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package filethesebirds.munin.digest.motion;
+
+import filethesebirds.munin.Utils;
+import filethesebirds.munin.digest.Taxonomy;
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Exact-match index from normalized common names to taxon codes.
+ *
+ * <p>Every name is passed through the same {@link ExtractingVisitor#cleanHint}
+ * and {@link ExtractingVisitor#normalize} steps that produce hints, so a hint
+ * that spells out a common name resolves here without consulting eBird. Names
+ * come from {@link Taxonomy}, plus optional rows of the form {@code code,name}
+ * (e.g. other locales' common names) in a supplementary file. Names that
+ * normalize identically for different codes are ambiguous and never resolve.
+ */
+final class TaxonNames {
+
+  private TaxonNames() {
+  }
+
+  private static final String[] NAMES; // sorted
+  private static final int[] INDICES; // Taxonomy index for each name, -1 if ambiguous
+
+  static {
+    final int size = Taxonomy.size();
+    String[] names = new String[size];
+    int[] indices = new int[size];
+    for (int i = 0; i < size; i++) {
+      names[i] = normalizedName(Taxonomy.commonNameAt(i));
+      indices[i] = i;
+    }
+    int count = size;
+    try (InputStream is = Utils.openConfigFile(System.getProperty("taxonomy.names.conf"),
+            "/ebird-taxa-names.csv")) {
+      if (is != null) {
+        final BufferedReader br = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8));
+        String line;
+        while ((line = br.readLine()) != null) {
+          final int comma = line.indexOf(',');
+          final int index = comma < 0 ? -1 : Taxonomy.index(line, 0, comma);
+          if (index >= 0) {
+            if (count == names.length) {
+              names = Arrays.copyOf(names, count << 1);
+              indices = Arrays.copyOf(indices, count << 1);
+            }
+            names[count] = normalizedName(line.substring(comma + 1));
+            indices[count] = index;
+            count++;
+          }
+        }
+      }
+    } catch (Exception e) {
+      System.out.println("[WARN] Failed to load supplementary taxon names: " + e.getMessage());
+    }
+    final Integer[] order = new Integer[count];
+    for (int i = 0; i < count; i++) {
+      order[i] = i;
+    }
+    final String[] unsorted = names;
+    Arrays.sort(order, (a, b) -> unsorted[a].compareTo(unsorted[b]));
+    // Collapse duplicate names, marking those that disagree on a code as ambiguous
+    int distinct = 0;
+    final String[] sortedNames = new String[count];
+    final int[] sortedIndices = new int[count];
+    for (int i = 0; i < count; i++) {
+      final String name = names[order[i]];
+      final int index = indices[order[i]];
+      if (name.isEmpty()) {
+        continue;
+      }
+      if (distinct > 0 && sortedNames[distinct - 1].equals(name)) {
+        if (sortedIndices[distinct - 1] != index) {
+          sortedIndices[distinct - 1] = -1;
+        }
+      } else {
+        sortedNames[distinct] = name;
+        sortedIndices[distinct] = index;
+        distinct++;
+      }
+    }
+    NAMES = Arrays.copyOf(sortedNames, distinct);
+    INDICES = Arrays.copyOf(sortedIndices, distinct);
+  }
+
+  private static String normalizedName(String name) {
+    return ExtractingVisitor.normalizedHint(name);
+  }
+
+  static int size() {
+    return NAMES.length;
+  }
+
+  static String nameAt(int i) {
+    return NAMES[i];
+  }
+
+  /**
+   * Returns the {@link Taxonomy} index for the {@code i}th name, or {@code -1}
+   * if that name is ambiguous.
+   */
+  static int taxonomyIndexAt(int i) {
+    return INDICES[i];
+  }
+
+  /**
+   * Returns the code whose normalized common name exactly equals {@code hint},
+   * or {@code null} if there is no unambiguous such code.
+   */
+  static String resolve(String hint) {
+    final int i = Arrays.binarySearch(NAMES, hint);
+    if (i < 0 || INDICES[i] < 0) {
+      return null;
+    }
+    return Taxonomy.codeAt(INDICES[i]);
+  }
+
+}
@@ -0,0 +1,426 @@
+// Copyright 2015-2023 Swim.inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package filethesebirds.munin.digest.motion;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.LongSupplier;
+
+/**
+ * A bounded concurrent cache with a Window TinyLFU eviction policy.
+ *
+ * <p>New entries land in a small LRU <i>window</i>. Entries that overflow the
+ * window become candidates for the <i>main</i> space, a segmented LRU split
+ * into probation and protected segments, and are admitted only if a
+ * count-min sketch of recent access frequencies rates them above the
+ * probation segment's least recently used entry, which is otherwise the one
+ * evicted. One-hit wonders thus churn through the window without displacing
+ * entries that are hit repeatedly.
+ *
+ * <p>Reads are lock-free; the policy bookkeeping they trigger is skipped
+ * whenever another thread holds the policy lock. Writes take the lock and
+ * evict in amortized constant time, so no periodic scan is ever needed.
+ * Entries may also expire a fixed time after they were written, which is
+ * checked (and the entry dropped) lazily upon reads.
+ */
+final class TinyLfuCache<K, V> {
+
+  private static final int WINDOW = 0;
+  private static final int PROBATION = 1;
+  private static final int PROTECTED = 2;
+
+  private final ConcurrentHashMap<K, Node<K, V>> data;
+  private final ReentrantLock policyLock;
+  private final FrequencySketch sketch;
+  private final long maximumSize;
+  private final long maximumWindowSize;
+  private final long maximumProtectedSize;
+  private final long expireAfterWriteNanos;
+  private final LongSupplier ticker;
+
+  // Guarded by policyLock
+  private final Queue<K, V> window;
+  private final Queue<K, V> probation;
+  private final Queue<K, V> protectedQueue;
+  private long size;
+
+  private final LongAdder hits;
+  private final LongAdder misses;
+  private final LongAdder evictions;
+  private final LongAdder expirations;
+
+  /**
+   * @param maximumSize            the most entries to retain
+   * @param windowPercent          the share, in percent, of {@code
+   *                               maximumSize} that goes to the admission
+   *                               window
+   * @param expireAfterWriteNanos  how long an entry stays readable after it
+   *                               is written, or a nonpositive value for no
+   *                               expiry
+   */
+  TinyLfuCache(long maximumSize, int windowPercent, long expireAfterWriteNanos) {
+    this(maximumSize, windowPercent, expireAfterWriteNanos, System::nanoTime);
+  }
+
+  TinyLfuCache(long maximumSize, int windowPercent, long expireAfterWriteNanos, LongSupplier ticker) {
+    if (maximumSize < 1) {
+      throw new IllegalArgumentException("Maximum size must be positive: " + maximumSize);
+    }
+    if (windowPercent < 1 || windowPercent > 100) {
+      throw new IllegalArgumentException("Window percent must lie in [1, 100]: " + windowPercent);
+    }
+    this.data = new ConcurrentHashMap<>();
+    this.policyLock = new ReentrantLock();
+    this.sketch = new FrequencySketch(maximumSize);
+    this.maximumSize = maximumSize;
+    this.maximumWindowSize = Math.max(1L, maximumSize * windowPercent / 100);
+    // Protected entries fill 80% of the main space, as in segmented LRU
+    this.maximumProtectedSize = (maximumSize - this.maximumWindowSize) * 4 / 5;
+    this.expireAfterWriteNanos = expireAfterWriteNanos;
+    this.ticker = ticker;
+    this.window = new Queue<>();
+    this.probation = new Queue<>();
+    this.protectedQueue = new Queue<>();
+    this.size = 0L;
+    this.hits = new LongAdder();
+    this.misses = new LongAdder();
+    this.evictions = new LongAdder();
+    this.expirations = new LongAdder();
+  }
+
+  V get(K key) {
+    final Node<K, V> node = this.data.get(key);
+    if (node == null) {
+      this.misses.increment();
+      return null;
+    }
+    if (hasExpired(node)) {
+      this.misses.increment();
+      this.policyLock.lock();
+      try {
+        if (hasExpired(node) && this.data.remove(key, node)) {
+          unlink(node);
+          this.expirations.increment();
+        }
+      } finally {
+        this.policyLock.unlock();
+      }
+      return null;
+    }
+    this.hits.increment();
+    // Reordering is best-effort; a busy lock means a dropped access, not a wait
+    if (this.policyLock.tryLock()) {
+      try {
+        onAccess(node);
+      } finally {
+        this.policyLock.unlock();
+      }
+    }
+    return node.value;
+  }
+
+  void put(K key, V value) {
+    if (key == null || value == null) {
+      throw new NullPointerException();
+    }
+    this.policyLock.lock();
+    try {
+      final Node<K, V> existing = this.data.get(key);
+      if (existing != null) {
+        existing.value = value;
+        existing.writeTime = this.ticker.getAsLong();
+        onAccess(existing);
+        return;
+      }
+      final Node<K, V> node = new Node<>(key, value, this.ticker.getAsLong());
+      this.data.put(key, node);
+      this.sketch.increment(key);
+      node.queue = WINDOW;
+      this.window.addLast(node);
+      this.size++;
+      evict();
+    } finally {
+      this.policyLock.unlock();
+    }
+  }
+
+  void invalidate(K key) {
+    this.policyLock.lock();
+    try {
+      final Node<K, V> node = this.data.remove(key);
+      if (node != null) {
+        unlink(node);
+      }
+    } finally {
+      this.policyLock.unlock();
+    }
+  }
+
+  /**
+   * Feeds every unexpired entry to {@code action}, with the same weak
+   * consistency as iterating a {@code ConcurrentHashMap}.
+   */
+  void forEach(BiConsumer<? super K, ? super V> action) {
+    for (Node<K, V> node : this.data.values()) {
+      if (!hasExpired(node)) {
+        action.accept(node.key, node.value);
+      }
+    }
+  }
+
+  private boolean hasExpired(Node<K, V> node) {
+    return this.expireAfterWriteNanos > 0L
+        && this.ticker.getAsLong() - node.writeTime >= this.expireAfterWriteNanos;
+  }
+
+  private void onAccess(Node<K, V> node) {
+    if (node.queue < 0) {
+      return; // evicted by the time we got the lock
+    }
+    this.sketch.increment(node.key);
+    if (node.queue == WINDOW) {
+      this.window.moveToLast(node);
+    } else if (node.queue == PROBATION) {
+      this.probation.remove(node);
+      node.queue = PROTECTED;
+      this.protectedQueue.addLast(node);
+      while (this.protectedQueue.size > this.maximumProtectedSize) {
+        final Node<K, V> demoted = this.protectedQueue.removeFirst();
+        demoted.queue = PROBATION;
+        this.probation.addLast(demoted);
+      }
+    } else {
+      this.protectedQueue.moveToLast(node);
+    }
+  }
+
+  private void evict() {
+    while (this.window.size > this.maximumWindowSize) {
+      final Node<K, V> candidate = this.window.removeFirst();
+      candidate.queue = PROBATION;
+      this.probation.addLast(candidate);
+      if (this.size > this.maximumSize) {
+        final Node<K, V> victim = this.probation.first;
+        if (victim == candidate
+            || this.sketch.frequency(candidate.key) <= this.sketch.frequency(victim.key)) {
+          evict(candidate);
+        } else {
+          evict(victim);
+        }
+      }
+    }
+    while (this.size > this.maximumSize) {
+      final Node<K, V> victim = this.probation.first != null ? this.probation.first
+          : this.protectedQueue.first != null ? this.protectedQueue.first
+          : this.window.first;
+      evict(victim);
+    }
+  }
+
+  private void evict(Node<K, V> node) {
+    this.data.remove(node.key, node);
+    unlink(node);
+    this.evictions.increment();
+  }
+
+  private void unlink(Node<K, V> node) {
+    if (node.queue == WINDOW) {
+      this.window.remove(node);
+    } else if (node.queue == PROBATION) {
+      this.probation.remove(node);
+    } else if (node.queue == PROTECTED) {
+      this.protectedQueue.remove(node);
+    } else {
+      return;
+    }
+    node.queue = -1;
+    this.size--;
+  }
+
+  long size() {
+    return this.data.size();
+  }
+
+  long hits() {
+    return this.hits.sum();
+  }
+
+  long misses() {
+    return this.misses.sum();
+  }
+
+  long evictions() {
+    return this.evictions.sum();
+  }
+
+  long expirations() {
+    return this.expirations.sum();
+  }
+
+  double hitRate() {
+    final long hits = hits();
+    final long lookups = hits + misses();
+    return lookups == 0L ? 0.0 : (double) hits / lookups;
+  }
+
+  private static final class Node<K, V> {
+
+    private final K key;
+    private volatile V value;
+    private volatile long writeTime;
+    // Guarded by policyLock
+    private int queue;
+    private Node<K, V> prev;
+    private Node<K, V> next;
+
+    private Node(K key, V value, long writeTime) {
+      this.key = key;
+      this.value = value;
+      this.writeTime = writeTime;
+      this.queue = -1;
+    }
+
+  }
+
+  /**
+   * An intrusive doubly linked list of nodes, least recently used first.
+   */
+  private static final class Queue<K, V> {
+
+    private Node<K, V> first;
+    private Node<K, V> last;
+    private long size;
+
+    private void addLast(Node<K, V> node) {
+      node.prev = this.last;
+      node.next = null;
+      if (this.last == null) {
+        this.first = node;
+      } else {
+        this.last.next = node;
+      }
+      this.last = node;
+      this.size++;
+    }
+
+    private Node<K, V> removeFirst() {
+      final Node<K, V> node = this.first;
+      remove(node);
+      return node;
+    }
+
+    private void remove(Node<K, V> node) {
+      if (node.prev == null) {
+        this.first = node.next;
+      } else {
+        node.prev.next = node.next;
+      }
+      if (node.next == null) {
+        this.last = node.prev;
+      } else {
+        node.next.prev = node.prev;
+      }
+      node.prev = null;
+      node.next = null;
+      this.size--;
+    }
+
+    private void moveToLast(Node<K, V> node) {
+      if (node != this.last) {
+        remove(node);
+        addLast(node);
+      }
+    }
+
+  }
+
+  /**
+   * A count-min sketch of 4-bit counters, four per key, that halves every
+   * counter once it has absorbed ten increments per entry of capacity, so
+   * that frequencies reflect recent history.
+   */
+  static final class FrequencySketch {
+
+    private static final long[] SEEDS = {
+        0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long ONE_MASK = 0x1111111111111111L;
+
+    private final long[] table;
+    private final int sampleSize;
+    private int additions;
+
+    FrequencySketch(long maximumSize) {
+      final int capacity = (int) Math.min(maximumSize, 1 << 24);
+      this.table = new long[Math.max(1, Integer.highestOneBit(capacity - 1) << 1)];
+      this.sampleSize = 10 * Math.max(1, capacity);
+      this.additions = 0;
+    }
+
+    private static int spread(int x) {
+      x = ((x >>> 16) ^ x) * 0x45d9f3b;
+      x = ((x >>> 16) ^ x) * 0x45d9f3b;
+      return (x >>> 16) ^ x;
+    }
+
+    private int indexOf(int hash, int i) {
+      long h = (hash + SEEDS[i]) * SEEDS[i];
+      h += h >>> 32;
+      return (int) h & (this.table.length - 1);
+    }
+
+    int frequency(Object key) {
+      final int hash = spread(key.hashCode());
+      final int start = (hash & 3) << 2;
+      int frequency = Integer.MAX_VALUE;
+      for (int i = 0; i < 4; i++) {
+        final int shift = (start + i) << 2;
+        frequency = Math.min(frequency, (int) ((this.table[indexOf(hash, i)] >>> shift) & 0xfL));
+      }
+      return frequency;
+    }
+
+    void increment(Object key) {
+      final int hash = spread(key.hashCode());
+      final int start = (hash & 3) << 2;
+      boolean added = false;
+      for (int i = 0; i < 4; i++) {
+        final int index = indexOf(hash, i);
+        final int shift = (start + i) << 2;
+        final long mask = 0xfL << shift;
+        if ((this.table[index] & mask) != mask) {
+          this.table[index] += 1L << shift;
+          added = true;
+        }
+      }
+      if (added && ++this.additions == this.sampleSize) {
+        reset();
+      }
+    }
+
+    private void reset() {
+      int odd = 0;
+      for (int i = 0; i < this.table.length; i++) {
+        odd += Long.bitCount(this.table[i] & ONE_MASK);
+        this.table[i] = (this.table[i] >>> 1) & RESET_MASK;
+      }
+      this.additions = (this.additions - (odd >>> 2)) >>> 1;
+    }
+
+  }
+
+}
@@ -15,15 +15,17 @@
 package filethesebirds.munin.swim;
 
 import filethesebirds.munin.Utils;
+import filethesebirds.munin.connect.reddit.RedditBudget;
 import filethesebirds.munin.connect.reddit.RedditClient;
 import filethesebirds.munin.digest.Comment;
 import filethesebirds.munin.digest.Submission;
 import filethesebirds.munin.digest.Users;
-import filethesebirds.munin.digest.motion.HintCache;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 import swim.structure.Text;
 
 final class CommentsFetchAgentLogic {
@@ -46,8 +48,9 @@ final class CommentsFetchAgentLogic {
       runtime.didFail(e);
     }
     if (runtime.afterId10 > 0) {
-      runtime.fetchTimer = Logic.scheduleRecurringBlocker(runtime, caller, runtime::fetchTimer,
-          1000L, 60000L, () -> new GatherAgentTask(runtime).run());
+      runtime.fetchTimer = Logic.scheduleRecurringAsync(runtime, caller, runtime::fetchTimer,
+          1000L, () -> Shared.redditClient().budget().periodMillis(RedditBudget.Use.COMMENTS),
+          () -> new GatherAgentTask(runtime).run());
     } else {
       Logic.error(runtime, caller, "Timer did not fire due to invalid initial conditions");
     }
@@ -75,26 +78,50 @@ final class CommentsFetchAgentLogic {
     private final CommentsFetchAgent runtime;
     private final long oldBookmarkId10;
     private long newBookmarkId10;
+    private int requests;
 
     private GatherAgentTask(CommentsFetchAgent runtime) {
       this.runtime = runtime;
       this.oldBookmarkId10 = runtime.afterId10;
       this.newBookmarkId10 = this.oldBookmarkId10;
+      this.requests = 0;
     }
 
-    void run() {
-      gatherComments(RedditClient::fetchMaxUndocumentedComments);
-      if (this.runtime.afterId10 == this.newBookmarkId10 && Math.random() < .2) {
-        Logic.debug(this.runtime, CALLER_TASK, "Will cue HintCache prune");
-        HintCache.prune();
-      }
-      this.runtime.afterId10 = this.newBookmarkId10;
+    CompletableFuture<Void> run() {
+      return gatherComments(RedditClient::fetchMaxUndocumentedCommentsAsync)
+          .thenCompose(v -> onAgent(() -> {
+            this.runtime.afterId10 = this.newBookmarkId10;
+            Shared.redditClient().budget().recordRun(RedditBudget.Use.COMMENTS, this.requests);
+            return null;
+          }));
     }
 
-    private void gatherComments(RedditClient.Callable<Comment[]> action) {
-      Logic.doRedditCallable(this.runtime, CALLER_TASK, "getNewComments", action)
-          .flatMap(response -> processBatch(response.essence()))
-          .ifPresent(fullname -> gatherComments(client -> client.fetchUndocumentedCommentsAfter(fullname)));
+    /**
+     * Runs {@code logic} on the agent's own thread, returning a future of its
+     * result; responses arrive on HTTP client threads, but this task's state,
+     * commands, and logging belong to the agent.
+     */
+    private <T> CompletableFuture<T> onAgent(Supplier<T> logic) {
+      final CompletableFuture<T> result = new CompletableFuture<>();
+      Logic.executeNonBlocker(this.runtime, CALLER_TASK, () -> {
+        try {
+          result.complete(logic.get());
+        } catch (RuntimeException e) {
+          // Reported once, by whoever awaits the result
+          result.completeExceptionally(e);
+        }
+      });
+      return result;
+    }
+
+    // Each page is requested only once the previous one has been processed
+    private CompletableFuture<Void> gatherComments(RedditClient.AsyncCallable<Comment[]> action) {
+      this.requests++;
+      return Logic.doRedditCallableAsync(this.runtime, CALLER_TASK, "getNewComments", action)
+          .thenCompose(response -> onAgent(() -> response.flatMap(r -> processBatch(r.essence()))))
+          .thenCompose(next -> next
+              .map(fullname -> gatherComments(client -> client.fetchUndocumentedCommentsAfterAsync(fullname)))
+              .orElse(CompletableFuture.completedFuture(null)));
     }
 
     private Optional<String> processBatch(Comment[] batch) {
@@ -15,13 +15,16 @@
 package filethesebirds.munin.swim;
 
 import filethesebirds.munin.connect.http.HttpConnectException;
+import filethesebirds.munin.connect.http.HttpUtils;
 import filethesebirds.munin.connect.http.StatusCodeException;
 import filethesebirds.munin.connect.reddit.RedditClient;
 import filethesebirds.munin.connect.reddit.RedditResponse;
 import filethesebirds.munin.connect.vault.VaultClient;
 import java.net.http.HttpTimeoutException;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
+import java.util.function.LongSupplier;
 import java.util.function.Supplier;
 import swim.api.agent.AbstractAgent;
 import swim.concurrent.AbstractTask;
@@ -89,10 +92,49 @@ final class Logic {
     task.cue();
   }
 
+  /**
+   * Like {@link #executeBlocker}, but for cheap logic that never blocks, e.g.
+   * handing the result of an asynchronous call back to {@code runtime}.
+   */
+  static void executeNonBlocker(AbstractAgent runtime, String caller, Runnable logic) {
+    final TaskRef task = runtime.asyncStage().task(new AbstractTask() {
+
+      @Override
+      public void runTask() {
+        final String innerCaller = caller + " (async)";
+        try {
+          logic.run();
+        } catch (Exception e) {
+          error(runtime, innerCaller, "Asynchronous continuation failed");
+          runtime.didFail(e);
+        }
+      }
+
+      @Override
+      public boolean taskWillBlock() {
+        return false;
+      }
+
+    });
+    task.cue();
+  }
+
   static TimerRef scheduleRecurringBlocker(AbstractAgent runtime, String caller,
                                            Supplier<TimerRef> timerSupplier,
                                            long initialDelay, long period,
                                            Runnable logic) {
+    return scheduleRecurringBlocker(runtime, caller, timerSupplier, initialDelay, () -> period, logic);
+  }
+
+  /**
+   * Like {@link #scheduleRecurringBlocker(AbstractAgent, String, Supplier,
+   * long, long, Runnable)}, but asks {@code period} for the delay between
+   * runs as each one ends, so that it can reflect what the run observed.
+   */
+  static TimerRef scheduleRecurringBlocker(AbstractAgent runtime, String caller,
+                                           Supplier<TimerRef> timerSupplier,
+                                           long initialDelay, LongSupplier period,
+                                           Runnable logic) {
     if (cancelTimer(timerSupplier.get())) {
       debug(runtime, caller, "Preempted existing timer");
     }
@@ -102,7 +144,7 @@ final class Logic {
       public void runTask() {
         final String innerCaller = caller + " (recurringBlocker)";
         trace(runtime, innerCaller, "Task begin");
-        final long nextFire = System.currentTimeMillis() + period;
+        final long started = System.currentTimeMillis();
         try {
           logic.run();
           debug(runtime, innerCaller, "Task executed successfully");
@@ -110,8 +152,8 @@ final class Logic {
           warn(runtime, innerCaller, "Task execution failed (timer remains active)");
           runtime.didFail(e);
         }
-        final long next = Math.max(1000L, nextFire - System.currentTimeMillis());
-        timerSupplier.get().reschedule(Math.max(1000L, nextFire - System.currentTimeMillis()));
+        final long next = Math.max(1000L, started + period.getAsLong() - System.currentTimeMillis());
+        timerSupplier.get().reschedule(next);
         debug(runtime, innerCaller, "Task rescheduled for execution in " + next + " ms");
       }
 
@@ -130,6 +172,45 @@ final class Logic {
     });
   }
 
+  /**
+   * Like {@link #scheduleRecurringBlocker}, but {@code logic} only starts
+   * asynchronous work, and the timer is rescheduled when that work completes.
+   * No thread is occupied in between. {@code period} is consulted as each
+   * run ends.
+   */
+  static TimerRef scheduleRecurringAsync(AbstractAgent runtime, String caller,
+                                         Supplier<TimerRef> timerSupplier,
+                                         long initialDelay, LongSupplier period,
+                                         Supplier<CompletableFuture<?>> logic) {
+    if (cancelTimer(timerSupplier.get())) {
+      debug(runtime, caller, "Preempted existing timer");
+    }
+    debug(runtime, caller, "Recurring asynchronous task scheduled for execution in " + initialDelay + " ms");
+    return runtime.setTimer(initialDelay, () -> {
+      final String innerCaller = caller + " (recurringAsync)";
+      trace(runtime, innerCaller, "Task begin");
+      final long started = System.currentTimeMillis();
+      CompletableFuture<?> work;
+      try {
+        work = logic.get();
+      } catch (RuntimeException e) {
+        work = CompletableFuture.failedFuture(e);
+      }
+      // work may complete on any thread; the timer belongs to the agent's
+      work.whenComplete((v, e) -> executeNonBlocker(runtime, caller, () -> {
+        if (e == null) {
+          debug(runtime, innerCaller, "Task executed successfully");
+        } else {
+          warn(runtime, innerCaller, "Task execution failed (timer remains active)");
+          runtime.didFail(HttpUtils.unwrap(e));
+        }
+        final long next = Math.max(1000L, started + period.getAsLong() - System.currentTimeMillis());
+        timerSupplier.get().reschedule(next);
+        debug(runtime, innerCaller, "Task rescheduled for execution in " + next + " ms");
+      }));
+    });
+  }
+
   static boolean cancelTimer(TimerRef timer) {
     return timer != null && timer.cancel();
   }
@@ -163,16 +244,57 @@ final class Logic {
     return Optional.empty();
   }
 
-  static <V> void executeRedditCallable(AbstractAgent runtime, String caller, String actionName,
-                                       RedditClient.Callable<V> action) {
-    executeBlocker(runtime, caller, () -> doRedditCallable(runtime, caller, actionName, action));
+  /**
+   * The asynchronous counterpart of {@link #doRedditCallable(AbstractAgent,
+   * String, String, RedditClient.Callable, Consumer)}. The returned future
+   * never completes exceptionally for failures that method handles, and
+   * holds no thread while the call is in flight.
+   */
+  static <V> CompletableFuture<Optional<RedditResponse<V>>> doRedditCallableAsync(AbstractAgent runtime,
+        String caller, String actionName, RedditClient.AsyncCallable<V> action,
+        Consumer<StatusCodeException> onStatusCodeException) {
+    debug(runtime, caller, "Will perform Reddit " + actionName);
+    CompletableFuture<RedditResponse<V>> call;
+    try {
+      call = action.call(Shared.redditClient());
+    } catch (RuntimeException e) {
+      call = CompletableFuture.failedFuture(e);
+    }
+    return call.handle((response, e) -> {
+      if (e == null) {
+        return Optional.of(response);
+      }
+      final Throwable cause = HttpUtils.unwrap(e);
+      if (cause instanceof StatusCodeException) {
+        onStatusCodeException.accept((StatusCodeException) cause);
+      } else if (cause instanceof HttpConnectException && cause.getCause() instanceof HttpTimeoutException) {
+        error(runtime, caller, "(Reddit " + actionName + ") HTTP request timed out");
+      } else if (cause instanceof HttpConnectException) {
+        error(runtime, caller, "(Reddit " + actionName + ") Reddit client task encountered HTTP failure");
+        runtime.didFail(cause.getCause());
+      } else {
+        error(runtime, caller, "(Reddit " + actionName + ") Reddit client task failed");
+        runtime.didFail(cause);
+      }
+      return Optional.empty();
+    });
+  }
+
+  static <V> CompletableFuture<Optional<RedditResponse<V>>> doRedditCallableAsync(AbstractAgent runtime,
+        String caller, String actionName, RedditClient.AsyncCallable<V> action) {
+    return doRedditCallableAsync(runtime, caller, actionName, action,
+        e -> error(runtime, caller, "(Reddit " + actionName + ") " + formatStatusCodeExceptionMsg("", e)));
   }
 
-  static <V> void executeRedditCallable(AbstractAgent runtime, String caller, String actionName,
-                                        RedditClient.Callable<V> action,
-                                        Consumer<RedditResponse<V>> ifPresent) {
-    executeBlocker(runtime, caller, () -> doRedditCallable(runtime, caller, actionName, action)
-        .ifPresent(ifPresent));
+  /**
+   * Performs {@code action} without occupying a thread while it is in flight,
+   * then hands any response to {@code ifPresent} on {@code runtime}'s stage.
+   */
+  static <V> void executeRedditCallableAsync(AbstractAgent runtime, String caller, String actionName,
+                                             RedditClient.AsyncCallable<V> action,
+                                             Consumer<RedditResponse<V>> ifPresent) {
+    doRedditCallableAsync(runtime, caller, actionName, action)
+        .thenAccept(response -> response.ifPresent(r -> executeNonBlocker(runtime, caller, () -> ifPresent.accept(r))));
   }
 
   static <V> Optional<RedditResponse<V>> doRedditCallable(String actionName, RedditClient.Callable<V> action) {
@@ -192,15 +314,10 @@ final class Logic {
     return Optional.empty();
   }
 
-  static Optional<RedditResponse<Void>> doRedditDelete(AbstractAgent runtime, String caller,
-                                                       RedditClient.Callable<Void> action) {
+  static void executeRedditDeleteAsync(AbstractAgent runtime, String caller, RedditClient.AsyncCallable<Void> action) {
     // FIXME: Reddit responds with 200 even when it should throw 404.
     //   If it ever changes to throw 404, add a custom onStatusCodeException arg to the call below
-    return doRedditCallable(runtime, caller, "deleteComment", action);
-  }
-
-  static void executeRedditDelete(AbstractAgent runtime, String caller, RedditClient.Callable<Void> action) {
-    executeBlocker(runtime, caller, () -> doRedditDelete(runtime, caller, action));
+    doRedditCallableAsync(runtime, caller, "deleteComment", action);
   }
 
   private static String formatStatusCodeExceptionMsg(String prefix, StatusCodeException e) {
@@ -0,0 +1,215 @@
+// Copyright 2015-2023 Swim.inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package filethesebirds.munin.swim;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import swim.structure.Record;
+import swim.structure.Value;
+
+/**
+ * A fixed set of single-threaded "stripes" onto which CPU-bound comment
+ * parsing is offloaded from Web Agent threads.
+ *
+ * <p>Every task submitted under the same key (a submission ID) lands on the
+ * same stripe, so tasks for one submission start, finish, and hand off their
+ * results in submission order; tasks under different keys spread across
+ * stripes and thus across cores. A burst of long comments under one submission
+ * therefore only ever backs up its own stripe. Batches whose results need
+ * not be ordered (see {@link #executeAll}) are instead dealt across every
+ * stripe, so that the stripes remain the only threads that parse.
+ *
+ * <p>Queue depth and latency are tracked for {@link #drainStats()}.
+ */
+final class ParseExecutor {
+
+  private final ThreadPoolExecutor[] stripes;
+  private final AtomicInteger pending;
+  private final AtomicLong completed;
+  private final AtomicLong failed;
+  private final AtomicLong waitNanos;
+  private final AtomicLong maxWaitNanos;
+  private final AtomicLong workNanos;
+  private final AtomicLong maxWorkNanos;
+  private final AtomicInteger nextStripe;
+
+  ParseExecutor(int stripeCount) {
+    if (stripeCount < 1) {
+      throw new IllegalArgumentException("Stripe count must be positive: " + stripeCount);
+    }
+    this.stripes = new ThreadPoolExecutor[stripeCount];
+    for (int i = 0; i < stripeCount; i++) {
+      final String name = "munin-parse-" + i;
+      this.stripes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+          r -> {
+            final Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+          });
+    }
+    this.pending = new AtomicInteger(0);
+    this.completed = new AtomicLong(0L);
+    this.failed = new AtomicLong(0L);
+    this.waitNanos = new AtomicLong(0L);
+    this.maxWaitNanos = new AtomicLong(0L);
+    this.workNanos = new AtomicLong(0L);
+    this.maxWorkNanos = new AtomicLong(0L);
+    this.nextStripe = new AtomicInteger(0);
+  }
+
+  int stripeCount() {
+    return this.stripes.length;
+  }
+
+  private ThreadPoolExecutor stripe(String key) {
+    return this.stripes[Math.floorMod(key.hashCode(), this.stripes.length)];
+  }
+
+  /**
+   * Runs {@code work} on the stripe for {@code key}, then hands its result to
+   * {@code then} (or any {@code RuntimeException} it throws to {@code
+   * onFailure}) on that same stripe, before the stripe's next task begins.
+   *
+   * <p>Only {@code work} counts toward parse latency; {@code then} should be
+   * cheap, e.g. a handoff of the result back to the agent's own thread.
+   */
+  <T> void execute(String key, Supplier<? extends T> work, Consumer<? super T> then,
+                   Consumer<? super RuntimeException> onFailure) {
+    final long enqueued = System.nanoTime();
+    this.pending.incrementAndGet();
+    stripe(key).execute(() -> {
+      final long started = System.nanoTime();
+      this.pending.decrementAndGet();
+      record(this.waitNanos, this.maxWaitNanos, started - enqueued);
+      final T result;
+      try {
+        result = work.get();
+      } catch (RuntimeException e) {
+        this.failed.incrementAndGet();
+        onFailure.accept(e);
+        return;
+      } finally {
+        record(this.workNanos, this.maxWorkNanos, System.nanoTime() - started);
+      }
+      this.completed.incrementAndGet();
+      then.accept(result);
+    });
+  }
+
+  /**
+   * Runs {@code work} on every element of {@code inputs}, one task per
+   * element dealt round-robin across all stripes, then hands the results (in
+   * input order) to {@code then} on whichever stripe finishes last. If any
+   * task throws, remaining tasks skip their work and the first {@code
+   * RuntimeException} goes to {@code onFailure} instead.
+   *
+   * <p>Each element counts toward parse latency as its own task.
+   */
+  <A, T> void executeAll(List<? extends A> inputs, Function<? super A, ? extends T> work,
+                         Consumer<? super List<T>> then, Consumer<? super RuntimeException> onFailure) {
+    final int n = inputs.size();
+    if (n == 0) {
+      then.accept(List.of());
+      return;
+    }
+    final Object[] results = new Object[n];
+    final AtomicInteger remaining = new AtomicInteger(n);
+    final AtomicReference<RuntimeException> failure = new AtomicReference<>(null);
+    final int first = this.nextStripe.getAndAdd(n);
+    for (int i = 0; i < n; i++) {
+      final int index = i;
+      final A input = inputs.get(i);
+      final long enqueued = System.nanoTime();
+      this.pending.incrementAndGet();
+      this.stripes[Math.floorMod(first + i, this.stripes.length)].execute(() -> {
+        final long started = System.nanoTime();
+        this.pending.decrementAndGet();
+        record(this.waitNanos, this.maxWaitNanos, started - enqueued);
+        if (failure.get() == null) {
+          try {
+            results[index] = work.apply(input);
+            this.completed.incrementAndGet();
+          } catch (RuntimeException e) {
+            this.failed.incrementAndGet();
+            failure.compareAndSet(null, e);
+          } finally {
+            record(this.workNanos, this.maxWorkNanos, System.nanoTime() - started);
+          }
+        }
+        if (remaining.decrementAndGet() == 0) {
+          final RuntimeException e = failure.get();
+          if (e != null) {
+            onFailure.accept(e);
+          } else {
+            @SuppressWarnings("unchecked") final List<T> list = (List<T>) (List<?>) Arrays.asList(results);
+            then.accept(list);
+          }
+        }
+      });
+    }
+  }
+
+  private static void record(AtomicLong total, AtomicLong max, long nanos) {
+    total.addAndGet(nanos);
+    max.accumulateAndGet(nanos, Math::max);
+  }
+
+  /**
+   * Returns the number of tasks that have been submitted but not yet started.
+   */
+  int queueDepth() {
+    return this.pending.get();
+  }
+
+  /**
+   * Returns the number of tasks waiting behind the busiest single stripe.
+   */
+  int maxStripeDepth() {
+    int max = 0;
+    for (ThreadPoolExecutor stripe : this.stripes) {
+      max = Math.max(max, stripe.getQueue().size());
+    }
+    return max;
+  }
+
+  /**
+   * Returns a snapshot of current queue depths alongside task counts and
+   * latencies accumulated since the previous call, then resets the latter.
+   */
+  Value drainStats() {
+    final long completed = this.completed.getAndSet(0L);
+    final long failed = this.failed.getAndSet(0L);
+    final long finished = Math.max(1L, completed + failed);
+    return Record.create(9).attr("parseStats")
+        .slot("queueDepth", queueDepth())
+        .slot("maxStripeDepth", maxStripeDepth())
+        .slot("completed", completed)
+        .slot("failed", failed)
+        .slot("meanWaitUs", this.waitNanos.getAndSet(0L) / finished / 1000L)
+        .slot("maxWaitUs", this.maxWaitNanos.getAndSet(0L) / 1000L)
+        .slot("meanParseUs", this.workNanos.getAndSet(0L) / finished / 1000L)
+        .slot("maxParseUs", this.maxWorkNanos.getAndSet(0L) / 1000L);
+  }
+
+}
@@ -15,6 +15,7 @@
 package filethesebirds.munin.swim;
 
 import filethesebirds.munin.Utils;
+import filethesebirds.munin.connect.reddit.RedditBudget;
 import filethesebirds.munin.connect.reddit.RedditResponse;
 import filethesebirds.munin.digest.Answer;
 import filethesebirds.munin.digest.Comment;
@@ -29,8 +30,6 @@ import swim.structure.Value;
 
 final class PublishingAgentLogic {
 
-  private static final long PUBLISH_PERIOD_MS = 10L * 1000;
-
   private PublishingAgentLogic() {
   }
 
@@ -45,7 +44,7 @@ final class PublishingAgentLogic {
       Logic.trace(runtime, "answers", "End didUpdate()");
       return;
     }
-    final Answer nAnswer = Forms.forAnswer().cast(n);
+    final Answer nAnswer = Forms.castAnswer(n);
     if (nAnswer == null) {
       Logic.debug(runtime, "answers", "Ignoring downlink update with empty answer");
       Logic.trace(runtime, "answers", "End didUpdate()");
@@ -95,8 +94,9 @@ final class PublishingAgentLogic {
     if (runtime.publishQueue.isEmpty() && runtime.deleteQueue.isEmpty()) {
       Logic.info(runtime, "throttleTimer", "Idling timer due to lack of tasks");
     } else {
-      Logic.debug(runtime, "throttleTimer", "Rescheduling timer execution for " + PUBLISH_PERIOD_MS + " ms");
-      runtime.throttleTimer.reschedule(PUBLISH_PERIOD_MS);
+      final long period = Shared.redditClient().budget().periodMillis(RedditBudget.Use.PUBLISH);
+      Logic.debug(runtime, "throttleTimer", "Rescheduling timer execution for " + period + " ms");
+      runtime.throttleTimer.reschedule(period);
     }
   }
 
@@ -167,7 +167,7 @@ final class PublishingAgentLogic {
     Answer keepAnswer = thisPublishedAnswer;
     if (prevCommentId10 < thisCommentId10) {
       keepCommentId10 = prevCommentId10;
-      keepAnswer = Forms.forAnswer().cast(prevPublishedEntry.get("answer"));
+      keepAnswer = Forms.castAnswer(prevPublishedEntry.get("answer"));
       Logic.info(runtime, "addPublisherComment", "Will delete " + subId36 + "/" + Utils.id10To36(thisCommentId10)
           + " in favor of " + Utils.id10To36(prevCommentId10));
       runtime.deleteQueue.put(thisCommentId10, subId10);
@@ -200,13 +200,13 @@ final class PublishingAgentLogic {
     if (head instanceof Attr) {
       if ("answer".equals(head.key().stringValue(null))) {
         Logic.debug(runtime, "addPublisherComment", "publishedAnswers.get() yielded a properly formatted value");
-        return Forms.forAnswer().cast(v);
+        return Forms.castAnswer(v);
       } else {
         Logic.warn(runtime, "addPublisherComment", "publishedAnswers.get() yielded non-answer structure " + v
             + " (see https://github.com/swimos/swim/issues/107)");
         final Record tail = v.tail();
         if (tail.head() instanceof Attr && "answer".equals(tail.head().key().stringValue(null))) {
-          final Answer answer = Forms.forAnswer().cast(tail);
+          final Answer answer = Forms.castAnswer(tail);
           Logic.info(runtime, "addPublisherComment", "publishedAnswers.get() hacked extraction of " + answer);
           return answer;
         }
@@ -232,7 +232,7 @@ final class PublishingAgentLogic {
           subId36 = Utils.id10To36(subId10);
       runtime.deleteQueue.remove(commentId10);
       Logic.info(runtime, "throttleTimer", "Will asynchronously delete comment " + subId36 + "/" + commentId36);
-      Logic.executeRedditDelete(runtime, "throttleTimer", client -> client.removeEditDel("t1_" + commentId36));
+      Logic.executeRedditDeleteAsync(runtime, "throttleTimer", client -> client.removeEditDelAsync("t1_" + commentId36));
       return true;
     }
     return false;
@@ -262,7 +262,7 @@ final class PublishingAgentLogic {
       return false;
     }
     final Value publishedData = runtime.publishedAnswers.get(subId10);
-    final Answer publishedAnswer = Forms.forAnswer().cast(publishedData.get("answer"));
+    final Answer publishedAnswer = Forms.castAnswer(publishedData.get("answer"));
     if (!publishedAnswer.taxa().equals(toPublishAnswer.taxa())
         || !publishedAnswer.reviewers().equals(toPublishAnswer.reviewers())) {
       final long commentId10 = publishedData.get("id").longValue();
@@ -271,9 +271,9 @@ final class PublishingAgentLogic {
       Logic.info(runtime, "throttleTimer", "Will asynchronously edit comment "
           + subId36  + "/" + commentId36
           + " answer to " + toPublishAnswer);
-      Logic.executeRedditCallable(runtime, "throttleTimer", "editComment",
-          client -> client.publishEditEditusertext("t1_" + commentId36, Publication.publicationFromAnswer(toPublishAnswer)),
-          r -> onPublishResponse(runtime, subId10, r, c -> Logic.info(runtime, "throttleTimer (blocker)", "Successfully edited comment to " + c)));
+      Logic.executeRedditCallableAsync(runtime, "throttleTimer", "editComment",
+          client -> client.publishEditEditusertextAsync("t1_" + commentId36, Publication.publicationFromAnswer(toPublishAnswer)),
+          r -> onPublishResponse(runtime, subId10, r, c -> Logic.info(runtime, "throttleTimer (async)", "Successfully edited comment to " + c)));
       return true;
     }
     return false;
@@ -283,9 +283,9 @@ final class PublishingAgentLogic {
     final String subId36 = Utils.id10To36(subId10);
     Logic.info(runtime, "throttleTimer", "Will asynchronously create comment to submission "
         + subId36  + " with answer " + toPublishAnswer);
-    Logic.executeRedditCallable(runtime, "throttleTimer", "createComment",
-        client -> client.publishAnyComment("t3_" + Utils.id10To36(subId10), Publication.publicationFromAnswer(toPublishAnswer)),
-        r -> onPublishResponse(runtime, subId10, r, c -> Logic.info(runtime, "throttleTimer (blocker)", "Successfully created comment " + c)));
+    Logic.executeRedditCallableAsync(runtime, "throttleTimer", "createComment",
+        client -> client.publishAnyCommentAsync("t3_" + Utils.id10To36(subId10), Publication.publicationFromAnswer(toPublishAnswer)),
+        r -> onPublishResponse(runtime, subId10, r, c -> Logic.info(runtime, "throttleTimer (async)", "Successfully created comment " + c)));
   }
 
   private static void onPublishResponse(PublishingAgent runtime, long subId10, RedditResponse<Comment> response,
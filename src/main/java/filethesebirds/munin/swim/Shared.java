@@ -16,10 +16,15 @@ package filethesebirds.munin.swim;
 
 import filethesebirds.munin.Utils;
 import filethesebirds.munin.connect.ebird.EBirdClient;
+import filethesebirds.munin.connect.ebird.EBirdGateway;
+import filethesebirds.munin.connect.ebird.EBirdHedging;
 import filethesebirds.munin.connect.reddit.RedditClient;
 import filethesebirds.munin.connect.vault.VaultClient;
+import filethesebirds.munin.digest.motion.ExtractCache;
+import filethesebirds.munin.digest.motion.HintCache;
 import java.io.InputStream;
 import java.net.http.HttpClient;
+import java.nio.file.Path;
 
 /**
  * Utility class containing objects that might be used concurrently by multiple
@@ -29,6 +34,10 @@ public class Shared {
 
   private static final HttpClient HTTP_CLIENT = HttpClient.newHttpClient();
 
+  // Comment parsing is pure and CPU-bound, so it may borrow every core; striped
+  // so that each submission's comments stay in order, and also used for batches
+  private static final ParseExecutor PARSE_EXECUTOR = new ParseExecutor(Runtime.getRuntime().availableProcessors());
+
   private Shared() {
   }
 
@@ -36,6 +45,7 @@ public class Shared {
   private static EBirdClient eBirdClient = null;
   private static RedditClient redditClient = null;
   private static VaultClient vaultClient = null;
+  private static ExtractCache extractCache = null;
 
   public static LiveSubmissions liveSubmissions() {
     return Shared.liveSubmissions;
@@ -45,6 +55,10 @@ public class Shared {
     return HTTP_CLIENT;
   }
 
+  static ParseExecutor parseExecutor() {
+    return PARSE_EXECUTOR;
+  }
+
   public static EBirdClient eBirdClient() {
     return Shared.eBirdClient;
   }
@@ -57,6 +71,10 @@ public class Shared {
     return Shared.vaultClient;
   }
 
+  public static ExtractCache extractCache() {
+    return Shared.extractCache;
+  }
+
   public static void loadLiveSubmissions(Coalescence coalescence) {
     if (Shared.liveSubmissions != null) {
       throw new IllegalStateException("Multiple liveSubmissions loading forbidden");
@@ -69,7 +87,8 @@ public class Shared {
       throw new IllegalStateException("Multiple eBird client loading forbidden");
     }
     try (InputStream is = Utils.openConfigFile(System.getProperty("ebird.conf"), "/ebird-config.properties")) {
-      Shared.eBirdClient = EBirdClient.fromStream(httpClient(), is);
+      Shared.eBirdClient = EBirdClient.fromStream(httpClient(), is, EBirdHedging.fromSystemProperties(),
+          EBirdGateway.fromSystemProperties());
     } catch (Exception e) {
       throw new RuntimeException("Failed to load eBird client", e);
     }
@@ -99,4 +118,41 @@ public class Shared {
     }
   }
 
+  public static void loadHintCache() {
+    final String logPath = System.getProperty("hintCache.file");
+    if (logPath == null || logPath.isEmpty()) {
+      System.out.println("[INFO] Hint cache will not persist across restarts");
+      return;
+    }
+    try {
+      HintCache.load(Path.of(logPath));
+    } catch (Exception e) {
+      System.out.println("[WARN] Failed to load hint log at " + logPath + " (trace below). Hints will not persist:");
+      e.printStackTrace();
+    }
+  }
+
+  public static void loadExtractCache() {
+    if (Shared.extractCache != null) {
+      throw new IllegalStateException("Multiple extract cache loading forbidden");
+    }
+    final int maxEntries = Integer.getInteger("extract.cache.size", 20000);
+    final String spillPath = System.getProperty("extract.cache");
+    if (spillPath == null || spillPath.isEmpty()) {
+      System.out.println("[INFO] Extract cache will not persist across restarts");
+      Shared.extractCache = ExtractCache.inMemory(maxEntries);
+      return;
+    }
+    final ExtractCache cache = ExtractCache.spilling(maxEntries, Path.of(spillPath));
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      try {
+        cache.spill();
+      } catch (Exception e) {
+        System.out.println("[WARN] Failed to spill extract cache to " + spillPath + " (trace below):");
+        e.printStackTrace();
+      }
+    }, "munin-extract-cache-spill"));
+    Shared.extractCache = cache;
+  }
+
 }
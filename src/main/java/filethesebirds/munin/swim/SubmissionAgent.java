@@ -20,6 +20,8 @@ import filethesebirds.munin.digest.Comment;
 import filethesebirds.munin.digest.Forms;
 import filethesebirds.munin.digest.Motion;
 import filethesebirds.munin.digest.Submission;
+import filethesebirds.munin.digest.answer.AnswerFold;
+import java.util.Comparator;
 import java.util.List;
 import swim.api.SwimLane;
 import swim.api.agent.AbstractAgent;
@@ -67,7 +69,28 @@ public class SubmissionAgent extends AbstractAgent {
   MapLane<Value, Motion> motions = mapLane()
       .keyForm(Form.forValue())
       .valueForm(Forms.forMotion())
-      .didUpdate(this::motionsDidUpdate);
+      .didUpdate(this::motionsDidUpdate)
+      .didRemove(this::motionsDidRemove)
+      .didClear(this::motionsDidClear);
+
+  /**
+   * The {@link Answer} implied by {@link #motions}, maintained incrementally
+   * as motions arrive.
+   */
+  protected final AnswerFold<Value> answerFold = new AnswerFold<>(Comparator.naturalOrder());
+
+  /**
+   * Whether {@link #answer} updates are held back while a batch of motions is
+   * applied; only ever touched from this agent's own thread.
+   */
+  protected boolean deferAnswer = false;
+
+  /**
+   * Advanced whenever this agent's lanes are cleared or it closes, so that
+   * parse and purification results begun beforehand can be recognized and
+   * dropped; only ever touched from this agent's own thread.
+   */
+  protected long epoch = 0L;
 
   /**
    * A command-type endpoint that triggers closing this {@code SubmissionAgent}
@@ -96,9 +119,7 @@ public class SubmissionAgent extends AbstractAgent {
       .valueForm(Form.forList(Comment.form()))
       .onCommand(comments -> {
         if (comments != null && !comments.isEmpty()) {
-          for (int i = comments.size() - 1; i >= 0; i--) {
-            onNewComment(comments.get(i), "addManyComments");
-          }
+          onManyComments(comments, "addManyComments");
         }
       });
 
@@ -128,8 +149,20 @@ public class SubmissionAgent extends AbstractAgent {
     SubmissionAgentLogic.onNewComment(this, lane, comment);
   }
 
+  protected void onManyComments(List<Comment> comments, String lane) {
+    SubmissionAgentLogic.onManyComments(this, lane, comments);
+  }
+
   protected void motionsDidUpdate(Value k, Motion n, Motion o) {
-    SubmissionAgentLogic.motionsDidUpdate(this);
+    SubmissionAgentLogic.motionsDidUpdate(this, k);
+  }
+
+  protected void motionsDidRemove(Value k, Motion o) {
+    SubmissionAgentLogic.motionsDidRemove(this, k);
+  }
+
+  protected void motionsDidClear() {
+    this.answerFold.clear();
   }
 
   @Override
@@ -147,6 +180,7 @@ public class SubmissionAgent extends AbstractAgent {
   @Override
   public void willClose() {
     Logic.info(this, "willClose()", "");
+    this.epoch++;
   }
 
 }
@@ -16,6 +16,10 @@ package filethesebirds.munin.swim;
 
 import filethesebirds.munin.Utils;
 import filethesebirds.munin.connect.ebird.EBirdApiException;
+import filethesebirds.munin.connect.ebird.EBirdBackpressureException;
+import filethesebirds.munin.connect.ebird.EBirdClient;
+import filethesebirds.munin.connect.ebird.EBirdGateway;
+import filethesebirds.munin.connect.http.HttpUtils;
 import filethesebirds.munin.digest.Answer;
 import filethesebirds.munin.digest.Comment;
 import filethesebirds.munin.digest.Forms;
@@ -23,16 +27,18 @@ import filethesebirds.munin.digest.Motion;
 import filethesebirds.munin.digest.Submission;
 import filethesebirds.munin.digest.Taxonomy;
 import filethesebirds.munin.digest.Users;
-import filethesebirds.munin.digest.answer.Answers;
 import filethesebirds.munin.digest.motion.EBirdExtractPurify;
 import filethesebirds.munin.digest.motion.Extract;
 import filethesebirds.munin.digest.motion.ExtractParse;
+import filethesebirds.munin.digest.motion.IncompletePurificationException;
 import filethesebirds.munin.digest.motion.Review;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 import java.util.stream.Collectors;
-import swim.concurrent.AbstractTask;
-import swim.concurrent.TaskRef;
 import swim.structure.Num;
 import swim.structure.Record;
 import swim.structure.Value;
@@ -128,14 +134,25 @@ final class SubmissionAgentLogic {
   }
 
   private static void clearLanes(SubmissionAgent runtime) {
+    runtime.epoch++;
     runtime.motions.clear();
     runtime.status.set(Value.absent());
     runtime.answer.set(null);
     runtime.info.set(null);
   }
 
-  static void motionsDidUpdate(SubmissionAgent runtime) {
-    final Answer answer = Answers.mutable().apply(runtime.motions);
+  static void motionsDidUpdate(SubmissionAgent runtime, Value key) {
+    foldDidChange(runtime, runtime.answerFold.didUpdate(runtime.motions, key));
+  }
+
+  static void motionsDidRemove(SubmissionAgent runtime, Value key) {
+    foldDidChange(runtime, runtime.answerFold.didRemove(runtime.motions, key));
+  }
+
+  private static void foldDidChange(SubmissionAgent runtime, Answer answer) {
+    if (runtime.deferAnswer) {
+      return;
+    }
     final Answer current = runtime.answer.get();
     if (current == null) {
       if (!answer.taxa().isEmpty()) {
@@ -150,14 +167,105 @@ final class SubmissionAgentLogic {
     }
   }
 
+  /**
+   * Runs {@code logic} on {@code runtime}'s own thread, unless the agent's
+   * lanes have been cleared (or it has closed) since {@code epoch} was read.
+   */
+  private static void onAgent(SubmissionAgent runtime, String caller, long epoch, Runnable logic) {
+    Logic.executeNonBlocker(runtime, caller, () -> {
+      if (runtime.epoch == epoch) {
+        logic.run();
+      } else {
+        Logic.debug(runtime, caller, "Dropped a result begun before lanes were cleared");
+      }
+    });
+  }
+
   static void onNewComment(SubmissionAgent runtime, String lane, Comment comment) {
+    if (commentNeedsExtract(runtime, lane, comment)) {
+      final long epoch = runtime.epoch;
+      // CPU-intensive, not I/O-bound, so keep it off of this agent's thread;
+      // only the result comes back to touch lanes
+      Shared.parseExecutor().execute(comment.submissionId(),
+          () -> extractOf(comment),
+          extract -> onAgent(runtime, lane, epoch, () -> onExtract(runtime, lane, comment, extract)),
+          e -> onAgent(runtime, lane, epoch, () -> onParseFailure(runtime, lane, e)));
+    }
+  }
+
+  /**
+   * Equivalent to calling {@link #onNewComment} on every comment in {@code
+   * comments}, oldest first, except that comment parsing is spread across
+   * every {@link Shared#parseExecutor() parse stripe} and {@link
+   * SubmissionAgent#answer} is updated
+   * at most once, after every resulting motion is in place.
+   *
+   * <p>Motions are keyed by creation time, so the batch need not be ordered
+   * with respect to individually added comments.
+   */
+  static void onManyComments(SubmissionAgent runtime, String lane, List<Comment> comments) {
+    final List<Comment> toParse = new ArrayList<>(comments.size());
+    for (int i = comments.size() - 1; i >= 0; i--) {
+      final Comment comment = comments.get(i);
+      if (commentNeedsExtract(runtime, lane, comment)) {
+        toParse.add(comment);
+      }
+    }
+    if (toParse.isEmpty()) {
+      return;
+    }
+    final long epoch = runtime.epoch;
+    Shared.parseExecutor().executeAll(toParse, SubmissionAgentLogic::extractOf,
+        extracts -> onAgent(runtime, lane, epoch, () -> onManyExtracts(runtime, lane, toParse, extracts)),
+        e -> onAgent(runtime, lane, epoch, () -> onParseFailure(runtime, lane, e)));
+  }
+
+  private static void onManyExtracts(SubmissionAgent runtime, String lane, List<Comment> toParse,
+                                     List<Extract> extracts) {
+    final Integer[] order = new Integer[extracts.size()];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    // Motions arrive in key order, so each one is a cheap append to answerFold
+    Arrays.sort(order, Comparator.comparingLong((Integer i) -> toParse.get(i).createdUtc())
+        .thenComparing(i -> toParse.get(i).id()));
+    runtime.deferAnswer = true;
+    try {
+      for (int i : order) {
+        onExtract(runtime, lane, toParse.get(i), extracts.get(i));
+      }
+    } finally {
+      runtime.deferAnswer = false;
+    }
+    foldDidChange(runtime, runtime.answerFold.answer());
+  }
+
+  private static void onParseFailure(SubmissionAgent runtime, String lane, Throwable e) {
+    Logic.error(runtime, lane, "Comment parsing failed");
+    runtime.didFail(e);
+  }
+
+  /**
+   * Returns the cached, already-purified extract for {@code comment} if there
+   * is one, otherwise parses it.
+   */
+  private static Extract extractOf(Comment comment) {
+    final Extract cached = Shared.extractCache().get(comment);
+    return cached != null ? cached : ExtractParse.parseComment(comment);
+  }
+
+  /**
+   * Handles {@code comment} entirely if it is a publisher's or a shelving
+   * comment, returning whether it still needs to be parsed into an extract.
+   */
+  private static boolean commentNeedsExtract(SubmissionAgent runtime, String lane, Comment comment) {
     Logic.info(runtime, lane, "Received comment from " + comment.author());
     if (Users.userIsPublisher(comment.author())) {
       Logic.debug(runtime, lane, "Will defer publisher=" + comment.author()
           + " comment analysis to PublishingAgent");
       runtime.command("/submissions", "addPublisherComment",
           Comment.form().mold(comment).toValue());
-      return;
+      return false;
     }
     if (CommentsFetchAgentLogic.commentIsRemover(comment)
         || CommentsFetchAgentLogic.submissionAuthorIsDeleted(comment)) {
@@ -169,21 +277,23 @@ final class SubmissionAgentLogic {
             "Failed to delete submission " + comment.submissionId(),
             client -> client.deleteSubmission36(comment.submissionId()));
       }
-      return;
+      return false;
     }
-    final Extract extract = ExtractParse.parseComment(comment); // CPU-intensive, not I/O-bound
+    return true;
+  }
+
+  private static void onExtract(SubmissionAgent runtime, String lane, Comment comment, Extract extract) {
     if (extract.isEmpty()) {
       Logic.debug(runtime, lane, "Did not analyze unremarkable comment from " + comment.author());
+      Shared.extractCache().put(comment, extract.base());
     } else if (extractIsImpure(extract)) {
       Logic.debug(runtime, lane, "Will analyze hint-containing comment via PhasedPurifyTask");
-      // I/O-bound
-      final PhasedPurifyTask action = new PhasedPurifyTask(runtime, comment, extract);
-      if (!action.cue()) {
-        Logic.error(runtime, lane,"Failed to cue purification task for comment " + comment);
-      }
+      // I/O-bound, but never blocks a thread
+      new PhasedPurifyTask(runtime, comment, extract).start();
     } else {
       final Value laneKey = Record.create(2).item(comment.createdUtc()).item(comment.id());
       Logic.info(runtime, lane, "Will put " + laneKey + ", " + extract.base());
+      Shared.extractCache().put(comment, extract.base());
       runtime.motions.put(laneKey, extract.base());
     }
   }
@@ -192,77 +302,130 @@ final class SubmissionAgentLogic {
     return !extract.hints().isEmpty() || !extract.vagueHints().isEmpty();
   }
 
+  /**
+   * Resolves an extract's hints concurrently, at most {@link
+   * #MAX_CONCURRENT_HINTS} at a time, without holding a thread while eBird
+   * responds. The purified motion is handed back to the agent's own thread,
+   * and dropped if the agent's lanes were cleared meanwhile; a failed batch
+   * retries only its failed hints.
+   *
+   * <p>Retries after congestion go straight back into the shared {@link
+   * EBirdGateway}'s queue, which backs off on behalf of every task at once
+   * while eBird is failing, with reviewer comments ahead of the rest. Errors
+   * the gateway does not back off on (e.g. a 404), and a full queue, instead
+   * send a task to sleep on its own jittered timer. A task gives up once it
+   * has gone {@link #RETRY_WINDOW_MS} without progress; backpressure alone
+   * never exhausts it.
+   */
   private static class PhasedPurifyTask {
 
     private static final int MAX_EXPLORABLE_HINTS = 10;
-    private static final int MAX_FAILURES = 5;
+    private static final int MAX_CONCURRENT_HINTS = 4;
+    private static final long RETRY_WINDOW_MS = 5L * 60 * 1000;
 
-    private volatile Extract soFar;
-    private volatile int hintsSoFar;
-    private volatile int failures;
-    private final TaskRef task;
+    private final SubmissionAgent runtime;
+    private final Comment comment;
+    private final EBirdClient client;
+    private final long epoch;
+    // Only ever touched from the agent's own thread
+    private Extract soFar;
+    private int hintsSoFar;
+    private long failingSince; // -1 while the latest attempt made progress
 
     PhasedPurifyTask(SubmissionAgent runtime, Comment comment, Extract soFar) {
+      this.runtime = runtime;
+      this.comment = comment;
+      this.epoch = runtime.epoch;
+      this.client = Shared.eBirdClient().withPriority(Users.userIsReviewer(comment.author())
+          ? EBirdGateway.Priority.REVIEWER : EBirdGateway.Priority.DEFAULT);
       this.soFar = soFar;
       this.hintsSoFar = 0;
-      this.task = runtime.asyncStage().task(new AbstractTask() {
-
-        @Override
-        public void runTask() {
-          while (!isComplete()) {
-            try {
-              setSoFar(EBirdExtractPurify.purifyOneHint(Shared.eBirdClient(), getSoFar()));
-              PhasedPurifyTask.this.hintsSoFar++;
-            } catch (EBirdApiException e) {
-              if (++failures <= MAX_FAILURES) {
-                Logic.warn(runtime, "[PhasedPurifyTask]",
-                    "Exception in processing hint for comment " + comment + ", retrying in ~1 min");
-                runtime.setTimer(60000L + (long) (Math.random() * 30000) - 15000L,
-                    PhasedPurifyTask.this.task::cue);
-              } else {
-                Logic.error(runtime, "[PhasedPurifyTask]",
-                    "Exception in processing hint for comment " + comment + ", aborting");
-                runtime.didFail(e);
-              }
+      this.failingSince = -1L;
+    }
+
+    private static int hintCount(Extract extract) {
+      return extract.hints().size() + extract.vagueHints().size();
+    }
+
+    void start() {
+      step();
+    }
+
+    private void step() {
+      final Extract before = this.soFar;
+      EBirdExtractPurify.purifyAllAsync(this.client, before,
+              MAX_EXPLORABLE_HINTS - this.hintsSoFar, MAX_CONCURRENT_HINTS)
+          // Completions arrive on HTTP client threads; timers, lanes, and
+          // failure handling belong to the agent
+          .whenComplete((extract, e) -> onAgent(this.runtime, "[PhasedPurifyTask]", this.epoch, () -> {
+            if (e == null) {
+              this.soFar = extract;
+              finish();
               return;
             }
-          }
-          // On success
-          final Motion purified = getSoFar().base();
-          if ((purified instanceof Review) || !purified.isEmpty()) {
-            Logic.info(runtime, "[PhasedPurifyTask]", "Purified extract into " + purified
-                + ", will update motions accordingly");
-            final Value laneKey = Record.create(2).item(comment.createdUtc()).item(comment.id());
-            runtime.motions.put(laneKey, purified);
-          } else {
-            Logic.warn(runtime, "[PhasedPurifyTask]", "Purification of comment "
-                + comment + " unexpectedly yielded empty motion");
-          }
-        }
-
-        @Override
-        public boolean taskWillBlock() {
-          return true;
-        }
-
-      });
+            final Throwable cause = HttpUtils.unwrap(e);
+            if (cause instanceof IncompletePurificationException) {
+              this.soFar = ((IncompletePurificationException) cause).partial();
+              final int resolved = hintCount(before) - hintCount(this.soFar);
+              this.hintsSoFar += resolved;
+              if (resolved > 0) {
+                this.failingSince = -1L;
+              }
+            }
+            onFailure(cause);
+          }));
     }
 
-    private Extract getSoFar() {
-      return this.soFar;
+    // The eBird failure behind a partially successful purification
+    private static Throwable eBirdCause(Throwable cause) {
+      return cause instanceof IncompletePurificationException && cause.getCause() != null
+          ? cause.getCause() : cause;
     }
 
-    private void setSoFar(Extract extract) {
-      this.soFar = extract;
+    private static long jitteredMinute() {
+      return 60000L + (long) (Math.random() * 30000) - 15000L;
     }
 
-    private boolean isComplete() {
-      return this.hintsSoFar >= MAX_EXPLORABLE_HINTS
-          || EBirdExtractPurify.extractIsPurified(this.soFar);
+    private void onFailure(Throwable cause) {
+      final Throwable eBirdCause = eBirdCause(cause);
+      if (eBirdCause instanceof EBirdBackpressureException) {
+        Logic.warn(this.runtime, "[PhasedPurifyTask]",
+            "eBird request queue full while processing comment " + this.comment + ", retrying in ~1 min");
+        this.runtime.setTimer(jitteredMinute(), this::step);
+        return;
+      }
+      final long now = System.currentTimeMillis();
+      if (this.failingSince < 0L) {
+        this.failingSince = now;
+      }
+      if (!(eBirdCause instanceof EBirdApiException) || now - this.failingSince > RETRY_WINDOW_MS) {
+        Logic.error(this.runtime, "[PhasedPurifyTask]",
+            "Exception in processing hint for comment " + this.comment + ", aborting");
+        this.runtime.didFail(cause);
+      } else if (EBirdGateway.isCongestion(eBirdCause)) {
+        // The gateway is already backing off, so requeueing waits there
+        Logic.warn(this.runtime, "[PhasedPurifyTask]",
+            "Exception in processing hint for comment " + this.comment + ", requeueing");
+        step();
+      } else {
+        Logic.warn(this.runtime, "[PhasedPurifyTask]",
+            "Exception in processing hint for comment " + this.comment + ", retrying in ~1 min");
+        this.runtime.setTimer(jitteredMinute(), this::step);
+      }
     }
 
-    boolean cue() {
-      return this.task.cue();
+    private void finish() {
+      final Motion purified = this.soFar.base();
+      Shared.extractCache().put(this.comment, purified);
+      if ((purified instanceof Review) || !purified.isEmpty()) {
+        Logic.info(this.runtime, "[PhasedPurifyTask]", "Purified extract into " + purified
+            + ", will update motions accordingly");
+        final Value laneKey = Record.create(2).item(this.comment.createdUtc()).item(this.comment.id());
+        this.runtime.motions.put(laneKey, purified);
+      } else {
+        Logic.warn(this.runtime, "[PhasedPurifyTask]", "Purification of comment "
+            + this.comment + " unexpectedly yielded empty motion");
+      }
     }
 
   }
@@ -20,6 +20,7 @@ import swim.api.http.HttpLane;
 import swim.api.lane.CommandLane;
 import swim.api.lane.JoinValueLane;
 import swim.api.lane.MapLane;
+import swim.api.lane.ValueLane;
 import swim.concurrent.TimerRef;
 import swim.http.HttpRequest;
 import swim.http.HttpResponse;
@@ -40,6 +41,8 @@ import swim.structure.Value;
 public class SubmissionsAgent extends AbstractAgent {
 
   protected TimerRef expiryTimer;
+  protected TimerRef statsTimer;
+  protected TimerRef spillTimer;
 
   @SwimLane("statuses")
   protected JoinValueLane<Long, Value> statuses = joinValueLane()
@@ -71,6 +74,43 @@ public class SubmissionsAgent extends AbstractAgent {
   @SwimLane("reviewed")
   protected MapLane<Long, Value> reviewed = mapLane();
 
+  /**
+   * Periodic queue-depth and latency figures from {@link
+   * Shared#parseExecutor()}.
+   */
+  @SwimLane("parseStats")
+  protected ValueLane<Value> parseStats = this.<Value>valueLane();
+
+  /**
+   * Periodic size and hit-rate figures from {@link Shared#extractCache()},
+   * i.e. how much parsing and purification the cache has saved.
+   */
+  @SwimLane("extractCacheStats")
+  protected ValueLane<Value> extractCacheStats = this.<Value>valueLane();
+
+  /**
+   * Periodic size, hit-rate, and eviction figures from {@link
+   * filethesebirds.munin.digest.motion.HintCache}, plus the eBird calls that
+   * it and {@link filethesebirds.munin.connect.ebird.EBirdClient} request
+   * deduplication have spared.
+   */
+  @SwimLane("hintCacheStats")
+  protected ValueLane<Value> hintCacheStats = this.<Value>valueLane();
+
+  /**
+   * Periodic eBird find latency percentiles from {@link Shared#eBirdClient()},
+   * with its request deduplication and (if enabled) hedging counts.
+   */
+  @SwimLane("eBirdStats")
+  protected ValueLane<Value> eBirdStats = this.<Value>valueLane();
+
+  /**
+   * Periodic Reddit rate-limit window and per-consumer pacing from {@link
+   * filethesebirds.munin.connect.reddit.RedditBudget}.
+   */
+  @SwimLane("redditBudget")
+  protected ValueLane<Value> redditBudget = this.<Value>valueLane();
+
   @SwimLane("api/unanswered")
   protected HttpLane<Value> unansweredApi = this.<Value>httpLane()
       .doRespond(this::unansweredApiDoRespond);
@@ -15,6 +15,9 @@
 package filethesebirds.munin.swim;
 
 import filethesebirds.munin.Utils;
+import filethesebirds.munin.digest.motion.HintCache;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Iterator;
 import java.util.Set;
 import swim.http.HttpRequest;
@@ -27,6 +30,9 @@ import swim.structure.Value;
 final class SubmissionsAgentLogic {
 
   private static final long EXPIRY_PERIOD_MS = 15L * 60 * 1000;
+  private static final long STATS_PERIOD_MS = 60L * 1000;
+  private static final long SPILL_PERIOD_MS = 60L * 1000;
+  private static final int PARSE_STRIPE_DEPTH_WARNING = 50;
 
   private static final String PAGE_FMT_SUFFIX = "<div><h3>Links</h3><ul>%s</ul></div>"
       + "<div>"
@@ -167,6 +173,38 @@ final class SubmissionsAgentLogic {
       Logic.debug(runtime, "[expiryTimer]", "Scheduling timer tick for " + delta + " ms");
       runtime.expiryTimer.reschedule(Math.max(1000L, delta));
     });
+    if (runtime.statsTimer != null) {
+      runtime.statsTimer.cancel();
+    }
+    runtime.statsTimer = runtime.setTimer(STATS_PERIOD_MS, () -> {
+      final Value stats = Shared.parseExecutor().drainStats();
+      if (stats.get("maxStripeDepth").intValue(0) >= PARSE_STRIPE_DEPTH_WARNING) {
+        Logic.warn(runtime, "[statsTimer]", "Comment parsing is backing up: " + stats);
+      } else {
+        Logic.debug(runtime, "[statsTimer]", stats);
+      }
+      runtime.parseStats.set(stats);
+      runtime.extractCacheStats.set(Shared.extractCache().stats());
+      runtime.hintCacheStats.set(HintCache.stats()
+          .slot("sharedEBirdCalls", Shared.eBirdClient().sharedCalls()));
+      runtime.eBirdStats.set(Shared.eBirdClient().drainStats());
+      runtime.redditBudget.set(Shared.redditClient().budget().stats());
+      runtime.statsTimer.reschedule(STATS_PERIOD_MS);
+    });
+    if (runtime.spillTimer != null) {
+      runtime.spillTimer.cancel();
+    }
+    runtime.spillTimer = runtime.setTimer(SPILL_PERIOD_MS, () -> {
+      Logic.trace(runtime, "[spillTimer]", "Tick");
+      Logic.executeBlocker(runtime, "[spillTimer]", () -> {
+        try {
+          Shared.extractCache().spill();
+        } catch (IOException e) {
+          throw new UncheckedIOException("Failed to spill extract cache", e);
+        }
+      });
+      runtime.spillTimer.reschedule(SPILL_PERIOD_MS);
+    });
   }
 
   static void willClose(SubmissionsAgent runtime) {
@@ -176,6 +214,14 @@ final class SubmissionsAgentLogic {
       runtime.expiryTimer.cancel();
       runtime.expiryTimer = null;
     }
+    if (Logic.cancelTimer(runtime.statsTimer)) {
+      Logic.debug(runtime, "willClose()", "Canceled statsTimer");
+    }
+    runtime.statsTimer = null;
+    if (Logic.cancelTimer(runtime.spillTimer)) {
+      Logic.debug(runtime, "willClose()", "Canceled spillTimer");
+    }
+    runtime.spillTimer = null;
   }
 
 }
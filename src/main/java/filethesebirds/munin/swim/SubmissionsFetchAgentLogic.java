@@ -15,6 +15,7 @@
 package filethesebirds.munin.swim;
 
 import filethesebirds.munin.Utils;
+import filethesebirds.munin.connect.reddit.RedditBudget;
 import filethesebirds.munin.connect.reddit.RedditClient;
 import filethesebirds.munin.connect.reddit.RedditResponse;
 import filethesebirds.munin.digest.Comment;
@@ -45,7 +46,8 @@ final class SubmissionsFetchAgentLogic {
   static void preemptSubmissionsFetchOnCommand(SubmissionsFetchAgent runtime, Value v) {
     Logic.trace(runtime, CALLER_LANE, "Begin onCommand(" + v + ")");
     runtime.fetchTimer = Logic.scheduleRecurringBlocker(runtime, CALLER_TASK,
-        runtime::fetchTimer, 3000L, 180000L, () -> fetchTimerAction(runtime));
+        runtime::fetchTimer, 3000L, () -> Shared.redditClient().budget().periodMillis(RedditBudget.Use.SUBMISSIONS),
+        () -> fetchTimerAction(runtime));
     Logic.trace(runtime, CALLER_LANE, "End onCommand()");
   }
 
@@ -56,11 +58,14 @@ final class SubmissionsFetchAgentLogic {
 
     // Gather (fetch active submissions into liveSubmissions and identify shelf candidates, but do not update vault)
     Logic.trace(runtime, CALLER_TASK, "Will seek submissions through epoch (s) " + until);
-    new GatherAgentTask(until, runtime, liveCandidates, shelfCandidates).run();
+    final GatherAgentTask gather = new GatherAgentTask(until, runtime, liveCandidates, shelfCandidates);
+    gather.run();
+    Shared.redditClient().budget().recordRun(RedditBudget.Use.SUBMISSIONS, gather.requests);
     Logic.debug(runtime, CALLER_TASK, "Gathered " + liveCandidates.size() + " live submissions through epoch (s) " + until);
 
     // Shelve (update liveSubmissions#shelved and remove entries from vault as needed)
-    if (liveCandidates.size() > 0 && !shelfCandidates.isEmpty()) {
+    if (liveCandidates.size() > 0 && !shelfCandidates.isEmpty()
+        && Shared.redditClient().budget().tryRun(RedditBudget.Use.SHELVE)) {
       final String joinedCandidates = shelfCandidates.keySet().stream()
           .map(k -> "t3_" + Utils.id10To36(k))
           .collect(Collectors.joining(","));
@@ -189,6 +194,7 @@ final class SubmissionsFetchAgentLogic {
     private final SubmissionsFetchAgent runtime;
     private final Map<String, Submission> active;
     private final Map<Long, Submission> shelfCandidates;
+    private int requests;
 
     private GatherAgentTask(long until, SubmissionsFetchAgent runtime,
                             Map<String, Submission> active, Map<Long, Submission> shelfCandidates) {
@@ -196,10 +202,12 @@ final class SubmissionsFetchAgentLogic {
       this.runtime = runtime;
       this.active = active;
       this.shelfCandidates = shelfCandidates;
+      this.requests = 0;
     }
 
     @Override
     Optional<RedditResponse<Submission[]>> doFetch(RedditClient.Callable<Submission[]> callable) {
+      this.requests++;
       return Logic.doRedditCallable(this.runtime, CALLER_TASK, "getNewPosts",
           callable);
     }
@@ -1,4 +1,299 @@
 package filethesebirds.munin.connect.ebird;
 
+import java.io.IOException;
+import java.net.Authenticator;
+import java.net.CookieHandler;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSession;
+import org.testng.annotations.Test;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
 public class EBirdClientSpec {
+
+  private static final String US_ANSWER = "[{\"code\":\"gryher\",\"name\":\"Gray Heron - Ardea cinerea\"}]";
+  private static final String UK_ANSWER = "[{\"code\":\"gryher\",\"name\":\"Grey Heron - Ardea cinerea\"}]";
+
+  /**
+   * Answers each locale's find with a fixed body after a fixed delay, and
+   * logs the locale of every request it receives.
+   */
+  private static class FakeHttpClient extends HttpClient {
+
+    private final Map<String, String> bodies;
+    private final Map<String, Long> delays;
+    private final List<String> locales;
+
+    FakeHttpClient(Map<String, String> bodies, Map<String, Long> delays) {
+      this.bodies = bodies;
+      this.delays = delays;
+      this.locales = new CopyOnWriteArrayList<>();
+    }
+
+    private static String localeOf(URI uri) {
+      final String query = uri.getQuery();
+      final int start = query.indexOf("locale=") + "locale=".length();
+      return query.substring(start, query.indexOf('&', start));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request,
+                                                            HttpResponse.BodyHandler<T> handler) {
+      final String locale = localeOf(request.uri());
+      this.locales.add(locale);
+      final HttpResponse<T> response = (HttpResponse<T>) new FakeResponse(request, this.bodies.get(locale));
+      final CompletableFuture<HttpResponse<T>> future = new CompletableFuture<>();
+      CompletableFuture.delayedExecutor(this.delays.get(locale), TimeUnit.MILLISECONDS)
+          .execute(() -> future.complete(response));
+      return future;
+    }
+
+    @Override
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request,
+                                                            HttpResponse.BodyHandler<T> handler,
+                                                            HttpResponse.PushPromiseHandler<T> pushPromiseHandler) {
+      return sendAsync(request, handler);
+    }
+
+    @Override
+    public <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler)
+        throws IOException {
+      return sendAsync(request, handler).join();
+    }
+
+    @Override
+    public Optional<CookieHandler> cookieHandler() {
+      return Optional.empty();
+    }
+
+    @Override
+    public Optional<Duration> connectTimeout() {
+      return Optional.empty();
+    }
+
+    @Override
+    public Redirect followRedirects() {
+      return Redirect.NEVER;
+    }
+
+    @Override
+    public Optional<ProxySelector> proxy() {
+      return Optional.empty();
+    }
+
+    @Override
+    public SSLContext sslContext() {
+      return null;
+    }
+
+    @Override
+    public SSLParameters sslParameters() {
+      return null;
+    }
+
+    @Override
+    public Optional<Authenticator> authenticator() {
+      return Optional.empty();
+    }
+
+    @Override
+    public Version version() {
+      return Version.HTTP_1_1;
+    }
+
+    @Override
+    public Optional<Executor> executor() {
+      return Optional.empty();
+    }
+
+  }
+
+  private static class FakeResponse implements HttpResponse<String> {
+
+    private final HttpRequest request;
+    private final String body;
+
+    FakeResponse(HttpRequest request, String body) {
+      this.request = request;
+      this.body = body;
+    }
+
+    @Override
+    public int statusCode() {
+      return 200;
+    }
+
+    @Override
+    public HttpRequest request() {
+      return this.request;
+    }
+
+    @Override
+    public Optional<HttpResponse<String>> previousResponse() {
+      return Optional.empty();
+    }
+
+    @Override
+    public HttpHeaders headers() {
+      return HttpHeaders.of(Map.of(), (k, v) -> true);
+    }
+
+    @Override
+    public String body() {
+      return this.body;
+    }
+
+    @Override
+    public Optional<SSLSession> sslSession() {
+      return Optional.empty();
+    }
+
+    @Override
+    public URI uri() {
+      return this.request.uri();
+    }
+
+    @Override
+    public HttpClient.Version version() {
+      return HttpClient.Version.HTTP_1_1;
+    }
+
+  }
+
+  private static FakeHttpClient fake(String us, long usDelay, String uk, long ukDelay) {
+    return new FakeHttpClient(Map.of("en_US", us, "en_UK", uk, "en_PH", "[]"),
+        Map.of("en_US", usDelay, "en_UK", ukDelay, "en_PH", 1L));
+  }
+
+  @Test
+  public void testUnhedgedFindIsSequential() throws Exception {
+    final FakeHttpClient http = fake("[]", 1L, UK_ANSWER, 1L);
+    final EBirdClient client = new EBirdClient(http, "munin-test");
+    final LongAdder calls = new LongAdder();
+    assertEquals(client.findSpeciesAsync("grey%20heron", calls).get(), UK_ANSWER);
+    assertEquals(http.locales, List.of("en_US", "en_UK"));
+    assertEquals(calls.sum(), 2L);
+  }
+
+  @Test
+  public void testSharesCallsWithinPriority() throws Exception {
+    final FakeHttpClient http = fake(US_ANSWER, 200L, UK_ANSWER, 1L);
+    final EBirdClient client = new EBirdClient(http, "munin-test");
+    final EBirdClient reviewer = client.withPriority(EBirdGateway.Priority.REVIEWER);
+    final CompletableFuture<String> first = client.findSpeciesAsync("gray%20heron", new LongAdder());
+    final CompletableFuture<String> second = client.findSpeciesAsync("gray%20heron", new LongAdder());
+    final CompletableFuture<String> third = reviewer.findSpeciesAsync("gray%20heron", new LongAdder());
+    assertEquals(first.get(), US_ANSWER);
+    assertEquals(second.get(), US_ANSWER);
+    assertEquals(third.get(), US_ANSWER);
+    // The reviewer's call is its own rather than joining the DEFAULT one
+    assertEquals(http.locales, List.of("en_US", "en_US"));
+    assertEquals(client.sharedCalls(), 1L);
+    assertEquals(reviewer.sharedCalls(), 1L);
+  }
+
+  @Test
+  public void testHedgedFindPrefersUsAnswer() throws Exception {
+    final FakeHttpClient http = fake(US_ANSWER, 300L, UK_ANSWER, 1L);
+    final EBirdClient client = new EBirdClient(http, "munin-test", new EBirdHedging(20L, 8));
+    assertEquals(client.findSpeciesAsync("gray%20heron", new LongAdder()).get(), US_ANSWER);
+    assertEquals(http.locales.get(0), "en_US");
+    assertTrue(http.locales.contains("en_UK"), http.locales.toString());
+  }
+
+  @Test
+  public void testHedgedFindFallsBack() throws Exception {
+    final FakeHttpClient http = fake("[]", 300L, UK_ANSWER, 1L);
+    final EBirdClient client = new EBirdClient(http, "munin-test", new EBirdHedging(20L, 8));
+    final long start = System.nanoTime();
+    assertEquals(client.findSpeciesAsync("gray%20heron", new LongAdder()).get(), UK_ANSWER);
+    // UK was asked speculatively, so the answer costs one slow round trip, not two
+    assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(600L));
+    assertEquals(http.locales.stream().filter("en_UK"::equals).count(), 1L);
+  }
+
+  @Test
+  public void testLikelyNonUsQueriesHedgeImmediately() throws Exception {
+    final FakeHttpClient http = fake("[]", 50L, UK_ANSWER, 50L);
+    final EBirdClient client = new EBirdClient(http, "munin-test", new EBirdHedging(60000L, 8));
+    assertEquals(client.findSpeciesAsync("grey%20heron", new LongAdder()).get(), UK_ANSWER);
+    assertEquals(http.locales.size(), 3);
+  }
+
+  @Test
+  public void testSpeculationIsCapped() throws Exception {
+    final FakeHttpClient http = fake("[]", 50L, "[]", 50L);
+    final EBirdClient client = new EBirdClient(http, "munin-test", new EBirdHedging(60000L, 1));
+    final LongAdder calls = new LongAdder();
+    assertEquals(client.findSpeciesAsync("grey%20heron", calls).get(), "[]");
+    // Only UK was asked speculatively; PH had to wait its turn, but was asked once
+    assertEquals(http.locales.subList(0, 2), List.of("en_US", "en_UK"));
+    assertEquals(calls.sum(), 3L);
+  }
+
+  private static EBirdClient standInClient(EBirdStandIn standIn) {
+    return new EBirdClient(HttpClient.newHttpClient(), "munin-test", standIn.baseUrl(), null,
+        EBirdGateway.fromSystemProperties());
+  }
+
+  @Test
+  public void testStandInFindsByLocale() throws Exception {
+    try (EBirdStandIn standIn = EBirdStandIn.start()) {
+      final EBirdClient client = standInClient(standIn);
+      final LongAdder calls = new LongAdder();
+      final String found = client.findSpeciesAsync("grey%20heron", calls).get();
+      assertTrue(found.contains("\"Grey Heron\""), found);
+      // Only the UK spelling matches, so US was asked first and came up empty
+      assertEquals(calls.sum(), 2L);
+      assertEquals(standIn.requests(), 2L);
+      assertEquals(client.findSpuhAsync("gray%20heron", new LongAdder()).get(), "[]");
+    }
+  }
+
+  @Test
+  public void testStandInErrorsSurface() throws Exception {
+    try (EBirdStandIn standIn = EBirdStandIn.start(new EBirdStandIn.Profile().errors(1.0))) {
+      final EBirdClient client = standInClient(standIn);
+      try {
+        EBirdClient.await(client.findSpeciesAsync("barn%20owl", new LongAdder()));
+        fail("Expected an injected server error");
+      } catch (EBirdApiException e) {
+        assertEquals(standIn.errors(), 1L);
+      }
+    }
+  }
+
+  @Test
+  public void testStandInRateLimits() throws Exception {
+    try (EBirdStandIn standIn = EBirdStandIn.start(new EBirdStandIn.Profile().rateLimit(0.01, 1))) {
+      final EBirdClient client = standInClient(standIn);
+      final String found = EBirdClient.await(client.findSpeciesAsync("barn%20owl", new LongAdder()));
+      assertTrue(found.contains("\"brnowl\""), found);
+      try {
+        EBirdClient.await(client.findSpeciesAsync("snowy%20owl", new LongAdder()));
+        fail("Expected the second call to be throttled");
+      } catch (EBirdApiException e) {
+        assertEquals(standIn.throttled(), 1L);
+      }
+    }
+  }
+
 }
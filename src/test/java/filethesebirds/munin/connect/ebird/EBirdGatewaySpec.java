@@ -0,0 +1,99 @@
+package filethesebirds.munin.connect.ebird;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import org.testng.annotations.Test;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class EBirdGatewaySpec {
+
+  @Test
+  public void testReviewersGoFirst() {
+    final EBirdGateway gateway = new EBirdGateway(1000.0, 100, 1, 1, 1000L, 10);
+    final CompletableFuture<String> blocker = new CompletableFuture<>();
+    final List<String> order = new CopyOnWriteArrayList<>();
+    gateway.submit(EBirdGateway.Priority.DEFAULT, () -> blocker);
+    final CompletableFuture<String> other = gateway.submit(EBirdGateway.Priority.DEFAULT, () -> {
+      order.add("other");
+      return CompletableFuture.completedFuture("other");
+    });
+    final CompletableFuture<String> reviewer = gateway.submit(EBirdGateway.Priority.REVIEWER, () -> {
+      order.add("reviewer");
+      return CompletableFuture.completedFuture("reviewer");
+    });
+    assertEquals(gateway.queueDepth(), 2);
+    blocker.complete("blocker");
+    assertEquals(other.join(), "other");
+    assertEquals(reviewer.join(), "reviewer");
+    assertEquals(order, List.of("reviewer", "other"));
+  }
+
+  @Test
+  public void testFullQueueRejects() {
+    final EBirdGateway gateway = new EBirdGateway(1000.0, 100, 1, 1, 1000L, 1);
+    gateway.submit(EBirdGateway.Priority.DEFAULT, CompletableFuture::new);
+    gateway.submit(EBirdGateway.Priority.DEFAULT, CompletableFuture::new);
+    try {
+      gateway.submit(EBirdGateway.Priority.REVIEWER, CompletableFuture::new).join();
+      fail("Expected an EBirdBackpressureException");
+    } catch (CompletionException e) {
+      assertTrue(e.getCause() instanceof EBirdBackpressureException);
+    }
+  }
+
+  @Test
+  public void testConcurrencyAdapts() {
+    final EBirdGateway gateway = new EBirdGateway(1000.0, 100, 4, 8, 1000L, 10);
+    for (int i = 0; i < 40; i++) {
+      gateway.submit(EBirdGateway.Priority.DEFAULT, () -> CompletableFuture.completedFuture("fast")).join();
+    }
+    assertEquals(gateway.concurrencyLimit(), 8);
+    final CompletableFuture<String> failed = gateway.submit(EBirdGateway.Priority.DEFAULT,
+        () -> CompletableFuture.failedFuture(new EBirdApiException("eBird is down")));
+    try {
+      failed.join();
+      fail("Expected the EBirdApiException");
+    } catch (CompletionException e) {
+      assertTrue(e.getCause() instanceof EBirdApiException);
+    }
+    assertEquals(gateway.concurrencyLimit(), 4);
+  }
+
+  @Test
+  public void testOnlyCongestionShrinksConcurrency() {
+    final EBirdGateway gateway = new EBirdGateway(1000.0, 100, 4, 8, 1000L, 10);
+    for (int i = 0; i < 40; i++) {
+      gateway.submit(EBirdGateway.Priority.DEFAULT, () -> CompletableFuture.completedFuture("fast")).join();
+    }
+    assertEquals(gateway.concurrencyLimit(), 8);
+    for (int statusCode : new int[] {400, 404}) {
+      gateway.submit(EBirdGateway.Priority.DEFAULT,
+          () -> CompletableFuture.<String>failedFuture(new EBirdApiException("Bad query", statusCode)))
+          .handle((r, e) -> null).join();
+    }
+    assertEquals(gateway.concurrencyLimit(), 8);
+    gateway.submit(EBirdGateway.Priority.DEFAULT,
+        () -> CompletableFuture.<String>failedFuture(new EBirdApiException("Too Many Requests", 429)))
+        .handle((r, e) -> null).join();
+    assertEquals(gateway.concurrencyLimit(), 4);
+  }
+
+  @Test
+  public void testTokenBucketPacesCalls() {
+    final EBirdGateway gateway = new EBirdGateway(20.0, 1, 4, 4, 1000L, 10);
+    final long start = System.nanoTime();
+    CompletableFuture<String> last = null;
+    for (int i = 0; i < 5; i++) {
+      last = gateway.submit(EBirdGateway.Priority.DEFAULT, () -> CompletableFuture.completedFuture("ok"));
+    }
+    assertEquals(last.join(), "ok");
+    // One call rides the initial burst; the other four each wait ~50 ms
+    assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(180L));
+  }
+
+}
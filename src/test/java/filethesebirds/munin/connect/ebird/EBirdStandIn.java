@@ -0,0 +1,293 @@
+package filethesebirds.munin.connect.ebird;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import filethesebirds.munin.digest.TaxonCategory;
+import filethesebirds.munin.digest.Taxonomy;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A local stand-in for eBird's {@code /v2/ref/taxon/find}, answering from
+ * {@link Taxonomy} so that {@link EBirdClient} and everything above it can be
+ * exercised without touching {@code api.ebird.org}.
+ *
+ * <p>A name matches a query if, for every word of {@code q}, some word of the
+ * name begins with it; {@code cat} restricts matches to one {@link
+ * TaxonCategory} (all of them if absent), and {@code locale=en_UK} spells
+ * "Gray" as "Grey". A {@link Profile} adds latency, injected server errors,
+ * and a rate limit past which requests get HTTP 429.
+ */
+public final class EBirdStandIn implements AutoCloseable {
+
+  private static final int MAX_RESULTS = 10;
+
+  /**
+   * How the stand-in misbehaves. The default answers instantly and always.
+   */
+  public static final class Profile {
+
+    long latencyMillis = 0L;
+    long jitterMillis = 0L;
+    double errorRate = 0.0;
+    double permitsPerSecond = 0.0;
+    double burst = 1.0;
+    long seed = 17L;
+
+    public Profile latency(long latencyMillis, long jitterMillis) {
+      this.latencyMillis = latencyMillis;
+      this.jitterMillis = jitterMillis;
+      return this;
+    }
+
+    /**
+     * Answers HTTP 500 to this fraction of requests.
+     */
+    public Profile errors(double errorRate) {
+      this.errorRate = errorRate;
+      return this;
+    }
+
+    /**
+     * Answers HTTP 429 to requests beyond this rate, with bursts of up to
+     * {@code burst}.
+     */
+    public Profile rateLimit(double permitsPerSecond, int burst) {
+      this.permitsPerSecond = permitsPerSecond;
+      this.burst = burst;
+      return this;
+    }
+
+    public Profile seed(long seed) {
+      this.seed = seed;
+      return this;
+    }
+
+  }
+
+  private static String[] ukNames;
+  private static String[][] usWords;
+  private static String[][] ukWords;
+
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private final Profile profile;
+  private final Random random;
+  private double tokens;
+  private long refilledAt;
+  private final LongAdder requests;
+  private final LongAdder errors;
+  private final LongAdder throttled;
+
+  private EBirdStandIn(Profile profile) throws IOException {
+    this.profile = profile;
+    this.random = new Random(profile.seed);
+    this.tokens = profile.burst;
+    this.refilledAt = System.nanoTime();
+    this.requests = new LongAdder();
+    this.errors = new LongAdder();
+    this.throttled = new LongAdder();
+    this.executor = Executors.newCachedThreadPool(r -> {
+      final Thread t = new Thread(r, "ebird-stand-in");
+      t.setDaemon(true);
+      return t;
+    });
+    this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    this.server.setExecutor(this.executor);
+    this.server.createContext("/v2/ref/taxon/find", this::handleFind);
+  }
+
+  public static EBirdStandIn start(Profile profile) throws IOException {
+    indexNames();
+    final EBirdStandIn standIn = new EBirdStandIn(profile);
+    standIn.server.start();
+    return standIn;
+  }
+
+  public static EBirdStandIn start() throws IOException {
+    return start(new Profile());
+  }
+
+  /**
+   * Returns the domain to give {@link EBirdClient}, e.g. {@code
+   * http://127.0.0.1:50123}.
+   */
+  public String baseUrl() {
+    return "http://" + this.server.getAddress().getHostString() + ":" + this.server.getAddress().getPort();
+  }
+
+  public long requests() {
+    return this.requests.sum();
+  }
+
+  public long errors() {
+    return this.errors.sum();
+  }
+
+  public long throttled() {
+    return this.throttled.sum();
+  }
+
+  @Override
+  public void close() {
+    this.server.stop(0);
+    this.executor.shutdownNow();
+  }
+
+  private static synchronized void indexNames() {
+    if (usWords != null) {
+      return;
+    }
+    final int size = Taxonomy.size();
+    ukNames = new String[size];
+    usWords = new String[size][];
+    ukWords = new String[size][];
+    for (int i = 0; i < size; i++) {
+      final String name = Taxonomy.commonNameAt(i);
+      ukNames[i] = name.replace("Gray", "Grey").replace("gray", "grey");
+      usWords[i] = words(name);
+      ukWords[i] = words(ukNames[i]);
+    }
+  }
+
+  private static String[] words(String s) {
+    final List<String> words = new ArrayList<>();
+    for (String word : s.toLowerCase(Locale.ROOT).split("[\\s\\-()]+")) {
+      if (!word.isEmpty()) {
+        words.add(word);
+      }
+    }
+    return words.toArray(new String[0]);
+  }
+
+  private static boolean matches(String[] queryWords, String[] nameWords) {
+    for (String queryWord : queryWords) {
+      boolean found = false;
+      for (String nameWord : nameWords) {
+        if (nameWord.startsWith(queryWord)) {
+          found = true;
+          break;
+        }
+      }
+      if (!found) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static Map<String, String> params(String rawQuery) {
+    final Map<String, String> params = new HashMap<>();
+    if (rawQuery != null) {
+      for (String pair : rawQuery.split("&")) {
+        final int eq = pair.indexOf('=');
+        if (eq > 0) {
+          params.put(pair.substring(0, eq),
+              URLDecoder.decode(pair.substring(eq + 1).replace("+", "%2B"), StandardCharsets.UTF_8));
+        }
+      }
+    }
+    return params;
+  }
+
+  private static String quote(String s) {
+    return "\"" + s.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+  }
+
+  static String find(String locale, String cat, String q) {
+    final boolean uk = "en_UK".equals(locale);
+    final String[][] names = uk ? ukWords : usWords;
+    final TaxonCategory category = cat == null ? null : TaxonCategory.parse(cat);
+    final String[] queryWords = words(q);
+    final StringBuilder body = new StringBuilder("[");
+    int results = 0;
+    if (queryWords.length > 0 && (cat == null || category != null)) {
+      for (int i = 0; i < names.length && results < MAX_RESULTS; i++) {
+        if ((category == null || Taxonomy.categoryAt(i) == category) && matches(queryWords, names[i])) {
+          if (results++ > 0) {
+            body.append(',');
+          }
+          final String name = uk ? ukNames[i] : Taxonomy.commonNameAt(i);
+          body.append("{\"code\":").append(quote(Taxonomy.codeAt(i)))
+              .append(",\"name\":").append(quote(name)).append('}');
+        }
+      }
+    }
+    return body.append(']').toString();
+  }
+
+  private synchronized boolean tryAcquire() {
+    if (this.profile.permitsPerSecond <= 0.0) {
+      return true;
+    }
+    final long now = System.nanoTime();
+    this.tokens = Math.min(this.profile.burst,
+        this.tokens + (now - this.refilledAt) * this.profile.permitsPerSecond / TimeUnit.SECONDS.toNanos(1L));
+    this.refilledAt = now;
+    if (this.tokens < 1.0) {
+      return false;
+    }
+    this.tokens -= 1.0;
+    return true;
+  }
+
+  private synchronized long nextDelayMillis() {
+    return this.profile.latencyMillis + (this.profile.jitterMillis > 0L
+        ? (long) (this.random.nextDouble() * this.profile.jitterMillis) : 0L);
+  }
+
+  private synchronized boolean nextIsError() {
+    return this.profile.errorRate > 0.0 && this.random.nextDouble() < this.profile.errorRate;
+  }
+
+  private void handleFind(HttpExchange exchange) throws IOException {
+    try (exchange) {
+      this.requests.increment();
+      if (!tryAcquire()) {
+        this.throttled.increment();
+        respond(exchange, 429, "{\"errors\":[{\"title\":\"Too Many Requests\"}]}");
+        return;
+      }
+      final long delay = nextDelayMillis();
+      if (delay > 0L) {
+        try {
+          Thread.sleep(delay);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+      if (nextIsError()) {
+        this.errors.increment();
+        respond(exchange, 500, "{\"errors\":[{\"title\":\"Internal Server Error\"}]}");
+        return;
+      }
+      final Map<String, String> params = params(exchange.getRequestURI().getRawQuery());
+      respond(exchange, 200, find(params.get("locale"), params.get("cat"), params.getOrDefault("q", "")));
+    }
+  }
+
+  private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+    final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "application/json;charset=utf-8");
+    exchange.sendResponseHeaders(status, bytes.length);
+    try (OutputStream os = exchange.getResponseBody()) {
+      os.write(bytes);
+    }
+  }
+
+}
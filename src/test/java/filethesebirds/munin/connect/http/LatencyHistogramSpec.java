@@ -0,0 +1,37 @@
+package filethesebirds.munin.connect.http;
+
+import org.testng.annotations.Test;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class LatencyHistogramSpec {
+
+  private static void assertWithinBucket(long actualMicros, long expectedMicros) {
+    assertTrue(actualMicros >= expectedMicros && actualMicros <= expectedMicros * 1.19 + 1,
+        actualMicros + " vs " + expectedMicros);
+  }
+
+  @Test
+  public void testPercentiles() {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 1000; i++) {
+      histogram.record(i * 1_000_000L); // 1..1000 ms
+    }
+    final LatencyHistogram.Snapshot snapshot = histogram.drain();
+    assertEquals(snapshot.count(), 1000L);
+    assertWithinBucket(snapshot.percentileMicros(50.0), 500_000L);
+    assertWithinBucket(snapshot.percentileMicros(99.0), 990_000L);
+    assertWithinBucket(snapshot.percentileMicros(100.0), 1_000_000L);
+  }
+
+  @Test
+  public void testDrainResets() {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(0L);
+    assertEquals(histogram.drain().count(), 1L);
+    final LatencyHistogram.Snapshot empty = histogram.drain();
+    assertEquals(empty.count(), 0L);
+    assertEquals(empty.percentileMicros(99.0), 0L);
+  }
+
+}
@@ -0,0 +1,157 @@
+package filethesebirds.munin.connect.http;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.testng.annotations.Test;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class SingleFlightSpec {
+
+  private static final int CALLERS = 8;
+
+  private static void await(CountDownLatch latch) throws IOException {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      throw new InterruptedIOException();
+    }
+  }
+
+  @Test
+  public void testConcurrentCallersShareOneCall() throws Exception {
+    final SingleFlight<String, String, IOException> flight = new SingleFlight<>(IOException.class);
+    final AtomicInteger calls = new AtomicInteger(0);
+    final CountDownLatch entered = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final ExecutorService pool = Executors.newFixedThreadPool(CALLERS);
+    try {
+      final List<Future<String>> results = new ArrayList<>();
+      results.add(pool.submit(() -> flight.execute("rethaw", () -> {
+        calls.incrementAndGet();
+        entered.countDown();
+        await(release);
+        return "[{\"code\":\"rethaw\"}]";
+      })));
+      entered.await();
+      for (int i = 1; i < CALLERS; i++) {
+        results.add(pool.submit(() -> flight.execute("rethaw", () -> {
+          calls.incrementAndGet();
+          return "unexpected";
+        })));
+      }
+      while (flight.shares() < CALLERS - 1) {
+        Thread.sleep(1L);
+      }
+      release.countDown();
+      for (Future<String> result : results) {
+        assertEquals(result.get(), "[{\"code\":\"rethaw\"}]");
+      }
+      assertEquals(calls.get(), 1);
+      assertEquals(flight.leads(), 1L);
+      assertEquals(flight.inFlight(), 0);
+      // Completed calls are not remembered
+      assertEquals(flight.execute("rethaw", () -> "again"), "again");
+    } finally {
+      pool.shutdownNow();
+      pool.awaitTermination(1, TimeUnit.SECONDS);
+    }
+  }
+
+  @Test
+  public void testCallersShareErrors() throws Exception {
+    final SingleFlight<String, String, IOException> flight = new SingleFlight<>(IOException.class);
+    final CountDownLatch entered = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final ExecutorService pool = Executors.newFixedThreadPool(2);
+    try {
+      final Future<String> leader = pool.submit(() -> flight.execute("coohaw", () -> {
+        entered.countDown();
+        await(release);
+        throw new IOException("eBird is down");
+      }));
+      entered.await();
+      final Future<String> follower = pool.submit(() -> flight.execute("coohaw", () -> "unexpected"));
+      while (flight.shares() < 1) {
+        Thread.sleep(1L);
+      }
+      release.countDown();
+      for (Future<String> result : List.of(leader, follower)) {
+        try {
+          result.get();
+          fail("Expected the shared IOException");
+        } catch (Exception e) {
+          assertTrue(e.getCause() instanceof IOException);
+          assertEquals(e.getCause().getMessage(), "eBird is down");
+        }
+      }
+    } finally {
+      pool.shutdownNow();
+      pool.awaitTermination(1, TimeUnit.SECONDS);
+    }
+  }
+
+  @Test
+  public void testAsyncCallersShareOneCall() throws Exception {
+    final SingleFlight<String, String, IOException> flight = new SingleFlight<>(IOException.class);
+    final CompletableFuture<String> response = new CompletableFuture<>();
+    final AtomicInteger calls = new AtomicInteger(0);
+    final List<CompletableFuture<String>> results = new ArrayList<>();
+    for (int i = 0; i < CALLERS; i++) {
+      results.add(flight.executeAsync("rethaw", () -> {
+        calls.incrementAndGet();
+        return response;
+      }));
+    }
+    assertEquals(flight.inFlight(), 1);
+    // Followers can also join synchronously, on another thread
+    final ExecutorService pool = Executors.newSingleThreadExecutor();
+    try {
+      final Future<String> blocking = pool.submit(() -> flight.execute("rethaw", () -> "unexpected"));
+      while (flight.shares() < CALLERS) {
+        Thread.sleep(1L);
+      }
+      results.get(1).cancel(false);
+      response.complete("[{\"code\":\"rethaw\"}]");
+      assertEquals(blocking.get(), "[{\"code\":\"rethaw\"}]");
+    } finally {
+      pool.shutdownNow();
+      pool.awaitTermination(1, TimeUnit.SECONDS);
+    }
+    for (int i = 0; i < CALLERS; i++) {
+      if (i != 1) {
+        assertEquals(results.get(i).join(), "[{\"code\":\"rethaw\"}]");
+      }
+    }
+    assertEquals(calls.get(), 1);
+    assertEquals(flight.inFlight(), 0);
+    final CompletableFuture<String> failed = flight.executeAsync("coohaw",
+        () -> CompletableFuture.failedFuture(new IOException("eBird is down")));
+    try {
+      failed.join();
+      fail("Expected the IOException");
+    } catch (CompletionException e) {
+      assertTrue(e.getCause() instanceof IOException);
+    }
+  }
+
+  @Test
+  public void testKeysAreIndependent() throws Exception {
+    final SingleFlight<String, String, IOException> flight = new SingleFlight<>(IOException.class);
+    assertEquals(flight.execute("rethaw", () -> flight.execute("coohaw", () -> "nested")), "nested");
+    assertEquals(flight.leads(), 2L);
+    assertEquals(flight.shares(), 0L);
+  }
+
+}
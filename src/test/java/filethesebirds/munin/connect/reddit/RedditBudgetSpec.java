@@ -0,0 +1,84 @@
+package filethesebirds.munin.connect.reddit;
+
+import java.net.http.HttpHeaders;
+import java.util.List;
+import java.util.Map;
+import org.testng.annotations.Test;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class RedditBudgetSpec {
+
+  private static final long NOW = 1_700_000_000_000L;
+
+  private static HttpHeaders window(String remaining, String used, String resetSeconds) {
+    return HttpHeaders.of(Map.of("x-ratelimit-remaining", List.of(remaining),
+        "x-ratelimit-used", List.of(used),
+        "x-ratelimit-reset", List.of(resetSeconds)), (k, v) -> true);
+  }
+
+  @Test
+  public void testBasePeriodsUntilObserved() {
+    final RedditBudget budget = new RedditBudget();
+    for (RedditBudget.Use use : RedditBudget.Use.values()) {
+      assertEquals(budget.periodMillis(use, NOW), use.basePeriodMillis());
+    }
+    // Responses without rate-limit headers don't count as a window
+    budget.observe(200, HttpHeaders.of(Map.of(), (k, v) -> true), NOW);
+    assertEquals(budget.periodMillis(RedditBudget.Use.COMMENTS, NOW), 60_000L);
+  }
+
+  @Test
+  public void testAmpleQuotaSpeedsEveryUseUp() {
+    final RedditBudget budget = new RedditBudget();
+    budget.observe(200, window("590.0", "10", "500"), NOW);
+    for (RedditBudget.Use use : RedditBudget.Use.values()) {
+      assertEquals(budget.periodMillis(use, NOW), use.minPeriodMillis());
+    }
+  }
+
+  @Test
+  public void testScarceQuotaSlowsLowerPrioritiesFirst() {
+    final RedditBudget budget = new RedditBudget();
+    // 40 spendable requests (100 less a 60-request reserve) over 300 s
+    budget.observe(200, window("100.0", "500", "300"), NOW);
+    assertEquals(budget.periodMillis(RedditBudget.Use.PUBLISH, NOW), 10_000L);
+    assertEquals(budget.periodMillis(RedditBudget.Use.COMMENTS, NOW), 30_000L);
+    assertEquals(budget.periodMillis(RedditBudget.Use.SUBMISSIONS, NOW), 302_000L);
+    assertEquals(budget.periodMillis(RedditBudget.Use.SHELVE, NOW), 302_000L);
+    // Costlier runs must run less often
+    budget.recordRun(RedditBudget.Use.COMMENTS, 5);
+    assertEquals(budget.periodMillis(RedditBudget.Use.COMMENTS, NOW), 60_000L);
+  }
+
+  @Test
+  public void testStaleResponsesDoNotRefundQuota() {
+    final RedditBudget budget = new RedditBudget();
+    budget.observe(200, window("100.0", "500", "300"), NOW);
+    budget.observe(200, window("150.0", "450", "300"), NOW);
+    assertEquals(budget.periodMillis(RedditBudget.Use.COMMENTS, NOW), 30_000L);
+    // A new window replaces the old one outright
+    budget.observe(200, window("600.0", "0", "600"), NOW + 301_000L);
+    assertEquals(budget.periodMillis(RedditBudget.Use.COMMENTS, NOW + 301_000L), 15_000L);
+  }
+
+  @Test
+  public void testThrottlingWaitsOutTheWindow() {
+    final RedditBudget budget = new RedditBudget();
+    budget.observe(429, HttpHeaders.of(Map.of("x-ratelimit-reset", List.of("42")), (k, v) -> true), NOW);
+    for (RedditBudget.Use use : RedditBudget.Use.values()) {
+      assertEquals(budget.periodMillis(use, NOW), 44_000L);
+    }
+    assertEquals(budget.periodMillis(RedditBudget.Use.COMMENTS, NOW + 42_000L), 60_000L);
+  }
+
+  @Test
+  public void testTryRunHonorsPeriod() {
+    final RedditBudget budget = new RedditBudget();
+    assertTrue(budget.tryRun(RedditBudget.Use.SHELVE, NOW));
+    assertFalse(budget.tryRun(RedditBudget.Use.SHELVE, NOW + 1_000L));
+    assertTrue(budget.tryRun(RedditBudget.Use.SHELVE, NOW + 180_000L));
+  }
+
+}
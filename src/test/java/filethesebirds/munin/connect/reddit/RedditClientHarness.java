@@ -0,0 +1,81 @@
+package filethesebirds.munin.connect.reddit;
+
+import filethesebirds.munin.connect.http.LatencyHistogram;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs {@code ops} concurrent publishes and fetches against {@link
+ * RedditClientSpec.FakeHttpClient}, each taking {@code latencyMillis} of
+ * (simulated) network time, once with the blocking API on a thread per call,
+ * as Swim blocking tasks run them, and once with the async API; reports the
+ * peak number of extra live threads and the per-call latency of each.
+ *
+ * <p>Usage: {@code RedditClientHarness [ops [latencyMillis]]}, 400 calls at
+ * 200 ms by default.
+ */
+public final class RedditClientHarness {
+
+  private RedditClientHarness() {
+  }
+
+  public static void main(String[] args) throws Exception {
+    final int ops = args.length > 0 ? Integer.parseInt(args[0]) : 400;
+    final long latencyMillis = args.length > 1 ? Long.parseLong(args[1]) : 200L;
+    final RedditClient client = RedditClientSpec.client(new RedditClientSpec.FakeHttpClient(latencyMillis, 3600L));
+    final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    final LatencyHistogram blockingLatency = new LatencyHistogram();
+    final ExecutorService blockers = Executors.newCachedThreadPool();
+    int baseline = threads.getThreadCount();
+    threads.resetPeakThreadCount();
+    final List<CompletableFuture<?>> blocking = new ArrayList<>(ops);
+    for (int i = 0; i < ops; i++) {
+      final boolean publish = i % 2 == 0;
+      final long start = System.nanoTime();
+      blocking.add(CompletableFuture.runAsync(() -> {
+        try {
+          if (publish) {
+            client.publishAnyComment("t3_17x0yz", "hi");
+          } else {
+            client.fetchMaxUndocumentedComments();
+          }
+        } catch (Exception e) {
+          throw new RuntimeException(e);
+        }
+        blockingLatency.record(System.nanoTime() - start);
+      }, blockers));
+    }
+    CompletableFuture.allOf(blocking.toArray(new CompletableFuture<?>[0])).get();
+    final int blockingThreads = threads.getPeakThreadCount() - baseline;
+    blockers.shutdown();
+    blockers.awaitTermination(10L, TimeUnit.SECONDS);
+
+    final LatencyHistogram asyncLatency = new LatencyHistogram();
+    baseline = threads.getThreadCount();
+    threads.resetPeakThreadCount();
+    final List<CompletableFuture<?>> async = new ArrayList<>(ops);
+    for (int i = 0; i < ops; i++) {
+      final long start = System.nanoTime();
+      async.add((i % 2 == 0 ? client.publishAnyCommentAsync("t3_17x0yz", "hi")
+          : client.fetchMaxUndocumentedCommentsAsync())
+          .whenComplete((r, e) -> asyncLatency.record(System.nanoTime() - start)));
+    }
+    CompletableFuture.allOf(async.toArray(new CompletableFuture<?>[0])).get();
+    final int asyncThreads = threads.getPeakThreadCount() - baseline;
+
+    final LatencyHistogram.Snapshot b = blockingLatency.drain();
+    final LatencyHistogram.Snapshot a = asyncLatency.drain();
+    System.out.println("[INFO] RedditClient: " + ops + " concurrent calls at " + latencyMillis + " ms; blocking +"
+        + blockingThreads + " threads, p50=" + b.percentileMicros(50.0) / 1000L + " ms, p99="
+        + b.percentileMicros(99.0) / 1000L + " ms; async +" + asyncThreads + " threads, p50="
+        + a.percentileMicros(50.0) / 1000L + " ms, p99=" + a.percentileMicros(99.0) / 1000L + " ms");
+  }
+
+}
@@ -1,4 +1,240 @@
 package filethesebirds.munin.connect.reddit;
 
+import java.io.IOException;
+import java.net.Authenticator;
+import java.net.CookieHandler;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSession;
+import org.testng.annotations.Test;
+import static org.testng.Assert.assertEquals;
+
 public class RedditClientSpec {
+
+  private static final String LISTING = "{\"kind\":\"Listing\",\"data\":{\"children\":[]}}";
+  private static final String PUBLISHED = "{\"json\":{\"errors\":[],\"data\":{\"things\":[{\"kind\":\"t1\","
+      + "\"data\":{\"id\":\"k0m1n\",\"created_utc\":1700000000,\"link_id\":\"t3_17x0yz\",\"author\":\"munin\","
+      + "\"body\":\"hi\",\"link_author\":\"someone\"}}]}}}";
+
+  /**
+   * Answers Reddit's token, comment-publishing, and listing endpoints after a
+   * fixed latency: {@link #send} sleeps through it, as a blocking call would,
+   * while {@link #sendAsync} holds no thread.
+   */
+  static class FakeHttpClient extends HttpClient {
+
+    private final long latencyMillis;
+    private final AtomicInteger tokenRequests;
+    private final long firstExpiresIn;
+
+    FakeHttpClient(long latencyMillis, long firstExpiresIn) {
+      this.latencyMillis = latencyMillis;
+      this.tokenRequests = new AtomicInteger(0);
+      this.firstExpiresIn = firstExpiresIn;
+    }
+
+    private String bodyFor(URI uri) {
+      if (uri.getPath().endsWith("/access_token")) {
+        final long expiresIn = this.tokenRequests.getAndIncrement() == 0 ? this.firstExpiresIn : 3600L;
+        return "{\"access_token\":\"t\",\"expires_in\":" + expiresIn + "}";
+      }
+      return uri.getPath().equals("/api/comment") ? PUBLISHED : LISTING;
+    }
+
+    private static <T> HttpResponse<T> respond(HttpRequest request, HttpResponse.BodyHandler<T> handler,
+                                               String body) {
+      final HttpResponse.ResponseInfo info = new HttpResponse.ResponseInfo() {
+
+        @Override
+        public int statusCode() {
+          return 200;
+        }
+
+        @Override
+        public HttpHeaders headers() {
+          return HttpHeaders.of(Map.of(), (k, v) -> true);
+        }
+
+        @Override
+        public Version version() {
+          return Version.HTTP_1_1;
+        }
+
+      };
+      final HttpResponse.BodySubscriber<T> subscriber = handler.apply(info);
+      subscriber.onSubscribe(new Flow.Subscription() {
+
+        @Override
+        public void request(long n) {
+        }
+
+        @Override
+        public void cancel() {
+        }
+
+      });
+      subscriber.onNext(List.of(ByteBuffer.wrap(body.getBytes(StandardCharsets.UTF_8))));
+      subscriber.onComplete();
+      return new FakeResponse<>(request, subscriber.getBody().toCompletableFuture().join());
+    }
+
+    @Override
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request,
+                                                            HttpResponse.BodyHandler<T> handler) {
+      final CompletableFuture<HttpResponse<T>> future = new CompletableFuture<>();
+      CompletableFuture.delayedExecutor(this.latencyMillis, TimeUnit.MILLISECONDS)
+          .execute(() -> future.complete(respond(request, handler, bodyFor(request.uri()))));
+      return future;
+    }
+
+    @Override
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request,
+                                                            HttpResponse.BodyHandler<T> handler,
+                                                            HttpResponse.PushPromiseHandler<T> pushPromiseHandler) {
+      return sendAsync(request, handler);
+    }
+
+    @Override
+    public <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler)
+        throws IOException, InterruptedException {
+      Thread.sleep(this.latencyMillis);
+      return respond(request, handler, bodyFor(request.uri()));
+    }
+
+    @Override
+    public Optional<CookieHandler> cookieHandler() {
+      return Optional.empty();
+    }
+
+    @Override
+    public Optional<Duration> connectTimeout() {
+      return Optional.empty();
+    }
+
+    @Override
+    public Redirect followRedirects() {
+      return Redirect.NEVER;
+    }
+
+    @Override
+    public Optional<ProxySelector> proxy() {
+      return Optional.empty();
+    }
+
+    @Override
+    public SSLContext sslContext() {
+      return null;
+    }
+
+    @Override
+    public SSLParameters sslParameters() {
+      return null;
+    }
+
+    @Override
+    public Optional<Authenticator> authenticator() {
+      return Optional.empty();
+    }
+
+    @Override
+    public Version version() {
+      return Version.HTTP_1_1;
+    }
+
+    @Override
+    public Optional<Executor> executor() {
+      return Optional.empty();
+    }
+
+  }
+
+  private static class FakeResponse<T> implements HttpResponse<T> {
+
+    private final HttpRequest request;
+    private final T body;
+
+    FakeResponse(HttpRequest request, T body) {
+      this.request = request;
+      this.body = body;
+    }
+
+    @Override
+    public int statusCode() {
+      return 200;
+    }
+
+    @Override
+    public HttpRequest request() {
+      return this.request;
+    }
+
+    @Override
+    public Optional<HttpResponse<T>> previousResponse() {
+      return Optional.empty();
+    }
+
+    @Override
+    public HttpHeaders headers() {
+      return HttpHeaders.of(Map.of(), (k, v) -> true);
+    }
+
+    @Override
+    public T body() {
+      return this.body;
+    }
+
+    @Override
+    public Optional<SSLSession> sslSession() {
+      return Optional.empty();
+    }
+
+    @Override
+    public URI uri() {
+      return this.request.uri();
+    }
+
+    @Override
+    public HttpClient.Version version() {
+      return HttpClient.Version.HTTP_1_1;
+    }
+
+  }
+
+  static RedditClient client(FakeHttpClient http) throws Exception {
+    return new RedditClient(http, new RedditPasswordGrantProvider(
+        new RedditCredentials("id", "secret", "munin", "pass", "munin-test")));
+  }
+
+  @Test
+  public void testConcurrentAsyncCallsShareOneRefresh() throws Exception {
+    // The first token is born expired, so every call below needs a refresh
+    final FakeHttpClient http = new FakeHttpClient(20L, 0L);
+    final RedditClient client = client(http);
+    final List<CompletableFuture<?>> calls = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      calls.add(client.fetchMaxUndocumentedCommentsAsync());
+    }
+    CompletableFuture.allOf(calls.toArray(new CompletableFuture<?>[0])).get();
+    assertEquals(http.tokenRequests.get(), 2);
+    assertEquals(client.publishAnyCommentAsync("t3_17x0yz", "hi").get().essence().id(), "k0m1n");
+  }
+
 }
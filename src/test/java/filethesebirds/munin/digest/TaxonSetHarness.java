@@ -0,0 +1,166 @@
+package filethesebirds.munin.digest;
+
+import filethesebirds.munin.digest.answer.Answers;
+import filethesebirds.munin.digest.motion.ImmutableMotionSpec;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Compares folding motions over large threads with {@link TaxonSet}-backed
+ * answers against the {@code HashSet<String>} representation they replaced,
+ * reproduced here as {@link HashSetFold}. Like {@code motionsDidUpdate} did
+ * before {@code AnswerFold}, every prefix of the thread is refolded after each
+ * new motion; reports time and bytes allocated per fold.
+ *
+ * <p>Usage: {@code TaxonSetHarness [threadLength...]}, 300 and 1000 motions by
+ * default. Allocation figures need a JVM that supports per-thread allocation
+ * counting (e.g. HotSpot).
+ */
+public final class TaxonSetHarness {
+
+  private static final String[] POOL = {"rethaw", "coohaw", "shshaw", "brwhaw", "reshaw", "amekes",
+      "merlin", "perfal", "norhar2", "osprey", "baleag", "turvul"};
+  private static final int ROUNDS = 5;
+
+  private TaxonSetHarness() {
+  }
+
+  /**
+   * A motion as the baseline sees it: {@code HashSet} taxa, as the digest
+   * model stored them before {@code TaxonSet}.
+   */
+  private static final class PlainMotion {
+
+    final String reviewer; // null for suggestions
+    final Set<String> plusTaxa;
+    final Set<String> overrideTaxa;
+
+    PlainMotion(String reviewer, Set<String> plusTaxa, Set<String> overrideTaxa) {
+      this.reviewer = reviewer;
+      this.plusTaxa = new HashSet<>(plusTaxa);
+      this.overrideTaxa = new HashSet<>(overrideTaxa);
+    }
+
+  }
+
+  /**
+   * The significance checks and updates of {@code MutableAnswer} as they were
+   * over {@code HashSet<String>}.
+   */
+  private static final class HashSetFold {
+
+    final Set<String> taxa = new HashSet<>();
+    final Set<String> reviewers = new HashSet<>();
+
+    boolean isReviewed() {
+      return !this.reviewers.isEmpty();
+    }
+
+    void apply(PlainMotion motion) {
+      if (motion.reviewer == null) {
+        if (isReviewed() || (motion.overrideTaxa.isEmpty() && this.taxa.containsAll(motion.plusTaxa))) {
+          return;
+        }
+        if (!motion.overrideTaxa.isEmpty()) {
+          this.taxa.clear();
+          this.taxa.addAll(motion.overrideTaxa);
+        } else {
+          this.taxa.addAll(motion.plusTaxa);
+        }
+      } else if (!motion.overrideTaxa.isEmpty()) {
+        this.taxa.clear();
+        this.taxa.addAll(motion.overrideTaxa);
+        this.reviewers.add(motion.reviewer);
+      } else if (!this.taxa.containsAll(motion.plusTaxa) || (!isReviewed() && !this.taxa.isEmpty())) {
+        if (this.taxa.addAll(motion.plusTaxa) || (!isReviewed() && !this.taxa.isEmpty())) {
+          this.reviewers.add(motion.reviewer);
+        }
+      }
+    }
+
+  }
+
+  private static long allocatedBytes() {
+    final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (threads instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return 0L;
+  }
+
+  public static void main(String[] args) {
+    final int[] lengths = args.length == 0 ? new int[] {300, 1000}
+        : Arrays.stream(args).mapToInt(Integer::parseInt).toArray();
+    for (int n : lengths) {
+      final Random random = new Random(42);
+      final List<Motion> motions = new ArrayList<>(n);
+      final List<PlainMotion> plain = new ArrayList<>(n);
+      for (int i = 0; i < n; i++) {
+        final Set<String> taxa = new HashSet<>();
+        for (int j = random.nextInt(3); j >= 0; j--) {
+          taxa.add(POOL[random.nextInt(POOL.length)]);
+        }
+        if (i == n * 3 / 4) {
+          motions.add(ImmutableMotionSpec.newPlusImmutableReview("brohitbrose", taxa));
+          plain.add(new PlainMotion("brohitbrose", taxa, Set.of()));
+        } else if (random.nextInt(20) == 0) {
+          motions.add(ImmutableMotionSpec.newOverrideImmutableSuggestion(taxa));
+          plain.add(new PlainMotion(null, Set.of(), taxa));
+        } else {
+          motions.add(ImmutableMotionSpec.newPlusImmutableSuggestion(taxa));
+          plain.add(new PlainMotion(null, taxa, Set.of()));
+        }
+      }
+      long bestBefore = Long.MAX_VALUE;
+      long bestAfter = Long.MAX_VALUE;
+      long bytesBefore = 0L;
+      long bytesAfter = 0L;
+      // The first round warms up; the fastest of the rest is reported
+      for (int round = 0; round <= ROUNDS; round++) {
+        long bytes = allocatedBytes();
+        long start = System.nanoTime();
+        Set<String> before = null;
+        for (int i = 1; i <= n; i++) {
+          final HashSetFold fold = new HashSetFold();
+          for (int k = 0; k < i; k++) {
+            fold.apply(plain.get(k));
+          }
+          before = fold.taxa;
+        }
+        final long beforeNanos = System.nanoTime() - start;
+        final long beforeBytes = allocatedBytes() - bytes;
+        bytes = allocatedBytes();
+        start = System.nanoTime();
+        Answer after = null;
+        for (int i = 1; i <= n; i++) {
+          after = Answers.mutable();
+          for (int k = 0; k < i; k++) {
+            after = after.apply(motions.get(k));
+          }
+        }
+        final long afterNanos = System.nanoTime() - start;
+        final long afterBytes = allocatedBytes() - bytes;
+        if (!before.equals(after.taxa())) {
+          throw new AssertionError("Folds disagree: " + before + " vs " + after.taxa());
+        }
+        if (round > 0 && beforeNanos < bestBefore) {
+          bestBefore = beforeNanos;
+          bytesBefore = beforeBytes;
+        }
+        if (round > 0 && afterNanos < bestAfter) {
+          bestAfter = afterNanos;
+          bytesAfter = afterBytes;
+        }
+      }
+      System.out.printf("[INFO] %d motions: HashSet %.1f us/fold, %d B/fold -> TaxonSet %.1f us/fold, %d B/fold%n",
+          n, bestBefore / 1000.0 / n, bytesBefore / n, bestAfter / 1000.0 / n, bytesAfter / n);
+    }
+  }
+
+}
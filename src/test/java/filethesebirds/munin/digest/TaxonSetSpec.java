@@ -0,0 +1,89 @@
+package filethesebirds.munin.digest;
+
+import filethesebirds.munin.digest.answer.Answers;
+import filethesebirds.munin.digest.motion.ImmutableMotionSpec;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import org.testng.annotations.Test;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class TaxonSetSpec {
+
+  @Test
+  public void testSetContract() {
+    final TaxonSet taxa = TaxonSet.of("rethaw", "coohaw", "notacode", "rethaw");
+    final Set<String> expected = Set.of("rethaw", "coohaw", "notacode");
+    assertEquals(taxa.size(), 3);
+    assertEquals(taxa, expected);
+    assertEquals(expected, taxa);
+    assertEquals(taxa.hashCode(), expected.hashCode());
+    assertEquals(new HashSet<>(taxa), expected);
+    assertTrue(taxa.contains("coohaw"));
+    assertTrue(taxa.contains("notacode"));
+    assertFalse(taxa.contains("shshaw"));
+    assertSame(TaxonSet.copyOf(Set.of()), TaxonSet.empty());
+    assertSame(TaxonSet.copyOf(taxa), taxa);
+  }
+
+  @Test
+  public void testTaxonomicIterationOrder() {
+    // ostric2 precedes rethaw precedes brnowl in the taxonomy
+    assertEquals(List.copyOf(TaxonSet.of("brnowl", "zzz", "ostric2", "rethaw")),
+        List.of("ostric2", "rethaw", "brnowl", "zzz"));
+  }
+
+  @Test
+  public void testUnion() {
+    final TaxonSet a = TaxonSet.of("rethaw", "coohaw"),
+        b = TaxonSet.of("coohaw", "shshaw", "foo");
+    assertEquals(a.union(b), Set.of("rethaw", "coohaw", "shshaw", "foo"));
+    assertSame(a.union(TaxonSet.of("coohaw")), a);
+    assertSame(TaxonSet.empty().union(b), b);
+    assertSame(TaxonSet.of("coohaw").union(a), a);
+    assertTrue(a.union(b).containsAll(a));
+    assertTrue(a.union(b).containsAll(Set.of("foo", "shshaw")));
+    assertFalse(a.containsAll(b));
+  }
+
+  @Test
+  public void testFoldLargeThread() {
+    final String[] pool = {"rethaw", "coohaw", "shshaw", "brwhaw", "reshaw", "amekes",
+        "merlin", "perfal", "norhar2", "osprey", "baleag", "turvul"};
+    final Random random = new Random(42);
+    final int n = 300;
+    final SortedMap<Integer, Motion> motions = new TreeMap<>();
+    for (int i = 0; i < n; i++) {
+      final Set<String> taxa = new HashSet<>();
+      for (int j = random.nextInt(3); j >= 0; j--) {
+        taxa.add(pool[random.nextInt(pool.length)]);
+      }
+      if (i == n * 3 / 4) {
+        motions.put(i, ImmutableMotionSpec.newPlusImmutableReview("brohitbrose", taxa));
+      } else if (random.nextInt(20) == 0) {
+        motions.put(i, ImmutableMotionSpec.newOverrideImmutableSuggestion(taxa));
+      } else {
+        motions.put(i, ImmutableMotionSpec.newPlusImmutableSuggestion(taxa));
+      }
+    }
+    // Refold the thread after each arrival, as SubmissionAgent does
+    int changes = 0;
+    Answer prev = null;
+    for (int i = 1; i <= n; i++) {
+      final Answer answer = Answers.mutable().apply(motions.headMap(i));
+      if (prev == null || !prev.taxa().equals(answer.taxa())) {
+        changes++;
+      }
+      prev = answer;
+    }
+    assertEquals(prev.taxa(), Answers.mutable().apply(motions.values()).taxa());
+    assertTrue(changes > 1);
+  }
+
+}
@@ -0,0 +1,94 @@
+package filethesebirds.munin.digest;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.testng.annotations.Test;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertThrows;
+
+public class TaxonomyFormatSpec {
+
+  private static final String CSV = "ostric2,Common Ostrich,1\n"
+      + "bogus,Malformed Row\n"
+      + "brnowl,Barn Owl,2\n"
+      + "Upper,Bad Code,3\n"
+      + "ostric2,Common Ostrich (renumbered),4\n"
+      + "r\u00fceb,Bad Char,5\n"
+      + "ruebus1,R\u00fcppell's Bustard,6\n";
+
+  private static TaxonomyFormat parse(String csv) throws Exception {
+    return TaxonomyFormat.fromCsv(new BufferedReader(new StringReader(csv)));
+  }
+
+  private static void assertSameTables(TaxonomyFormat actual, TaxonomyFormat expected) {
+    assertEquals(actual.size(), expected.size());
+    for (int i = 0; i < expected.size(); i++) {
+      final long code = expected.codes.get(i);
+      assertEquals(actual.codes.get(i), code);
+      assertEquals(actual.index(code), i);
+      assertEquals(actual.ordinals.get(i), expected.ordinals.get(i));
+      assertEquals(actual.nameAt(i), expected.nameAt(i));
+      assertEquals(actual.categoryAt(i), expected.categoryAt(i));
+    }
+  }
+
+  @Test
+  public void testCsvSkipsInvalidRowsAndShadowsDuplicates() throws Exception {
+    final TaxonomyFormat table = parse(CSV);
+    assertEquals(table.size(), 3);
+    assertEquals(TaxonomyFormat.unpack(table.codes.get(0)), "brnowl");
+    assertEquals(TaxonomyFormat.unpack(table.codes.get(1)), "ostric2");
+    assertEquals(table.nameAt(1), "Common Ostrich (renumbered)");
+    assertEquals(table.ordinals.get(1), 4);
+    assertEquals(table.nameAt(2), "R\u00fcppell's Bustard");
+    assertEquals(table.index(TaxonomyFormat.pack("upper", 0, 5)), -1);
+  }
+
+  @Test
+  public void testCsvCategories() throws Exception {
+    final TaxonomyFormat table = parse("daejun,Dark-eyed Junco,1\n"
+        + "orejun,Dark-eyed Junco (Oregon),2\n"
+        + "y00478,Red-tailed/Red-shouldered Hawk,3\n"
+        + "buteo,Buteo sp.,4\n"
+        + "x00776,Graylag x Swan Goose (Domestic type) (hybrid),5\n"
+        + "mallar2,Mallard (Domestic type),6\n"
+        + "redcro9,Red Crossbill (Type 9),7,form\n"
+        + "bogus1,Bogus Category,8,genus\n");
+    assertEquals(table.size(), 7);
+    assertEquals(table.categoryAt(0), TaxonCategory.SPECIES);
+    assertEquals(table.categoryAt(1), TaxonCategory.ISSF);
+    assertEquals(table.categoryAt(2), TaxonCategory.SLASH);
+    assertEquals(table.categoryAt(3), TaxonCategory.SPUH);
+    assertEquals(table.categoryAt(4), TaxonCategory.HYBRID);
+    assertEquals(table.categoryAt(5), TaxonCategory.DOMESTIC);
+    assertEquals(table.categoryAt(6), TaxonCategory.FORM);
+  }
+
+  @Test
+  public void testBinaryRoundTrip() throws Exception {
+    final TaxonomyFormat csv = parse(CSV);
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    csv.writeBinary(out);
+    assertSameTables(TaxonomyFormat.fromBinary(ByteBuffer.wrap(out.toByteArray())), csv);
+    // Direct buffers back memory-mapped images
+    final ByteBuffer direct = ByteBuffer.allocateDirect(out.size());
+    direct.put(out.toByteArray()).flip();
+    assertSameTables(TaxonomyFormat.fromBinary(direct), csv);
+  }
+
+  @Test
+  public void testBinaryRejectsCorruptImages() throws Exception {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    parse(CSV).writeBinary(out);
+    final byte[] image = out.toByteArray();
+    final byte[] badMagic = image.clone();
+    badMagic[0] ^= 1;
+    assertThrows(IllegalArgumentException.class, () -> TaxonomyFormat.fromBinary(ByteBuffer.wrap(badMagic)));
+    final byte[] truncated = Arrays.copyOf(image, image.length - 1);
+    assertThrows(IllegalArgumentException.class, () -> TaxonomyFormat.fromBinary(ByteBuffer.wrap(truncated)));
+  }
+
+}
@@ -0,0 +1,76 @@
+package filethesebirds.munin.digest.answer;
+
+import filethesebirds.munin.digest.Answer;
+import filethesebirds.munin.digest.Motion;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Ingests a large synthetic comment thread one motion at a time, both by
+ * refolding every motion after each update (as {@code motionsDidUpdate} did
+ * before {@link AnswerFold}) and through an {@code AnswerFold}, and reports
+ * the total time each way.
+ *
+ * <p>Keys are mostly tail appends, with every 25th motion (e.g. a slow
+ * purification) landing a few keys back.
+ *
+ * <p>Usage: {@code AnswerFoldHarness [threadLength...]}, 500 motions by
+ * default.
+ */
+public final class AnswerFoldHarness {
+
+  private static final int ROUNDS = 5;
+
+  private AnswerFoldHarness() {
+  }
+
+  public static void main(String[] args) {
+    final int[] lengths = args.length == 0 ? new int[] {500}
+        : Arrays.stream(args).mapToInt(Integer::parseInt).toArray();
+    for (int n : lengths) {
+      final Random random = new Random(11);
+      final Motion[] thread = new Motion[n];
+      final int[] keys = new int[n];
+      for (int i = 0; i < n; i++) {
+        thread[i] = AnswerFoldSpec.randomMotion(random);
+        keys[i] = (i % 25 == 24) ? 10 * i - 35 : 10 * i;
+      }
+      long bestFull = Long.MAX_VALUE;
+      long bestIncremental = Long.MAX_VALUE;
+      long refolds = 0L;
+      // The first round warms up; the fastest of the rest is reported
+      for (int round = 0; round <= ROUNDS; round++) {
+        final TreeMap<Integer, Motion> motions = new TreeMap<>();
+        long start = System.nanoTime();
+        Answer expected = null;
+        for (int i = 0; i < n; i++) {
+          motions.put(keys[i], thread[i]);
+          expected = Answers.mutable().apply(motions);
+        }
+        final long full = System.nanoTime() - start;
+        motions.clear();
+        final AnswerFold<Integer> fold = new AnswerFold<>(Comparator.naturalOrder());
+        Answer actual = null;
+        start = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+          motions.put(keys[i], thread[i]);
+          actual = fold.didUpdate(motions, keys[i]);
+        }
+        final long incremental = System.nanoTime() - start;
+        if (!actual.taxa().equals(expected.taxa()) || !actual.reviewers().equals(expected.reviewers())) {
+          throw new AssertionError("Folds disagree: " + actual.taxa() + " vs " + expected.taxa());
+        }
+        if (round > 0) {
+          bestFull = Math.min(bestFull, full);
+          bestIncremental = Math.min(bestIncremental, incremental);
+        }
+        refolds = fold.refolds();
+      }
+      System.out.printf("[INFO] Ingested %d-motion thread: full refold %d us, AnswerFold %d us (%d refolds)%n",
+          n, bestFull / 1000, bestIncremental / 1000, refolds);
+    }
+  }
+
+}
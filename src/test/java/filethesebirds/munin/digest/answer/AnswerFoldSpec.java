@@ -0,0 +1,119 @@
+package filethesebirds.munin.digest.answer;
+
+import filethesebirds.munin.digest.Answer;
+import filethesebirds.munin.digest.Forms;
+import filethesebirds.munin.digest.Motion;
+import filethesebirds.munin.digest.motion.ImmutableMotionSpec;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import org.testng.annotations.Test;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+
+public class AnswerFoldSpec {
+
+  private static final String[] POOL = {"rethaw", "coohaw", "shshaw", "brwhaw", "reshaw",
+      "amekes", "merlin", "perfal", "norhar2", "osprey", "baleag", "turvul"};
+
+  static Motion randomMotion(Random random) {
+    final Set<String> taxa = new HashSet<>();
+    for (int j = random.nextInt(3); j >= 0; j--) {
+      taxa.add(POOL[random.nextInt(POOL.length)]);
+    }
+    final int kind = random.nextInt(40);
+    if (kind == 0) {
+      return ImmutableMotionSpec.newPlusImmutableReview("reviewer" + random.nextInt(3), taxa);
+    } else if (kind == 1) {
+      return ImmutableMotionSpec.newOverrideImmutableReview("reviewer" + random.nextInt(3), taxa);
+    } else if (kind < 4) {
+      return ImmutableMotionSpec.newOverrideImmutableSuggestion(taxa);
+    }
+    return ImmutableMotionSpec.newPlusImmutableSuggestion(taxa);
+  }
+
+  private static void assertSameAnswer(Answer actual, TreeMap<Integer, Motion> motions) {
+    final Answer expected = Answers.mutable().apply(motions);
+    assertEquals(actual.taxa(), expected.taxa());
+    assertEquals(actual.reviewers(), expected.reviewers());
+  }
+
+  @Test
+  public void testMatchesFullFold() {
+    final Random random = new Random(7);
+    final TreeMap<Integer, Motion> motions = new TreeMap<>();
+    final AnswerFold<Integer> fold = new AnswerFold<>(Comparator.naturalOrder(), 8);
+    int tail = 0;
+    for (int step = 0; step < 2000; step++) {
+      final int op = random.nextInt(10);
+      if (op < 7 || motions.isEmpty()) {
+        // Tail append
+        tail += 1 + random.nextInt(3);
+        motions.put(tail, randomMotion(random));
+        assertSameAnswer(fold.didUpdate(motions, tail), motions);
+      } else if (op == 7) {
+        // Out-of-order insert or overwrite
+        final int key = random.nextInt(tail + 1);
+        motions.put(key, randomMotion(random));
+        assertSameAnswer(fold.didUpdate(motions, key), motions);
+      } else if (op == 8) {
+        // Removal
+        final Integer ceiling = motions.ceilingKey(random.nextInt(tail + 1));
+        final int key = ceiling == null ? motions.lastKey() : ceiling;
+        motions.remove(key);
+        assertSameAnswer(fold.didRemove(motions, key), motions);
+      } else {
+        // Inserts the fold never observed (as when the map is restored from
+        // storage) force a full refold
+        motions.put(-step, randomMotion(random));
+        tail++;
+        motions.put(tail, randomMotion(random));
+        assertSameAnswer(fold.didUpdate(motions, tail), motions);
+      }
+    }
+    fold.clear();
+    motions.clear();
+    motions.put(1, ImmutableMotionSpec.newPlusImmutableSuggestion(Set.of("rethaw")));
+    assertSameAnswer(fold.didUpdate(motions, 1), motions);
+  }
+
+  @Test
+  public void testSnapshotsAreStable() {
+    final TreeMap<Integer, Motion> motions = new TreeMap<>();
+    final AnswerFold<Integer> fold = new AnswerFold<>(Comparator.naturalOrder());
+    motions.put(1, ImmutableMotionSpec.newPlusImmutableSuggestion(Set.of("rethaw")));
+    final Answer first = fold.didUpdate(motions, 1);
+    motions.put(2, ImmutableMotionSpec.newPlusImmutableReview("reviewer", Set.of("coohaw")));
+    fold.didUpdate(motions, 2);
+    assertEquals(first.taxa(), Set.of("rethaw"));
+    assertEquals(first.reviewers(), Set.of());
+    assertEquals(fold.answer().taxa(), Set.of("rethaw", "coohaw"));
+  }
+
+  @Test
+  public void testLaneUpdatesAppend() {
+    final Random random = new Random(11);
+    final TreeMap<Integer, Motion> motions = new TreeMap<>();
+    final AnswerFold<Integer> fold = new AnswerFold<>(Comparator.naturalOrder());
+    // SubmissionAgent's motions lane reports an insert's old value through its
+    // value form, as a placeholder motion rather than null, so the fold must
+    // recognize tail appends without it
+    assertNotNull(Forms.forMotion().cast(null));
+    for (int i = 0; i < 500; i++) {
+      motions.put(10 * i, randomMotion(random));
+      assertSameAnswer(fold.didUpdate(motions, 10 * i), motions);
+    }
+    assertEquals(fold.refolds(), 0L);
+    motions.put(2495, randomMotion(random));
+    assertSameAnswer(fold.didUpdate(motions, 2495), motions);
+    motions.put(2500, randomMotion(random));
+    assertSameAnswer(fold.didUpdate(motions, 2500), motions);
+    assertEquals(fold.refolds(), 2L);
+    motions.put(5000, randomMotion(random));
+    assertSameAnswer(fold.didUpdate(motions, 5000), motions);
+    assertEquals(fold.refolds(), 2L);
+  }
+
+}
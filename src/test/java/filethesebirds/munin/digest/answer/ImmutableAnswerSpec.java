@@ -0,0 +1,64 @@
+package filethesebirds.munin.digest.answer;
+
+import filethesebirds.munin.digest.Answer;
+import filethesebirds.munin.digest.motion.ImmutableMotionSpec;
+import filethesebirds.munin.digest.motion.Review;
+import filethesebirds.munin.digest.motion.Suggestion;
+import java.util.Set;
+import org.testng.annotations.Test;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class ImmutableAnswerSpec {
+
+  @Test
+  public void testAnswerLifecycle() {
+    final Answer empty = Answers.immutable();
+    final Suggestion sug2 = ImmutableMotionSpec.newPlusImmutableSuggestion(Set.of("foo", "bar"));
+    final Suggestion sug3 = ImmutableMotionSpec.newPlusImmutableSuggestion(Set.of("foo", "baz"));
+    final Answer a3 = empty.apply(ImmutableMotionSpec.emptySuggestion()).apply(sug2).apply(sug3);
+    assertEquals(a3.taxa(), Set.of("foo", "bar", "baz"));
+    // Earlier versions are untouched
+    assertTrue(empty.taxa().isEmpty());
+    final Suggestion sug4 = ImmutableMotionSpec.newOverrideImmutableSuggestion(Set.of("foo", "bar"));
+    final Answer a4 = a3.apply(sug4);
+    assertEquals(a4.taxa(), Set.of("foo", "bar"));
+    assertEquals(a3.taxa(), Set.of("foo", "bar", "baz"));
+    final Review rev1 = ImmutableMotionSpec.newEmptyImmutableReview("uncheckedReviewer");
+    final Suggestion sug5 = ImmutableMotionSpec.newPlusImmutableSuggestion(Set.of("troll", "ololol"));
+    final Answer a5 = a4.apply(rev1).apply(sug5);
+    assertEquals(a5.taxa(), Set.of("foo", "bar"));
+    assertEquals(a5.reviewers(), Set.of("uncheckedreviewer"));
+    final Review rev3 = ImmutableMotionSpec.newOverrideImmutableReview("difReviewer", Set.of("foo"));
+    final Answer a6 = a5.apply(rev3).apply(sug4);
+    assertEquals(a6.taxa(), Set.of("foo"));
+    assertEquals(a6.reviewers(), Set.of("uncheckedreviewer", "difreviewer"));
+  }
+
+  @Test
+  public void testStructuralSharing() {
+    final Answer answer = Answers.immutable()
+        .apply(ImmutableMotionSpec.newPlusImmutableSuggestion(Set.of("rethaw", "coohaw")));
+    assertSame(answer.suggest(ImmutableMotionSpec.newPlusImmutableSuggestion(Set.of("rethaw"))), answer);
+    final Answer reviewed = answer.review(ImmutableMotionSpec.newPlusImmutableReview("someone", Set.of("rethaw")));
+    assertSame(reviewed.taxa(), answer.taxa());
+    // Reviewed answers ignore suggestions outright
+    assertSame(reviewed.suggest(ImmutableMotionSpec.newPlusImmutableSuggestion(Set.of("shshaw"))), reviewed);
+    // Insignificant repeat reviews change nothing
+    assertSame(reviewed.review(ImmutableMotionSpec.newPlusImmutableReview("other", Set.of("coohaw"))), reviewed);
+  }
+
+  @Test
+  public void testEquality() {
+    final Answer a = ImmutableAnswer.create(Set.of("rethaw", "coohaw"), Set.of("someone")),
+        b = ImmutableAnswer.create(Set.of("coohaw", "rethaw"), Set.of("someone")),
+        c = ImmutableAnswer.create(Set.of("coohaw"), Set.of("someone"));
+    assertEquals(a, b);
+    assertEquals(a.hashCode(), b.hashCode());
+    assertNotEquals(a, c);
+    assertSame(ImmutableAnswer.create(null, Set.of()), Answers.immutable());
+  }
+
+}
@@ -0,0 +1,60 @@
+package filethesebirds.munin.digest.motion;
+
+import filethesebirds.munin.digest.TaxonCategory;
+import filethesebirds.munin.digest.Taxonomy;
+import java.util.List;
+import java.util.Set;
+import org.testng.annotations.Test;
+import static org.testng.Assert.assertEquals;
+
+public class CategoryRouterSpec {
+
+  @Test
+  public void testTokens() {
+    assertEquals(CategoryRouter.tokens("dark%20eyed%20junco%20(oregon)"), List.of("dark", "eyed", "junco", "oregon"));
+    assertEquals(CategoryRouter.tokens("%20hawk%20sp.%20"), List.of("hawk", "sp."));
+  }
+
+  @Test
+  public void testRoutesToMatchingCategoriesFirst() {
+    // Only an issf's name has both words
+    assertEquals(CategoryRouter.route("oregon%20junco",
+        TaxonCategory.SPECIES, TaxonCategory.ISSF, TaxonCategory.FORM),
+        List.of(TaxonCategory.ISSF, TaxonCategory.FORM, TaxonCategory.SPECIES));
+    assertEquals(CategoryRouter.route("mallard%20x%20american%20black",
+        TaxonCategory.INTERGRADE, TaxonCategory.HYBRID), List.of(TaxonCategory.HYBRID, TaxonCategory.INTERGRADE));
+  }
+
+  @Test
+  public void testNeverDropsCandidates() {
+    // Whatever the local index suggests, every category that could resolve a
+    // hint before routing is still explored after it
+    final TaxonCategory[][] candidateSets = {
+        {TaxonCategory.SPECIES, TaxonCategory.ISSF, TaxonCategory.FORM},
+        {TaxonCategory.ISSF, TaxonCategory.FORM},
+        {TaxonCategory.HYBRID, TaxonCategory.INTERGRADE}
+    };
+    for (int i = 0; i < Taxonomy.size(); i += 7) {
+      final String name = ExtractingVisitor.normalizedHint(Taxonomy.commonNameAt(i));
+      final int space = name.indexOf("%20");
+      for (String hint : new String[] {name, space < 0 ? name : name.substring(space + 3)}) {
+        for (TaxonCategory[] candidates : candidateSets) {
+          final List<TaxonCategory> routed = CategoryRouter.route(hint, candidates);
+          assertEquals(routed.size(), candidates.length, hint);
+          assertEquals(Set.copyOf(routed), Set.of(candidates), hint);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testKeepsDefaultOrderWithoutLocalMatch() {
+    assertEquals(CategoryRouter.route("zzqx%20blorf",
+        TaxonCategory.SPECIES, TaxonCategory.ISSF, TaxonCategory.FORM),
+        List.of(TaxonCategory.SPECIES, TaxonCategory.ISSF, TaxonCategory.FORM));
+    assertEquals(CategoryRouter.route("buteo%20jamaicensis",
+        TaxonCategory.SPECIES, TaxonCategory.ISSF, TaxonCategory.FORM),
+        List.of(TaxonCategory.SPECIES, TaxonCategory.ISSF, TaxonCategory.FORM));
+  }
+
+}
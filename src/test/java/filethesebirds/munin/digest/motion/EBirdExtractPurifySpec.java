@@ -1,7 +1,149 @@
 package filethesebirds.munin.digest.motion;
 
+import filethesebirds.munin.connect.ebird.EBirdApiException;
+import filethesebirds.munin.connect.ebird.EBirdClient;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.LongAdder;
 import org.testng.annotations.Test;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
 
 public class EBirdExtractPurifySpec {
 
+  /**
+   * Answers every find with an empty result, except that the uncategorized
+   * find resolves hints containing "owl" to "brnowl".
+   */
+  private static class FakeEBirdClient extends EBirdClient {
+
+    private int finds = 0;
+
+    FakeEBirdClient() {
+      super(null, "munin-test");
+    }
+
+    private CompletableFuture<String> found(LongAdder calls, String response) {
+      this.finds++;
+      calls.increment();
+      return CompletableFuture.completedFuture(response);
+    }
+
+    @Override
+    public CompletableFuture<String> findSpeciesAsync(String query, LongAdder calls) {
+      if (query.contains("down")) {
+        calls.increment();
+        return CompletableFuture.failedFuture(new EBirdApiException("eBird is down"));
+      }
+      return found(calls, "[]");
+    }
+
+    @Override
+    public CompletableFuture<String> findIssfAsync(String query, LongAdder calls) {
+      return found(calls, "[]");
+    }
+
+    @Override
+    public CompletableFuture<String> findFormAsync(String query, LongAdder calls) {
+      return found(calls, "[]");
+    }
+
+    @Override
+    public CompletableFuture<String> findTaxonAsync(String query, LongAdder calls) {
+      return found(calls, query.contains("owl")
+          ? "[{\"code\":\"brnowl\",\"name\":\"Barn Owl - Tyto alba\"}]" : "[]");
+    }
+
+  }
+
+  @Test
+  public void testHintCategories() {
+    assertEquals(EBirdExtractPurify.hintCategory("mallard%20x%20american%20black%20duck"), "hybrid-intergrade");
+    assertEquals(EBirdExtractPurify.hintCategory("mallard%20hybrid"), "hybrid");
+    assertEquals(EBirdExtractPurify.hintCategory("feral%20pigeon"), "domestic");
+    assertEquals(EBirdExtractPurify.hintCategory("hawk%20sp"), "spuh");
+    assertEquals(EBirdExtractPurify.hintCategory("greater/lesser%20scaup"), "slash");
+    assertEquals(EBirdExtractPurify.hintCategory("dark%20eyed%20junco%20(oregon)"), "issf-form");
+    assertEquals(EBirdExtractPurify.hintCategory("zzqx%20blorf"), "species-issf-form");
+  }
+
+  @Test
+  public void testCachesUnresolvableHints() throws Exception {
+    final FakeEBirdClient client = new FakeEBirdClient();
+    final Extract extract = ImmutableExtract.create(ImmutableSuggestion.empty(),
+        Set.of("zzqx%20blorf"), null);
+    final Extract first = EBirdExtractPurify.purifyOneHint(client, extract);
+    assertTrue(EBirdExtractPurify.extractIsPurified(first));
+    assertEquals(client.finds, 3); // species, then issf, then form
+    assertTrue(HintCache.isKnownMiss("species-issf-form", "zzqx%20blorf"));
+    assertFalse(HintCache.isKnownMiss("hybrid", "zzqx%20blorf"));
+    final Extract second = EBirdExtractPurify.purifyOneHint(client, extract);
+    assertTrue(EBirdExtractPurify.extractIsPurified(second));
+    assertEquals(client.finds, 3);
+  }
+
+  @Test
+  public void testCachesVagueHints() throws Exception {
+    final FakeEBirdClient client = new FakeEBirdClient();
+    final Extract resolvable = ImmutableExtract.create(ImmutableSuggestion.empty(), null,
+        Set.of("zzqx%20owl"));
+    assertEquals(EBirdExtractPurify.purifyOneHint(client, resolvable).base().plusTaxa(), Set.of("brnowl"));
+    assertEquals(EBirdExtractPurify.purifyOneHint(client, resolvable).base().plusTaxa(), Set.of("brnowl"));
+    assertEquals(HintCache.getVague("taxon", "zzqx%20owl"), "brnowl");
+    final Extract unresolvable = ImmutableExtract.create(ImmutableSuggestion.empty(), null,
+        Set.of("zzqx%20blorf%20vague"));
+    assertTrue(EBirdExtractPurify.purifyOneHint(client, unresolvable).base().plusTaxa().isEmpty());
+    assertTrue(EBirdExtractPurify.purifyOneHint(client, unresolvable).base().plusTaxa().isEmpty());
+    assertNull(HintCache.getVague("taxon", "zzqx%20blorf%20vague"));
+    assertTrue(HintCache.isKnownMiss("taxon", "zzqx%20blorf%20vague"));
+    assertEquals(client.finds, 2);
+  }
+
+  @Test
+  public void testPurifyHintsMergesOnce() {
+    final Extract extract = ImmutableExtract.create(ImmutableSuggestion.empty(),
+        Set.of("red%20tailed%20hawk", "zzqx%20blorf"), Set.of("zzqx%20raptor"));
+    final Map<String, String> hints = new HashMap<>();
+    hints.put("red%20tailed%20hawk", "rethaw");
+    final Map<String, String> vagueHints = new HashMap<>();
+    vagueHints.put("zzqx%20raptor", null);
+    final Extract purified = extract.purifyHints(hints, vagueHints);
+    assertEquals(purified.base().plusTaxa(), Set.of("rethaw"));
+    assertEquals(purified.hints(), Set.of("zzqx%20blorf"));
+    assertTrue(purified.vagueHints().isEmpty());
+  }
+
+  @Test
+  public void testPurifyAllKeepsPartialProgress() throws Exception {
+    final FakeEBirdClient client = new FakeEBirdClient();
+    final Extract extract = ImmutableExtract.create(ImmutableSuggestion.empty(),
+        Set.of("zzqx%20down", "zzqx%20blorf%20all"), Set.of("zzqx%20owl%20all"));
+    try {
+      EBirdExtractPurify.purifyAllAsync(client, extract, 10, 2).join();
+      fail("Expected an IncompletePurificationException");
+    } catch (CompletionException e) {
+      assertTrue(e.getCause() instanceof IncompletePurificationException);
+      final Extract partial = ((IncompletePurificationException) e.getCause()).partial();
+      assertEquals(partial.hints(), Set.of("zzqx%20down"));
+      assertTrue(partial.vagueHints().isEmpty());
+      assertEquals(partial.base().plusTaxa(), Set.of("brnowl"));
+    }
+  }
+
+  @Test
+  public void testCountsSavedCalls() {
+    final long before = HintCache.savedCalls();
+    HintCache.putMiss("spuh", "zzqx%20sp", 3L);
+    HintCache.putVague("taxon", "zzqx%20gull", "gull", 1L);
+    assertTrue(HintCache.isKnownMiss("spuh", "zzqx%20sp"));
+    assertEquals(HintCache.getVague("taxon", "zzqx%20gull"), "gull");
+    assertEquals(HintCache.savedCalls() - before, 4L);
+  }
+
 }
@@ -0,0 +1,138 @@
+package filethesebirds.munin.digest.motion;
+
+import filethesebirds.munin.connect.ebird.EBirdClient;
+import filethesebirds.munin.connect.ebird.EBirdGateway;
+import filethesebirds.munin.connect.ebird.EBirdHedging;
+import filethesebirds.munin.connect.ebird.EBirdStandIn;
+import filethesebirds.munin.connect.http.LatencyHistogram;
+import filethesebirds.munin.digest.Taxonomy;
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Drives {@link EBirdExtractPurify#purifyAllAsync} with a stream of extracts
+ * against an {@link EBirdStandIn}, then reports throughput, per-extract tail
+ * latency, and how many eBird requests the caches and single-flighting saved.
+ *
+ * <p>Usage: {@code EBirdLoadHarness <stream> [concurrency] [latencyMs]
+ * [errorRate] [permitsPerSecond]}, where {@code stream} is either a file
+ * with one submission's hints per line (whitespace-separated, vague hints
+ * prefixed with {@code ~}, raw or already normalized), or {@code
+ * synthetic:N} for {@code N} submissions drawn from {@link Taxonomy} with a
+ * skew toward popular taxa, as in a real backlog.
+ */
+public final class EBirdLoadHarness {
+
+  private EBirdLoadHarness() {
+  }
+
+  static List<Extract> readStream(Path path) throws Exception {
+    final List<Extract> extracts = new ArrayList<>();
+    for (String line : Files.readAllLines(path)) {
+      final Set<String> hints = new HashSet<>();
+      final Set<String> vagueHints = new HashSet<>();
+      for (String token : line.trim().split("\\s+")) {
+        if (token.startsWith("~") && token.length() > 1) {
+          vagueHints.add(ExtractingVisitor.normalizedHint(token.substring(1).replace("%20", " ")));
+        } else if (!token.isEmpty()) {
+          hints.add(ExtractingVisitor.normalizedHint(token.replace("%20", " ")));
+        }
+      }
+      if (!hints.isEmpty() || !vagueHints.isEmpty()) {
+        extracts.add(ImmutableExtract.create(ImmutableSuggestion.empty(), hints, vagueHints));
+      }
+    }
+    return extracts;
+  }
+
+  /**
+   * Hints are taxon names missing their first word ("Tailed Hawk"), which
+   * local resolution can't settle alone, so they exercise the eBird path.
+   */
+  static List<Extract> syntheticStream(int count, long seed) {
+    final Random random = new Random(seed);
+    final List<Extract> extracts = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      final Set<String> hints = new HashSet<>();
+      for (int k = 1 + random.nextInt(3); k > 0; k--) {
+        // Squaring a uniform variate favors low indices, i.e. common taxa
+        final double u = random.nextDouble();
+        final String name = Taxonomy.commonNameAt((int) (u * u * Taxonomy.size()));
+        final int space = name.indexOf(' ');
+        hints.add(ExtractingVisitor.normalizedHint(space < 0 ? name : name.substring(space + 1)));
+      }
+      extracts.add(ImmutableExtract.create(ImmutableSuggestion.empty(), hints, null));
+    }
+    return extracts;
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 1) {
+      System.out.println("Usage: EBirdLoadHarness <stream|synthetic:N> [concurrency] [latencyMs]"
+          + " [errorRate] [permitsPerSecond]");
+      return;
+    }
+    final List<Extract> extracts = args[0].startsWith("synthetic:")
+        ? syntheticStream(Integer.parseInt(args[0].substring("synthetic:".length())), 17L)
+        : readStream(Path.of(args[0]));
+    final int concurrency = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+    final long latencyMs = args.length > 2 ? Long.parseLong(args[2]) : 150L;
+    final double errorRate = args.length > 3 ? Double.parseDouble(args[3]) : 0.0;
+    final double permitsPerSecond = args.length > 4 ? Double.parseDouble(args[4]) : 0.0;
+    final EBirdStandIn.Profile profile = new EBirdStandIn.Profile()
+        .latency(latencyMs, latencyMs)
+        .errors(errorRate);
+    if (permitsPerSecond > 0.0) {
+      profile.rateLimit(permitsPerSecond, (int) Math.max(1.0, permitsPerSecond));
+    }
+    int hints = 0;
+    for (Extract extract : extracts) {
+      hints += extract.hints().size() + extract.vagueHints().size();
+    }
+    try (EBirdStandIn standIn = EBirdStandIn.start(profile)) {
+      final EBirdClient client = new EBirdClient(HttpClient.newHttpClient(), "munin-load",
+          standIn.baseUrl(), EBirdHedging.fromSystemProperties(), EBirdGateway.fromSystemProperties());
+      final LatencyHistogram latencies = new LatencyHistogram();
+      final Semaphore permits = new Semaphore(concurrency);
+      final LongAdder failures = new LongAdder();
+      final long savedBefore = HintCache.savedCalls();
+      final List<CompletableFuture<?>> pending = new ArrayList<>(extracts.size());
+      final long start = System.nanoTime();
+      for (Extract extract : extracts) {
+        permits.acquire();
+        final long submitted = System.nanoTime();
+        pending.add(EBirdExtractPurify.purifyAllAsync(client, extract, 10, 4)
+            .whenComplete((purified, failure) -> {
+              latencies.record(System.nanoTime() - submitted);
+              if (failure != null) {
+                failures.increment();
+              }
+              permits.release();
+            }));
+      }
+      CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0]))
+          .handle((v, e) -> null).join();
+      final double seconds = (System.nanoTime() - start) / 1e9;
+      final LatencyHistogram.Snapshot snapshot = latencies.drain();
+      System.out.printf("[INFO] %d extracts, %d hints in %.2f s: %.1f extracts/s, %.1f hints/s%n",
+          extracts.size(), hints, seconds, extracts.size() / seconds, hints / seconds);
+      System.out.printf("[INFO] per-extract latency p50=%.1f ms p90=%.1f ms p99=%.1f ms; %d failed%n",
+          snapshot.percentileMicros(50.0) / 1000.0, snapshot.percentileMicros(90.0) / 1000.0,
+          snapshot.percentileMicros(99.0) / 1000.0, failures.sum());
+      System.out.printf("[INFO] stand-in saw %d requests (%.2f per hint; %d errors, %d throttled);"
+              + " hint cache saved %d calls, single-flight shared %d%n",
+          standIn.requests(), (double) standIn.requests() / Math.max(1, hints), standIn.errors(),
+          standIn.throttled(), HintCache.savedCalls() - savedBefore, client.sharedCalls());
+    }
+  }
+
+}
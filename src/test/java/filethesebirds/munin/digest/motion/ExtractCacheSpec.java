@@ -0,0 +1,87 @@
+package filethesebirds.munin.digest.motion;
+
+import filethesebirds.munin.digest.Comment;
+import filethesebirds.munin.digest.Motion;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import org.testng.annotations.Test;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class ExtractCacheSpec {
+
+  private static Comment comment(String id, String body) {
+    return new Comment(id, 1700000000L, "abc123", "someone", body, "op");
+  }
+
+  @Test
+  public void testHitsAndMisses() {
+    final ExtractCache cache = ExtractCache.inMemory(10);
+    final Comment comment = comment("k1", "!addTaxa rethaw");
+    assertNull(cache.get(comment));
+    final Motion motion = ImmutableSuggestion.plus(Set.of("rethaw"));
+    cache.put(comment, motion);
+    final Extract cached = cache.get(comment);
+    assertSame(cached.base(), motion);
+    assertTrue(EBirdExtractPurify.extractIsPurified(cached));
+    // Edits change the body hash
+    assertNull(cache.get(comment("k1", "!addTaxa coohaw")));
+    assertEquals(cache.hits(), 1L);
+    assertEquals(cache.misses(), 2L);
+    assertEquals(cache.hitRate(), 1.0 / 3);
+  }
+
+  @Test
+  public void testEmptyMotionsStayEmpty() {
+    final ExtractCache cache = ExtractCache.inMemory(10);
+    final Comment comment = comment("k2", "Nice photo!");
+    cache.put(comment, ImmutableExtract.empty().base());
+    assertTrue(cache.get(comment).isEmpty());
+    final Comment review = comment("k3", "!overrideTaxa");
+    cache.put(review, ImmutableReview.empty("someone"));
+    assertTrue(!cache.get(review).isEmpty());
+  }
+
+  @Test
+  public void testEvictsLeastRecentlyUsed() {
+    final ExtractCache cache = ExtractCache.inMemory(2);
+    final Comment a = comment("a", "+rethaw+");
+    final Comment b = comment("b", "+coohaw+");
+    final Comment c = comment("c", "+shshaw+");
+    cache.put(a, ImmutableSuggestion.plus(Set.of("rethaw")));
+    cache.put(b, ImmutableSuggestion.plus(Set.of("coohaw")));
+    cache.get(a);
+    cache.put(c, ImmutableSuggestion.plus(Set.of("shshaw")));
+    assertEquals(cache.size(), 2);
+    assertNull(cache.get(b));
+    assertEquals(cache.get(a).base().plusTaxa(), Set.of("rethaw"));
+  }
+
+  @Test
+  public void testIgnoresStaleSpill() throws Exception {
+    final Path dir = Files.createTempDirectory("extract-cache");
+    final Path spill = dir.resolve("extracts.recon");
+    Files.write(spill, List.of("parse.0/normalize.0", "k1/0\t@suggestion"), StandardCharsets.UTF_8);
+    assertEquals(ExtractCache.spilling(10, spill).size(), 0);
+  }
+
+  @Test
+  public void testSpillRoundTrip() throws Exception {
+    final Path dir = Files.createTempDirectory("extract-cache");
+    final Path spill = dir.resolve("extracts.recon");
+    final ExtractCache cache = ExtractCache.spilling(10, spill);
+    final Comment comment = comment("k1", "+Red-tailed Hawk+");
+    cache.put(comment, ImmutableSuggestion.plus(Set.of("rethaw")));
+    cache.spill();
+    assertEquals(Files.readAllLines(spill, StandardCharsets.UTF_8).get(0), ExtractCache.version());
+    final ExtractCache reloaded = ExtractCache.spilling(10, spill);
+    assertEquals(reloaded.size(), 1);
+    assertEquals(reloaded.get(comment).base().plusTaxa(), Set.of("rethaw"));
+  }
+
+}
@@ -6,6 +6,9 @@ import java.util.Collections;
 import java.util.Set;
 import org.testng.annotations.Test;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
 
 public class ExtractParseSpec {
 
@@ -59,6 +62,29 @@ public class ExtractParseSpec {
     assertEquals(extract.base().plusTaxa(), Set.of("blujay", "reshaw"));
   }
 
+  @Test
+  public void testCommandScan() {
+    assertEquals(ExtractParse.seekToCommand("!addTaxa rethaw"), 1);
+    assertEquals(ExtractParse.seekToCommand("nice\n!overridetaxa rethaw"), -6);
+    assertEquals(ExtractParse.seekToCommand("nice\n!AddTaxa rethaw\n!np\n!addtaxa blujay"), 26);
+    assertEquals(ExtractParse.seekToCommand("see !addTaxa rethaw"), 0);
+    assertEquals(ExtractParse.unescape("\\\\+rethaw+\n\\++vague++ a\\b"), "++rethaw+\n+++vague++ a\\b");
+    final String plain = "nothing to unescape";
+    assertSame(ExtractParse.unescape(plain), plain);
+    // Escaped line-initial pluses count toward the hint heuristic
+    assertTrue(ExtractParse.mayContainHints("\\+Red-tailed Hawk", true));
+    assertFalse(ExtractParse.mayContainHints("\\+Red-tailed Hawk", false));
+    assertFalse(ExtractParse.mayContainHints("a+b", true));
+    assertTrue(ExtractParse.mayContainHints("see https://ebird.org", false));
+  }
+
+  @Test
+  public void testCommandAfterEscapedLine() {
+    final String body = "\\+Red-tailed Hawk+ for sure\n!addTaxa rethaw";
+    final Extract extract = ExtractParse.parseComment(bareReview(body));
+    assertEquals(extract.base().plusTaxa(), Set.of("rethaw"));
+  }
+
   @Test
   public void testNr() {
     final String body = "++Setophaga sp++ or doing an addTaxa with the code from the link you should see soon would both work.\n\n!nr";
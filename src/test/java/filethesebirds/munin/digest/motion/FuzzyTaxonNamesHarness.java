@@ -0,0 +1,92 @@
+package filethesebirds.munin.digest.motion;
+
+import filethesebirds.munin.connect.http.LatencyHistogram;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures {@link FuzzyTaxonNames} over a corpus of misspelled hints, each
+ * paired with the code that eBird's taxon/find resolves it to, and reports
+ * match latency alongside how often each tier agrees with eBird: confident
+ * matches, which skip eBird entirely, and looser matches, which only stand in
+ * once eBird has no answer.
+ *
+ * <p>Usage: {@code FuzzyTaxonNamesHarness [corpus] [rounds]}, where {@code
+ * corpus} has one {@code hint<TAB>code} pair per line; without one, the
+ * corpus from {@link FuzzyTaxonNamesSpec} is used.
+ */
+public final class FuzzyTaxonNamesHarness {
+
+  private FuzzyTaxonNamesHarness() {
+  }
+
+  static String[][] readCorpus(Path path) throws Exception {
+    final List<String[]> pairs = new ArrayList<>();
+    for (String line : Files.readAllLines(path)) {
+      final int tab = line.indexOf('\t');
+      if (tab > 0) {
+        pairs.add(new String[] {line.substring(0, tab).trim(), line.substring(tab + 1).trim()});
+      }
+    }
+    return pairs.toArray(new String[0][]);
+  }
+
+  public static void main(String[] args) throws Exception {
+    final String[][] corpus = args.length > 0 ? readCorpus(Path.of(args[0])) : FuzzyTaxonNamesSpec.MISSPELLED;
+    final int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+    final String[] hints = new String[corpus.length];
+    for (int i = 0; i < hints.length; i++) {
+      hints[i] = FuzzyTaxonNamesSpec.normalized(corpus[i][0]);
+    }
+    final String[] confident = new String[hints.length];
+    final String[] fallback = new String[hints.length];
+    final LatencyHistogram confidentLatency = new LatencyHistogram();
+    final LatencyHistogram fallbackLatency = new LatencyHistogram();
+    // The first round builds the index and warms up; only later ones count
+    for (int round = 0; round <= rounds; round++) {
+      for (int i = 0; i < hints.length; i++) {
+        long start = System.nanoTime();
+        confident[i] = FuzzyTaxonNames.resolveConfidently(hints[i]);
+        final long confidentNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        fallback[i] = FuzzyTaxonNames.resolve(hints[i]);
+        final long fallbackNanos = System.nanoTime() - start;
+        if (round > 0) {
+          confidentLatency.record(confidentNanos);
+          fallbackLatency.record(fallbackNanos);
+        }
+      }
+    }
+    int confidentCount = 0;
+    int confidentAgreed = 0;
+    int fallbackCount = 0;
+    int fallbackAgreed = 0;
+    for (int i = 0; i < hints.length; i++) {
+      final String expected = corpus[i][1];
+      if (confident[i] != null) {
+        confidentCount++;
+        if (confident[i].equals(expected)) {
+          confidentAgreed++;
+        } else {
+          System.out.println("[WARN] confident " + hints[i] + " -> " + confident[i] + ", eBird says " + expected);
+        }
+      } else if (fallback[i] != null) {
+        fallbackCount++;
+        if (fallback[i].equals(expected)) {
+          fallbackAgreed++;
+        }
+      }
+    }
+    final LatencyHistogram.Snapshot c = confidentLatency.drain();
+    final LatencyHistogram.Snapshot f = fallbackLatency.drain();
+    System.out.printf("[INFO] %d hints: %d confident (%d agree with eBird, skipping its calls);"
+            + " %d more by fallback (%d agree); %d unmatched%n",
+        hints.length, confidentCount, confidentAgreed, fallbackCount, fallbackAgreed,
+        hints.length - confidentCount - fallbackCount);
+    System.out.printf("[INFO] confident match p50=%d us p99=%d us; fallback match p50=%d us p99=%d us%n",
+        c.percentileMicros(50.0), c.percentileMicros(99.0), f.percentileMicros(50.0), f.percentileMicros(99.0));
+  }
+
+}
@@ -0,0 +1,75 @@
+package filethesebirds.munin.digest.motion;
+
+import org.testng.annotations.Test;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class FuzzyTaxonNamesSpec {
+
+  // Misspelled hints as they have appeared in comments, each paired with the
+  // code that eBird's taxon/find endpoint resolves them to
+  static final String[][] MISSPELLED = {
+      {"nothern cardinal", "norcar"},
+      {"amercan robin", "amerob"},
+      {"morning dove", "moudov"},
+      {"downey woodpecker", "dowwoo"},
+      {"grey heron", "graher1"},
+      {"grey catbird", "grycat"},
+      {"ruby throated humingbird", "rthhum"},
+      {"killdear", "killde"},
+      {"belted kingfischer", "belkin1"},
+      {"song sparow", "sonspa"},
+      {"black-capped chikadee", "bkcchi"},
+      {"red wing blackbird", "rewbla"},
+      {"ceder waxwing", "cedwax"},
+      {"great egrett", "greegr"},
+      {"yellow rumped warber", "yerwar"}
+  };
+
+  static String normalized(String raw) {
+    return ExtractingVisitor.normalize(ExtractingVisitor.cleanHint(raw));
+  }
+
+  @Test
+  public void testMisspelledCorpus() {
+    for (String[] pair : MISSPELLED) {
+      assertEquals(FuzzyTaxonNames.resolve(normalized(pair[0])), pair[1], pair[0]);
+    }
+  }
+
+  @Test
+  public void testRankedCandidates() {
+    final java.util.List<FuzzyTaxonNames.Match> matches = FuzzyTaxonNames.search(normalized("grey heron"), 2);
+    assertTrue(matches.size() >= 1);
+    assertEquals(matches.get(0).code(), "graher1");
+    assertEquals(matches.get(0).distance, 1);
+  }
+
+  @Test
+  public void testUnconfidentHints() {
+    // Too short to risk an edit
+    assertNull(FuzzyTaxonNames.resolve(normalized("rtha")));
+    // Nothing nearby
+    assertNull(FuzzyTaxonNames.resolve(normalized("oregon junco")));
+  }
+
+  @Test
+  public void testConfidentMatches() {
+    assertEquals(FuzzyTaxonNames.resolveConfidently(normalized("comon loon")), "comloo");
+    assertEquals(FuzzyTaxonNames.resolveConfidently(normalized("grey heron")), "graher1");
+    // Two edits away, so only a fallback once eBird has no answer
+    assertNull(FuzzyTaxonNames.resolveConfidently(normalized("red wing blackbird")));
+    // Both "larus sp." and "parus sp." are one edit away
+    assertNull(FuzzyTaxonNames.resolveConfidently(normalized("haru sp.")));
+    assertNull(FuzzyTaxonNames.resolveConfidently(normalized("rtha")));
+  }
+
+  @Test
+  public void testBoundedDistance() {
+    assertEquals(FuzzyTaxonNames.boundedDistance("killdear", "killdeer", 2), 1);
+    assertEquals(FuzzyTaxonNames.boundedDistance("kitten", "sitting", 2), 3);
+    assertEquals(FuzzyTaxonNames.boundedDistance("kitten", "sitting", 3), 3);
+  }
+
+}
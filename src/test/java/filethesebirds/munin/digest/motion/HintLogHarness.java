@@ -0,0 +1,51 @@
+package filethesebirds.munin.digest.motion;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Reports how long {@link HintLog#open} takes to load a large log into a
+ * {@link TinyLfuCache}, as {@link HintCache#load} does at startup.
+ *
+ * <p>Usage: {@code HintLogHarness [records]}, 100000 records by default.
+ */
+public final class HintLogHarness {
+
+  private static final int ROUNDS = 5;
+
+  private HintLogHarness() {
+  }
+
+  public static void main(String[] args) throws Exception {
+    final int n = args.length == 0 ? 100000 : Integer.parseInt(args[0]);
+    final Path dir = Files.createTempDirectory("hint-log");
+    final Path path = dir.resolve("hints.log");
+    try {
+      try (HintLog log = HintLog.open(path, 42L, (h, c) -> { })) {
+        for (int i = 0; i < n; i++) {
+          log.append("some%20longish%20bird%20hint%20" + i, "code" + (i % 17000));
+        }
+      }
+      long best = Long.MAX_VALUE;
+      // The first round warms up; the fastest of the rest is reported
+      for (int round = 0; round <= ROUNDS; round++) {
+        final TinyLfuCache<String, String> cache = new TinyLfuCache<>(n, 1, 0L);
+        final long start = System.nanoTime();
+        try (HintLog log = HintLog.open(path, 42L, cache::put)) {
+          if (log.records() != n || cache.size() != n) {
+            throw new AssertionError("Loaded " + log.records() + " records into " + cache.size() + " entries");
+          }
+        }
+        if (round > 0) {
+          best = Math.min(best, System.nanoTime() - start);
+        }
+      }
+      System.out.println("[INFO] HintLog: loaded " + n + " records (" + Files.size(path)
+          + " bytes) into a TinyLfuCache in " + (best / 1000000) + " ms");
+    } finally {
+      Files.deleteIfExists(path);
+      Files.deleteIfExists(dir);
+    }
+  }
+
+}
@@ -0,0 +1,116 @@
+package filethesebirds.munin.digest.motion;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import org.testng.annotations.Test;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class HintLogSpec {
+
+  private static Path tempLog() throws Exception {
+    return Files.createTempDirectory("hint-log").resolve("hints.log");
+  }
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    final Path path = tempLog();
+    try (HintLog log = HintLog.open(path, 42L, (h, c) -> { })) {
+      log.append("red%20tailed%20hawk", "rethaw");
+      log.append("cooper%20hawk", "coohaw");
+      log.append("red%20tailed%20hawk", "rethaw1");
+      assertEquals(log.records(), 3L);
+    }
+    final Map<String, String> loaded = new HashMap<>();
+    try (HintLog log = HintLog.open(path, 42L, loaded::put)) {
+      assertEquals(log.records(), 3L);
+    }
+    assertEquals(loaded, Map.of("red%20tailed%20hawk", "rethaw1", "cooper%20hawk", "coohaw"));
+  }
+
+  @Test
+  public void testDiscardsOtherTaxonomies() throws Exception {
+    final Path path = tempLog();
+    try (HintLog log = HintLog.open(path, 42L, (h, c) -> { })) {
+      log.append("red%20tailed%20hawk", "rethaw");
+    }
+    final Map<String, String> loaded = new HashMap<>();
+    try (HintLog log = HintLog.open(path, 43L, loaded::put)) {
+      assertEquals(log.records(), 0L);
+      log.append("cooper%20hawk", "coohaw");
+    }
+    try (HintLog log = HintLog.open(path, 43L, loaded::put)) {
+      assertEquals(log.records(), 1L);
+    }
+    assertEquals(loaded, Map.of("cooper%20hawk", "coohaw"));
+  }
+
+  @Test
+  public void testTruncatesTornRecord() throws Exception {
+    final Path path = tempLog();
+    try (HintLog log = HintLog.open(path, 42L, (h, c) -> { })) {
+      log.append("red%20tailed%20hawk", "rethaw");
+      log.append("cooper%20hawk", "coohaw");
+    }
+    final long size = Files.size(path);
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+      channel.truncate(size - 3);
+    }
+    final Map<String, String> loaded = new HashMap<>();
+    try (HintLog log = HintLog.open(path, 42L, loaded::put)) {
+      assertEquals(log.records(), 1L);
+      log.append("sharp%20shinned%20hawk", "shshaw");
+    }
+    loaded.clear();
+    try (HintLog log = HintLog.open(path, 42L, loaded::put)) {
+      assertEquals(log.records(), 2L);
+    }
+    assertEquals(loaded, Map.of("red%20tailed%20hawk", "rethaw", "sharp%20shinned%20hawk", "shshaw"));
+  }
+
+  @Test
+  public void testCompact() throws Exception {
+    final Path path = tempLog();
+    final TinyLfuCache<String, String> cache = new TinyLfuCache<>(100, 1, 0L);
+    try (HintLog log = HintLog.open(path, 42L, cache::put)) {
+      for (int i = 0; i < 1000; i++) {
+        final String hint = "hint" + (i % 50);
+        cache.put(hint, "code" + i);
+        log.append(hint, "code" + i);
+      }
+      final long before = Files.size(path);
+      log.compact(cache::forEach);
+      assertEquals(log.records(), 50L);
+      assertTrue(Files.size(path) < before);
+      log.append("hint0", "latest");
+    }
+    final Map<String, String> loaded = new HashMap<>();
+    try (HintLog log = HintLog.open(path, 42L, loaded::put)) {
+      assertEquals(log.records(), 51L);
+    }
+    assertEquals(loaded.size(), 50);
+    assertEquals(loaded.get("hint0"), "latest");
+    assertEquals(loaded.get("hint49"), "code999");
+  }
+
+  @Test
+  public void testLoadsLargeLog() throws Exception {
+    final Path path = tempLog();
+    try (HintLog log = HintLog.open(path, 42L, (h, c) -> { })) {
+      for (int i = 0; i < 100000; i++) {
+        log.append("some%20longish%20bird%20hint%20" + i, "code" + (i % 17000));
+      }
+    }
+    final TinyLfuCache<String, String> cache = new TinyLfuCache<>(100000, 1, 0L);
+    try (HintLog log = HintLog.open(path, 42L, cache::put)) {
+      assertEquals(log.records(), 100000L);
+    }
+    assertEquals(cache.size(), 100000L);
+    assertEquals(cache.get("some%20longish%20bird%20hint%2099999"), "code" + (99999 % 17000));
+  }
+
+}
@@ -0,0 +1,39 @@
+package filethesebirds.munin.digest.motion;
+
+import org.testng.annotations.Test;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertThrows;
+
+public class HintRewriterSpec {
+
+  @Test
+  public void testRulesApplyInOrder() {
+    final HintRewriter rewriter = HintRewriter.of("european", "eur", "eurasian", "eur", "conure", "parakeet");
+    // Each rule sees the previous rule's output, as with chained replaceAll
+    assertEquals(rewriter.rewrite("europeanasian%20conure"), "eur%20parakeet");
+    assertEquals(rewriter.rewrite("conureuropean"), "parakeetur");
+    assertEquals(rewriter.rewrite("no%20match"), "no%20match");
+  }
+
+  @Test
+  public void testWordEndRules() {
+    final HintRewriter rewriter = HintRewriter.of("sss\\b", "ss", "s\\b", "");
+    assertEquals(rewriter.rewrite("grasss%20hawks/owls(sp.)"), "gras%20hawk/owl(sp.)");
+    assertEquals(rewriter.rewrite("ssss"), "ss");
+    assertEquals(rewriter.rewrite("hawks_x"), "hawks_x");
+    assertEquals(rewriter.rewrite("swans2"), "swans2");
+    assertThrows(IllegalArgumentException.class, () -> HintRewriter.of("s\\b"));
+    assertThrows(IllegalArgumentException.class, () -> HintRewriter.of(".\\b", ""));
+  }
+
+  @Test
+  public void testNormalizedHints() {
+    assertEquals(ExtractingVisitor.normalizedHint(" Greater White-fronted Geese "), "great%20white%20fronted%20goose");
+    assertEquals(ExtractingVisitor.normalizedHint("Eurasian Collared-Dove"), "eur%20collared%20dove");
+    assertEquals(ExtractingVisitor.normalizedHint("gull species"), "gull%20sp.");
+    assertEquals(ExtractingVisitor.normalizedHint("Vermillion Flycatchers"), "vermilion%20flycatcher");
+    assertEquals(ExtractingVisitor.normalizedHint("dark-eyed junco (oregon)"),
+        ExtractingVisitor.normalize(ExtractingVisitor.cleanHint("dark-eyed junco (oregon)")));
+  }
+
+}
@@ -0,0 +1,87 @@
+package filethesebirds.munin.digest.motion;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Reports how many comment bodies {@link HintTokenizer} handles without a
+ * CommonMark fallback, how many of those disagree with CommonMark, and the
+ * time per body of {@link ExtractParse#visitCommonMark} against {@link
+ * ExtractParse#visitTokenized} (tokenizer with fallback).
+ *
+ * <p>Usage: {@code HintTokenizerHarness [corpusFile]}. A corpus file holds
+ * one body per line, with literal {@code \n} standing for newlines; without
+ * one, 20000 bodies are generated from {@link HintTokenizerSpec}'s fragments.
+ */
+public final class HintTokenizerHarness {
+
+  private static final int ROUNDS = 5;
+
+  private HintTokenizerHarness() {
+  }
+
+  private static String[] generatedCorpus() {
+    final Random random = new Random(17);
+    final String[] corpus = new String[20000];
+    for (int i = 0; i < corpus.length; i++) {
+      final StringBuilder sb = new StringBuilder();
+      for (int k = random.nextInt(24); k >= 0; k--) {
+        sb.append(HintTokenizerSpec.FRAGMENTS[random.nextInt(HintTokenizerSpec.FRAGMENTS.length)]);
+      }
+      corpus[i] = sb.toString();
+    }
+    return corpus;
+  }
+
+  private static String[] loadCorpus(String file) throws IOException {
+    return Files.readAllLines(Path.of(file), StandardCharsets.UTF_8).stream()
+        .map(line -> line.replace("\\n", "\n"))
+        .toArray(String[]::new);
+  }
+
+  public static void main(String[] args) throws IOException {
+    final String[] corpus = args.length == 0 ? generatedCorpus() : loadCorpus(args[0]);
+    int tokenized = 0;
+    int disagreements = 0;
+    for (String markdown : corpus) {
+      final ExtractingVisitor actual = new ExtractingVisitor();
+      if (HintTokenizer.tokenize(markdown, actual)) {
+        tokenized++;
+        final ExtractingVisitor expected = ExtractParse.visitCommonMark(markdown);
+        if (!actual.plusTaxa().equals(expected.plusTaxa())
+            || !actual.plusHints().equals(expected.plusHints())
+            || !actual.plusVagueHints().equals(expected.plusVagueHints())) {
+          disagreements++;
+          System.out.println("[WARN] HintTokenizer disagreed with CommonMark on " + markdown);
+        }
+      }
+    }
+    long commonMark = Long.MAX_VALUE;
+    long tokenizer = Long.MAX_VALUE;
+    // The first round warms up; the fastest of the rest is reported
+    for (int round = 0; round <= ROUNDS; round++) {
+      long start = System.nanoTime();
+      for (String markdown : corpus) {
+        ExtractParse.visitCommonMark(markdown);
+      }
+      final long commonMarkNanos = System.nanoTime() - start;
+      start = System.nanoTime();
+      for (String markdown : corpus) {
+        ExtractParse.visitTokenized(markdown);
+      }
+      final long tokenizerNanos = System.nanoTime() - start;
+      if (round > 0) {
+        commonMark = Math.min(commonMark, commonMarkNanos);
+        tokenizer = Math.min(tokenizer, tokenizerNanos);
+      }
+    }
+    System.out.println("[INFO] HintTokenizer handled " + tokenized + "/" + corpus.length + " bodies, "
+        + disagreements + " disagreeing with CommonMark");
+    System.out.println("[INFO] CommonMark " + (commonMark / corpus.length) + " ns/body, tokenizer with fallback "
+        + (tokenizer / corpus.length) + " ns/body");
+  }
+
+}
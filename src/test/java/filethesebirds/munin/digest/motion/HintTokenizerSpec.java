@@ -0,0 +1,99 @@
+package filethesebirds.munin.digest.motion;
+
+import java.util.Random;
+import java.util.Set;
+import org.testng.annotations.Test;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class HintTokenizerSpec {
+
+  private static ExtractingVisitor tokenized(String markdown) {
+    final ExtractingVisitor visitor = new ExtractingVisitor();
+    assertTrue(HintTokenizer.tokenize(markdown, visitor), markdown);
+    return visitor;
+  }
+
+  private static void assertBails(String markdown) {
+    final ExtractingVisitor visitor = new ExtractingVisitor();
+    assertFalse(HintTokenizer.tokenize(markdown, visitor), markdown);
+    assertTrue(visitor.plusHints().isEmpty() && visitor.plusVagueHints().isEmpty());
+  }
+
+  @Test
+  public void testHints() {
+    final ExtractingVisitor escaped = tokenized("+++hybrid yellow dark junco++, nice find!\n\n"
+        + "+Clay-colored        Sparrow+ behind that, and ++diurnal\traptor sp++ is the best we can do");
+    assertEquals(escaped.plusHints(), Set.of("clay%20colored%20sparrow"));
+    assertEquals(escaped.plusVagueHints(), Set.of("hybrid%20yellow%20dark%20junco", "diurnal%20raptor%20sp"));
+    final ExtractingVisitor nr = tokenized("++Setophaga sp++ or doing an addTaxa with the code from the link"
+        + " you should see soon would both work.\n\n!nr");
+    assertEquals(nr.plusHints(), Set.of());
+    assertEquals(nr.plusVagueHints(), Set.of("setophaga%20sp"));
+  }
+
+  @Test
+  public void testDelimiterRules() {
+    // The outer single-+ hint wraps the vague one, so only the latter counts
+    assertEquals(tokenized("+++rethaw+++").plusVagueHints(), Set.of("rethaw"));
+    assertEquals(tokenized("+++rethaw+++").plusHints(), Set.of());
+    assertEquals(tokenized("++rethaw+").plusHints(), Set.of("rethaw"));
+    assertEquals(tokenized("+rethaw+coohaw+").plusHints(), Set.of("rethaw"));
+    // Rule of three: a lone both-flanking + can't pair with a following ++
+    assertEquals(tokenized("a+rethaw++b").plusHints(), Set.of());
+    assertEquals(tokenized("a+rethaw++b").plusVagueHints(), Set.of());
+    // Delimiters don't pair across paragraphs, nor when flanked by whitespace
+    assertEquals(tokenized("+rethaw\n\ncoohaw+").plusHints(), Set.of());
+    assertEquals(tokenized("a + rethaw + b").plusHints(), Set.of());
+    assertEquals(tokenized("1+1=2, not +rethaw+ (2021.)").plusHints(), Set.of("rethaw"));
+  }
+
+  @Test
+  public void testBailsOut() {
+    assertBails("*rethaw* +coohaw+");
+    assertBails("see https://ebird.org/species/rethaw or +coohaw+");
+    assertBails("- +rethaw+");
+    assertBails("+ rethaw+");
+    assertBails("    +rethaw+");
+    assertBails("1. +rethaw+");
+    assertBails("+rethaw [coohaw](x)+");
+    assertBails("+gray_jay+");
+    assertBails("+rethaw &amp; coohaw+");
+    assertBails("[rethaw](https://ebird.org/species/rethaw \"title\")");
+    assertBails("![rethaw](https://ebird.org/species/rethaw)");
+    assertBails("[rethaw]\n\n[rethaw]: https://ebird.org/species/rethaw");
+    assertBails("+`rethaw`+");
+  }
+
+  static final String[] FRAGMENTS = {"+", "++", "+++", " ", "  ", "\n", "\n\n", ", ", ".", "!", "(", ")", "'", "-",
+      "Red-tailed Hawk", "juvenile", "rethaw", "Cooper's", "sp.", "x", "_", "a_b", "[link](https://ebird.org/species/rethaw)",
+      "[guide](https://www.allaboutbirds.org/guide/Northern_Mockingbird/overview)", "https://ebird.org/species/coohaw",
+      "*", "**", "`", "&amp;", "\u00e9", "\u2014", "\u00a0", "#", "> ", "1. ", "\t"};
+
+  @Test
+  public void testAgreesWithCommonMark() {
+    final Random random = new Random(17);
+    final String[] corpus = new String[20000];
+    for (int i = 0; i < corpus.length; i++) {
+      final StringBuilder sb = new StringBuilder();
+      for (int k = random.nextInt(24); k >= 0; k--) {
+        sb.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+      }
+      corpus[i] = sb.toString();
+    }
+    int tokenized = 0;
+    for (String markdown : corpus) {
+      final ExtractingVisitor actual = new ExtractingVisitor();
+      if (HintTokenizer.tokenize(markdown, actual)) {
+        tokenized++;
+        final ExtractingVisitor expected = ExtractParse.visitCommonMark(markdown);
+        assertEquals(actual.plusTaxa(), expected.plusTaxa(), markdown);
+        assertEquals(actual.plusHints(), expected.plusHints(), markdown);
+        assertEquals(actual.plusVagueHints(), expected.plusVagueHints(), markdown);
+      }
+    }
+    assertTrue(tokenized > 0);
+  }
+
+}
@@ -0,0 +1,34 @@
+package filethesebirds.munin.digest.motion;
+
+import org.testng.annotations.Test;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+public class TaxonNamesSpec {
+
+  private static String resolve(String raw) {
+    return TaxonNames.resolve(ExtractingVisitor.normalize(ExtractingVisitor.cleanHint(raw)));
+  }
+
+  @Test
+  public void testExactCommonNames() {
+    assertEquals(resolve("Barn Owl"), "brnowl");
+    assertEquals(resolve("Clay-colored        Sparrow"), "clcspa");
+    assertEquals(resolve("Wilson's Warbler"), "wlswar");
+    assertEquals(resolve("dark-eyed junco (oregon)"), "orejun");
+  }
+
+  @Test
+  public void testNormalizedCommonNames() {
+    assertEquals(resolve("Canada Geese"), "cangoo");
+    assertEquals(resolve("Eurasian Starling"), "eursta");
+  }
+
+  @Test
+  public void testMisses() {
+    assertNull(resolve("oregon junco"));
+    assertNull(resolve("red-shafted x yellow-shafted flicker"));
+    assertNull(TaxonNames.resolve(""));
+  }
+
+}
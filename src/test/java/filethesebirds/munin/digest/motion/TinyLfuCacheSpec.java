@@ -0,0 +1,132 @@
+package filethesebirds.munin.digest.motion;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.ArrayList;
+import java.util.List;
+import org.testng.annotations.Test;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class TinyLfuCacheSpec {
+
+  @Test
+  public void testGetPut() {
+    final TinyLfuCache<String, String> cache = new TinyLfuCache<>(10, 10, 0L);
+    assertNull(cache.get("red%20tailed%20hawk"));
+    cache.put("red%20tailed%20hawk", "rethaw");
+    assertEquals(cache.get("red%20tailed%20hawk"), "rethaw");
+    cache.put("red%20tailed%20hawk", "rethaw1");
+    assertEquals(cache.get("red%20tailed%20hawk"), "rethaw1");
+    cache.invalidate("red%20tailed%20hawk");
+    assertNull(cache.get("red%20tailed%20hawk"));
+    assertEquals(cache.hits(), 2L);
+    assertEquals(cache.misses(), 2L);
+    assertEquals(cache.size(), 0L);
+  }
+
+  @Test
+  public void testStaysBounded() {
+    final TinyLfuCache<Integer, Integer> cache = new TinyLfuCache<>(100, 1, 0L);
+    final Random random = new Random(3);
+    for (int i = 0; i < 100000; i++) {
+      final int k = random.nextInt(5000);
+      if (cache.get(k) == null) {
+        cache.put(k, k);
+      }
+      assertTrue(cache.size() <= 100);
+    }
+    assertEquals(cache.evictions(), cache.misses() - cache.size());
+  }
+
+  @Test
+  public void testFrequentEntriesSurviveScans() {
+    final TinyLfuCache<String, String> cache = new TinyLfuCache<>(100, 1, 0L);
+    for (int round = 0; round < 5; round++) {
+      for (int i = 0; i < 50; i++) {
+        if (cache.get("hot" + i) == null) {
+          cache.put("hot" + i, "hot");
+        }
+      }
+    }
+    // A one-off scan several times the size of the cache, but too brief for
+    // the sketch to age away the hot entries' history
+    for (int i = 0; i < 500; i++) {
+      cache.put("cold" + i, "cold");
+    }
+    int survivors = 0;
+    for (int i = 0; i < 50; i++) {
+      if (cache.get("hot" + i) != null) {
+        survivors++;
+      }
+    }
+    assertEquals(survivors, 50);
+  }
+
+  @Test
+  public void testExpireAfterWrite() {
+    final AtomicLong now = new AtomicLong(0L);
+    final TinyLfuCache<String, String> cache = new TinyLfuCache<>(10, 1, 1000L, now::get);
+    cache.put("k", "v");
+    now.set(999L);
+    assertEquals(cache.get("k"), "v");
+    now.set(1000L);
+    assertNull(cache.get("k"));
+    assertEquals(cache.expirations(), 1L);
+    assertEquals(cache.size(), 0L);
+    cache.put("k", "w");
+    assertEquals(cache.get("k"), "w");
+  }
+
+  @Test
+  public void testSketchAges() {
+    final TinyLfuCache.FrequencySketch sketch = new TinyLfuCache.FrequencySketch(64);
+    for (int i = 0; i < 20; i++) {
+      sketch.increment("rethaw");
+    }
+    assertEquals(sketch.frequency("rethaw"), 15);
+    assertEquals(sketch.frequency("coohaw"), 0);
+    for (int i = 0; i < 640; i++) {
+      sketch.increment(i);
+    }
+    assertTrue(sketch.frequency("rethaw") < 15);
+  }
+
+  @Test
+  public void testConcurrentAccess() throws Exception {
+    final TinyLfuCache<Integer, Integer> cache = new TinyLfuCache<>(500, 1, 0L);
+    final ExecutorService pool = Executors.newFixedThreadPool(4);
+    final List<Future<?>> futures = new ArrayList<>();
+    for (int t = 0; t < 4; t++) {
+      final int seed = t;
+      futures.add(pool.submit(() -> {
+        final Random random = new Random(seed);
+        for (int i = 0; i < 50000; i++) {
+          final int k = (int) Math.abs(random.nextGaussian() * 400);
+          final Integer v = cache.get(k);
+          if (v == null) {
+            cache.put(k, k);
+          } else {
+            assertEquals((int) v, k);
+          }
+        }
+      }));
+    }
+    for (Future<?> f : futures) {
+      f.get();
+    }
+    pool.shutdown();
+    pool.awaitTermination(1, TimeUnit.SECONDS);
+    assertTrue(cache.size() <= 500);
+    assertEquals(cache.hits() + cache.misses(), 4L * 50000);
+    // Holding the 500 likeliest keys would hit about 79% of the time; leave
+    // generous room for admission decisions and lost updates under contention
+    assertTrue(cache.hitRate() > 0.6, "hit rate " + cache.hitRate());
+  }
+
+}